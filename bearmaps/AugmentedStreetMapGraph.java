@@ -1,15 +1,22 @@
 package bearmaps;
 
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntDijkstra;
+import bearmaps.utils.graph.SearchWorkspace;
 import bearmaps.utils.graph.streetmap.Node;
+import bearmaps.utils.graph.streetmap.RoutingProfile;
 import bearmaps.utils.graph.streetmap.StreetMapGraph;
 import bearmaps.utils.ps.NodePoint;
 import bearmaps.utils.ps.Point;
+import bearmaps.utils.ps.SegmentRTree;
 import bearmaps.utils.ps.WeirdPointSet;
 import bearmaps.utils.trie.MyTrieSet;
 import bearmaps.utils.trie.TrieSet;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * An augmented graph that is more powerful that a standard StreetMapGraph.
@@ -20,18 +27,30 @@ import java.util.stream.Collectors;
 public class AugmentedStreetMapGraph extends StreetMapGraph {
 
     private WeirdPointSet pointSet;
+    /* Only the vertices of the largest strong component, built on first use. */
+    private volatile WeirdPointSet largestComponentPointSet;
+    /* One segment per road edge, or per pair of opposite edges, built on first use. */
+    private volatile SegmentRTree segmentTree;
+    private int[] segmentEdge;
+    /* Longitudes are scaled by this so that segment distances are roughly isotropic. */
+    private double lonScale;
+    /* For each non-uniform profile, which segments it may snap onto, built on first use. */
+    private final Map<RoutingProfile, boolean[]> segmentsAllowed = new ConcurrentHashMap<>();
 
     private TrieSet trieNames;
     private boolean mapInitialzed = false;
     public Map<String, Set<String>> cleanedNameMap = new HashMap<>();
     private Map<String, Set<Node>> nameNodeMap = new HashMap<>();
+    private Map<String, Set<Node>> categoryNodeMap = new HashMap<>();
+    /* The road vertex each named or categorized place is attached to. */
+    private Map<Node, Integer> placeRoads = new HashMap<>();
 
     public AugmentedStreetMapGraph(String dbPath) {
         super(dbPath);
         // You might find it helpful to uncomment the line below:
         List<Node> nodes = this.getNodes(); //
         List<NodePoint> points = nodes.stream().parallel()
-            .filter(n -> this.neighbors(n.id()).size() != 0)
+            .filter(n -> this.outDegree(this.indexOf(n.id())) != 0)
             .map(NodePoint::new)
             .collect(Collectors.toList());
         pointSet = new WeirdPointSet(points);
@@ -51,9 +70,160 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
         return ((NodePoint) res).id();
     }
 
+    /**
+     * Returns the vertex closest to the given longitude and latitude among those in the
+     * largest strongly connected component, so that any two locations snapped this way
+     * have a route between them. Useful when the plain closest vertex sits on an
+     * isolated scrap of road.
+     *
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @return The id of the node in the largest component closest to the target.
+     */
+    public long closestInLargestComponent(double lon, double lat) {
+        WeirdPointSet points = largestComponentPointSet;
+        if (points == null) {
+            synchronized (this) {
+                if (largestComponentPointSet == null) {
+                    largestComponentPointSet = new WeirdPointSet(this.getNodes().stream()
+                        .filter(n -> components().inLargest(indexOf(n.id())))
+                        .map(NodePoint::new)
+                        .collect(Collectors.toList()));
+                }
+                points = largestComponentPointSet;
+            }
+        }
+        return ((NodePoint) points.nearest(lon, lat)).id();
+    }
+
+    /**
+     * A location snapped onto a road: the edge it lies beside, and how far along it.
+     */
+    public static class EdgeSnap {
+        private final int edge;
+        private final double t;
+
+        EdgeSnap(int edge, double t) {
+            this.edge = edge;
+            this.t = t;
+        }
+
+        /** The edge index. Its opposite edge, if any, runs the same road backwards. */
+        public int edge() {
+            return edge;
+        }
+
+        /** How far along the edge the snapped point is, from 0 at its source to 1. */
+        public double t() {
+            return t;
+        }
+    }
+
+    /**
+     * Returns the point on a road closest to the given longitude and latitude. Unlike
+     * closest, a location in the middle of a long block snaps to the block itself
+     * rather than to whichever of its far-off corners is nearer.
+     *
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @return The snapped point, or null if the graph has no edges.
+     */
+    public EdgeSnap closestEdge(double lon, double lat) {
+        SegmentRTree tree = segmentTree();
+        SegmentRTree.Hit hit = tree.nearest(lon * lonScale, lat);
+        return hit == null ? null : new EdgeSnap(segmentEdge[hit.segment()], hit.t());
+    }
+
+    /**
+     * Same as above, but only snaps onto roads PROFILE may use, in at least one
+     * direction.
+     *
+     * @return The snapped point, or null if PROFILE may use no road at all.
+     */
+    public EdgeSnap closestEdge(double lon, double lat, RoutingProfile profile) {
+        if (profile.isUniform()) {
+            return closestEdge(lon, lat);
+        }
+        SegmentRTree tree = segmentTree();
+        boolean[] allowed = segmentsAllowed.computeIfAbsent(profile, this::segmentsAllowed);
+        SegmentRTree.Hit hit = tree.nearest(lon * lonScale, lat, segment -> allowed[segment]);
+        return hit == null ? null : new EdgeSnap(segmentEdge[hit.segment()], hit.t());
+    }
+
+    /* Which segments PROFILE may use in at least one direction. */
+    private boolean[] segmentsAllowed(RoutingProfile profile) {
+        boolean[] allowed = new boolean[segmentEdge.length];
+        for (int i = 0; i < allowed.length; i++) {
+            int e = segmentEdge[i];
+            int back = findEdge(edgeTarget(e), edgeSource(e));
+            allowed[i] = allows(profile, e) || (back >= 0 && allows(profile, back));
+        }
+        return allowed;
+    }
+
+    private SegmentRTree segmentTree() {
+        SegmentRTree tree = segmentTree;
+        if (tree == null) {
+            synchronized (this) {
+                if (segmentTree == null) {
+                    segmentTree = buildSegmentTree();
+                }
+                tree = segmentTree;
+            }
+        }
+        return tree;
+    }
+
+    /* Indexes every edge whose opposite edge is absent or comes from a higher index, so
+     * each stretch of two-way road appears once. */
+    private SegmentRTree buildSegmentTree() {
+        double latSum = 0;
+        for (int v = 0; v < numVertices(); v++) {
+            latSum += latAt(v);
+        }
+        lonScale = numVertices() == 0 ? 1 : Math.cos(Math.toRadians(latSum / numVertices()));
+        int[] edges = new int[numEdges()];
+        double[] x1 = new double[numEdges()];
+        double[] y1 = new double[numEdges()];
+        double[] x2 = new double[numEdges()];
+        double[] y2 = new double[numEdges()];
+        int count = 0;
+        for (int v = 0; v < numVertices(); v++) {
+            for (int e = edgeBegin(v); e < edgeEnd(v); e++) {
+                int w = edgeTarget(e);
+                if (v < w || findEdge(w, v) < 0) {
+                    edges[count] = e;
+                    x1[count] = lonAt(v) * lonScale;
+                    y1[count] = latAt(v);
+                    x2[count] = lonAt(w) * lonScale;
+                    y2[count] = latAt(w);
+                    count += 1;
+                }
+            }
+        }
+        segmentEdge = Arrays.copyOf(edges, count);
+        x1 = Arrays.copyOf(x1, count);
+        y1 = Arrays.copyOf(y1, count);
+        x2 = Arrays.copyOf(x2, count);
+        y2 = Arrays.copyOf(y2, count);
+        return new SegmentRTree(x1, y1, x2, y2);
+    }
+
+    /**
+     * Snaps a batch of locations at once, in parallel.
+     *
+     * @param lonLats Each element is a {longitude, latitude} pair.
+     * @return The vertex index closest to each location, in the same order.
+     */
+    public int[] closestIndices(double[][] lonLats) {
+        return Arrays.stream(lonLats).parallel()
+            .mapToInt(p -> indexOf(closest(p[0], p[1])))
+            .toArray();
+    }
+
 
     private void initMap() {
-        nameNodeMap = nodes.values().parallelStream()
+        nameNodeMap = getNodes().parallelStream()
             .filter((node) -> node.name() != null)
             .collect(Collectors.toMap(
                 (node) -> cleanString(node.name()),
@@ -64,17 +234,40 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
                 }
             ));
 
+        categoryNodeMap = getNodes().parallelStream()
+            .filter((node) -> node.category() != null)
+            .collect(Collectors.toMap(
+                (node) -> cleanString(node.category()),
+                (node) -> newNodeSet(node),
+                (conf1, conf2) -> {
+                    conf1.addAll(conf2);
+                    return conf1;
+                }
+            ));
+
         cleanedNameMap = nameNodeMap.entrySet().parallelStream()
             .collect(Collectors.toMap(
                 Map.Entry::getKey,
                 (e) -> e.getValue().stream().map(Node::name).collect(Collectors.toSet())
             ));
 
+        placeRoads = Stream.concat(nameNodeMap.values().stream(),
+                categoryNodeMap.values().stream())
+            .flatMap(Set::stream)
+            .parallel()
+            .collect(Collectors.toMap(node -> node, this::roadVertex, (a, b) -> a));
+
         trieNames = new MyTrieSet();
         cleanedNameMap.keySet().forEach(trieNames::add);
         mapInitialzed = true;
     }
 
+    /* The vertex PLACE is at if it is on a road, else the road vertex closest to it. */
+    private int roadVertex(Node place) {
+        int v = indexOf(place.id());
+        return v >= 0 && outDegree(v) > 0 ? v : indexOf(closest(place.lon(), place.lat()));
+    }
+
     private Set<Node> newNodeSet(Node initElement) {
         Set<Node> toReturn = new HashSet<>();
         toReturn.add(initElement);
@@ -131,6 +324,79 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
     }
 
 
+    /**
+     * Finds the K places nearest to a location by road, rather than in a straight line,
+     * whose cleaned name starts with the cleaned QUERY or whose category, such as "cafe"
+     * or "bank", is QUERY. Each place is attached to the road vertex closest to it, and
+     * a single Dijkstra search from the vertex closest to the location stops as soon as
+     * K places have been reached, so a nearby match is found without searching the rest
+     * of the map.
+     *
+     * @param lon         The longitude of the location.
+     * @param lat         The latitude of the location.
+     * @param query       A place name prefix or category.
+     * @param k           The most places to return.
+     * @param maxDistance Places farther than this many miles by road are not returned.
+     * @param deadline    When to stop searching and return what has been found.
+     * @return Up to K places, nearest first, each a map of parameters for the Json
+     * response as in getLocations, plus <br>
+     * "category" -> String, What kind of place it is, or null. <br>
+     * "distance" -> Number, The road distance in miles to the vertex it is attached to.
+     */
+    public List<Map<String, Object>> nearestPlaces(double lon, double lat, String query,
+                                                   int k, double maxDistance,
+                                                   Deadline deadline) {
+        if (!mapInitialzed) {
+            initMap();
+        }
+        String cleaned = cleanString(query);
+        Set<Node> matches = new HashSet<>(categoryNodeMap.getOrDefault(cleaned,
+            Collections.emptySet()));
+        if (!cleaned.isEmpty()) {
+            for (String name : trieNames.keysWithPrefix(cleaned)) {
+                matches.addAll(nameNodeMap.get(name));
+            }
+        }
+        List<Map<String, Object>> found = new ArrayList<>();
+        if (matches.isEmpty() || k <= 0) {
+            return found;
+        }
+
+        Map<Integer, List<Node>> placesAt = new HashMap<>();
+        for (Node place : matches) {
+            placesAt.computeIfAbsent(placeRoads.get(place), r -> new ArrayList<>()).add(place);
+        }
+        int start = indexOf(closest(lon, lat));
+        int[] settled = {0};
+        try (SearchWorkspace ws = SearchWorkspace.acquire(numVertices())) {
+            IntDijkstra.run(this, ws, new int[]{start}, maxDistance, (v, d) -> {
+                for (Node place : placesAt.getOrDefault(v, Collections.emptyList())) {
+                    if (found.size() < k) {
+                        Map<String, Object> tmp = new HashMap<>();
+                        tmp.put("lat", place.lat());
+                        tmp.put("lon", place.lon());
+                        tmp.put("name", place.name());
+                        tmp.put("id", place.id());
+                        tmp.put("category", place.category());
+                        tmp.put("distance", d);
+                        found.add(tmp);
+                    }
+                }
+                settled[0] += 1;
+                return found.size() < k && !deadline.isExpired(settled[0]);
+            });
+        }
+        return found;
+    }
+
+    /**
+     * Same as above, searching as far as it takes.
+     */
+    public List<Map<String, Object>> nearestPlaces(double lon, double lat, String query,
+                                                   int k) {
+        return nearestPlaces(lon, lat, query, k, Double.POSITIVE_INFINITY, Deadline.none());
+    }
+
     /**
      * Useful for Part III. Do not modify.
      * Helper to process strings into their "cleaned" form, ignoring punctuation and capitalization.
@@ -2,10 +2,17 @@ package bearmaps;
 
 import bearmaps.server.handler.APIRouteHandler;
 import bearmaps.utils.Constants;
+import bearmaps.utils.graph.arcflags.ArcFlags;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static spark.Spark.*;
 
@@ -22,6 +29,17 @@ public class MapServerInitializer {
     public static void initializeServer(Map<String, APIRouteHandler> apiHandlers) {
 
         Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        Router.ROUTE_CACHE.invalidate();
+        /* Label components now rather than on the first route request. */
+        Constants.SEMANTIC_STREET_GRAPH.components();
+        /* Computing arc flags from scratch takes a while, so serve plain A* until then. */
+        Router.setServerSolver(Router.ASTAR);
+        Thread arcFlags = new Thread(() -> Router.useArcFlags(ArcFlags.loadOrBuild(
+            Constants.SEMANTIC_STREET_GRAPH, Constants.ARC_FLAGS_PATH,
+            Constants.ARC_FLAG_ROWS, Constants.ARC_FLAG_COLS)), "arc-flags");
+        arcFlags.setDaemon(true);
+        arcFlags.start();
+        useVirtualThreads();
         staticFileLocation("/page");
         /* Allow for all origin requests (since this is not an authenticated server, we do not
          * care about CSRF).  */
@@ -37,9 +55,65 @@ public class MapServerInitializer {
                 throw new RuntimeException("Duplicate API Path found");
             }
             get("/" + apiRoute.getKey(), apiRoute.getValue());
+            if (apiRoute.getValue().acceptsPost()) {
+                post("/" + apiRoute.getKey(), apiRoute.getValue());
+            }
             paths.add(apiRoute.getKey());
         }
 
 
     }
+
+    /* Has Jetty serve each request on a virtual thread where the JVM has them, so a
+     * request waiting for a permit or a shared computation holds no platform thread.
+     * The lookup is reflective so the server still runs on older JVMs, which keep
+     * Jetty's own pool. Must run before the first route is registered. */
+    private static void useVirtualThreads() {
+        ExecutorService executor;
+        try {
+            executor = (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return;
+        }
+        EmbeddedServers.add(EmbeddedServers.defaultIdentifier(),
+            new EmbeddedJettyFactory().withThreadPool(new ExecutorPool(executor)));
+    }
+
+    /* A Jetty ThreadPool that hands every task to EXECUTOR, since Jetty's own
+     * ExecutorThreadPool is deprecated in the version Spark ships with. The thread counts
+     * are unknown, as there, and an executor that starts a thread per task is never low
+     * on threads. */
+    private static class ExecutorPool implements ThreadPool {
+        private final ExecutorService executor;
+
+        ExecutorPool(ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            executor.execute(task);
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int getThreads() {
+            return -1;
+        }
+
+        @Override
+        public int getIdleThreads() {
+            return -1;
+        }
+
+        @Override
+        public boolean isLowOnThreads() {
+            return false;
+        }
+    }
 }
@@ -1,9 +1,27 @@
 package bearmaps;
 
-import bearmaps.utils.graph.AStarSolver;
+import bearmaps.utils.RouteCache;
+import bearmaps.utils.graph.AlternativeRoutes;
+import bearmaps.utils.graph.BidirectionalAStarSolver;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.EdgeFilter;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverFactory;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.VertexIdList;
+import bearmaps.utils.graph.arcflags.ArcFlags;
+import bearmaps.utils.graph.chain.ChainGraph;
+import bearmaps.utils.graph.streetmap.RoutingProfile;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -14,9 +32,76 @@ import java.util.regex.Pattern;
  */
 public class Router {
 
+    /** Unidirectional A* over vertex indices. This is what shortestPath uses by default. */
+    public static final SolverFactory<IntGraph, Long> ASTAR = IntAStarSolver::new;
+
+    /** Bidirectional A*, which settles fewer vertices on long routes. */
+    public static final SolverFactory<IntGraph, Long> BIDIRECTIONAL_ASTAR =
+        BidirectionalAStarSolver::new;
+
+    /** A* over the graph with its degree-2 chains collapsed, which are built on first use
+     *  for each graph; see ChainGraph. */
+    public static final SolverFactory<IntGraph, Long> CHAINS = Router::chainSolver;
+
+    /* The chains CHAINS last searched, kept until it is asked about another graph. */
+    private static ChainGraph chains;
+
+    /* What the API handlers route with. MapServerInitializer switches it to arc flags
+     * once they are ready. */
+    private static volatile SolverFactory<IntGraph, Long> serverSolver = ASTAR;
+    /* The arc flags serverSolver searches with, if any, so searches it does not create
+     * itself can use them too. */
+    private static volatile ArcFlags arcFlags;
+
+    /** Seconds a single route query may run for. */
+    private static final double ROUTE_TIMEOUT = 20;
+
+    /* How finely on-road routes are cached along an edge: a route is reused for points
+     * that round to the same 1/SNAP_STEPS of the way along the same edges. */
+    private static final int SNAP_STEPS = 256;
+
+    /**
+     * Routes already computed, keyed by snapped endpoints and solver, or for routes
+     * between points on roads, by snapped edges and routing profile. It empties itself
+     * when asked about a different graph; MapServerInitializer also invalidates it
+     * whenever the graph is (re)loaded.
+     */
+    public static final RouteCache ROUTE_CACHE = new RouteCache(10000, 64L << 20);
+
+    /** Returns the solver the API handlers should route with. */
+    public static SolverFactory<IntGraph, Long> serverSolver() {
+        return serverSolver;
+    }
+
+    /** Makes the API handlers route with SOLVER from now on. */
+    public static void setServerSolver(SolverFactory<IntGraph, Long> solver) {
+        arcFlags = null;
+        serverSolver = solver;
+    }
+
     /**
-     * Overloaded method for shortestPath that has flexibility to specify a solver
-     * and returns a List of longs representing the shortest path from the node
+     * Makes the API handlers route with FLAGS from now on, both through serverSolver and
+     * between points on roads.
+     */
+    public static void useArcFlags(ArcFlags flags) {
+        serverSolver = flags.solverFactory();
+        arcFlags = flags;
+    }
+
+    private static ShortestPathsSolver<Long> chainSolver(IntGraph g, long start, long end,
+                                                         Deadline deadline) {
+        ChainGraph current;
+        synchronized (Router.class) {
+            if (chains == null || chains.base() != g) {
+                chains = ChainGraph.build(g);
+            }
+            current = chains;
+        }
+        return current.solverFactory().create(g, start, end, deadline);
+    }
+
+    /**
+     * Returns a List of longs representing the shortest path from the node
      * closest to a start location and the node closest to the destination location.
      *
      * @param g       The graph to use.
@@ -29,9 +114,326 @@ public class Router {
     public static List<Long> shortestPath(AugmentedStreetMapGraph g,
                                           double stlon, double stlat,
                                           double destlon, double destlat) {
+        return shortestPath(g, stlon, stlat, destlon, destlat, ASTAR);
+    }
+
+    /**
+     * Overloaded method for shortestPath that has flexibility to specify a solver.
+     *
+     * @param g       The graph to use.
+     * @param stlon   The longitude of the start location.
+     * @param stlat   The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @param solver  Creates the solver to run, e.g. ASTAR or BIDIRECTIONAL_ASTAR.
+     * @return A read-only list of node id's in the order visited on the shortest path.
+     * Routes are cached per solver, so pass the same factory instance to benefit.
+     */
+    public static List<Long> shortestPath(AugmentedStreetMapGraph g,
+                                          double stlon, double stlat,
+                                          double destlon, double destlat,
+                                          SolverFactory<? super AugmentedStreetMapGraph, Long> solver) {
+        return shortestPath(g, stlon, stlat, destlon, destlat, solver,
+            Deadline.after(ROUTE_TIMEOUT));
+    }
+
+    /**
+     * Overloaded method for shortestPath that gives up when DEADLINE expires or is
+     * cancelled, e.g. because the client went away.
+     *
+     * @param g        The graph to use.
+     * @param stlon    The longitude of the start location.
+     * @param stlat    The latitude of the start location.
+     * @param destlon  The longitude of the destination location.
+     * @param destlat  The latitude of the destination location.
+     * @param solver   Creates the solver to run, e.g. ASTAR or BIDIRECTIONAL_ASTAR.
+     * @param deadline When to give up.
+     * @return A read-only list of node id's in the order visited on the shortest path.
+     * If the search gave up, this is empty, or the best partial route if DEADLINE accepts
+     * partial results and the solver supports them. Such routes are not cached.
+     */
+    public static List<Long> shortestPath(AugmentedStreetMapGraph g,
+                                          double stlon, double stlat,
+                                          double destlon, double destlat,
+                                          SolverFactory<? super AugmentedStreetMapGraph, Long> solver,
+                                          Deadline deadline) {
         long src = g.closest(stlon, stlat);
         long dest = g.closest(destlon, destlat);
-        return new AStarSolver<>(g, src, dest, 20).solution();
+        if (!g.mayReach(g.indexOf(src), g.indexOf(dest))) {
+            /* Different components: no solver could do better than drain its fringe. */
+            return Collections.emptyList();
+        }
+        List<Long> cached = ROUTE_CACHE.get(g, solver, src, dest);
+        if (cached != null) {
+            return cached;
+        }
+        /* Read before searching, so a route found on weights that change meanwhile is not
+         * cached. */
+        long epoch = ROUTE_CACHE.epoch();
+        ShortestPathsSolver<Long> result = solver.create(g, src, dest, deadline);
+        if (result.outcome() == SolverOutcome.TIMEOUT) {
+            return result.solution();
+        }
+        return ROUTE_CACHE.put(g, solver, src, dest, result.solution(), epoch);
+    }
+
+    /**
+     * Multiplies the weight of each of EDGES of G by the matching entry of MULTIPLIERS,
+     * e.g. 2 for a road at half speed or infinity for a closed one, replacing earlier
+     * multipliers; see StreetMapGraph.setWeightMultipliers. Searches already running
+     * finish on the old weights.
+     *
+     * If every edge only got slower, the only cached routes that can have changed are
+     * those along one of them, so just those are dropped. If any got cheaper, any route
+     * might now go that way, and the whole cache is dropped.
+     *
+     * @return The number of cached routes dropped.
+     * @throws IllegalArgumentException If an edge or multiplier is invalid.
+     */
+    public static int updateEdgeWeights(AugmentedStreetMapGraph g, int[] edges,
+                                        double[] multipliers) {
+        return updateEdgeWeights(g, false, edges, multipliers);
+    }
+
+    /**
+     * Same as above, but if CLEAR, every other edge of G is restored to its parsed weight
+     * in the same step; see StreetMapGraph.setWeightMultipliers.
+     */
+    public static int updateEdgeWeights(AugmentedStreetMapGraph g, boolean clear,
+                                        int[] edges, double[] multipliers) {
+        if (g.setWeightMultipliers(clear, edges, multipliers)) {
+            return flushRoutes();
+        }
+        Set<Long> changed = new HashSet<>();
+        for (int e : edges) {
+            changed.add(hop(g.edgeSource(e), g.edgeTarget(e)));
+        }
+        return ROUTE_CACHE.invalidateIf((solver, src, dest, route) ->
+            crosses(g, route, changed) || (solver instanceof RoutingProfile
+                && (alongEdge(g, src, changed) || alongEdge(g, dest, changed))));
+    }
+
+    private static int flushRoutes() {
+        synchronized (ROUTE_CACHE) {
+            int dropped = ROUTE_CACHE.size();
+            ROUTE_CACHE.invalidate();
+            return dropped;
+        }
+    }
+
+    /* Whether ROUTE, a list of node ids of G, steps along one of the HOPS. */
+    private static boolean crosses(AugmentedStreetMapGraph g, List<Long> route,
+                                   Set<Long> hops) {
+        int[] path;
+        if (route instanceof VertexIdList) {
+            path = ((VertexIdList) route).indices();
+        } else {
+            path = new int[route.size()];
+            for (int i = 0; i < path.length; i++) {
+                path[i] = g.indexOf(route.get(i));
+            }
+        }
+        for (int i = 1; i < path.length; i++) {
+            if (hops.contains(hop(path[i - 1], path[i]))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* Whether the edge of SNAP, a key made by snapKey, runs either way along one of
+     * HOPS, which changes the part-edge an on-road route starts or ends on. */
+    private static boolean alongEdge(AugmentedStreetMapGraph g, long snap,
+                                     Set<Long> hops) {
+        int e = (int) (snap >>> 16);
+        int u = g.edgeSource(e);
+        int v = g.edgeTarget(e);
+        return hops.contains(hop(u, v)) || hops.contains(hop(v, u));
+    }
+
+    /* The cache key of a point snapped onto the road: its edge, and how far along it to
+     * the nearest 1/SNAP_STEPS. */
+    private static long snapKey(AugmentedStreetMapGraph.EdgeSnap snap) {
+        return ((long) snap.edge() << 16) | Math.round(snap.t() * SNAP_STEPS);
+    }
+
+    /* A step from vertex V to vertex W, as one set key. */
+    private static long hop(int v, int w) {
+        return ((long) v << 32) | (w & 0xffffffffL);
+    }
+
+    /**
+     * Like shortestPath, but snaps both locations onto the nearest road instead of the
+     * nearest vertex, and searches from and to those points part-way along their edges.
+     * A click in the middle of a long block then starts from that block, heading
+     * whichever way is shorter, instead of detouring via its nearer corner.
+     *
+     * @param g        The graph to use.
+     * @param stlon    The longitude of the start location.
+     * @param stlat    The latitude of the start location.
+     * @param destlon  The longitude of the destination location.
+     * @param destlat  The latitude of the destination location.
+     * @param deadline When to give up.
+     * @return The node ids of the route, from an end of the start's edge to an end of
+     * the destination's edge. Routes are cached by the edges the locations snap to and
+     * how far along them they are, and by profile.
+     */
+    public static List<Long> shortestPathOnRoads(AugmentedStreetMapGraph g,
+                                                 double stlon, double stlat,
+                                                 double destlon, double destlat,
+                                                 Deadline deadline) {
+        return shortestPathOnRoads(g, stlon, stlat, destlon, destlat, RoutingProfile.CAR,
+            deadline);
+    }
+
+    /**
+     * Same as above, but routes for PROFILE: both locations snap onto roads PROFILE may
+     * use, and the route is the shortest by PROFILE's weights.
+     */
+    public static List<Long> shortestPathOnRoads(AugmentedStreetMapGraph g,
+                                                 double stlon, double stlat,
+                                                 double destlon, double destlat,
+                                                 RoutingProfile profile,
+                                                 Deadline deadline) {
+        AugmentedStreetMapGraph.EdgeSnap from = g.closestEdge(stlon, stlat, profile);
+        AugmentedStreetMapGraph.EdgeSnap to = g.closestEdge(destlon, destlat, profile);
+        if (from == null || to == null) {
+            return Collections.emptyList();
+        }
+        long src = snapKey(from);
+        long dest = snapKey(to);
+        List<Long> cached = ROUTE_CACHE.get(g, profile, src, dest);
+        if (cached != null) {
+            return cached;
+        }
+        long epoch = ROUTE_CACHE.epoch();
+        /* The weights the search will see, for the part-edges at either end. A closed
+         * direction of either road is not a way out of or into it. */
+        IntGraph weights = g.snapshot(profile);
+        /* Leave the start's edge through either end the road runs toward. */
+        int e = from.edge();
+        int u = g.edgeSource(e);
+        int v = g.edgeTarget(e);
+        int eBack = g.findEdge(v, u);
+        int[] starts = new int[2];
+        double[] startOffsets = new double[2];
+        int numStarts = 0;
+        if (isOpen(weights, e)) {
+            starts[numStarts] = v;
+            startOffsets[numStarts++] = (1 - from.t()) * weights.edgeWeight(e);
+        }
+        if (isOpen(weights, eBack)) {
+            starts[numStarts] = u;
+            startOffsets[numStarts++] = from.t() * weights.edgeWeight(eBack);
+        }
+        /* Enter the destination's edge through either end the road runs away from. */
+        int f = to.edge();
+        int a = g.edgeSource(f);
+        int b = g.edgeTarget(f);
+        int fBack = g.findEdge(b, a);
+        int[] ends = new int[2];
+        double[] endOffsets = new double[2];
+        int numEnds = 0;
+        if (isOpen(weights, f)) {
+            ends[numEnds] = a;
+            endOffsets[numEnds++] = to.t() * weights.edgeWeight(f);
+        }
+        if (isOpen(weights, fBack)) {
+            ends[numEnds] = b;
+            endOffsets[numEnds++] = (1 - to.t()) * weights.edgeWeight(fBack);
+        }
+        starts = Arrays.copyOf(starts, numStarts);
+        startOffsets = Arrays.copyOf(startOffsets, numStarts);
+        ends = Arrays.copyOf(ends, numEnds);
+        endOffsets = Arrays.copyOf(endOffsets, numEnds);
+
+        /* Both points on one road: going straight along it may beat any detour. */
+        int[] direct = null;
+        double directWeight = Double.POSITIVE_INFINITY;
+        if (f == e || f == eBack) {
+            double target = f == e ? to.t() : 1 - to.t();
+            if (target >= from.t() && isOpen(weights, e)) {
+                direct = new int[] {u, v};
+                directWeight = (target - from.t()) * weights.edgeWeight(e);
+            } else if (target < from.t() && isOpen(weights, eBack)) {
+                direct = new int[] {v, u};
+                directWeight = (from.t() - target) * weights.edgeWeight(eBack);
+            }
+        }
+
+        boolean reachable = false;
+        for (int start : starts) {
+            for (int end : ends) {
+                reachable |= g.mayReach(start, end);
+            }
+        }
+        IntAStarSolver result = reachable ? IntAStarSolver.fromSeeds(weights, starts,
+            startOffsets, ends, endOffsets, deadline, arcFlagsToward(g, weights, ends))
+            : null;
+        List<Long> route;
+        if (direct != null && (result == null || result.outcome() != SolverOutcome.SOLVED
+            || directWeight <= result.solutionWeight())) {
+            int[] edge = {direct[0] == u ? e : eBack};
+            route = new VertexIdList(g, direct, edge);
+        } else if (result == null) {
+            return Collections.emptyList();
+        } else {
+            route = result.solution();
+        }
+        boolean timedOut = result != null && result.outcome() == SolverOutcome.TIMEOUT;
+        if (route.isEmpty() || timedOut) {
+            return route;
+        }
+        return ROUTE_CACHE.put(g, profile, src, dest, route, epoch);
+    }
+
+    /* The arc flags toward ENDS, if the server routes with flags computed for G and
+     * WEIGHTS are G's parsed weights; otherwise null, to follow every edge. */
+    private static EdgeFilter arcFlagsToward(AugmentedStreetMapGraph g, IntGraph weights,
+                                             int[] ends) {
+        ArcFlags flags = arcFlags;
+        boolean usable = flags != null && flags.graph() == g && weights == g;
+        return usable ? flags.toward(ends) : null;
+    }
+
+    /* Whether E is an edge, and not closed in WEIGHTS. */
+    private static boolean isOpen(IntGraph weights, int e) {
+        return e >= 0 && weights.edgeWeight(e) < Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns up to MAXALTERNATIVES alternatives to ROUTE, a route returned by one of the
+     * methods above, between the same end vertices. Each is at most
+     * AlternativeRoutes.MAX_STRETCH times as long as the shortest route between them and
+     * differs substantially from it and from the others; better alternatives come
+     * first. There may be fewer, or none, if the map offers no reasonable choice.
+     *
+     * @param g               The graph ROUTE came from.
+     * @param route           The node ids of the route to find alternatives to.
+     * @param maxAlternatives The most alternatives wanted.
+     * @param deadline        When to stop looking.
+     */
+    public static List<AlternativeRoutes.Route> alternativeRoutes(AugmentedStreetMapGraph g,
+                                                                  List<Long> route,
+                                                                  int maxAlternatives,
+                                                                  Deadline deadline) {
+        return alternativeRoutes(g, route, maxAlternatives, RoutingProfile.CAR, deadline);
+    }
+
+    /** Same as above, but for a route found for PROFILE, and weighted by it. */
+    public static List<AlternativeRoutes.Route> alternativeRoutes(AugmentedStreetMapGraph g,
+                                                                  List<Long> route,
+                                                                  int maxAlternatives,
+                                                                  RoutingProfile profile,
+                                                                  Deadline deadline) {
+        if (route.size() < 2 || maxAlternatives <= 0) {
+            return Collections.emptyList();
+        }
+        int src = g.indexOf(route.get(0));
+        int dest = g.indexOf(route.get(route.size() - 1));
+        List<AlternativeRoutes.Route> routes = AlternativeRoutes.find(g.snapshot(profile),
+            src, dest, maxAlternatives + 1, deadline);
+        return routes.isEmpty() ? routes : routes.subList(1, routes.size());
     }
 
     /**
@@ -45,8 +447,67 @@ public class Router {
      */
     public static List<NavigationDirection> routeDirections(AugmentedStreetMapGraph g,
                                                             List<Long> route) {
-        /* fill in for part IV */
-        return null;
+        List<NavigationDirection> directions = new ArrayList<>();
+        if (route.size() < 2) {
+            return directions;
+        }
+        int[] vertices;
+        int[] edges = null;
+        if (route instanceof VertexIdList && ((VertexIdList) route).graph() == g) {
+            vertices = ((VertexIdList) route).indices();
+            edges = ((VertexIdList) route).edges();
+        } else {
+            vertices = new int[route.size()];
+            int i = 0;
+            for (long id : route) {
+                vertices[i++] = g.indexOf(id);
+            }
+        }
+        if (edges == null) {
+            edges = pathEdges(g, vertices);
+        }
+
+        /* One pass over the edges: extend the current direction while the way stays the
+         * same, and start a new one, turning by the change in bearing, when it changes. */
+        NavigationDirection current = null;
+        int currentWay = -1;
+        double prevBearing = 0;
+        for (int i = 0; i < edges.length; i++) {
+            int e = edges[i];
+            double bearing = NavigationDirection.bearing(
+                g.lonAt(vertices[i]), g.lonAt(vertices[i + 1]),
+                g.latAt(vertices[i]), g.latAt(vertices[i + 1]));
+            if (current == null || g.edgeWay(e) != currentWay) {
+                if (current != null) {
+                    directions.add(current);
+                }
+                current = new NavigationDirection();
+                current.direction = i == 0
+                    ? NavigationDirection.START
+                    : NavigationDirection.getDirection(prevBearing, bearing);
+                String name = g.edgeName(e);
+                current.way = name == null || name.isEmpty()
+                    ? NavigationDirection.UNKNOWN_ROAD : name;
+                currentWay = g.edgeWay(e);
+            }
+            current.distance += g.edgeWeight(e);
+            prevBearing = bearing;
+        }
+        directions.add(current);
+        return directions;
+    }
+
+    /* Looks up the edge between each pair of consecutive vertices, for routes whose
+     * solver did not record them. */
+    private static int[] pathEdges(AugmentedStreetMapGraph g, int[] vertices) {
+        int[] edges = new int[vertices.length - 1];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = vertices[i] < 0 ? -1 : g.findEdge(vertices[i], vertices[i + 1]);
+            if (edges[i] < 0) {
+                throw new IllegalArgumentException("Route has no edge after node " + i);
+            }
+        }
+        return edges;
     }
 
     /**
@@ -117,6 +578,20 @@ public class Router {
             this.distance = 0.0;
         }
 
+        /** One of the direction constants, e.g. START or LEFT. */
+        public int direction() {
+            return direction;
+        }
+
+        public String way() {
+            return way;
+        }
+
+        /** Miles travelled along the way. */
+        public double distance() {
+            return distance;
+        }
+
         public String toString() {
             return String.format("%s on %s and continue for %.3f miles.",
                 DIRECTIONS[direction], way, distance);
@@ -1,12 +1,21 @@
 package bearmaps.server.handler;
 
+import bearmaps.utils.SingleFlight;
+import bearmaps.utils.graph.Deadline;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.eclipse.jetty.server.HttpChannel;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
+import javax.servlet.http.HttpServletRequest;
+
 import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 import static spark.Spark.halt;
 
@@ -15,6 +24,12 @@ import static spark.Spark.halt;
  * The process is defined as such that first the request parameters are read, then
  * request is process based on those parameters and finally the response is built.
  *
+ * Requests are processed on the thread Jetty hands them to, a virtual thread where the
+ * JVM has them (see MapServerInitializer), and at most a set number at a time per
+ * handler; the rest queue for a permit, and are turned away as busy if none frees up
+ * within their timeout. Requests whose parameters give equal coalesceKey()s while
+ * one of them is being processed share that one computation.
+ *
  * Created by rahul
  */
 public abstract class APIRouteHandler<Req, Res> implements Route {
@@ -22,19 +37,110 @@ public abstract class APIRouteHandler<Req, Res> implements Route {
     /** HTTP failed response. */
     private static final int HALT_RESPONSE = 403;
 
+    /** HTTP response when too many requests are already being processed. */
+    private static final int BUSY_RESPONSE = 503;
+
+    /** Default most requests to one handler processed at once. */
+    private static final int MAX_CONCURRENT_REQUESTS =
+        2 * Runtime.getRuntime().availableProcessors();
+
+    /** Default seconds a request may run for before its searches give up. */
+    private static final double REQUEST_TIMEOUT = 20;
+
     private Gson gson;
+    private final Semaphore permits;
+    private final SingleFlight<Object, Res> inFlight;
 
     public APIRouteHandler() {
+        this(MAX_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * @param maxConcurrentRequests Most requests to this handler processed at once.
+     */
+    protected APIRouteHandler(int maxConcurrentRequests) {
         gson = new Gson();
+        permits = new Semaphore(maxConcurrentRequests, true);
+        inFlight = new SingleFlight<>();
     }
 
     @Override
     public Object handle(Request request, Response response) throws Exception {
         Req requestParams = parseRequestParams(request);
-        Res result = processRequest(requestParams, response);
+        Object key = coalesceKey(requestParams);
+        if (key == null) {
+            key = new Object();
+        }
+        Res result = inFlight.run(key, () -> isClientConnected(request),
+            abandoned -> process(requestParams, response, abandoned));
         return buildJsonResponse(result);
     }
 
+    /* Runs on the thread of the first request for this computation, once a permit is
+     * free. Time spent waiting for the permit counts against the request timeout, and
+     * the searches give up once every request sharing this computation has
+     * disconnected. */
+    private Res process(Req requestParams, Response response, BooleanSupplier abandoned) {
+        Deadline deadline = Deadline.after(requestTimeout()).cancelledWhen(abandoned);
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire((long) (deadline.remainingSeconds() * 1000),
+                TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            throw halt(BUSY_RESPONSE, "Server busy - try again later.");
+        }
+        try {
+            return processRequest(requestParams, response, deadline);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Identifies the computation a request asks for: concurrent requests with equal keys
+     * are processed once and all receive that result. Returns null, the default, if
+     * requests to this handler must each be processed on their own.
+     */
+    protected Object coalesceKey(Req requestParams) {
+        return null;
+    }
+
+    /**
+     * Seconds a request to this handler may run for. Searches started for the request
+     * give up once this has passed, or once the client disconnects.
+     */
+    protected double requestTimeout() {
+        return REQUEST_TIMEOUT;
+    }
+
+    /**
+     * Best-effort check that the client is still waiting for the response. Only Jetty,
+     * which Spark runs on, is probed; a closed connection is usually only noticed once
+     * the client has gone for good, so this sheds abandoned work rather than reacting
+     * instantly.
+     */
+    private static boolean isClientConnected(Request request) {
+        HttpServletRequest raw = request.raw();
+        if (raw instanceof org.eclipse.jetty.server.Request) {
+            HttpChannel channel = ((org.eclipse.jetty.server.Request) raw).getHttpChannel();
+            return channel == null || channel.getEndPoint() == null
+                || channel.getEndPoint().isOpen();
+        }
+        return true;
+    }
+
+    /**
+     * Whether this handler should also be registered for HTTP POST, for requests too
+     * large for a query string. GET is always registered.
+     */
+    public boolean acceptsPost() {
+        return false;
+    }
+
     /**
      * Defines how to parse and extract the request parameters from request
      * @param request   the request object received
@@ -50,6 +156,19 @@ public abstract class APIRouteHandler<Req, Res> implements Route {
      */
     protected abstract Res processRequest(Req requestParams, Response response);
 
+    /**
+     * Process the request using the given parameters, giving up on long searches once
+     * DEADLINE expires. Handlers that run searches override this; the default ignores
+     * the deadline.
+     * @param requestParams request parameters
+     * @param response  response object
+     * @param deadline  when to stop working on this request
+     * @return  the result computed after processing request
+     */
+    protected Res processRequest(Req requestParams, Response response, Deadline deadline) {
+        return processRequest(requestParams, response);
+    }
+
     /**
      * Builds a JSON response to return from the result object
      * @param result
@@ -84,4 +203,55 @@ public abstract class APIRouteHandler<Req, Res> implements Route {
         }
         return params;
     }
+
+    /**
+     * Parses the request body as JSON.
+     * @param req HTTP Request.
+     * @param type Class to parse the body into.
+     * @return The parsed body.
+     */
+    protected <T> T parseJsonBody(spark.Request req, Class<T> type) {
+        T body = null;
+        try {
+            body = gson.fromJson(req.body(), type);
+        } catch (JsonParseException e) {
+            halt(HALT_RESPONSE, "Incorrect request body - provide valid JSON.");
+        }
+        if (body == null) {
+            halt(HALT_RESPONSE, "Request failed - body missing.");
+        }
+        return body;
+    }
+
+    /**
+     * Parses a list of locations given as "lon,lat;lon,lat;...".
+     * @param req HTTP Request.
+     * @param param Name of the parameter holding the list.
+     * @param maxPoints Most locations the list may hold.
+     * @return One {longitude, latitude} pair per location, in order.
+     */
+    protected double[][] getLonLatListParam(spark.Request req, String param, int maxPoints) {
+        String value = req.queryParams(param);
+        if (value == null || value.trim().isEmpty()) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        String[] points = value.split(";");
+        if (points.length > maxPoints) {
+            halt(HALT_RESPONSE, "Too many locations in " + param + " - at most " + maxPoints + ".");
+        }
+        double[][] lonLats = new double[points.length][];
+        for (int i = 0; i < points.length; i++) {
+            String[] parts = points[i].split(",");
+            try {
+                if (parts.length != 2) {
+                    throw new NumberFormatException("Expected lon,lat but got " + points[i]);
+                }
+                lonLats[i] = new double[]{Double.parseDouble(parts[0].trim()),
+                    Double.parseDouble(parts[1].trim())};
+            } catch (NumberFormatException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide lon,lat pairs.");
+            }
+        }
+        return lonLats;
+    }
 }
@@ -1,6 +1,12 @@
 package bearmaps.server.handler;
 
+import bearmaps.server.handler.impl.BatchRouteAPIHandler;
 import bearmaps.server.handler.impl.ClearRouteAPIHandler;
+import bearmaps.server.handler.impl.DistanceMatrixAPIHandler;
+import bearmaps.server.handler.impl.EdgeWeightsAPIHandler;
+import bearmaps.server.handler.impl.IsochroneAPIHandler;
+import bearmaps.server.handler.impl.MultiStopAPIHandler;
+import bearmaps.server.handler.impl.NearestPlacesAPIHandler;
 import bearmaps.server.handler.impl.RasterAPIHandler;
 import bearmaps.server.handler.impl.RedirectAPIHandler;
 import bearmaps.server.handler.impl.RoutingAPIHandler;
@@ -26,6 +32,12 @@ public class APIRouteHandlerFactory {
         handlerMap.put("route", new RoutingAPIHandler());
         handlerMap.put("clear_route", new ClearRouteAPIHandler());
         handlerMap.put("search", new SearchAPIHandler());
+        handlerMap.put("distance_matrix", new DistanceMatrixAPIHandler());
+        handlerMap.put("isochrone", new IsochroneAPIHandler());
+        handlerMap.put("batch_route", new BatchRouteAPIHandler());
+        handlerMap.put("multi_stop", new MultiStopAPIHandler());
+        handlerMap.put("nearest", new NearestPlacesAPIHandler());
+        handlerMap.put("edge_weights", new EdgeWeightsAPIHandler());
         handlerMap.put("", new RedirectAPIHandler());
     }
 
@@ -0,0 +1,191 @@
+package bearmaps.server.handler.impl;
+
+import bearmaps.Router;
+import bearmaps.server.handler.APIRouteHandler;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import spark.Request;
+import spark.Response;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static bearmaps.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for many routes at once. All endpoints are snapped in one batch and
+ * the routes are solved in parallel on a pool shared by every batch request, so one
+ * large batch cannot take over the whole machine. Unlike /route, this does not touch
+ * the route drawn on the map.
+ */
+public class BatchRouteAPIHandler extends APIRouteHandler<double[][], Map<String, Object>> {
+
+    /** Most routes accepted in one request. */
+    private static final int MAX_PAIRS = 1000;
+
+    /** Seconds a whole batch may run for. */
+    private static final double BATCH_TIMEOUT = 120;
+
+    private static final int HALT_RESPONSE = 403;
+
+    /** Each batch already spreads over the shared pool, so only a few run at once. */
+    private static final int MAX_CONCURRENT_BATCHES = 2;
+
+    /** Keys of each pair, as in a /route request. */
+    private static final String[] PAIR_KEYS = {"start_lon", "start_lat", "end_lon", "end_lat"};
+
+    private static final ForkJoinPool POOL =
+        new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+
+    /** The JSON body of a POST request. */
+    private static class BatchRequest {
+        List<Map<String, Double>> pairs;
+    }
+
+    public BatchRouteAPIHandler() {
+        super(MAX_CONCURRENT_BATCHES);
+    }
+
+    @Override
+    protected double requestTimeout() {
+        return BATCH_TIMEOUT;
+    }
+
+    @Override
+    public boolean acceptsPost() {
+        return true;
+    }
+
+    /**
+     * The pairs come either as a JSON body {"pairs": [{"start_lon": ..., "start_lat": ...,
+     * "end_lon": ..., "end_lat": ...}, ...]}, or, for small batches, as a query parameter
+     * pairs=start_lon,start_lat,end_lon,end_lat;... .
+     *
+     * @return One {start_lon, start_lat, end_lon, end_lat} row per pair.
+     */
+    @Override
+    protected double[][] parseRequestParams(Request request) {
+        double[][] pairs;
+        if (request.body() != null && !request.body().trim().isEmpty()) {
+            pairs = fromJson(parseJsonBody(request, BatchRequest.class));
+        } else {
+            pairs = fromQuery(request.queryParams("pairs"));
+        }
+        if (pairs.length > MAX_PAIRS) {
+            halt(HALT_RESPONSE, "Too many pairs - at most " + MAX_PAIRS + ".");
+        }
+        return pairs;
+    }
+
+    private static double[][] fromJson(BatchRequest body) {
+        if (body.pairs == null) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        double[][] pairs = new double[body.pairs.size()][PAIR_KEYS.length];
+        for (int i = 0; i < pairs.length; i++) {
+            Map<String, Double> pair = body.pairs.get(i);
+            for (int k = 0; k < PAIR_KEYS.length; k++) {
+                if (pair == null || pair.get(PAIR_KEYS[k]) == null) {
+                    halt(HALT_RESPONSE, "Request failed - parameters missing.");
+                }
+                pairs[i][k] = pair.get(PAIR_KEYS[k]);
+            }
+        }
+        return pairs;
+    }
+
+    private static double[][] fromQuery(String raw) {
+        if (raw == null || raw.trim().isEmpty()) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        String[] rows = raw.split(";");
+        if (rows.length > MAX_PAIRS) {
+            halt(HALT_RESPONSE, "Too many pairs - at most " + MAX_PAIRS + ".");
+        }
+        double[][] pairs = new double[rows.length][];
+        for (int i = 0; i < rows.length; i++) {
+            String[] parts = rows[i].split(",");
+            if (parts.length != PAIR_KEYS.length) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide "
+                    + "start_lon,start_lat,end_lon,end_lat for each pair.");
+            }
+            pairs[i] = new double[PAIR_KEYS.length];
+            for (int k = 0; k < PAIR_KEYS.length; k++) {
+                try {
+                    pairs[i][k] = Double.parseDouble(parts[k].trim());
+                } catch (NumberFormatException e) {
+                    halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Solves every pair with Router's default solver.
+     *
+     * @param pairs    One {start_lon, start_lat, end_lon, end_lat} row per pair.
+     * @param response : Not used by this function.
+     * @return A map of results for the front end as specified: <br>
+     * "routes" : Object[], one per pair and in the same order, each with<br>
+     * "outcome" : String, SOLVED, UNSOLVABLE or TIMEOUT,<br>
+     * "route" : Number[], the node ids along the route, empty unless SOLVED,<br>
+     * "weight" : Number, the length of the route in miles, or -1 unless SOLVED.
+     */
+    @Override
+    public Map<String, Object> processRequest(double[][] pairs, Response response) {
+        return processRequest(pairs, response, Deadline.after(requestTimeout()));
+    }
+
+    /**
+     * Same as above, but routes still running when DEADLINE expires, or the client
+     * disconnects, give up and report TIMEOUT.
+     */
+    @Override
+    public Map<String, Object> processRequest(double[][] pairs, Response response,
+                                              Deadline deadline) {
+        double[][] starts = new double[pairs.length][];
+        double[][] ends = new double[pairs.length][];
+        for (int i = 0; i < pairs.length; i++) {
+            starts[i] = new double[]{pairs[i][0], pairs[i][1]};
+            ends[i] = new double[]{pairs[i][2], pairs[i][3]};
+        }
+        int[] src = SEMANTIC_STREET_GRAPH.closestIndices(starts);
+        int[] dest = SEMANTIC_STREET_GRAPH.closestIndices(ends);
+
+        List<Map<String, Object>> routes;
+        try {
+            routes = POOL.submit(() -> IntStream.range(0, pairs.length).parallel()
+                .mapToObj(i -> solve(src[i], dest[i], deadline))
+                .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while routing", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch routing failed", e.getCause());
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("routes", routes);
+        return result;
+    }
+
+    private static Map<String, Object> solve(int src, int dest, Deadline deadline) {
+        ShortestPathsSolver<Long> solver = Router.serverSolver().create(SEMANTIC_STREET_GRAPH,
+            SEMANTIC_STREET_GRAPH.idAt(src), SEMANTIC_STREET_GRAPH.idAt(dest), deadline);
+        boolean solved = solver.outcome() == SolverOutcome.SOLVED;
+        Map<String, Object> route = new HashMap<>();
+        route.put("outcome", solver.outcome());
+        route.put("route", solved ? solver.solution() : Collections.emptyList());
+        route.put("weight", solved ? solver.solutionWeight() : -1);
+        return route;
+    }
+}
@@ -0,0 +1,76 @@
+package bearmaps.server.handler.impl;
+
+import bearmaps.server.handler.APIRouteHandler;
+import bearmaps.utils.Tuple;
+import bearmaps.utils.graph.DistanceMatrix;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static bearmaps.utils.Constants.SEMANTIC_STREET_GRAPH;
+
+/**
+ * Handles requests for the travel distance between every pair of a list of sources and
+ * a list of destinations, computed in one batch instead of one /route call per pair.
+ * Unlike /route, this does not touch the route drawn on the map.
+ */
+public class DistanceMatrixAPIHandler
+    extends APIRouteHandler<Tuple<double[][], double[][]>, Map<String, Object>> {
+
+    /** Most locations accepted in either list. */
+    private static final int MAX_POINTS = 500;
+
+    /**
+     * Each request has two parameters, each a list of locations "lon,lat;lon,lat;...":<br>
+     * sources : where each route starts,<br>
+     * destinations : where each route ends.
+     */
+    @Override
+    protected Tuple<double[][], double[][]> parseRequestParams(Request request) {
+        return new Tuple<>(getLonLatListParam(request, "sources", MAX_POINTS),
+            getLonLatListParam(request, "destinations", MAX_POINTS));
+    }
+
+    /**
+     * Snaps every location to its closest vertex and computes the matrix of shortest
+     * path distances between them.
+     *
+     * @param requestParams The source and destination locations.
+     * @param response      : Not used by this function.
+     * @return A map of results for the front end as specified: <br>
+     * "sources" : Number[], the id of the node each source was snapped to.<br>
+     * "destinations" : Number[], the id of the node each destination was snapped to.<br>
+     * "distances" : Number[][], distances[i][j] is the length in miles of the shortest
+     * route from source i to destination j, or -1 if there is none.
+     */
+    @Override
+    protected Map<String, Object> processRequest(
+        Tuple<double[][], double[][]> requestParams, Response response) {
+        int[] sources = SEMANTIC_STREET_GRAPH.closestIndices(requestParams.getFirst());
+        int[] destinations = SEMANTIC_STREET_GRAPH.closestIndices(requestParams.getSecond());
+        double[][] distances = DistanceMatrix.compute(SEMANTIC_STREET_GRAPH, sources, destinations);
+        for (double[] row : distances) {
+            for (int j = 0; j < row.length; j++) {
+                if (row[j] == Double.POSITIVE_INFINITY) {
+                    row[j] = -1;
+                }
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("sources", toIds(sources));
+        result.put("destinations", toIds(destinations));
+        result.put("distances", distances);
+        return result;
+    }
+
+    private static long[] toIds(int[] indices) {
+        long[] ids = new long[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            ids[i] = SEMANTIC_STREET_GRAPH.idAt(indices[i]);
+        }
+        return ids;
+    }
+}
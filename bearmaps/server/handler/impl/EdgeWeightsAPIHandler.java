@@ -0,0 +1,179 @@
+package bearmaps.server.handler.impl;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.server.handler.APIRouteHandler;
+import com.google.gson.annotations.SerializedName;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static bearmaps.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests to slow down, close or reopen roads, for example from a traffic
+ * feed. The graph is not rebuilt: new weight multipliers are published all at once,
+ * routes already being searched for finish on the old weights, and only the cached
+ * routes the change can affect are dropped.
+ */
+public class EdgeWeightsAPIHandler
+    extends APIRouteHandler<EdgeWeightsAPIHandler.WeightChange, Map<String, Object>> {
+
+    private static final int HALT_RESPONSE = 403;
+
+    /** Most roads changed in one request. */
+    private static final int MAX_UPDATES = 10000;
+
+    /** One road to change: the edge from node FROM to node TO. */
+    public static class EdgeUpdate {
+        private Long from;
+        private Long to;
+        private Double multiplier;
+        private boolean closed;
+        @SerializedName("both_ways")
+        private boolean bothWays;
+
+        /**
+         * Multiplies the weight of the road from FROM to TO by MULTIPLIER, at least 1,
+         * and of the road back too if BOTHWAYS. An infinite multiplier closes it.
+         */
+        public EdgeUpdate(long from, long to, double multiplier, boolean bothWays) {
+            this.from = from;
+            this.to = to;
+            this.multiplier = multiplier;
+            this.bothWays = bothWays;
+        }
+
+        private double multiplier() {
+            return closed ? Double.POSITIVE_INFINITY : multiplier;
+        }
+    }
+
+    /** The parameters of one request. */
+    public static class WeightChange {
+        private boolean clear;
+        private List<EdgeUpdate> updates;
+
+        /** Applies UPDATES, after restoring every road's parsed weight if CLEAR. */
+        public WeightChange(boolean clear, List<EdgeUpdate> updates) {
+            this.clear = clear;
+            this.updates = updates;
+        }
+    }
+
+    @Override
+    public boolean acceptsPost() {
+        return true;
+    }
+
+    /**
+     * The change comes either as a JSON body {"clear": ..., "updates": [{"from": ...,
+     * "to": ..., "multiplier": ..., "closed": ..., "both_ways": ...}, ...]}, or, for one
+     * road, as the query parameters<br>
+     * from : the node id the road starts at,<br> to : the node id it ends at,<br>
+     * multiplier : how many times slower it now is, 1 to restore it,<br>
+     * closed : optional; if present, the road is closed instead,<br>
+     * both_ways : optional; if present, the road back is changed too,<br>
+     * clear : optional; if present, every road is restored first. It may be given
+     * alone.
+     */
+    @Override
+    protected WeightChange parseRequestParams(Request request) {
+        WeightChange change;
+        if (request.body() != null && !request.body().trim().isEmpty()) {
+            change = parseJsonBody(request, WeightChange.class);
+            if (change.updates == null) {
+                change.updates = Collections.emptyList();
+            }
+        } else {
+            change = new WeightChange(request.queryParams("clear") != null,
+                new ArrayList<>());
+            if (request.queryParams("from") != null || !change.clear) {
+                change.updates.add(fromQuery(request));
+            }
+        }
+        if (change.updates.size() > MAX_UPDATES) {
+            halt(HALT_RESPONSE, "Too many updates - at most " + MAX_UPDATES + ".");
+        }
+        for (EdgeUpdate update : change.updates) {
+            if (update == null || update.from == null || update.to == null
+                || (update.multiplier == null && !update.closed)) {
+                halt(HALT_RESPONSE, "Request failed - parameters missing.");
+            }
+            if (!(update.multiplier() >= 1)) {
+                halt(HALT_RESPONSE,
+                    "Incorrect parameters - multipliers must be at least 1.");
+            }
+        }
+        return change;
+    }
+
+    private static EdgeUpdate fromQuery(Request request) {
+        if (request.queryParams("from") == null || request.queryParams("to") == null) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        boolean closed = request.queryParams("closed") != null;
+        if (!closed && request.queryParams("multiplier") == null) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        EdgeUpdate update = null;
+        try {
+            update = new EdgeUpdate(Long.parseLong(request.queryParams("from").trim()),
+                Long.parseLong(request.queryParams("to").trim()),
+                closed ? Double.POSITIVE_INFINITY
+                    : Double.parseDouble(request.queryParams("multiplier")),
+                request.queryParams("both_ways") != null);
+        } catch (NumberFormatException e) {
+            halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+        }
+        return update;
+    }
+
+    /**
+     * Applies the change to the map's weights.
+     *
+     * @param change   The roads to change.
+     * @param response : Not used by this function.
+     * @return A map of results for the front end as specified: <br>
+     * "edges_updated" : Number, the number of one-way edges given a new multiplier.<br>
+     * "routes_invalidated" : Number, the number of cached routes dropped.<br>
+     * "routes_cached" : Number, the number of cached routes kept.
+     */
+    @Override
+    public Map<String, Object> processRequest(WeightChange change, Response response) {
+        AugmentedStreetMapGraph g = SEMANTIC_STREET_GRAPH;
+        List<Integer> edges = new ArrayList<>();
+        List<Double> multipliers = new ArrayList<>();
+        for (EdgeUpdate update : change.updates) {
+            int from = g.indexOf(update.from);
+            int to = g.indexOf(update.to);
+            int e = from < 0 || to < 0 ? -1 : g.findEdge(from, to);
+            int back = update.bothWays && e >= 0 ? g.findEdge(to, from) : -1;
+            if (e < 0 || (update.bothWays && back < 0)) {
+                halt(HALT_RESPONSE, "No road from " + update.from + " to " + update.to
+                    + (update.bothWays ? " and back." : "."));
+            }
+            edges.add(e);
+            multipliers.add(update.multiplier());
+            if (back >= 0) {
+                edges.add(back);
+                multipliers.add(update.multiplier());
+            }
+        }
+
+        int invalidated = Router.updateEdgeWeights(g, change.clear,
+            edges.stream().mapToInt(Integer::intValue).toArray(),
+            multipliers.stream().mapToDouble(Double::doubleValue).toArray());
+        Map<String, Object> result = new HashMap<>();
+        result.put("edges_updated", edges.size());
+        result.put("routes_invalidated", invalidated);
+        result.put("routes_cached", Router.ROUTE_CACHE.size());
+        return result;
+    }
+}
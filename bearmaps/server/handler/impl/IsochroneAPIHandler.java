@@ -0,0 +1,98 @@
+package bearmaps.server.handler.impl;
+
+import bearmaps.server.handler.APIRouteHandler;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntDijkstra;
+import bearmaps.utils.ps.ConvexHull;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static bearmaps.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for everything reachable within a travel distance of a location,
+ * returned as node ids plus a hull outline that the front end can draw.
+ */
+public class IsochroneAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+
+    /**
+     * Each isochrone request to the server will have the following parameters
+     * as keys in the params map.<br>
+     * lat : latitude of the starting point,<br> lon : longitude of the starting point,<br>
+     * distance : travel budget in miles, at most MAX_DISTANCE.
+     **/
+    private static final String[] REQUIRED_ISOCHRONE_REQUEST_PARAMS = {"lat", "lon", "distance"};
+
+    private static final int HALT_RESPONSE = 403;
+
+    /** Largest travel budget in miles. From the middle of Berkeley two miles already
+     *  reach a third of its road vertices, and the work grows with the square of the
+     *  budget. */
+    private static final double MAX_DISTANCE = 3;
+
+    @Override
+    protected Map<String, Double> parseRequestParams(Request request) {
+        Map<String, Double> params = getRequestParams(request,
+            REQUIRED_ISOCHRONE_REQUEST_PARAMS);
+        if (!(params.get("distance") <= MAX_DISTANCE)) {
+            halt(HALT_RESPONSE, "Distance too large - at most " + MAX_DISTANCE + " miles.");
+        }
+        return params;
+    }
+
+    @Override
+    protected Map<String, Object> processRequest(
+        Map<String, Double> requestParams, Response response) {
+        return processRequest(requestParams, response, Deadline.after(requestTimeout()));
+    }
+
+    /**
+     * Snaps the location to its closest node, then runs Dijkstra from it until the
+     * next node would be farther than the budget.
+     *
+     * @param requestParams Map of the HTTP GET request's query parameters.
+     * @param response      : Not used by this function.
+     * @param deadline      When to stop exploring and answer with the nodes found so far.
+     * @return A map of results for the front end as specified: <br>
+     * "start" : Number, the id of the node the location was snapped to.<br>
+     * "nodes" : Number[], the ids of every node within the budget, nearest first.<br>
+     * "hull" : Number[][], the {lon, lat} corners of the convex hull of those nodes,
+     * counter-clockwise.<br>
+     * "complete" : Boolean, false if the deadline cut the search short, so that "nodes"
+     * only holds the nearest of them.
+     */
+    @Override
+    public Map<String, Object> processRequest(Map<String, Double> requestParams,
+                                              Response response, Deadline deadline) {
+        long start = SEMANTIC_STREET_GRAPH.closest(requestParams.get("lon"),
+            requestParams.get("lat"));
+        int[] reached = IntDijkstra.settledWithin(SEMANTIC_STREET_GRAPH,
+            SEMANTIC_STREET_GRAPH.indexOf(start), requestParams.get("distance"), deadline);
+        boolean complete = !deadline.isExpired();
+
+        long[] ids = new long[reached.length];
+        double[] lons = new double[reached.length];
+        double[] lats = new double[reached.length];
+        for (int i = 0; i < reached.length; i++) {
+            ids[i] = SEMANTIC_STREET_GRAPH.idAt(reached[i]);
+            lons[i] = SEMANTIC_STREET_GRAPH.lonAt(reached[i]);
+            lats[i] = SEMANTIC_STREET_GRAPH.latAt(reached[i]);
+        }
+        int[] corners = ConvexHull.of(lons, lats);
+        double[][] hull = new double[corners.length][];
+        for (int i = 0; i < corners.length; i++) {
+            hull[i] = new double[]{lons[corners[i]], lats[corners[i]]};
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("start", start);
+        result.put("nodes", ids);
+        result.put("hull", hull);
+        result.put("complete", complete);
+        return result;
+    }
+}
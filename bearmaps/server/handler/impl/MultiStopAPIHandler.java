@@ -0,0 +1,139 @@
+package bearmaps.server.handler.impl;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.server.handler.APIRouteHandler;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.DistanceMatrix;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.TourPlanner;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static bearmaps.utils.Constants.SEMANTIC_STREET_GRAPH;
+
+/**
+ * Handles requests for a trip through many stops. The stops are snapped once, the
+ * distances between every pair come from one batch of parallel one-to-many searches,
+ * the stops are put in a short order by TourPlanner, and the legs between consecutive
+ * stops are then routed in parallel and stitched into one path. Unlike /route, this
+ * does not touch the route drawn on the map.
+ */
+public class MultiStopAPIHandler
+    extends APIRouteHandler<MultiStopAPIHandler.Trip, Map<String, Object>> {
+
+    /** Most stops accepted in one trip. */
+    private static final int MAX_STOPS = 100;
+
+    /** Most seconds spent improving the order of the stops. */
+    private static final double ORDERING_BUDGET = 2;
+
+    /** Seconds a whole trip may take to plan. */
+    private static final double TRIP_TIMEOUT = 60;
+
+    /** The parameters of one request. */
+    public static class Trip {
+        private final double[][] stops;
+        private final boolean roundTrip;
+
+        public Trip(double[][] stops, boolean roundTrip) {
+            this.stops = stops;
+            this.roundTrip = roundTrip;
+        }
+    }
+
+    @Override
+    protected double requestTimeout() {
+        return TRIP_TIMEOUT;
+    }
+
+    /**
+     * Each request has the parameters<br>
+     * stops : the locations "lon,lat;lon,lat;..." to visit, the trip starting at the
+     * first,<br>
+     * round_trip : optional; if present, the trip returns to the first stop at the end.
+     */
+    @Override
+    protected Trip parseRequestParams(Request request) {
+        return new Trip(getLonLatListParam(request, "stops", MAX_STOPS),
+            request.queryParams("round_trip") != null);
+    }
+
+    @Override
+    public Map<String, Object> processRequest(Trip trip, Response response) {
+        return processRequest(trip, response, Deadline.after(requestTimeout()));
+    }
+
+    /**
+     * Plans the trip, snapping every stop into the largest strongly connected
+     * component so that every leg has a route.
+     *
+     * @param trip     The stops, and whether to return to the first.
+     * @param response : Not used by this function.
+     * @param deadline When to give up on routing the legs.
+     * @return A map of results for the front end as specified: <br>
+     * "order" : Number[], the indices of the requested stops in the order to visit them,
+     * starting with 0.<br>
+     * "stops" : Number[], the id of the node each requested stop was snapped to, in
+     * request order.<br>
+     * "routing_success" : Boolean, whether every leg was routed.<br>
+     * "route" : Number[], the node ids along the whole trip, empty unless
+     * routing_success.<br>
+     * "weight" : Number, the length of the whole trip in miles, or -1 unless
+     * routing_success.
+     */
+    @Override
+    public Map<String, Object> processRequest(Trip trip, Response response,
+                                              Deadline deadline) {
+        AugmentedStreetMapGraph g = SEMANTIC_STREET_GRAPH;
+        int[] stops = new int[trip.stops.length];
+        long[] ids = new long[stops.length];
+        for (int i = 0; i < stops.length; i++) {
+            ids[i] = g.closestInLargestComponent(trip.stops[i][0], trip.stops[i][1]);
+            stops[i] = g.indexOf(ids[i]);
+        }
+        double[][] distances = DistanceMatrix.compute(g, stops, stops);
+        int[] order = TourPlanner.order(distances, trip.roundTrip,
+            deadline.capped(ORDERING_BUDGET));
+
+        int legs = trip.roundTrip && order.length > 1 ? order.length : order.length - 1;
+        List<ShortestPathsSolver<Long>> solved = IntStream.range(0, Math.max(0, legs))
+            .parallel()
+            .mapToObj(i -> Router.serverSolver().create(g, ids[order[i]],
+                ids[order[(i + 1) % order.length]], deadline))
+            .collect(Collectors.toList());
+
+        List<Long> route = new ArrayList<>();
+        double weight = 0;
+        boolean success = true;
+        for (ShortestPathsSolver<Long> leg : solved) {
+            if (leg.outcome() != SolverOutcome.SOLVED) {
+                success = false;
+                break;
+            }
+            List<Long> path = leg.solution();
+            /* Each leg starts where the last one ended. */
+            route.addAll(route.isEmpty() ? path : path.subList(1, path.size()));
+            weight += leg.solutionWeight();
+        }
+        if (success && route.isEmpty() && ids.length > 0) {
+            route.add(ids[0]);
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("order", order);
+        result.put("stops", ids);
+        result.put("routing_success", success);
+        result.put("route", success ? route : new ArrayList<Long>());
+        result.put("weight", success ? weight : -1);
+        return result;
+    }
+}
@@ -0,0 +1,101 @@
+package bearmaps.server.handler.impl;
+
+import bearmaps.server.handler.APIRouteHandler;
+import bearmaps.utils.graph.Deadline;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static bearmaps.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for the places nearest a location by road, such as the closest
+ * cafes. Unlike /search, places are ranked by how far they are to drive to.
+ */
+public class NearestPlacesAPIHandler
+    extends APIRouteHandler<NearestPlacesAPIHandler.PlaceQuery, Map<String, Object>> {
+
+    private static final int HALT_RESPONSE = 403;
+
+    /** Places returned when the request does not say. */
+    private static final int DEFAULT_PLACES = 5;
+
+    /** Most places returned for one request. */
+    private static final int MAX_PLACES = 50;
+
+    /**
+     * Each request has the parameters<br>
+     * lat : latitude of the location,<br> lon : longitude of the location,<br>
+     * query : a place name prefix, or a category such as cafe or bank,<br>
+     * k : optional, the number of places wanted, at most MAX_PLACES,<br>
+     * max_distance : optional, the farthest in miles by road to look.
+     */
+    private static final String[] REQUIRED_PLACE_REQUEST_PARAMS = {"lat", "lon"};
+
+    /** The parameters of one request. */
+    public static class PlaceQuery {
+        private final double lon;
+        private final double lat;
+        private final String query;
+        private final int k;
+        private final double maxDistance;
+
+        public PlaceQuery(double lon, double lat, String query, int k, double maxDistance) {
+            this.lon = lon;
+            this.lat = lat;
+            this.query = query;
+            this.k = k;
+            this.maxDistance = maxDistance;
+        }
+    }
+
+    @Override
+    protected PlaceQuery parseRequestParams(Request request) {
+        Map<String, Double> params = getRequestParams(request, REQUIRED_PLACE_REQUEST_PARAMS);
+        String query = request.queryParams("query");
+        if (query == null || query.trim().isEmpty()) {
+            halt(HALT_RESPONSE, "Request failed - parameters missing.");
+        }
+        int k = DEFAULT_PLACES;
+        double maxDistance = Double.POSITIVE_INFINITY;
+        try {
+            if (request.queryParams("k") != null) {
+                k = Math.max(0, Math.min(MAX_PLACES,
+                    Integer.parseInt(request.queryParams("k").trim())));
+            }
+            if (request.queryParams("max_distance") != null) {
+                maxDistance = Double.parseDouble(request.queryParams("max_distance"));
+            }
+        } catch (NumberFormatException e) {
+            halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+        }
+        return new PlaceQuery(params.get("lon"), params.get("lat"), query, k, maxDistance);
+    }
+
+    @Override
+    public Map<String, Object> processRequest(PlaceQuery query, Response response) {
+        return processRequest(query, response, Deadline.after(requestTimeout()));
+    }
+
+    /**
+     * Finds the nearest places by road.
+     *
+     * @param query    The location and what to look for.
+     * @param response : Not used by this function.
+     * @param deadline When to stop looking farther away.
+     * @return A map of results for the front end as specified: <br>
+     * "places" : Object[], nearest first, each as described in
+     * AugmentedStreetMapGraph.nearestPlaces.
+     */
+    @Override
+    public Map<String, Object> processRequest(PlaceQuery query, Response response,
+                                              Deadline deadline) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("places", SEMANTIC_STREET_GRAPH.nearestPlaces(query.lon, query.lat,
+            query.query, query.k, query.maxDistance, deadline));
+        return result;
+    }
+}
@@ -3,6 +3,7 @@ package bearmaps.server.handler.impl;
 import bearmaps.AugmentedStreetMapGraph;
 import bearmaps.server.handler.APIRouteHandler;
 import bearmaps.utils.IntRange;
+import bearmaps.utils.graph.Deadline;
 import spark.Request;
 import spark.Response;
 import bearmaps.utils.Constants;
@@ -16,6 +17,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.Base64;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -64,6 +66,15 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         return getRequestParams(request, REQUIRED_RASTER_REQUEST_PARAMS);
     }
 
+    /**
+     * Concurrent requests for the same viewport are rastered once, image and all; see
+     * processRequest with a deadline.
+     */
+    @Override
+    protected Object coalesceKey(Map<String, Double> requestParams) {
+        return requestParams;
+    }
+
     /**
      * Takes a user query and finds the grid of images that best matches the query. These
      * images will be combined into one big image (rastered) by the front end. <br>
@@ -234,17 +245,24 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         }
     }
 
+    /**
+     * Same as above, but also draws the tiles and the current route into one image, as
+     * "b64_encoded_image_data", with its "raster_width" and "raster_height". Drawing and
+     * encoding is the costly part, so it happens here, where requests coalesced onto
+     * this one share it and it holds a permit. The result is read-only, since every
+     * coalesced request serialises the same map.
+     */
     @Override
-    protected Object buildJsonResponse(Map<String, Object> result) {
-        boolean rasterSuccess = validateRasteredImgParams(result);
-
-        if (rasterSuccess) {
+    protected Map<String, Object> processRequest(Map<String, Double> requestParams,
+                                                 Response response, Deadline deadline) {
+        Map<String, Object> result = processRequest(requestParams, response);
+        if (validateRasteredImgParams(result)) {
             ByteArrayOutputStream os = new ByteArrayOutputStream();
             writeImagesToOutputStream(result, os);
             String encodedImage = Base64.getEncoder().encodeToString(os.toByteArray());
             result.put("b64_encoded_image_data", encodedImage);
         }
-        return super.buildJsonResponse(result);
+        return Collections.unmodifiableMap(result);
     }
 
     private Map<String, Object> queryFail() {
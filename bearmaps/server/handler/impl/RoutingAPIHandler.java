@@ -2,15 +2,20 @@ package bearmaps.server.handler.impl;
 
 import bearmaps.Router;
 import bearmaps.server.handler.APIRouteHandler;
+import bearmaps.utils.graph.AlternativeRoutes;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.streetmap.RoutingProfile;
 import spark.Request;
 import spark.Response;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static bearmaps.utils.Constants.SEMANTIC_STREET_GRAPH;
 import static bearmaps.utils.Constants.ROUTE_LIST;
+import static spark.Spark.halt;
 
 /**
  * Handles requests from the web browser for routes between locations. The
@@ -28,9 +33,58 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
     private static final String[] REQUIRED_ROUTE_REQUEST_PARAMS = {"start_lat", "start_lon",
         "end_lat", "end_lon"};
 
+    /**
+     * Optional parameter: if present, a route that runs out of time is drawn as far as
+     * the search got instead of not at all.
+     */
+    private static final String PARTIAL_PARAM = "partial";
+
+    /**
+     * Optional parameter: the number of alternative routes wanted, at most
+     * MAX_ALTERNATIVES. None are looked for unless it is given.
+     */
+    private static final String ALTERNATIVES_PARAM = "alternatives";
+
+    private static final int MAX_ALTERNATIVES = 3;
+
+    /**
+     * Optional parameter: who the route is for, "car" (the default), "bike" or "foot".
+     * See RoutingProfile. Kept in the parameter map as the profile's ordinal.
+     */
+    private static final String PROFILE_PARAM = "profile";
+
+    private static final int HALT_RESPONSE = 403;
+
     @Override
     protected Map<String, Double> parseRequestParams(Request request) {
-        return getRequestParams(request, REQUIRED_ROUTE_REQUEST_PARAMS);
+        Map<String, Double> params = getRequestParams(request, REQUIRED_ROUTE_REQUEST_PARAMS);
+        if (request.queryParams(PARTIAL_PARAM) != null) {
+            params.put(PARTIAL_PARAM, 1.0);
+        }
+        String alternatives = request.queryParams(ALTERNATIVES_PARAM);
+        if (alternatives != null) {
+            try {
+                params.put(ALTERNATIVES_PARAM, (double) Math.max(0,
+                    Math.min(MAX_ALTERNATIVES, Integer.parseInt(alternatives.trim()))));
+            } catch (NumberFormatException e) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+            }
+        }
+        String profileName = request.queryParams(PROFILE_PARAM);
+        if (profileName != null) {
+            RoutingProfile profile = RoutingProfile.forName(profileName);
+            if (profile == null) {
+                halt(HALT_RESPONSE, "Incorrect parameters - unknown profile.");
+            }
+            params.put(PROFILE_PARAM, (double) profile.ordinal());
+        }
+        return params;
+    }
+
+    /** Concurrent requests for the same route are routed, and drawn, once. */
+    @Override
+    protected Object coalesceKey(Map<String, Double> requestParams) {
+        return requestParams;
     }
 
     /**
@@ -54,31 +108,69 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      * "directions_success" : Boolean, whether the query generated text directions (i.e. if
      * length of directions is > 0).
      * "directions"      : String. The text directions you want to display, in HTML format.
+     * <p>
+     * "alternatives" : Object[], only if alternatives were asked for: other reasonable
+     * routes between the same end points as the drawn route, best first, each with<br>
+     * "route" : Number[], the node ids along it,<br>
+     * "weight" : Number, its length in miles, times what the profile charges per road.
      */
     @Override
     protected Map<String, Object> processRequest(
         Map<String, Double> requestParams, Response response) {
-        List<Long> route = Router.shortestPath(
+        return processRequest(requestParams, response, Deadline.after(requestTimeout()));
+    }
+
+    /**
+     * Same as above, but the search gives up when DEADLINE expires or the client
+     * disconnects. Both locations are snapped onto the nearest road rather than the
+     * nearest vertex; see Router.shortestPathOnRoads. The route, its directions and
+     * its alternatives are all for the requested profile.
+     */
+    @Override
+    protected Map<String, Object> processRequest(
+        Map<String, Double> requestParams, Response response, Deadline deadline) {
+        if (requestParams.containsKey(PARTIAL_PARAM)) {
+            deadline = deadline.acceptingPartialResults();
+        }
+        RoutingProfile profile = requestParams.containsKey(PROFILE_PARAM)
+            ? RoutingProfile.values()[requestParams.get(PROFILE_PARAM).intValue()]
+            : RoutingProfile.CAR;
+        List<Long> route = Router.shortestPathOnRoads(
             SEMANTIC_STREET_GRAPH,
             requestParams.get("start_lon"), requestParams.get("start_lat"),
-            requestParams.get("end_lon"), requestParams.get("end_lat"));
+            requestParams.get("end_lon"), requestParams.get("end_lat"),
+            profile, deadline);
         ROUTE_LIST.addAll(route);
-        String directions = getDirectionsText();
+        String directions = getDirectionsText(route);
 
         Map<String, Object> routeParams = new HashMap<>();
         routeParams.put("routing_success", !route.isEmpty());
         routeParams.put("directions_success", directions.length() > 0);
         routeParams.put("directions", directions);
+        if (requestParams.containsKey(ALTERNATIVES_PARAM)) {
+            List<Map<String, Object>> alternatives = new ArrayList<>();
+            for (AlternativeRoutes.Route alternative : Router.alternativeRoutes(
+                SEMANTIC_STREET_GRAPH, route,
+                requestParams.get(ALTERNATIVES_PARAM).intValue(), profile, deadline)) {
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("route", alternative.path());
+                entry.put("weight", alternative.weight());
+                alternatives.add(entry);
+            }
+            routeParams.put("alternatives", alternatives);
+        }
         return routeParams;
     }
 
     /**
-     * Takes the route of this MapServer and converts it into an HTML friendly
-     * String to be passed to the frontend.
+     * Takes the route just found and converts it into an HTML friendly
+     * String to be passed to the frontend. The route is passed as the solver returned
+     * it, rather than read back from ROUTE_LIST, so that the edges the solver recorded
+     * can be reused.
      */
-    private String getDirectionsText() {
+    private String getDirectionsText(List<Long> route) {
         List<Router.NavigationDirection> directions
-            = Router.routeDirections(SEMANTIC_STREET_GRAPH, ROUTE_LIST);
+            = Router.routeDirections(SEMANTIC_STREET_GRAPH, route);
         if (directions == null || directions.isEmpty()) {
             return "";
         }
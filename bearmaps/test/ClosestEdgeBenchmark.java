@@ -0,0 +1,77 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.streetmap.RoutingProfile;
+
+import java.util.Random;
+
+/**
+ * Times snapping random points within one map onto its roads, with closestEdge, with
+ * closestEdge restricted to a profile's roads, and with closest for comparison.
+ *
+ * Usage: java bearmaps.test.ClosestEdgeBenchmark [osm file] [queries]
+ */
+public class ClosestEdgeBenchmark {
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        String file = args.length > 0 ? args[0] : OSM_DB_PATH;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(file);
+        RoutingProfile profile = RoutingProfile.FOOT;
+        double[] lon = new double[queries];
+        double[] lat = new double[queries];
+        points(graph, lon, lat);
+        /* The first rounds warm up the JIT; the last is reported. */
+        double[] nanos = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            nanos = run(graph, profile, lon, lat);
+        }
+        System.out.printf("closestEdge %7.3f us  with profile %7.3f us  closest %7.3f us%n",
+            nanos[0] / queries / 1e3, nanos[1] / queries / 1e3, nanos[2] / queries / 1e3);
+    }
+
+    /* Uniformly random points in the bounding box of GRAPH's vertices. */
+    private static void points(AugmentedStreetMapGraph graph, double[] lon, double[] lat) {
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < graph.numVertices(); v++) {
+            minLon = Math.min(minLon, graph.lonAt(v));
+            maxLon = Math.max(maxLon, graph.lonAt(v));
+            minLat = Math.min(minLat, graph.latAt(v));
+            maxLat = Math.max(maxLat, graph.latAt(v));
+        }
+        Random random = new Random(19);
+        for (int i = 0; i < lon.length; i++) {
+            lon[i] = minLon + random.nextDouble() * (maxLon - minLon);
+            lat[i] = minLat + random.nextDouble() * (maxLat - minLat);
+        }
+    }
+
+    private static double[] run(AugmentedStreetMapGraph graph, RoutingProfile profile,
+                                double[] lon, double[] lat) {
+        /* Summed so the JIT cannot drop the lookups. */
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < lon.length; i++) {
+            sink += graph.closestEdge(lon[i], lat[i]).edge();
+        }
+        long middle = System.nanoTime();
+        for (int i = 0; i < lon.length; i++) {
+            sink += graph.closestEdge(lon[i], lat[i], profile).edge();
+        }
+        long late = System.nanoTime();
+        for (int i = 0; i < lon.length; i++) {
+            sink += graph.closest(lon[i], lat[i]);
+        }
+        long end = System.nanoTime();
+        if (sink == 42) {
+            System.out.println();
+        }
+        return new double[] {middle - start, late - middle, end - late};
+    }
+}
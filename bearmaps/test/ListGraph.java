@@ -0,0 +1,108 @@
+package bearmaps.test;
+
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.ReversedGraph;
+
+import java.util.List;
+
+/**
+ * Minimal IntGraph over weighted adjacency lists, for tests that need a graph small
+ * enough to write out by hand. Vertex ids are the vertex indices, and there is no
+ * distance estimate.
+ */
+class ListGraph implements IntGraph {
+    private final int[] start;
+    private final int[] target;
+    private final double[] weight;
+
+    /** A graph in which vertex v has an edge of weight 1 to each of ADJACENCY[v]. */
+    ListGraph(int[][] adjacency) {
+        this(adjacency, null);
+    }
+
+    /**
+     * A graph in which vertex v has an edge to each of ADJACENCY[v], weighted by the
+     * matching entry of WEIGHTS[v].
+     */
+    ListGraph(int[][] adjacency, double[][] weights) {
+        start = new int[adjacency.length + 1];
+        for (int v = 0; v < adjacency.length; v++) {
+            start[v + 1] = start[v] + adjacency[v].length;
+        }
+        target = new int[start[adjacency.length]];
+        weight = new double[target.length];
+        for (int v = 0; v < adjacency.length; v++) {
+            System.arraycopy(adjacency[v], 0, target, start[v], adjacency[v].length);
+            for (int i = 0; i < adjacency[v].length; i++) {
+                weight[start[v] + i] = weights == null ? 1 : weights[v][i];
+            }
+        }
+    }
+
+    /** A graph on N vertices with an edge of weight 1 for each {from, to} of ARCS. */
+    static ListGraph of(int n, List<int[]> arcs) {
+        int[] degree = new int[n];
+        for (int[] arc : arcs) {
+            degree[arc[0]] += 1;
+        }
+        int[][] adjacency = new int[n][];
+        for (int v = 0; v < n; v++) {
+            adjacency[v] = new int[degree[v]];
+            degree[v] = 0;
+        }
+        for (int[] arc : arcs) {
+            adjacency[arc[0]][degree[arc[0]]++] = arc[1];
+        }
+        return new ListGraph(adjacency);
+    }
+
+    @Override
+    public int numVertices() {
+        return start.length - 1;
+    }
+
+    @Override
+    public int numEdges() {
+        return target.length;
+    }
+
+    @Override
+    public int edgeBegin(int v) {
+        return start[v];
+    }
+
+    @Override
+    public int edgeEnd(int v) {
+        return start[v + 1];
+    }
+
+    @Override
+    public int edgeTarget(int e) {
+        return target[e];
+    }
+
+    @Override
+    public double edgeWeight(int e) {
+        return weight[e];
+    }
+
+    @Override
+    public double estimatedDistance(int v, int goal) {
+        return 0;
+    }
+
+    @Override
+    public long idAt(int v) {
+        return v;
+    }
+
+    @Override
+    public int indexOf(long id) {
+        return id >= 0 && id < numVertices() ? (int) id : -1;
+    }
+
+    @Override
+    public IntGraph reverse() {
+        return new ReversedGraph(this);
+    }
+}
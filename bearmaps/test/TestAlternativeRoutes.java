@@ -0,0 +1,163 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.AlternativeRoutes;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.SolverOutcome;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test of alternative routes found from a forward and a backward search tree.
+ */
+public class TestAlternativeRoutes {
+    private static final String OSM_DB_PATH_TINY
+        = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graphTiny;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testTwoWaysAroundASquare() {
+        /* 0 -> 1 -> 2 -> 3 and 0 -> 4 -> 5 -> 3, the second a little longer. */
+        IntGraph g = new ListGraph(new int[][]{{1, 4}, {2}, {3}, {}, {5}, {3}},
+            new double[][]{{1, 1}, {1}, {1}, {}, {1.2}, {1}});
+        List<AlternativeRoutes.Route> routes = AlternativeRoutes.find(g, 0, 3, 3,
+            Deadline.none());
+        assertEquals(2, routes.size());
+        assertEquals(4, routes.get(0).path().size());
+        assertEquals(3.0, routes.get(0).weight(), DELTA);
+        assertEquals(3.2, routes.get(1).weight(), DELTA);
+        assertEquals(0, routes.get(1).path().indices()[0]);
+        assertEquals(4, routes.get(1).path().indices()[1]);
+        assertEquals(3, routes.get(1).path().indices()[3]);
+    }
+
+    @Test
+    public void testTooLongDetourIsNotOffered() {
+        IntGraph g = new ListGraph(new int[][]{{1, 4}, {2}, {3}, {}, {5}, {3}},
+            new double[][]{{1, 1}, {1}, {1}, {}, {5}, {1}});
+        assertEquals(1, AlternativeRoutes.find(g, 0, 3, 3, Deadline.none()).size());
+    }
+
+    @Test
+    public void testUnreachable() {
+        int s = graphTiny.indexOf(11);
+        int t = graphTiny.indexOf(88);
+        assertTrue(AlternativeRoutes.find(graphTiny, s, t, 3, Deadline.none()).isEmpty());
+    }
+
+    @Test
+    public void testBerkeleyRoutesAreValid() {
+        Random random = new Random(21);
+        int withAlternatives = 0;
+        int pairs = 0;
+        while (pairs < 100) {
+            int s = random.nextInt(graph.numVertices());
+            int t = random.nextInt(graph.numVertices());
+            if (s == t || !graph.mayReach(s, t)) {
+                continue;
+            }
+            pairs += 1;
+            IntAStarSolver expected = IntAStarSolver.fromIndices(graph, s, t, 20);
+            assertEquals(SolverOutcome.SOLVED, expected.outcome());
+            List<AlternativeRoutes.Route> routes = AlternativeRoutes.find(graph, s, t, 3,
+                Deadline.none());
+            assertTrue(routes.size() >= 1 && routes.size() <= 3);
+            double best = expected.solutionWeight();
+            assertEquals(best, routes.get(0).weight(), 1e-6);
+            for (AlternativeRoutes.Route route : routes) {
+                checkRoute(graph, route, s, t);
+                assertTrue(route.weight() <= AlternativeRoutes.MAX_STRETCH * best + 1e-6);
+            }
+            for (int i = 0; i < routes.size(); i++) {
+                for (int j = i + 1; j < routes.size(); j++) {
+                    assertTrue(shared(graph, routes.get(i), routes.get(j))
+                        <= AlternativeRoutes.MAX_SHARING * best + 1e-6);
+                }
+            }
+            if (routes.size() > 1) {
+                withAlternatives += 1;
+            }
+        }
+        /* Berkeley's grid offers a choice for most trips. */
+        assertTrue(withAlternatives > pairs / 4);
+    }
+
+    @Test
+    public void testRouterAlternatives() {
+        List<Long> route = Router.shortestPathOnRoads(graph, -122.2588, 37.8670,
+            -122.2690, 37.8590, Deadline.none());
+        assertTrue(route.size() > 1);
+        List<AlternativeRoutes.Route> alternatives = Router.alternativeRoutes(graph, route,
+            2, Deadline.none());
+        assertTrue(alternatives.size() <= 2);
+        for (AlternativeRoutes.Route alternative : alternatives) {
+            assertEquals(route.get(0), alternative.path().get(0));
+            assertEquals(route.get(route.size() - 1),
+                alternative.path().get(alternative.path().size() - 1));
+        }
+        assertTrue(Router.alternativeRoutes(graph, route, 0, Deadline.none()).isEmpty());
+    }
+
+    /* Checks that ROUTE runs from S to T along real edges without repeating a vertex,
+     * and that its weight is that of its edges. */
+    private static void checkRoute(IntGraph g, AlternativeRoutes.Route route, int s, int t) {
+        int[] path = route.path().indices();
+        int[] edges = route.path().edges();
+        assertEquals(s, path[0]);
+        assertEquals(t, path[path.length - 1]);
+        assertEquals(path.length - 1, edges.length);
+        Set<Integer> seen = new HashSet<>();
+        double weight = 0;
+        for (int i = 0; i < path.length; i++) {
+            assertTrue(seen.add(path[i]));
+            if (i > 0) {
+                assertTrue(edges[i - 1] >= g.edgeBegin(path[i - 1])
+                    && edges[i - 1] < g.edgeEnd(path[i - 1]));
+                assertEquals(path[i], g.edgeTarget(edges[i - 1]));
+                weight += g.edgeWeight(edges[i - 1]);
+            }
+        }
+        assertEquals(weight, route.weight(), 1e-6);
+    }
+
+    private static double shared(IntGraph g, AlternativeRoutes.Route a,
+                                 AlternativeRoutes.Route b) {
+        Set<Integer> edges = new HashSet<>();
+        for (int e : a.path().edges()) {
+            edges.add(e);
+        }
+        double total = 0;
+        for (int e : b.path().edges()) {
+            if (edges.contains(e)) {
+                total += g.edgeWeight(e);
+            }
+        }
+        return total;
+    }
+}
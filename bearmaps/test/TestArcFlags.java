@@ -0,0 +1,160 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.arcflags.ArcFlags;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A* restricted to flagged edges must still find shortest routes, and flags must survive
+ * a round trip through a file.
+ */
+public class TestArcFlags {
+    private static final String OSM_DB_PATH_TINY
+        = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static AugmentedStreetMapGraph graphTiny;
+    private static AugmentedStreetMapGraph graph;
+    private static ArcFlags flags;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        flags = ArcFlags.build(graph, 4, 4);
+        initialized = true;
+    }
+
+    @Test
+    public void testTinyAllPairs() {
+        ArcFlags tinyFlags = ArcFlags.build(graphTiny, 2, 2);
+        for (int s = 0; s < graphTiny.numVertices(); s++) {
+            for (int t = 0; t < graphTiny.numVertices(); t++) {
+                IntAStarSolver expected = IntAStarSolver.fromIndices(graphTiny, s, t, 20);
+                IntAStarSolver actual = IntAStarSolver.fromIndices(graphTiny, s, t,
+                    Deadline.none(), graphTiny::estimatedDistance, tinyFlags.toward(t));
+                assertEquals(expected.outcome(), actual.outcome());
+                assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomPairs() {
+        Random random = new Random(16);
+        int n = graph.numVertices();
+        long plainStates = 0;
+        long flaggedStates = 0;
+        for (int i = 0; i < 200; i++) {
+            int s = random.nextInt(n);
+            int t = random.nextInt(n);
+            IntAStarSolver expected = IntAStarSolver.fromIndices(graph, s, t, 20);
+            IntAStarSolver actual = IntAStarSolver.fromIndices(graph, s, t,
+                Deadline.none(), graph::estimatedDistance, flags.toward(t));
+            assertEquals(expected.outcome(), actual.outcome());
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+                plainStates += expected.numStatesExplored();
+                flaggedStates += actual.numStatesExplored();
+            }
+        }
+        assertTrue(flaggedStates <= plainStates);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        File file = File.createTempFile("arcflags", ".bin");
+        file.deleteOnExit();
+        flags.save(file.getPath());
+        ArcFlags loaded = ArcFlags.load(graph, file.getPath());
+        assertEquals(flags.numRegions(), loaded.numRegions());
+        for (int v = 0; v < graph.numVertices(); v++) {
+            assertEquals(flags.regionOf(v), loaded.regionOf(v));
+        }
+        for (int e = 0; e < graph.numEdges(); e++) {
+            assertEquals(flags.flags(e), loaded.flags(e));
+        }
+        boolean rejected = false;
+        try {
+            ArcFlags.load(graphTiny, file.getPath());
+        } catch (IOException e) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyRegions() {
+        ArcFlags.build(graphTiny, 9, 8);
+    }
+
+    @Test
+    public void testSeededSearchWithFlags() {
+        Random random = new Random(19);
+        int n = graph.numVertices();
+        for (int i = 0; i < 100; i++) {
+            int[] starts = {random.nextInt(n), random.nextInt(n)};
+            double[] startOffsets = {random.nextDouble() * 0.1, random.nextDouble() * 0.1};
+            int[] ends = {random.nextInt(n), random.nextInt(n)};
+            double[] endOffsets = {random.nextDouble() * 0.1, random.nextDouble() * 0.1};
+            IntAStarSolver expected = IntAStarSolver.fromSeeds(graph, starts, startOffsets,
+                ends, endOffsets, Deadline.none());
+            IntAStarSolver actual = IntAStarSolver.fromSeeds(graph, starts, startOffsets,
+                ends, endOffsets, Deadline.none(), flags.toward(ends));
+            assertEquals(expected.outcome(), actual.outcome());
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testRoutesOnRoadsWithArcFlags() {
+        Random random = new Random(119);
+        for (int i = 0; i < 30; i++) {
+            double stlon = -122.30 + 0.06 * random.nextDouble();
+            double stlat = 37.82 + 0.06 * random.nextDouble();
+            double destlon = -122.30 + 0.06 * random.nextDouble();
+            double destlat = 37.82 + 0.06 * random.nextDouble();
+            Router.setServerSolver(Router.ASTAR);
+            Router.ROUTE_CACHE.invalidate();
+            List<Long> expected = Router.shortestPathOnRoads(graph, stlon, stlat, destlon,
+                destlat, Deadline.none());
+            Router.useArcFlags(flags);
+            Router.ROUTE_CACHE.invalidate();
+            List<Long> actual = Router.shortestPathOnRoads(graph, stlon, stlat, destlon,
+                destlat, Deadline.none());
+            assertEquals(expected, actual);
+        }
+        Router.setServerSolver(Router.ASTAR);
+    }
+
+    @Test
+    public void testRouterWithArcFlags() {
+        List<Long> expected = new ArrayList<>();
+        expected.add(41L);
+        expected.add(63L);
+        expected.add(66L);
+        expected.add(46L);
+        assertEquals(expected, Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6,
+            ArcFlags.build(graphTiny, 2, 2).solverFactory()));
+    }
+}
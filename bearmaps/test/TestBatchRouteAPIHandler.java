@@ -0,0 +1,68 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.server.handler.impl.BatchRouteAPIHandler;
+import bearmaps.utils.Constants;
+import bearmaps.utils.graph.SolverOutcome;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Each route of a batch must match what a single /route request would return.
+ */
+public class TestBatchRouteAPIHandler {
+    private static final String OSM_DB_PATH_TINY
+        = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final double DOUBLE_THRESHOLD = 0.000000001;
+    private static AugmentedStreetMapGraph graphTiny;
+    private static BatchRouteAPIHandler handler;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (!initialized) {
+            graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+            handler = new BatchRouteAPIHandler();
+            initialized = true;
+        }
+        Constants.SEMANTIC_STREET_GRAPH = graphTiny;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMatchesSingleRoutes() {
+        Random random = new Random(12);
+        double[][] pairs = new double[50][];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = new double[]{random.nextDouble(), 38 + random.nextDouble(),
+                random.nextDouble(), 38 + random.nextDouble()};
+        }
+        int routeListSize = Constants.ROUTE_LIST.size();
+        Map<String, Object> result = handler.processRequest(pairs, null);
+        List<Map<String, Object>> routes = (List<Map<String, Object>>) result.get("routes");
+        assertEquals(pairs.length, routes.size());
+        for (int i = 0; i < pairs.length; i++) {
+            List<Long> expected = Router.shortestPath(graphTiny,
+                pairs[i][0], pairs[i][1], pairs[i][2], pairs[i][3]);
+            Map<String, Object> route = routes.get(i);
+            assertEquals(new ArrayList<>(expected), new ArrayList<>((List<Long>) route.get("route")));
+            if (expected.isEmpty()) {
+                assertEquals(SolverOutcome.UNSOLVABLE, route.get("outcome"));
+                assertEquals(-1, ((Number) route.get("weight")).doubleValue(), DOUBLE_THRESHOLD);
+            } else {
+                assertEquals(SolverOutcome.SOLVED, route.get("outcome"));
+                assertTrue(((Number) route.get("weight")).doubleValue() >= 0);
+            }
+        }
+        assertEquals(routeListSize, Constants.ROUTE_LIST.size());
+    }
+}
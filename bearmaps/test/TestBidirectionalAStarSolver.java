@@ -0,0 +1,93 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.BidirectionalAStarSolver;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that bidirectional A* agrees with unidirectional A* on outcome and path weight.
+ * Paths themselves are only compared on the tiny graph, where there are no ties.
+ */
+public class TestBidirectionalAStarSolver {
+    private static final String OSM_DB_PATH_TINY
+        = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final int NUM_RANDOM_ROUTES = 200;
+    private static AugmentedStreetMapGraph graphTiny;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testTinyAllPairs() {
+        for (int s = 0; s < graphTiny.numVertices(); s++) {
+            for (int t = 0; t < graphTiny.numVertices(); t++) {
+                long src = graphTiny.idAt(s);
+                long dest = graphTiny.idAt(t);
+                IntAStarSolver expected = new IntAStarSolver(graphTiny, src, dest, 20);
+                BidirectionalAStarSolver actual
+                    = new BidirectionalAStarSolver(graphTiny, src, dest, 20);
+                assertSameResult(expected, actual);
+                assertEquals(expected.solution(), actual.solution());
+            }
+        }
+    }
+
+    @Test
+    public void testRandomRoutes() {
+        Random random = new Random(61);
+        int n = graph.numVertices();
+        for (int i = 0; i < NUM_RANDOM_ROUTES; i++) {
+            long src = graph.idAt(random.nextInt(n));
+            long dest = graph.idAt(random.nextInt(n));
+            IntAStarSolver expected = new IntAStarSolver(graph, src, dest, 20);
+            BidirectionalAStarSolver actual = new BidirectionalAStarSolver(graph, src, dest, 20);
+            assertSameResult(expected, actual);
+        }
+    }
+
+    @Test
+    public void testRouterCanSwitchSolver() {
+        List<Long> expected = new ArrayList<>();
+        expected.add(41L);
+        expected.add(63L);
+        expected.add(66L);
+        expected.add(46L);
+        assertEquals(expected, Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6,
+            Router.BIDIRECTIONAL_ASTAR));
+    }
+
+    private static void assertSameResult(ShortestPathsSolver<Long> expected,
+                                         ShortestPathsSolver<Long> actual) {
+        assertEquals(expected.outcome(), actual.outcome());
+        if (expected.outcome() == SolverOutcome.SOLVED) {
+            assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+            assertEquals(expected.solution().get(0), actual.solution().get(0));
+            assertEquals(expected.solution().get(expected.solution().size() - 1),
+                actual.solution().get(actual.solution().size() - 1));
+        } else {
+            assertEquals(0, actual.solution().size());
+        }
+    }
+}
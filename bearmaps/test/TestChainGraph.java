@@ -0,0 +1,170 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.chain.ChainGraph;
+import bearmaps.utils.graph.chain.ChainSolver;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Routes over the chain-compressed graph must be as short as routes over the full graph,
+ * and expand back into valid paths of the full graph.
+ */
+public class TestChainGraph {
+    private static final String OSM_DB_PATH_TINY
+        = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static AugmentedStreetMapGraph graphTiny;
+    private static AugmentedStreetMapGraph graph;
+    private static ChainGraph chains;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        chains = ChainGraph.build(graph);
+        initialized = true;
+    }
+
+    /** Checks SOLVER found the same route length as plain A* and a real path of BASE. */
+    private static void assertMatches(IntGraph base, int s, int t, ChainSolver solver) {
+        IntAStarSolver expected = IntAStarSolver.fromIndices(base, s, t, 20);
+        assertEquals(expected.outcome(), solver.outcome());
+        if (expected.outcome() != SolverOutcome.SOLVED) {
+            return;
+        }
+        assertEquals(expected.solutionWeight(), solver.solutionWeight(), 1e-9);
+        int[] path = solver.solutionIndices();
+        int[] edges = solver.solutionEdges();
+        assertEquals(s, path[0]);
+        assertEquals(t, path[path.length - 1]);
+        assertEquals(path.length - 1, edges.length);
+        double weight = 0;
+        for (int i = 0; i < edges.length; i++) {
+            assertTrue(edges[i] >= base.edgeBegin(path[i]) && edges[i] < base.edgeEnd(path[i]));
+            assertEquals(path[i + 1], base.edgeTarget(edges[i]));
+            weight += base.edgeWeight(edges[i]);
+        }
+        assertEquals(solver.solutionWeight(), weight, 1e-9);
+    }
+
+    @Test
+    public void testTinyAllPairs() {
+        ChainGraph tinyChains = ChainGraph.build(graphTiny);
+        for (int s = 0; s < graphTiny.numVertices(); s++) {
+            for (int t = 0; t < graphTiny.numVertices(); t++) {
+                assertMatches(graphTiny, s, t, new ChainSolver(tinyChains,
+                    graphTiny.idAt(s), graphTiny.idAt(t), 20));
+            }
+        }
+    }
+
+    @Test
+    public void testRandomPairs() {
+        assertTrue(chains.numVertices() <= graph.numVertices());
+        Random random = new Random(14);
+        int n = graph.numVertices();
+        for (int i = 0; i < 300; i++) {
+            int s = random.nextInt(n);
+            int t = random.nextInt(n);
+            assertMatches(graph, s, t, new ChainSolver(chains, graph.idAt(s), graph.idAt(t), 20));
+        }
+    }
+
+    @Test
+    public void testChainsAndLoops() {
+        /* Two-way chains, a one-way chain, a dead end and a loop with no junction. */
+        Random random = new Random(3);
+        for (int trial = 0; trial < 20; trial++) {
+            List<int[]> arcs = new ArrayList<>();
+            int n = 0;
+            int junctions = 4 + random.nextInt(4);
+            n += junctions;
+            for (int c = 0; c < 8; c++) {
+                int from = random.nextInt(junctions);
+                int to = random.nextInt(junctions);
+                int length = random.nextInt(5);
+                boolean oneWay = random.nextInt(3) == 0;
+                int prev = from;
+                for (int k = 0; k < length; k++) {
+                    arcs.add(new int[]{prev, n});
+                    if (!oneWay) {
+                        arcs.add(new int[]{n, prev});
+                    }
+                    prev = n++;
+                }
+                if (random.nextInt(5) > 0) {
+                    arcs.add(new int[]{prev, to});
+                    if (!oneWay) {
+                        arcs.add(new int[]{to, prev});
+                    }
+                }
+            }
+            int loopStart = n;
+            for (int k = 0; k < 5; k++) {
+                arcs.add(new int[]{n, k == 4 ? loopStart : n + 1});
+                arcs.add(new int[]{k == 4 ? loopStart : n + 1, n});
+                n += 1;
+            }
+            IntGraph base = ListGraph.of(n, arcs);
+            ChainGraph compressed = ChainGraph.build(base);
+            for (int s = 0; s < n; s++) {
+                for (int t = 0; t < n; t++) {
+                    assertMatches(base, s, t, new ChainSolver(compressed, s, t, 20));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRouterWithChains() {
+        List<Long> expected = new ArrayList<>();
+        expected.add(41L);
+        expected.add(63L);
+        expected.add(66L);
+        expected.add(46L);
+        assertEquals(expected, Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6,
+            Router.CHAINS));
+    }
+
+    @Test
+    public void testOverlaidWeightsFallBackToAStar() {
+        int from = graphTiny.indexOf(63);
+        int closed = -1;
+        for (int e = graphTiny.edgeBegin(from); e < graphTiny.edgeEnd(from); e++) {
+            if (graphTiny.idAt(graphTiny.edgeTarget(e)) == 66) {
+                closed = e;
+            }
+        }
+        graphTiny.setWeightMultipliers(new int[]{closed},
+            new double[]{Double.POSITIVE_INFINITY});
+        try {
+            ShortestPathsSolver<Long> solver = Router.CHAINS.create(graphTiny, 41L, 46L,
+                Deadline.after(20));
+            IntAStarSolver expected = new IntAStarSolver(graphTiny, 41L, 46L, 20);
+            assertEquals(expected.outcome(), solver.outcome());
+            assertEquals(expected.solution(), solver.solution());
+            assertEquals(expected.solutionWeight(), solver.solutionWeight(), 1e-9);
+        } finally {
+            graphTiny.clearWeightMultipliers();
+        }
+    }
+}
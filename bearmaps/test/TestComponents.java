@@ -0,0 +1,98 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.Components;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.SolverOutcome;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test of component labels and the unreachable-route shortcut they allow.
+ */
+public class TestComponents {
+    private static final String OSM_DB_PATH_TINY
+        = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static AugmentedStreetMapGraph graphTiny;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testTinyComponents() {
+        Components components = graphTiny.components();
+        int c11 = components.strongComponent(graphTiny.indexOf(11));
+        int c88 = components.strongComponent(graphTiny.indexOf(88));
+        assertEquals(c11, components.strongComponent(graphTiny.indexOf(46)));
+        assertEquals(c88, components.strongComponent(graphTiny.indexOf(99)));
+        assertTrue(c11 != c88);
+        assertEquals(c11, components.largestStrongComponent());
+        assertFalse(graphTiny.mayReach(graphTiny.indexOf(11), graphTiny.indexOf(88)));
+        assertFalse(graphTiny.mayReach(graphTiny.indexOf(99), graphTiny.indexOf(22)));
+        assertTrue(Router.shortestPath(graphTiny, 0.1, 38.1, 0.9, 38.9).isEmpty());
+    }
+
+    @Test
+    public void testClosestInLargestComponent() {
+        long plain = graphTiny.closest(0.9, 38.9);
+        long largest = graphTiny.closestInLargestComponent(0.9, 38.9);
+        assertEquals(99L, plain);
+        assertTrue(graphTiny.components().inLargest(graphTiny.indexOf(largest)));
+    }
+
+    @Test
+    public void testDirectedComponents() {
+        /* 0 -> 1 -> 2 -> 0 is one component, 3 <-> 4 another, and 2 -> 3 joins them
+         * one way only. */
+        IntGraph g = new ListGraph(new int[][]{{1}, {2}, {0, 3}, {4}, {3}});
+        Components components = Components.of(g);
+        assertEquals(2, components.numStrongComponents());
+        assertEquals(components.strongComponent(0), components.strongComponent(2));
+        assertEquals(3, components.strongComponentSize(components.strongComponent(1)));
+        assertTrue(components.mayReach(0, 4));
+        assertFalse(components.mayReach(4, 0));
+    }
+
+    @Test
+    public void testLongChainDoesNotOverflow() {
+        int n = 500000;
+        int[][] adjacency = new int[n][];
+        for (int v = 0; v < n; v++) {
+            adjacency[v] = v + 1 < n ? new int[]{v + 1} : new int[0];
+        }
+        Components components = Components.of(new ListGraph(adjacency));
+        assertEquals(n, components.numStrongComponents());
+        assertTrue(components.mayReach(0, n - 1));
+        assertFalse(components.mayReach(n - 1, 0));
+    }
+
+    @Test
+    public void testAgreesWithSearch() {
+        Random random = new Random(4);
+        for (int i = 0; i < 300; i++) {
+            int s = random.nextInt(graph.numVertices());
+            int t = random.nextInt(graph.numVertices());
+            IntAStarSolver solver = IntAStarSolver.fromIndices(graph, s, t, 20);
+            assertEquals(solver.outcome() == SolverOutcome.SOLVED, graph.mayReach(s, t));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.ch.CHSolver;
+import bearmaps.utils.graph.ch.ContractionHierarchy;
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Contraction Hierarchy queries must give the same answers as plain A*, with every
+ * shortcut unpacked back into original vertices.
+ */
+public class TestContractionHierarchy {
+    private static final String OSM_DB_PATH_TINY
+        = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static AugmentedStreetMapGraph graphTiny;
+    private static ContractionHierarchy chTiny;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        chTiny = ContractionHierarchy.build(graphTiny);
+        initialized = true;
+    }
+
+    @Test
+    public void testTinyAllPairs() {
+        checkAllPairs(chTiny);
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = File.createTempFile("tiny", ".ch");
+        file.deleteOnExit();
+        chTiny.save(file.getPath());
+        ContractionHierarchy loaded = ContractionHierarchy.load(file.getPath(), graphTiny);
+        assertEquals(chTiny.numShortcuts(), loaded.numShortcuts());
+        checkAllPairs(loaded);
+
+        /* The same roads numbered another way have the same size, but are rejected. */
+        StreetMapGraph byId = new StreetMapGraph(OSM_DB_PATH_TINY,
+            StreetMapGraph.VertexOrder.OSM_ID);
+        boolean rejected = false;
+        try {
+            ContractionHierarchy.load(file.getPath(), byId);
+        } catch (IOException e) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+    }
+
+    @Test
+    public void testRouterWithHierarchy() {
+        List<Long> expected = new ArrayList<>();
+        expected.add(41L);
+        expected.add(63L);
+        expected.add(66L);
+        expected.add(46L);
+        assertEquals(expected, Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6,
+            chTiny.solverFactory()));
+    }
+
+    @Test
+    public void testOverlaidWeightsFallBackToAStar() {
+        int from = graphTiny.indexOf(63);
+        int closed = -1;
+        for (int e = graphTiny.edgeBegin(from); e < graphTiny.edgeEnd(from); e++) {
+            if (graphTiny.idAt(graphTiny.edgeTarget(e)) == 66) {
+                closed = e;
+            }
+        }
+        graphTiny.setWeightMultipliers(new int[]{closed},
+            new double[]{Double.POSITIVE_INFINITY});
+        try {
+            ShortestPathsSolver<Long> actual = chTiny.solverFactory().create(graphTiny,
+                41L, 46L, Deadline.after(20));
+            IntAStarSolver expected = new IntAStarSolver(graphTiny, 41L, 46L, 20);
+            assertEquals(expected.outcome(), actual.outcome());
+            assertEquals(expected.solution(), actual.solution());
+            assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+        } finally {
+            graphTiny.clearWeightMultipliers();
+        }
+    }
+
+    private void checkAllPairs(ContractionHierarchy ch) {
+        for (int s = 0; s < graphTiny.numVertices(); s++) {
+            for (int t = 0; t < graphTiny.numVertices(); t++) {
+                long src = graphTiny.idAt(s);
+                long dest = graphTiny.idAt(t);
+                IntAStarSolver expected = new IntAStarSolver(graphTiny, src, dest, 20);
+                CHSolver actual = new CHSolver(ch, src, dest, 20);
+                assertEquals(expected.outcome(), actual.outcome());
+                assertEquals(expected.solution(), actual.solution());
+                if (expected.outcome() == SolverOutcome.SOLVED) {
+                    assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.AStarSolver;
+import bearmaps.utils.graph.BidirectionalAStarSolver;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.pq.IndexedHeapPQ;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Solvers must stop when their deadline expires or is cancelled, and may return the
+ * route found so far when asked to.
+ */
+public class TestDeadline {
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static AugmentedStreetMapGraph graph;
+    private static long farStart;
+    private static long farEnd;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        farStart = graph.closest(-122.30, 37.89);
+        farEnd = graph.closest(-122.21, 37.82);
+        initialized = true;
+    }
+
+    /* A deadline that is cancelled the Nth time it is checked. */
+    private static Deadline cancelledOnCheck(int n) {
+        int[] checks = new int[1];
+        return Deadline.none().cancelledWhen(() -> ++checks[0] >= n);
+    }
+
+    @Test
+    public void testOnlyChecksEveryInterval() {
+        int[] checks = new int[1];
+        Deadline deadline = Deadline.none().cancelledWhen(() -> {
+            checks[0] += 1;
+            return false;
+        });
+        for (int polls = 0; polls < 10 * Deadline.CHECK_INTERVAL; polls++) {
+            assertFalse(deadline.isExpired(polls));
+        }
+        assertEquals(10, checks[0]);
+    }
+
+    @Test
+    public void testCopiesKeepCancellation() {
+        Deadline cancelled = Deadline.none();
+        cancelled.cancel();
+        assertTrue(cancelled.cancelledWhen(() -> false).isExpired());
+        assertTrue(cancelled.acceptingPartialResults().isExpired());
+
+        Deadline original = Deadline.none();
+        Deadline copy = original.acceptingPartialResults();
+        copy.cancel();
+        assertTrue(original.isCancelled());
+
+        boolean[] first = new boolean[1];
+        Deadline both = Deadline.none().cancelledWhen(() -> first[0])
+            .cancelledWhen(() -> false).acceptingPartialResults();
+        assertFalse(both.isExpired());
+        first[0] = true;
+        assertTrue(both.isExpired());
+    }
+
+    @Test
+    public void testCappedKeepsProbe() {
+        boolean[] hungUp = new boolean[1];
+        Deadline deadline = Deadline.after(60).cancelledWhen(() -> hungUp[0]);
+        Deadline capped = deadline.capped(30);
+        assertTrue(capped.remainingSeconds() <= 30);
+        assertFalse(capped.isExpired());
+        hungUp[0] = true;
+        assertTrue(capped.isExpired());
+        assertTrue(deadline.capped(0).isExpired());
+        assertTrue(Deadline.after(1).capped(30).remainingSeconds() <= 1);
+    }
+
+    @Test
+    public void testExpiredDeadlineGivesTimeout() {
+        IntAStarSolver solver = new IntAStarSolver(graph, farStart, farEnd, Deadline.after(0));
+        assertEquals(SolverOutcome.TIMEOUT, solver.outcome());
+        assertTrue(solver.solution().isEmpty());
+
+        Deadline cancelled = Deadline.none();
+        cancelled.cancel();
+        assertEquals(SolverOutcome.TIMEOUT,
+            new BidirectionalAStarSolver(graph, farStart, farEnd, cancelled).outcome());
+        assertTrue(Router.shortestPath(graph, -122.30, 37.89, -122.21, 37.82,
+            Router.ASTAR, cancelled).isEmpty());
+        assertFalse(Router.shortestPath(graph, -122.30, 37.89, -122.21, 37.82).isEmpty());
+    }
+
+    @Test
+    public void testPartialResultsHeadTowardGoal() {
+        IntAStarSolver solver = new IntAStarSolver(graph, farStart, farEnd,
+            cancelledOnCheck(5).acceptingPartialResults());
+        assertEquals(SolverOutcome.TIMEOUT, solver.outcome());
+        assertEquals(4 * Deadline.CHECK_INTERVAL, solver.numStatesExplored());
+        checkPartialPath(solver.solution(), solver.solutionWeight());
+    }
+
+    @Test
+    public void testPartialResultsFromGenericSolver() {
+        AStarSolver<Long> solver = new AStarSolver<>(graph, farStart, farEnd,
+            cancelledOnCheck(5).acceptingPartialResults(), new IndexedHeapPQ<>(),
+            graph::estimatedDistanceToGoal);
+        assertEquals(SolverOutcome.TIMEOUT, solver.outcome());
+        checkPartialPath(solver.solution(), solver.solutionWeight());
+    }
+
+    private static void checkPartialPath(List<Long> path, double weight) {
+        assertEquals(farStart, (long) path.get(0));
+        long last = path.get(path.size() - 1);
+        assertTrue(graph.estimatedDistanceToGoal(last, farEnd)
+            < graph.estimatedDistanceToGoal(farStart, farEnd));
+        double total = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            int e = graph.findEdge(graph.indexOf(path.get(i)), graph.indexOf(path.get(i + 1)));
+            assertTrue(e >= 0);
+            total += graph.edgeWeight(e);
+        }
+        assertEquals(total, weight, 1e-9);
+    }
+}
@@ -0,0 +1,84 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.DeltaStepping;
+import bearmaps.utils.graph.IntDijkstra;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Delta-stepping must give the same distances as sequential Dijkstra, whatever the
+ * bucket width and number of threads.
+ */
+public class TestDeltaStepping {
+    private static final String OSM_DB_PATH_TINY
+        = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static AugmentedStreetMapGraph graphTiny;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    private static void assertSameDistances(double[] expected, double[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int v = 0; v < expected.length; v++) {
+            if (expected[v] == Double.POSITIVE_INFINITY) {
+                assertEquals(expected[v], actual[v], 0);
+            } else {
+                assertEquals(expected[v], actual[v], 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testTiny() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        for (int s = 0; s < graphTiny.numVertices(); s++) {
+            assertSameDistances(IntDijkstra.distancesFrom(graphTiny, s),
+                DeltaStepping.distancesFrom(graphTiny, 0.5, pool, s));
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testDeltasAndThreads() {
+        double mean = DeltaStepping.defaultDelta(graph) / 4;
+        Random random = new Random(17);
+        for (int threads : new int[] {1, 4}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            for (double delta : new double[] {mean / 10, mean, 4 * mean, 1e9}) {
+                int source = random.nextInt(graph.numVertices());
+                assertSameDistances(IntDijkstra.distancesFrom(graph, source),
+                    DeltaStepping.distancesFrom(graph, delta, pool, source));
+            }
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testManySources() {
+        int[] sources = {0, graph.numVertices() / 2, graph.numVertices() - 1};
+        assertSameDistances(IntDijkstra.distancesFrom(graph, sources),
+            DeltaStepping.distancesFrom(graph, sources));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveDelta() {
+        DeltaStepping.distancesFrom(graphTiny, 0, ForkJoinPool.commonPool(), 0);
+    }
+}
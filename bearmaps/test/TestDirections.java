@@ -1,6 +1,7 @@
 package bearmaps.test;
 
 import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.IntAStarSolver;
 import org.junit.Before;
 import org.junit.Test;
 import bearmaps.Router;
@@ -10,6 +11,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -52,6 +54,28 @@ public class TestDirections {
         }
     }
 
+    @Test
+    public void testDistancesAddUpToRouteWeight() {
+        Random random = new Random(11);
+        for (int i = 0; i < 50; i++) {
+            IntAStarSolver solver = IntAStarSolver.fromIndices(graph,
+                random.nextInt(graph.numVertices()), random.nextInt(graph.numVertices()), 20);
+            if (solver.solution().size() < 2) {
+                continue;
+            }
+            List<Router.NavigationDirection> directions
+                = Router.routeDirections(graph, solver.solution());
+            assertEquals(directions, Router.routeDirections(graph,
+                new ArrayList<>(solver.solution())));
+            double total = 0;
+            for (Router.NavigationDirection d : directions) {
+                total += d.distance();
+            }
+            assertEquals(Router.NavigationDirection.START, directions.get(0).direction());
+            assertEquals(solver.solutionWeight(), total, 1e-9);
+        }
+    }
+
     private List<List<Long>> pathsFromFile() throws Exception {
         List<String> lines = Files.readAllLines(Paths.get(PATHS_FILE), Charset.defaultCharset());
         List<List<Long>> paths = new ArrayList<>();
@@ -0,0 +1,96 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.DistanceMatrix;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Every entry of a distance matrix must equal the weight of the route A* finds.
+ */
+public class TestDistanceMatrix {
+    private static final String OSM_DB_PATH_TINY
+        = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static AugmentedStreetMapGraph graphTiny;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testTinyAllPairs() {
+        int n = graphTiny.numVertices();
+        int[] all = new int[n];
+        for (int v = 0; v < n; v++) {
+            all[v] = v;
+        }
+        checkMatrix(graphTiny, all, all);
+    }
+
+    @Test
+    public void testMoreSourcesThanTargets() {
+        Random random = new Random(8);
+        checkMatrix(graph, randomVertices(random, 12), randomVertices(random, 5));
+    }
+
+    @Test
+    public void testMoreTargetsThanSources() {
+        Random random = new Random(9);
+        checkMatrix(graph, randomVertices(random, 5), randomVertices(random, 12));
+    }
+
+    @Test
+    public void testSnappingAndMissingPoints() {
+        int[] snapped = graphTiny.closestIndices(new double[][]{{0.4, 38.1}, {0.4, 38.6}});
+        assertEquals(41L, graphTiny.idAt(snapped[0]));
+        assertEquals(46L, graphTiny.idAt(snapped[1]));
+
+        double[][] distances = DistanceMatrix.compute(graphTiny, new int[]{snapped[0], -1},
+            new int[]{snapped[1]});
+        assertEquals(Double.POSITIVE_INFINITY, distances[1][0], 0);
+        double expected = IntAStarSolver.fromIndices(graphTiny, snapped[0], snapped[1], 20)
+            .solutionWeight();
+        assertArrayEquals(new double[]{expected}, distances[0], 1e-9);
+    }
+
+    private static int[] randomVertices(Random random, int count) {
+        int[] vertices = new int[count];
+        for (int i = 0; i < count; i++) {
+            vertices[i] = random.nextInt(graph.numVertices());
+        }
+        return vertices;
+    }
+
+    private static void checkMatrix(AugmentedStreetMapGraph g, int[] sources, int[] targets) {
+        double[][] distances = DistanceMatrix.compute(g, sources, targets);
+        assertEquals(sources.length, distances.length);
+        for (int i = 0; i < sources.length; i++) {
+            assertEquals(targets.length, distances[i].length);
+            for (int j = 0; j < targets.length; j++) {
+                IntAStarSolver expected = IntAStarSolver.fromIndices(g, sources[i], targets[j], 20);
+                if (expected.outcome() == SolverOutcome.SOLVED) {
+                    assertEquals(expected.solutionWeight(), distances[i][j], 1e-9);
+                } else {
+                    assertEquals(Double.POSITIVE_INFINITY, distances[i][j], 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package bearmaps.test;
+
+import bearmaps.utils.pq.DoubleMapPQ;
+import bearmaps.utils.pq.IndexedHeapPQ;
+import bearmaps.utils.pq.IntHeapPQ;
+import bearmaps.utils.pq.PriorityQueue;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks IndexedHeapPQ and IntHeapPQ against DoubleMapPQ on random operation sequences.
+ * Priorities are drawn from a continuous range so ties (where the implementations may
+ * legitimately disagree on order) practically never happen.
+ */
+public class TestIndexedHeapPQ {
+    private static final int NUM_OPS = 20000;
+    private static final int NUM_KEYS = 500;
+
+    @Test
+    public void testBinaryHeapMatchesDoubleMapPQ() {
+        compareWithDoubleMapPQ(new IndexedHeapPQ<>(2), 1);
+    }
+
+    @Test
+    public void testFourAryHeapMatchesDoubleMapPQ() {
+        compareWithDoubleMapPQ(new IndexedHeapPQ<>(4), 2);
+    }
+
+    @Test
+    public void testIntHeapMatchesDoubleMapPQ() {
+        Random random = new Random(3);
+        DoubleMapPQ<Integer> expected = new DoubleMapPQ<>();
+        IntHeapPQ actual = new IntHeapPQ(NUM_KEYS);
+        for (int i = 0; i < NUM_OPS; i++) {
+            int key = random.nextInt(NUM_KEYS);
+            double priority = random.nextDouble() * 100;
+            int op = random.nextInt(3);
+            if (op == 0 && expected.size() > 0) {
+                assertEquals((int) expected.peek(), actual.peek());
+                assertEquals((int) expected.poll(), actual.poll());
+            } else if (expected.contains(key)) {
+                expected.changePriority(key, priority);
+                actual.changePriority(key, priority);
+            } else {
+                expected.insert(key, priority);
+                actual.insert(key, priority);
+            }
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected.contains(key), actual.contains(key));
+        }
+        actual.clear();
+        assertTrue(actual.isEmpty());
+        for (int key = 0; key < NUM_KEYS; key++) {
+            assertFalse(actual.contains(key));
+        }
+    }
+
+    @Test
+    public void testDrainsInPriorityOrderWithTies() {
+        IndexedHeapPQ<Integer> pq = new IndexedHeapPQ<>();
+        Map<Integer, Double> priorities = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            pq.insert(i, i % 7);
+            priorities.put(i, (double) (i % 7));
+        }
+        pq.changePriority(3, -1);
+        priorities.put(3, -1.0);
+        assertEquals(3, (int) pq.peek());
+        double last = Double.NEGATIVE_INFINITY;
+        while (pq.size() > 0) {
+            double priority = priorities.get(pq.poll());
+            assertTrue(last <= priority);
+            last = priority;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateInsertRejected() {
+        IndexedHeapPQ<String> pq = new IndexedHeapPQ<>();
+        pq.insert("a", 1);
+        pq.insert("a", 2);
+    }
+
+    private void compareWithDoubleMapPQ(PriorityQueue<Integer> actual, long seed) {
+        Random random = new Random(seed);
+        DoubleMapPQ<Integer> expected = new DoubleMapPQ<>();
+        for (int i = 0; i < NUM_OPS; i++) {
+            int key = random.nextInt(NUM_KEYS);
+            double priority = random.nextDouble() * 100;
+            int op = random.nextInt(3);
+            if (op == 0 && expected.size() > 0) {
+                assertEquals(expected.peek(), actual.peek());
+                assertEquals(expected.poll(), actual.poll());
+            } else if (expected.contains(key)) {
+                expected.changePriority(key, priority);
+                actual.changePriority(key, priority);
+            } else {
+                expected.insert(key, priority);
+                actual.insert(key, priority);
+            }
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected.contains(key), actual.contains(key));
+        }
+        while (expected.size() > 0) {
+            assertEquals(expected.poll(), actual.poll());
+        }
+        assertEquals(0, actual.size());
+    }
+}
@@ -0,0 +1,90 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntDijkstra;
+import bearmaps.utils.ps.ConvexHull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test of bounded Dijkstra reachability and the convex hull drawn around it.
+ */
+public class TestIsochrone {
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testReachableSetMatchesFullSweep() {
+        Random random = new Random(3);
+        for (int i = 0; i < 10; i++) {
+            int source = random.nextInt(graph.numVertices());
+            double budget = random.nextDouble() * 2;
+            double[] dist = IntDijkstra.distancesFrom(graph, source);
+            int[] reached = IntDijkstra.settledWithin(graph, source, budget);
+
+            assertEquals(source, reached[0]);
+            boolean[] isReached = new boolean[graph.numVertices()];
+            for (int j = 0; j < reached.length; j++) {
+                isReached[reached[j]] = true;
+                if (j > 0) {
+                    assertTrue(dist[reached[j - 1]] <= dist[reached[j]]);
+                }
+            }
+            for (int v = 0; v < graph.numVertices(); v++) {
+                assertEquals(dist[v] <= budget, isReached[v]);
+            }
+        }
+    }
+
+    @Test
+    public void testDeadlineStopsEarly() {
+        int source = graph.numVertices() / 2;
+        int[] all = IntDijkstra.settledWithin(graph, source, 2);
+        Deadline cancelled = Deadline.none();
+        cancelled.cancel();
+        int[] some = IntDijkstra.settledWithin(graph, source, 2, cancelled);
+        assertTrue(some.length > 0 && some.length < all.length);
+        assertArrayEquals(Arrays.copyOf(all, some.length), some);
+    }
+
+    @Test
+    public void testZeroBudget() {
+        assertArrayEquals(new int[]{5}, IntDijkstra.settledWithin(graph, 5, 0));
+    }
+
+    @Test
+    public void testHullOfSquare() {
+        double[] xs = {0, 1, 2, 2, 1, 0, 1, 0.5};
+        double[] ys = {0, 0, 0, 2, 2, 2, 1, 1.5};
+        assertArrayEquals(new int[]{0, 2, 3, 5}, ConvexHull.of(xs, ys));
+    }
+
+    @Test
+    public void testHullOfLine() {
+        double[] xs = {3, 1, 2};
+        double[] ys = {3, 1, 2};
+        int[] hull = ConvexHull.of(xs, ys);
+        Arrays.sort(hull);
+        assertArrayEquals(new int[]{0, 1}, hull);
+        assertArrayEquals(new int[]{0}, ConvexHull.of(new double[]{4}, new double[]{5}));
+    }
+}
@@ -0,0 +1,175 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.AStarSolver;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.IntDijkstra;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.alt.Landmarks;
+import bearmaps.utils.pq.IndexedHeapPQ;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Landmark bounds must never overestimate, and A* guided by them must find routes as
+ * short as plain A* while exploring fewer states.
+ */
+public class TestLandmarks {
+    private static final String PARAMS_FILE
+        = "../library-su19/data/proj3_test_inputs/path_params.txt";
+    private static final int NUM_TESTS = 8;
+    private static final String OSM_DB_PATH_TINY
+        = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final int NUM_LANDMARKS = 16;
+    private static AugmentedStreetMapGraph graphTiny;
+    private static AugmentedStreetMapGraph graph;
+    private static Landmarks farthest;
+    private static Landmarks avoid;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        farthest = Landmarks.build(graph, NUM_LANDMARKS, Landmarks.Selection.FARTHEST);
+        avoid = Landmarks.build(graph, NUM_LANDMARKS, Landmarks.Selection.AVOID);
+        initialized = true;
+    }
+
+    @Test
+    public void testTinyAllPairs() {
+        for (Landmarks.Selection selection : Landmarks.Selection.values()) {
+            Landmarks landmarks = Landmarks.build(graphTiny, 3, selection);
+            for (int s = 0; s < graphTiny.numVertices(); s++) {
+                for (int t = 0; t < graphTiny.numVertices(); t++) {
+                    IntAStarSolver expected = IntAStarSolver.fromIndices(graphTiny, s, t, 20);
+                    IntAStarSolver actual = IntAStarSolver.fromIndices(graphTiny, s, t, 20,
+                        landmarks.forQuery(s, t));
+                    assertEquals(expected.outcome(), actual.outcome());
+                    assertEquals(expected.solution(), actual.solution());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBoundsAreAdmissible() {
+        Random random = new Random(7);
+        for (int i = 0; i < 10; i++) {
+            int goal = random.nextInt(graph.numVertices());
+            double[] toGoal = IntDijkstra.distancesFrom(graph.reverse(), goal);
+            for (int v = 0; v < graph.numVertices(); v++) {
+                if (toGoal[v] != Double.POSITIVE_INFINITY) {
+                    assertTrue(farthest.estimate(v, goal) <= toGoal[v] + 1e-9);
+                    assertTrue(avoid.estimate(v, goal) <= toGoal[v] + 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFewerStatesOnTestRoutes() throws Exception {
+        List<String> lines = Files.readAllLines(Paths.get(PARAMS_FILE), Charset.defaultCharset());
+        int lineIdx = 2; // ignore comment lines
+        long plainStates = 0;
+        long altStates = 0;
+        for (int i = 0; i < NUM_TESTS; i++) {
+            long src = graph.closest(Double.parseDouble(lines.get(lineIdx)),
+                Double.parseDouble(lines.get(lineIdx + 1)));
+            long dest = graph.closest(Double.parseDouble(lines.get(lineIdx + 2)),
+                Double.parseDouble(lines.get(lineIdx + 3)));
+            lineIdx += 4;
+
+            IntAStarSolver plain = new IntAStarSolver(graph, src, dest, 20);
+            IntAStarSolver alt = (IntAStarSolver) avoid.solverFactory().create(graph, src, dest, 20);
+            AStarSolver<Long> generic = new AStarSolver<>(graph, src, dest, 20,
+                new IndexedHeapPQ<>(), avoid.asHeuristic());
+            assertEquals(SolverOutcome.SOLVED, plain.outcome());
+            assertEquals(SolverOutcome.SOLVED, alt.outcome());
+            assertEquals(SolverOutcome.SOLVED, generic.outcome());
+            assertEquals(plain.solutionWeight(), alt.solutionWeight(), 1e-9);
+            assertTrue(alt.numStatesExplored() <= plain.numStatesExplored());
+            System.out.println(String.format("Route %d: %d states with A*, %d with ALT",
+                i, plain.numStatesExplored(), alt.numStatesExplored()));
+            plainStates += plain.numStatesExplored();
+            altStates += alt.numStatesExplored();
+        }
+        System.out.println(String.format("ALT explored %.1f%% of the states plain A* did",
+            100.0 * altStates / plainStates));
+    }
+
+    @Test
+    public void testRandomRoutes() {
+        Random random = new Random(61);
+        int n = graph.numVertices();
+        for (int i = 0; i < 200; i++) {
+            int s = random.nextInt(n);
+            int t = random.nextInt(n);
+            IntAStarSolver expected = IntAStarSolver.fromIndices(graph, s, t, 20);
+            IntAStarSolver actual = IntAStarSolver.fromIndices(graph, s, t, 20,
+                farthest.forQuery(s, t));
+            assertEquals(expected.outcome(), actual.outcome());
+            if (expected.outcome() == SolverOutcome.SOLVED) {
+                assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testOverlaidWeights() {
+        Random random = new Random(83);
+        int n = graph.numVertices();
+        int[] edges = new int[graph.numEdges() / 4];
+        double[] multipliers = new double[edges.length];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = random.nextInt(graph.numEdges());
+            multipliers[i] = i % 10 == 0 ? Double.POSITIVE_INFINITY : 1 + random.nextInt(4);
+        }
+        graph.setWeightMultipliers(edges, multipliers);
+        try {
+            for (int i = 0; i < 100; i++) {
+                long s = graph.idAt(random.nextInt(n));
+                long t = graph.idAt(random.nextInt(n));
+                IntAStarSolver expected = new IntAStarSolver(graph, s, t, 20);
+                ShortestPathsSolver<Long> actual = farthest.solverFactory().create(graph,
+                    s, t, Deadline.after(20));
+                assertEquals(expected.outcome(), actual.outcome());
+                if (expected.outcome() == SolverOutcome.SOLVED) {
+                    assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-6);
+                }
+            }
+        } finally {
+            graph.clearWeightMultipliers();
+        }
+    }
+
+    @Test
+    public void testRouterWithLandmarks() {
+        Landmarks landmarks = Landmarks.build(graphTiny, 2, Landmarks.Selection.AVOID);
+        List<Long> expected = new ArrayList<>();
+        expected.add(41L);
+        expected.add(63L);
+        expected.add(66L);
+        expected.add(46L);
+        assertEquals(expected, Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6,
+            landmarks.solverFactory()));
+    }
+}
@@ -0,0 +1,172 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.server.handler.impl.MultiStopAPIHandler;
+import bearmaps.utils.Constants;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.TourPlanner;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test of ordering the stops of a trip, and of routing the whole trip.
+ */
+public class TestMultiStop {
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final double DELTA = 1e-6;
+    private static AugmentedStreetMapGraph graph;
+    private static MultiStopAPIHandler handler;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (!initialized) {
+            graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+            handler = new MultiStopAPIHandler();
+            initialized = true;
+        }
+        Constants.SEMANTIC_STREET_GRAPH = graph;
+    }
+
+    @Test
+    public void testNearOptimalOnSmallTrips() {
+        Random random = new Random(22);
+        double total = 0;
+        double optimalTotal = 0;
+        for (int trial = 0; trial < 200; trial++) {
+            int n = 2 + random.nextInt(7);
+            boolean roundTrip = random.nextBoolean();
+            double[][] distances = randomDistances(random, n);
+            int[] order = TourPlanner.order(distances, roundTrip, Deadline.none());
+            checkPermutation(order, n);
+            double length = TourPlanner.length(distances, order, roundTrip);
+            double optimal = bruteForce(distances, roundTrip);
+            assertTrue(length >= optimal - DELTA);
+            assertTrue(length <= 1.25 * optimal + DELTA);
+            total += length;
+            optimalTotal += optimal;
+        }
+        assertTrue(total <= 1.02 * optimalTotal);
+    }
+
+    @Test
+    public void testExpiredDeadlineStillOrdersEveryStop() {
+        double[][] distances = randomDistances(new Random(1), 40);
+        Deadline expired = Deadline.after(0);
+        checkPermutation(TourPlanner.order(distances, true, expired), 40);
+        checkPermutation(TourPlanner.order(new double[1][1], false, expired), 1);
+        assertEquals(0, TourPlanner.order(new double[0][0], false, expired).length);
+    }
+
+    @Test
+    public void testAvoidsMissingLegs() {
+        /* Going straight from 0 to 2 or from 1 to 0 is impossible, so 0, 1, 2 it is. */
+        double inf = Double.POSITIVE_INFINITY;
+        double[][] distances = {{0, 5, inf}, {inf, 0, 5}, {1, 1, 0}};
+        int[] order = TourPlanner.order(distances, false, Deadline.none());
+        assertTrue(Arrays.equals(new int[]{0, 1, 2}, order));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTripVisitsEveryStop() {
+        Random random = new Random(5);
+        for (boolean roundTrip : new boolean[]{false, true}) {
+            double[][] stops = new double[15][];
+            for (int i = 0; i < stops.length; i++) {
+                stops[i] = new double[]{-122.27 + 0.02 * random.nextDouble(),
+                    37.86 + 0.015 * random.nextDouble()};
+            }
+            Map<String, Object> result = handler.processRequest(
+                new MultiStopAPIHandler.Trip(stops, roundTrip), null);
+            assertEquals(true, result.get("routing_success"));
+            int[] order = (int[]) result.get("order");
+            long[] ids = (long[]) result.get("stops");
+            List<Long> route = (List<Long>) result.get("route");
+            checkPermutation(order, stops.length);
+
+            /* The route runs along edges, through the stops in the given order. */
+            assertEquals(ids[0], (long) route.get(0));
+            assertEquals(roundTrip ? ids[0] : ids[order[order.length - 1]],
+                (long) route.get(route.size() - 1));
+            double weight = 0;
+            int next = 1;
+            for (int i = 1; i < route.size(); i++) {
+                int e = graph.findEdge(graph.indexOf(route.get(i - 1)),
+                    graph.indexOf(route.get(i)));
+                assertTrue(e >= 0);
+                weight += graph.edgeWeight(e);
+                while (next < order.length && ids[order[next]] == route.get(i)) {
+                    next += 1;
+                }
+            }
+            assertEquals(order.length, next);
+            assertEquals(weight, ((Number) result.get("weight")).doubleValue(), DELTA);
+        }
+    }
+
+    private static void checkPermutation(int[] order, int n) {
+        assertEquals(n, order.length);
+        assertEquals(0, order[0]);
+        int[] sorted = order.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, sorted[i]);
+        }
+    }
+
+    /* Points in the unit square, with legs up to 30% longer one way than the other. */
+    private static double[][] randomDistances(Random random, int n) {
+        double[][] points = new double[n][];
+        for (int i = 0; i < n; i++) {
+            points[i] = new double[]{random.nextDouble(), random.nextDouble()};
+        }
+        double[][] distances = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double dx = points[i][0] - points[j][0];
+                double dy = points[i][1] - points[j][1];
+                distances[i][j] = Math.sqrt(dx * dx + dy * dy) * (1 + 0.3 * random.nextDouble());
+            }
+        }
+        return distances;
+    }
+
+    private static double bruteForce(double[][] distances, boolean roundTrip) {
+        int n = distances.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        return permute(distances, order, 1, roundTrip);
+    }
+
+    private static double permute(double[][] distances, int[] order, int k,
+                                  boolean roundTrip) {
+        if (k == order.length) {
+            return TourPlanner.length(distances, order, roundTrip);
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = k; i < order.length; i++) {
+            swap(order, i, k);
+            best = Math.min(best, permute(distances, order, k + 1, roundTrip));
+            swap(order, i, k);
+        }
+        return best;
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int tmp = a[i];
+        a[i] = a[j];
+        a[j] = tmp;
+    }
+}
@@ -0,0 +1,97 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntDijkstra;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test of finding the places nearest a location by road.
+ */
+public class TestNearestPlaces {
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final double DELTA = 1e-9;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        initialized = true;
+    }
+
+    @Test
+    public void testCategoriesAreParsed() {
+        int cafe = graph.indexOf(9000000L);
+        assertEquals("cafe", graph.categoryAt(cafe));
+        assertEquals("Cafe Strada", graph.nameAt(cafe));
+    }
+
+    @Test
+    public void testMatchesFullSweep() {
+        Random random = new Random(23);
+        for (int i = 0; i < 20; i++) {
+            double lon = -122.28 + 0.05 * random.nextDouble();
+            double lat = 37.83 + 0.05 * random.nextDouble();
+            String category = random.nextBoolean() ? "cafe" : "bank";
+            int k = 1 + random.nextInt(8);
+            List<Map<String, Object>> places = graph.nearestPlaces(lon, lat, category, k);
+
+            double[] dist = IntDijkstra.distancesFrom(graph,
+                graph.indexOf(graph.closest(lon, lat)));
+            List<Double> expected = new ArrayList<>();
+            for (int v = 0; v < graph.numVertices(); v++) {
+                if (category.equals(graph.categoryAt(v))) {
+                    int road = graph.outDegree(v) > 0 ? v
+                        : graph.indexOf(graph.closest(graph.lonAt(v), graph.latAt(v)));
+                    if (dist[road] < Double.POSITIVE_INFINITY) {
+                        expected.add(dist[road]);
+                    }
+                }
+            }
+            Collections.sort(expected);
+            assertEquals(Math.min(k, expected.size()), places.size());
+            for (int j = 0; j < places.size(); j++) {
+                Map<String, Object> place = places.get(j);
+                assertEquals(category, place.get("category"));
+                assertEquals(expected.get(j), (Double) place.get("distance"), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void testNamePrefix() {
+        List<Map<String, Object>> places = graph.nearestPlaces(-122.2588, 37.8670,
+            "starb", 3);
+        assertTrue(!places.isEmpty());
+        for (Map<String, Object> place : places) {
+            assertTrue(((String) place.get("name")).startsWith("Starbucks"));
+        }
+    }
+
+    @Test
+    public void testLimits() {
+        assertTrue(graph.nearestPlaces(-122.2588, 37.8670, "cafe", 0).isEmpty());
+        assertTrue(graph.nearestPlaces(-122.2588, 37.8670, "no such place", 5).isEmpty());
+        List<Map<String, Object>> near = graph.nearestPlaces(-122.2588, 37.8670, "cafe",
+            50, 0.5, Deadline.none());
+        for (Map<String, Object> place : near) {
+            assertTrue((Double) place.get("distance") <= 0.5);
+        }
+        assertTrue(near.size() < graph.nearestPlaces(-122.2588, 37.8670, "cafe", 50).size());
+    }
+}
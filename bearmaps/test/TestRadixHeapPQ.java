@@ -0,0 +1,138 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.utils.graph.IntDijkstra;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.pq.DoubleMapPQ;
+import bearmaps.utils.pq.IntRadixHeapPQ;
+import bearmaps.utils.pq.RadixHeapPQ;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks RadixHeapPQ and IntRadixHeapPQ against DoubleMapPQ on random operation sequences
+ * that respect the monotonicity contract, and that they reject ones that do not.
+ */
+public class TestRadixHeapPQ {
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final int NUM_OPS = 20000;
+    private static final int NUM_KEYS = 500;
+
+    @Test
+    public void testRadixHeapMatchesDoubleMapPQ() {
+        Random random = new Random(18);
+        DoubleMapPQ<Integer> expected = new DoubleMapPQ<>();
+        RadixHeapPQ<Integer> actual = new RadixHeapPQ<>();
+        Map<Integer, Double> priorities = new HashMap<>();
+        /* Priorities stay above the last one polled. */
+        double floor = 0;
+        for (int i = 0; i < NUM_OPS; i++) {
+            int key = random.nextInt(NUM_KEYS);
+            double priority = floor + random.nextDouble() * 100;
+            int op = random.nextInt(3);
+            if (op == 0 && expected.size() > 0) {
+                assertEquals(expected.peek(), actual.peek());
+                int polled = expected.poll();
+                assertEquals(polled, (int) actual.poll());
+                floor = priorities.get(polled);
+            } else if (expected.contains(key)) {
+                expected.changePriority(key, priority);
+                actual.changePriority(key, priority);
+                priorities.put(key, priority);
+            } else {
+                expected.insert(key, priority);
+                actual.insert(key, priority);
+                priorities.put(key, priority);
+            }
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected.contains(key), actual.contains(key));
+        }
+    }
+
+    @Test
+    public void testIntRadixHeapMatchesDoubleMapPQ() {
+        Random random = new Random(19);
+        DoubleMapPQ<Integer> expected = new DoubleMapPQ<>();
+        IntRadixHeapPQ actual = new IntRadixHeapPQ(NUM_KEYS);
+        /* Priorities stay above the last one polled. */
+        double floor = 0;
+        for (int i = 0; i < NUM_OPS; i++) {
+            int key = random.nextInt(NUM_KEYS);
+            double priority = floor + random.nextDouble() * 100;
+            int op = random.nextInt(3);
+            if (op == 0 && expected.size() > 0) {
+                assertEquals((int) expected.peek(), actual.peek());
+                floor = actual.peekPriority();
+                assertEquals((int) expected.poll(), actual.poll());
+            } else if (expected.contains(key)) {
+                expected.changePriority(key, priority);
+                actual.changePriority(key, priority);
+                assertEquals(priority, actual.priority(key), 0);
+            } else {
+                expected.insert(key, priority);
+                actual.insert(key, priority);
+            }
+            assertEquals(expected.size(), actual.size());
+            assertEquals(expected.contains(key), actual.contains(key));
+        }
+        actual.clear();
+        assertTrue(actual.isEmpty());
+        actual.insert(0, 0.0);
+        assertEquals(0, actual.poll());
+    }
+
+    @Test
+    public void testRejectsDecreasingPriorities() {
+        IntRadixHeapPQ pq = new IntRadixHeapPQ(4);
+        pq.insert(0, 5.0);
+        pq.insert(1, 7.0);
+        assertEquals(0, pq.poll());
+        boolean rejected = false;
+        try {
+            pq.insert(2, 4.0);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+        rejected = false;
+        try {
+            pq.insert(2, -1.0);
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+        pq.insert(2, 5.0);
+        assertEquals(2, pq.poll());
+        assertEquals(1, pq.poll());
+    }
+
+    @Test
+    public void testDijkstraFringesAgree() throws Exception {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        Random random = new Random(20);
+        for (int i = 0; i < 5; i++) {
+            int source = random.nextInt(graph.numVertices());
+            double[] heap = new double[graph.numVertices()];
+            Arrays.fill(heap, Double.POSITIVE_INFINITY);
+            try (SearchWorkspace ws = SearchWorkspace.acquire(graph.numVertices())) {
+                IntDijkstra.run(graph, ws, ws.fringe(), new int[] {source},
+                    Double.POSITIVE_INFINITY, (v, d) -> {
+                        heap[v] = d;
+                        return true;
+                    });
+            }
+            double[] radix = IntDijkstra.distancesFrom(graph, source);
+            for (int v = 0; v < heap.length; v++) {
+                assertEquals(heap[v], radix[v], 0);
+            }
+        }
+    }
+}
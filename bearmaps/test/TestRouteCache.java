@@ -0,0 +1,106 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.RouteCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test of the LRU route cache and its use in Router.
+ */
+public class TestRouteCache {
+    private static final String OSM_DB_PATH_TINY
+        = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final Object GRAPH = new Object();
+    private static final Object SOLVER = new Object();
+    private static AugmentedStreetMapGraph graphTiny;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        initialized = true;
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        RouteCache cache = new RouteCache(2, Long.MAX_VALUE);
+        cache.put(GRAPH, SOLVER, 1, 2, Arrays.asList(1L, 2L));
+        cache.put(GRAPH, SOLVER, 2, 3, Arrays.asList(2L, 3L));
+        cache.get(GRAPH, SOLVER, 1, 2);
+        cache.put(GRAPH, SOLVER, 3, 4, Arrays.asList(3L, 4L));
+        assertEquals(2, cache.size());
+        assertEquals(Arrays.asList(1L, 2L), cache.get(GRAPH, SOLVER, 1, 2));
+        assertNull(cache.get(GRAPH, SOLVER, 2, 3));
+        assertEquals(Arrays.asList(3L, 4L), cache.get(GRAPH, SOLVER, 3, 4));
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void testByteLimit() {
+        RouteCache cache = new RouteCache(100, 1000);
+        List<Long> longRoute = new ArrayList<>();
+        for (long i = 0; i < 30; i++) {
+            longRoute.add(i);
+        }
+        cache.put(GRAPH, SOLVER, 1, 2, longRoute);
+        cache.put(GRAPH, SOLVER, 2, 3, longRoute);
+        assertEquals(1, cache.size());
+        assertTrue(cache.bytes() <= 1000);
+        assertNull(cache.get(GRAPH, SOLVER, 1, 2));
+
+        List<Long> hugeRoute = new ArrayList<>();
+        for (long i = 0; i < 1000; i++) {
+            hugeRoute.add(i);
+        }
+        assertEquals(hugeRoute, cache.put(GRAPH, SOLVER, 3, 4, hugeRoute));
+        assertNull(cache.get(GRAPH, SOLVER, 3, 4));
+    }
+
+    @Test
+    public void testKeyedBySolverAndGraph() {
+        RouteCache cache = new RouteCache(10, Long.MAX_VALUE);
+        cache.put(GRAPH, SOLVER, 1, 2, Arrays.asList(1L, 2L));
+        assertNull(cache.get(GRAPH, new Object(), 1, 2));
+        assertNull(cache.get(GRAPH, SOLVER, 2, 1));
+        assertEquals(Arrays.asList(1L, 2L), cache.get(GRAPH, SOLVER, 1, 2));
+        assertNull(cache.get(new Object(), SOLVER, 1, 2));
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCachedRoutesAreReadOnly() {
+        RouteCache cache = new RouteCache(10, Long.MAX_VALUE);
+        cache.put(GRAPH, SOLVER, 1, 2, new ArrayList<>(Arrays.asList(1L, 2L)));
+        cache.get(GRAPH, SOLVER, 1, 2).add(3L);
+    }
+
+    @Test
+    public void testRouterReusesRoutes() {
+        Router.ROUTE_CACHE.invalidate();
+        long hits = Router.ROUTE_CACHE.hits();
+        List<Long> first = Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6);
+        List<Long> second = Router.shortestPath(graphTiny, 0.41, 38.09, 0.39, 38.61);
+        assertEquals(Arrays.asList(41L, 63L, 66L, 46L), first);
+        assertSame(first, second);
+        assertEquals(hits + 1, Router.ROUTE_CACHE.hits());
+
+        Router.ROUTE_CACHE.invalidate();
+        assertEquals(0, Router.ROUTE_CACHE.size());
+        assertEquals(first, Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6));
+    }
+}
@@ -8,9 +8,11 @@ import bearmaps.Router;
 import bearmaps.AugmentedStreetMapGraph;
 
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Created by hug, 4/9/2018. Basic tests for routing on the tiny graph.
@@ -80,4 +82,28 @@ public class TestRouterTiny {
         AStarSolver tester = new AStarSolver<Long>(graphTiny, (long) 11, (long) 88, 20);
         assertEquals(SolverOutcome.UNSOLVABLE, tester.outcome());
     }
+
+    @Test
+    public void testSolutionWeightFromRecordedEdges() {
+        AStarSolver<Long> tester = new AStarSolver<>(graphTiny, 41L, 46L, 20);
+        double expected = 0;
+        for (int i = 0; i < tester.solutionEdges().size(); i++) {
+            assertEquals(tester.solution().get(i), tester.solutionEdges().get(i).from());
+            assertEquals(tester.solution().get(i + 1), tester.solutionEdges().get(i).to());
+            expected += tester.solutionEdges().get(i).weight();
+        }
+        assertEquals(3, tester.solutionEdges().size());
+        assertEquals(expected, tester.solutionWeight(), 1e-9);
+    }
+
+    @Test
+    public void testDirectionsWithAndWithoutRecordedEdges() {
+        List<Long> route = Router.shortestPath(graphTiny, 0.4, 38.1, 0.4, 38.6);
+        List<Router.NavigationDirection> recorded = Router.routeDirections(graphTiny, route);
+        List<Router.NavigationDirection> lookedUp
+            = Router.routeDirections(graphTiny, new LinkedList<>(route));
+        assertEquals(recorded, lookedUp);
+        assertEquals(Router.NavigationDirection.START, recorded.get(0).direction());
+        assertTrue(recorded.size() <= route.size() - 1);
+    }
 }
@@ -0,0 +1,132 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntDijkstra;
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.VertexIdList;
+import bearmaps.utils.graph.streetmap.RoutingProfile;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test of routing for different profiles over one graph.
+ */
+public class TestRoutingProfile {
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final double DELTA = 1e-6;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (!initialized) {
+            graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+            initialized = true;
+        }
+        graph.clearWeightMultipliers();
+    }
+
+    @Test
+    public void testRoadClassesAreParsed() {
+        boolean motorway = false;
+        for (int e = 0; e < graph.numEdges(); e++) {
+            String roadClass = graph.edgeRoadClass(e);
+            assertTrue(roadClass != null);
+            int back = graph.findEdge(graph.edgeTarget(e), graph.edgeSource(e));
+            if (back >= 0 && graph.edgeWay(back) == graph.edgeWay(e)) {
+                assertEquals(roadClass, graph.edgeRoadClass(back));
+            }
+            motorway |= roadClass.equals("motorway");
+        }
+        assertTrue(motorway);
+        assertEquals(RoutingProfile.BIKE, RoutingProfile.forName(" Bike"));
+        assertNull(RoutingProfile.forName("boat"));
+    }
+
+    @Test
+    public void testProfileWeights() {
+        assertSame(graph, graph.snapshot(RoutingProfile.CAR));
+        IntGraph bike = graph.snapshot(RoutingProfile.BIKE);
+        assertSame(bike, graph.snapshot(RoutingProfile.BIKE));
+        for (int e = 0; e < graph.numEdges(); e++) {
+            double expected = graph.edgeWeight(e)
+                * RoutingProfile.BIKE.multiplier(graph.edgeRoadClass(e));
+            assertEquals(expected, bike.edgeWeight(e), DELTA);
+        }
+
+        /* Traffic applies on top of the profile, and old weights stay as they were. */
+        int e = 0;
+        while (!graph.allows(RoutingProfile.BIKE, e)) {
+            e += 1;
+        }
+        graph.setWeightMultipliers(new int[]{e}, new double[]{2});
+        IntGraph slowBike = graph.snapshot(RoutingProfile.BIKE);
+        assertEquals(2 * bike.edgeWeight(e), slowBike.edgeWeight(e), DELTA);
+        assertEquals(2 * graph.edgeWeight(e),
+            graph.snapshot(RoutingProfile.CAR).edgeWeight(e), DELTA);
+        graph.clearWeightMultipliers();
+        assertEquals(bike.edgeWeight(e), graph.snapshot(RoutingProfile.BIKE).edgeWeight(e),
+            DELTA);
+    }
+
+    @Test
+    public void testRoutesKeepToAllowedRoads() {
+        Random random = new Random(25);
+        for (RoutingProfile profile : RoutingProfile.values()) {
+            IntGraph weights = graph.snapshot(profile);
+            for (int trial = 0; trial < 15; trial++) {
+                double stlon = -122.31 + 0.07 * random.nextDouble();
+                double stlat = 37.81 + 0.07 * random.nextDouble();
+                double destlon = -122.31 + 0.07 * random.nextDouble();
+                double destlat = 37.81 + 0.07 * random.nextDouble();
+                List<Long> route = Router.shortestPathOnRoads(graph, stlon, stlat,
+                    destlon, destlat, profile, Deadline.none());
+                if (route.size() < 2) {
+                    continue;
+                }
+                int[] path = ((VertexIdList) route).indices();
+                int[] edges = ((VertexIdList) route).edges();
+                double weight = 0;
+                for (int i = 0; i < edges.length; i++) {
+                    assertEquals(path[i], graph.edgeSource(edges[i]));
+                    assertTrue(graph.allows(profile, edges[i]));
+                    weight += weights.edgeWeight(edges[i]);
+                }
+                /* Between its end vertices, the route is the shortest for the profile. */
+                double shortest =
+                    IntDijkstra.distancesFrom(weights, path[0])[path[path.length - 1]];
+                assertEquals(shortest, weight, DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void testSnapsOntoAllowedRoads() {
+        for (int e = 0; e < graph.numEdges(); e++) {
+            if (!graph.allows(RoutingProfile.FOOT, e)) {
+                /* The middle of a motorway: a car snaps onto it, a pedestrian beside it. */
+                int u = graph.edgeSource(e);
+                int v = graph.edgeTarget(e);
+                double lon = (graph.lonAt(u) + graph.lonAt(v)) / 2;
+                double lat = (graph.latAt(u) + graph.latAt(v)) / 2;
+                assertEquals("motorway",
+                    graph.edgeRoadClass(graph.closestEdge(lon, lat).edge()));
+                AugmentedStreetMapGraph.EdgeSnap snap = graph.closestEdge(lon, lat,
+                    RoutingProfile.FOOT);
+                assertTrue(graph.allows(RoutingProfile.FOOT, snap.edge()));
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.IntDijkstra;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.ps.SegmentRTree;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The segment index must agree with a linear scan, and routes between points snapped
+ * onto roads must start and end on those roads.
+ */
+public class TestSegmentRTree {
+    private static final String OSM_DB_PATH_TINY
+        = "../library-su19/data/proj3_xml/tiny-clean.osm.xml";
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static AugmentedStreetMapGraph graphTiny;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        graphTiny = new AugmentedStreetMapGraph(OSM_DB_PATH_TINY);
+        initialized = true;
+    }
+
+    private static double distance(double x1, double y1, double x2, double y2,
+                                   double x, double y) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double length = dx * dx + dy * dy;
+        double t = length == 0 ? 0
+            : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / length));
+        return Math.hypot(x1 + t * dx - x, y1 + t * dy - y);
+    }
+
+    @Test
+    public void testMatchesLinearScan() {
+        Random random = new Random(19);
+        int n = 5000;
+        double[] x1 = new double[n];
+        double[] y1 = new double[n];
+        double[] x2 = new double[n];
+        double[] y2 = new double[n];
+        for (int i = 0; i < n; i++) {
+            x1[i] = random.nextDouble() * 100;
+            y1[i] = random.nextDouble() * 100;
+            x2[i] = x1[i] + random.nextDouble() * 4 - 2;
+            y2[i] = y1[i] + random.nextDouble() * 4 - 2;
+        }
+        SegmentRTree tree = new SegmentRTree(x1, y1, x2, y2);
+        assertEquals(n, tree.size());
+        for (int q = 0; q < 1000; q++) {
+            double x = random.nextDouble() * 120 - 10;
+            double y = random.nextDouble() * 120 - 10;
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                best = Math.min(best, distance(x1[i], y1[i], x2[i], y2[i], x, y));
+            }
+            SegmentRTree.Hit hit = tree.nearest(x, y);
+            assertEquals(best, hit.distance(), 1e-9);
+            int s = hit.segment();
+            assertEquals(best, distance(x1[s], y1[s], x2[s], y2[s], x, y), 1e-9);
+            assertTrue(hit.t() >= 0 && hit.t() <= 1);
+        }
+    }
+
+    @Test
+    public void testEmptyAndSingle() {
+        assertEquals(null, new SegmentRTree(new double[0], new double[0], new double[0],
+            new double[0]).nearest(0, 0));
+        SegmentRTree.Hit hit = new SegmentRTree(new double[] {0}, new double[] {0},
+            new double[] {2}, new double[] {0}).nearest(0.5, 1);
+        assertEquals(0, hit.segment());
+        assertEquals(0.25, hit.t(), 1e-12);
+        assertEquals(1, hit.distance(), 1e-12);
+    }
+
+    @Test
+    public void testClosestEdge() {
+        /* Halfway along the road from 46 to 66, just north of it. */
+        AugmentedStreetMapGraph.EdgeSnap snap = graphTiny.closestEdge(0.5, 38.61);
+        long source = graphTiny.idAt(graphTiny.edgeSource(snap.edge()));
+        long target = graphTiny.idAt(graphTiny.edgeTarget(snap.edge()));
+        assertTrue(source == 46 && target == 66 || source == 66 && target == 46);
+        assertEquals(0.5, snap.t(), 0.01);
+    }
+
+    @Test
+    public void testRouteBetweenBlocks() {
+        /* From the middle of 46-66 to the middle of 63-41: east to 66, then south. */
+        List<Long> route = Router.shortestPathOnRoads(graphTiny, 0.5, 38.61, 0.5, 38.2,
+            Deadline.none());
+        assertEquals(List.of(66L, 63L), route);
+    }
+
+    @Test
+    public void testRouteAlongOneBlock() {
+        assertEquals(List.of(46L, 66L), Router.shortestPathOnRoads(graphTiny,
+            0.45, 38.61, 0.55, 38.61, Deadline.none()));
+        assertEquals(List.of(66L, 46L), Router.shortestPathOnRoads(graphTiny,
+            0.55, 38.61, 0.45, 38.61, Deadline.none()));
+    }
+
+    @Test
+    public void testSeededSearch() throws Exception {
+        AugmentedStreetMapGraph graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+        Random random = new Random(20);
+        int n = graph.numVertices();
+        for (int i = 0; i < 50; i++) {
+            int[] starts = {random.nextInt(n), random.nextInt(n)};
+            double[] startOffsets = {random.nextDouble() * 0.1, random.nextDouble() * 0.1};
+            int[] ends = {random.nextInt(n), random.nextInt(n)};
+            double[] endOffsets = {random.nextDouble() * 0.1, random.nextDouble() * 0.1};
+            double expected = Double.POSITIVE_INFINITY;
+            for (int s = 0; s < 2; s++) {
+                double[] dist = IntDijkstra.distancesFrom(graph, starts[s]);
+                for (int t = 0; t < 2; t++) {
+                    expected = Math.min(expected, startOffsets[s] + dist[ends[t]] + endOffsets[t]);
+                }
+            }
+            IntAStarSolver solver = IntAStarSolver.fromSeeds(graph, starts, startOffsets,
+                ends, endOffsets, Deadline.none());
+            if (expected == Double.POSITIVE_INFINITY) {
+                assertEquals(SolverOutcome.UNSOLVABLE, solver.outcome());
+            } else {
+                assertEquals(SolverOutcome.SOLVED, solver.outcome());
+                assertEquals(expected, solver.solutionWeight(), 1e-9);
+                int[] path = solver.solutionIndices();
+                assertTrue(path[0] == starts[0] || path[0] == starts[1]);
+                assertTrue(path[path.length - 1] == ends[0] || path[path.length - 1] == ends[1]);
+            }
+        }
+    }
+
+    @Test
+    public void testUnreachable() {
+        /* 88-99 is a separate piece of road. */
+        assertTrue(Router.shortestPathOnRoads(graphTiny, 0.5, 38.61, 0.85, 38.85,
+            Deadline.none()).isEmpty());
+    }
+}
@@ -0,0 +1,153 @@
+package bearmaps.test;
+
+import bearmaps.utils.SingleFlight;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test of coalescing concurrent identical computations.
+ */
+public class TestSingleFlight {
+
+    @Test
+    public void testIdenticalRequestsShareOneComputation() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(callers.submit(() -> flight.run("viewport", () -> true, abandoned -> {
+                computations.incrementAndGet();
+                await(release);
+                return 42;
+            })));
+        }
+        waitUntil(() -> computations.get() == 1);
+        /* Let every caller reach the flight before it finishes. */
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<Integer> result : results) {
+            assertEquals(42, (int) result.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, computations.get());
+        assertEquals(0, flight.inFlight());
+
+        /* Finished flights are forgotten, so a later request computes again. */
+        assertEquals(7, (int) flight.run("viewport", () -> true, abandoned -> 7));
+        callers.shutdown();
+    }
+
+    @Test
+    public void testComputesOnTheCallersThread() {
+        SingleFlight<String, Thread> flight = new SingleFlight<>();
+        assertSame(Thread.currentThread(),
+            flight.run("here", () -> true, abandoned -> Thread.currentThread()));
+    }
+
+    @Test
+    public void testDistinctKeysComputeSeparately() {
+        SingleFlight<Integer, Integer> flight = new SingleFlight<>();
+        for (int i = 0; i < 10; i++) {
+            int k = i;
+            assertEquals(k * k, (int) flight.run(k, () -> true, abandoned -> k * k));
+        }
+    }
+
+    @Test
+    public void testExceptionReachesEveryWaiter() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            results.add(callers.submit(() -> flight.run("bad", () -> true, abandoned -> {
+                computations.incrementAndGet();
+                await(release);
+                throw new IllegalArgumentException("no route");
+            })));
+        }
+        waitUntil(() -> computations.get() == 1);
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<Integer> result : results) {
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+        assertEquals(1, computations.get());
+        callers.shutdown();
+    }
+
+    @Test
+    public void testAbandonedOnlyOnceEveryWaiterLeaves() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        SingleFlight<String, Boolean> flight = new SingleFlight<>();
+        AtomicBoolean firstWaiting = new AtomicBoolean(true);
+        AtomicBoolean secondWaiting = new AtomicBoolean(true);
+        AtomicInteger started = new AtomicInteger();
+        CountDownLatch bothJoined = new CountDownLatch(1);
+        CountDownLatch firstLeft = new CountDownLatch(1);
+        AtomicBoolean abandonedAfterFirst = new AtomicBoolean();
+
+        Future<Boolean> first = callers.submit(() -> flight.run("route", firstWaiting::get,
+            abandoned -> {
+                started.incrementAndGet();
+                await(bothJoined);
+                assertFalse(abandoned.getAsBoolean());
+                firstWaiting.set(false);
+                abandonedAfterFirst.set(abandoned.getAsBoolean());
+                firstLeft.countDown();
+                secondWaiting.set(false);
+                return abandoned.getAsBoolean();
+            }));
+        waitUntil(() -> started.get() == 1);
+        Future<Boolean> second = callers.submit(() -> flight.run("route", secondWaiting::get,
+            abandoned -> false));
+        Thread.sleep(200);
+        bothJoined.countDown();
+        assertTrue(first.get(10, TimeUnit.SECONDS));
+        assertTrue(second.get(10, TimeUnit.SECONDS));
+        await(firstLeft);
+        assertFalse(abandonedAfterFirst.get());
+        callers.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition)
+        throws InterruptedException {
+        long stop = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < stop);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package bearmaps.test;
+
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+import bearmaps.utils.graph.streetmap.StreetMapGraph.VertexOrder;
+import bearmaps.utils.ps.HilbertCurve;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Renumbering vertices along a Hilbert curve must not change the graph, only its layout.
+ */
+public class TestVertexOrder {
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static StreetMapGraph byId;
+    private static StreetMapGraph hilbert;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (initialized) {
+            return;
+        }
+        byId = new StreetMapGraph(OSM_DB_PATH, VertexOrder.OSM_ID);
+        hilbert = new StreetMapGraph(OSM_DB_PATH, VertexOrder.HILBERT);
+        initialized = true;
+    }
+
+    @Test
+    public void testCurveStepsToAdjacentCells() {
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                assertTrue(HilbertCurve.index(x, y) < 1L << 32);
+            }
+        }
+        double[] xs = new double[256];
+        double[] ys = new double[256];
+        for (int i = 0; i < 256; i++) {
+            xs[i] = i % 16;
+            ys[i] = i / 16;
+        }
+        int[] order = HilbertCurve.order(xs, ys);
+        for (int i = 1; i < order.length; i++) {
+            double step = Math.abs(xs[order[i]] - xs[order[i - 1]])
+                + Math.abs(ys[order[i]] - ys[order[i - 1]]);
+            assertEquals(1.0, step, 0);
+        }
+    }
+
+    @Test
+    public void testSameGraph() {
+        assertEquals(byId, hilbert);
+        assertEquals(byId.numEdges(), hilbert.numEdges());
+        for (int v = 0; v < hilbert.numVertices(); v++) {
+            long id = hilbert.idAt(v);
+            assertEquals(v, hilbert.indexOf(id));
+            assertEquals(byId.lonAt(byId.indexOf(id)), hilbert.lonAt(v), 0);
+            assertEquals(byId.latAt(byId.indexOf(id)), hilbert.latAt(v), 0);
+        }
+        assertEquals(-1, hilbert.indexOf(-42));
+    }
+
+    @Test
+    public void testSameRoutes() {
+        Random random = new Random(15);
+        for (int i = 0; i < 200; i++) {
+            long s = byId.idAt(random.nextInt(byId.numVertices()));
+            long t = byId.idAt(random.nextInt(byId.numVertices()));
+            IntAStarSolver expected = new IntAStarSolver(byId, s, t, 20);
+            IntAStarSolver actual = new IntAStarSolver(hilbert, s, t, 20);
+            assertEquals(expected.outcome(), actual.outcome());
+            assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+        }
+    }
+}
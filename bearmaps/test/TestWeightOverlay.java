@@ -0,0 +1,207 @@
+package bearmaps.test;
+
+import bearmaps.AugmentedStreetMapGraph;
+import bearmaps.Router;
+import bearmaps.utils.graph.BidirectionalAStarSolver;
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.DistanceMatrix;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.IntDijkstra;
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.VertexIdList;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test of changing edge weights without rebuilding the graph, and of dropping only the
+ * cached routes a change affects.
+ */
+public class TestWeightOverlay {
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    private static final double DELTA = 1e-6;
+    private static AugmentedStreetMapGraph graph;
+    private static boolean initialized = false;
+
+    @Before
+    public void setUp() throws Exception {
+        if (!initialized) {
+            graph = new AugmentedStreetMapGraph(OSM_DB_PATH);
+            initialized = true;
+        }
+        graph.clearWeightMultipliers();
+        Router.ROUTE_CACHE.invalidate();
+    }
+
+    @Test
+    public void testRoutesAvoidSlowAndClosedRoads() {
+        Random random = new Random(24);
+        for (int trial = 0; trial < 20; trial++) {
+            int s = randomVertex(random);
+            int t = randomVertex(random);
+            IntAStarSolver before = IntAStarSolver.fromIndices(graph, s, t, 20);
+            int[] edges = before.solutionEdges();
+            if (edges.length < 2) {
+                continue;
+            }
+            int slowed = edges[random.nextInt(edges.length)];
+            int closed = edges[random.nextInt(edges.length)];
+            graph.setWeightMultipliers(new int[]{slowed, closed},
+                new double[]{5, Double.POSITIVE_INFINITY});
+
+            double expected = IntDijkstra.distancesFrom(graph.snapshot(), s)[t];
+            IntAStarSolver after = IntAStarSolver.fromIndices(graph, s, t, 20);
+            BidirectionalAStarSolver both =
+                BidirectionalAStarSolver.fromIndices(graph, s, t, 20);
+            if (expected == Double.POSITIVE_INFINITY) {
+                assertEquals(SolverOutcome.UNSOLVABLE, after.outcome());
+                assertEquals(SolverOutcome.UNSOLVABLE, both.outcome());
+            } else {
+                assertTrue(expected >= before.solutionWeight() - DELTA);
+                assertEquals(expected, after.solutionWeight(), DELTA);
+                assertEquals(expected, both.solutionWeight(), DELTA);
+                assertEquals(expected, DistanceMatrix.compute(graph, new int[]{s},
+                    new int[]{t})[0][0], DELTA);
+                for (int e : after.solutionEdges()) {
+                    assertTrue(e != closed);
+                }
+            }
+            graph.clearWeightMultipliers();
+        }
+    }
+
+    @Test
+    public void testSnapshotsKeepTheirWeights() {
+        int v = 0;
+        while (graph.outDegree(v) == 0) {
+            v += 1;
+        }
+        int e = graph.edgeBegin(v);
+        double parsed = graph.edgeWeight(e);
+        IntGraph old = graph.snapshot();
+        assertSame(graph, old);
+
+        graph.setWeightMultipliers(new int[]{e}, new double[]{3});
+        IntGraph slow = graph.snapshot();
+        assertEquals(parsed, old.edgeWeight(e), DELTA);
+        assertEquals(3 * parsed, slow.edgeWeight(e), DELTA);
+        assertEquals(parsed, graph.edgeWeight(e), DELTA);
+
+        graph.setWeightMultipliers(new int[]{e}, new double[]{Double.POSITIVE_INFINITY});
+        assertEquals(3 * parsed, slow.edgeWeight(e), DELTA);
+        assertEquals(Double.POSITIVE_INFINITY, graph.snapshot().edgeWeight(e), 0);
+
+        /* The reversed view of an overlay carries its weights. */
+        IntGraph reverse = graph.snapshot().reverse();
+        int w = graph.edgeTarget(e);
+        boolean found = false;
+        for (int f = reverse.edgeBegin(w); f < reverse.edgeEnd(w); f++) {
+            if (reverse.edgeTarget(f) == v) {
+                found |= reverse.edgeWeight(f) == Double.POSITIVE_INFINITY;
+            }
+        }
+        assertTrue(found);
+
+        graph.setWeightMultipliers(new int[]{e}, new double[]{1});
+        assertSame(graph, graph.snapshot());
+    }
+
+    @Test
+    public void testClearAndChangeAtOnce() {
+        graph.setWeightMultipliers(new int[]{0}, new double[]{2});
+        IntGraph old = graph.snapshot();
+        assertFalse(graph.setWeightMultipliers(true, new int[]{0, 1}, new double[]{4, 2}));
+        assertEquals(4 * graph.edgeWeight(0), graph.snapshot().edgeWeight(0), DELTA);
+        assertEquals(2 * graph.edgeWeight(0), old.edgeWeight(0), DELTA);
+        assertTrue(graph.setWeightMultipliers(true, new int[]{1}, new double[]{2}));
+        assertEquals(1, graph.weightMultiplier(0), 0);
+        assertEquals(2, graph.weightMultiplier(1), 0);
+    }
+
+    @Test
+    public void testCachedRoutesDoNotHoldOverlays() {
+        graph.setWeightMultipliers(new int[]{0}, new double[]{2});
+        List<Long> route = Router.shortestPath(graph, -122.28, 37.87, -122.27, 37.88);
+        assertSame(graph, ((VertexIdList) route).graph());
+        assertEquals(1, Router.ROUTE_CACHE.size());
+    }
+
+    @Test
+    public void testRejectsBadChanges() {
+        int[][] edges = {{0}, {0}, {-1}, {graph.numEdges()}, {0, 1}};
+        double[][] multipliers = {{0.5}, {Double.NaN}, {2}, {2}, {2}};
+        for (int i = 0; i < edges.length; i++) {
+            try {
+                graph.setWeightMultipliers(edges[i], multipliers[i]);
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertFalse(graph.hasWeightOverlay());
+            }
+        }
+    }
+
+    @Test
+    public void testSlowingDropsOnlyRoutesAlongIt() {
+        List<Long> west = Router.shortestPath(graph, -122.28, 37.87, -122.27, 37.88);
+        List<Long> east = Router.shortestPath(graph, -122.25, 37.86, -122.24, 37.87);
+        assertEquals(2, Router.ROUTE_CACHE.size());
+        int e = graph.findEdge(graph.indexOf(west.get(0)), graph.indexOf(west.get(1)));
+
+        assertEquals(1, Router.updateEdgeWeights(graph, new int[]{e}, new double[]{2}));
+        assertEquals(1, Router.ROUTE_CACHE.size());
+        assertSame(east, Router.shortestPath(graph, -122.25, 37.86, -122.24, 37.87));
+        assertNull(Router.ROUTE_CACHE.get(graph, Router.ASTAR, west.get(0),
+            west.get(west.size() - 1)));
+
+        /* Speeding a road up again could shorten any route, so all of them go. */
+        Router.shortestPath(graph, -122.28, 37.87, -122.27, 37.88);
+        assertEquals(2, Router.updateEdgeWeights(graph, new int[]{e}, new double[]{1}));
+        assertEquals(0, Router.ROUTE_CACHE.size());
+        assertFalse(graph.hasWeightOverlay());
+    }
+
+    @Test
+    public void testOnRoadRoutesAreCachedUntilTheirEdgesChange() {
+        List<Long> route = Router.shortestPathOnRoads(graph, -122.28, 37.87,
+            -122.27, 37.88, Deadline.none());
+        assertSame(route, Router.shortestPathOnRoads(graph, -122.28, 37.87,
+            -122.27, 37.88, Deadline.none()));
+        assertEquals(1, Router.ROUTE_CACHE.size());
+
+        /* The route starts part-way along this edge, which is not among its hops. */
+        int e = graph.closestEdge(-122.28, 37.87).edge();
+        assertEquals(1, Router.updateEdgeWeights(graph, new int[]{e}, new double[]{2}));
+        assertEquals(0, Router.ROUTE_CACHE.size());
+    }
+
+    @Test
+    public void testRouteFoundDuringChangeIsNotCached() {
+        List<Long> route = Router.shortestPath(graph, -122.28, 37.87, -122.27, 37.88);
+        Router.ROUTE_CACHE.invalidate();
+        long epoch = Router.ROUTE_CACHE.epoch();
+        Router.updateEdgeWeights(graph, new int[]{0}, new double[]{2});
+        long src = route.get(0);
+        long dest = route.get(route.size() - 1);
+        Router.ROUTE_CACHE.put(graph, Router.ASTAR, src, dest, route, epoch);
+        assertEquals(0, Router.ROUTE_CACHE.size());
+        Router.ROUTE_CACHE.put(graph, Router.ASTAR, src, dest, route,
+            Router.ROUTE_CACHE.epoch());
+        assertEquals(1, Router.ROUTE_CACHE.size());
+    }
+
+    private static int randomVertex(Random random) {
+        return graph.indexOf(graph.closestInLargestComponent(
+            -122.28 + 0.05 * random.nextDouble(), 37.83 + 0.05 * random.nextDouble()));
+    }
+}
@@ -0,0 +1,88 @@
+package bearmaps.test;
+
+import bearmaps.utils.graph.AStarSolver;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+import bearmaps.utils.graph.streetmap.StreetMapGraph.VertexOrder;
+
+import java.util.Random;
+
+/**
+ * Compares the two vertex orders of StreetMapGraph on random routes through one map.
+ * Java cannot read the hardware cache counters, so locality is reported through how far
+ * apart in the arrays the two ends of an edge sit; run under `perf stat -e cache-misses`
+ * to see the misses themselves.
+ *
+ * Usage: java bearmaps.test.VertexOrderBenchmark [osm file] [queries]
+ */
+public class VertexOrderBenchmark {
+    private static final String OSM_DB_PATH
+        = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
+    /* Vertices whose coordinates share a 64-byte cache line. */
+    private static final int LINE = 8;
+
+    public static void main(String[] args) {
+        String file = args.length > 0 ? args[0] : OSM_DB_PATH;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        long[][] pairs = null;
+        for (VertexOrder order : VertexOrder.values()) {
+            StreetMapGraph graph = new StreetMapGraph(file, order);
+            if (pairs == null) {
+                pairs = pairs(graph, queries);
+            }
+            /* Once to warm up the JIT, then measured. */
+            run(graph, pairs);
+            double[] millis = run(graph, pairs);
+            System.out.printf("%-7s mean edge span %9.1f  same line %5.1f%%"
+                    + "  AStarSolver %7.3f ms  IntAStarSolver %7.3f ms%n",
+                order, meanSpan(graph), 100 * sameLine(graph),
+                millis[0] / queries, millis[1] / queries);
+        }
+    }
+
+    /* QUERIES random pairs of OSM ids, which mean the same vertices under either order. */
+    private static long[][] pairs(StreetMapGraph graph, int queries) {
+        Random random = new Random(15);
+        long[][] pairs = new long[queries][];
+        for (int i = 0; i < queries; i++) {
+            pairs[i] = new long[] {graph.idAt(random.nextInt(graph.numVertices())),
+                graph.idAt(random.nextInt(graph.numVertices()))};
+        }
+        return pairs;
+    }
+
+    private static double[] run(StreetMapGraph graph, long[][] pairs) {
+        long start = System.nanoTime();
+        for (long[] pair : pairs) {
+            new AStarSolver<>(graph, pair[0], pair[1], 60);
+        }
+        long middle = System.nanoTime();
+        for (long[] pair : pairs) {
+            new IntAStarSolver(graph, pair[0], pair[1], 60);
+        }
+        long end = System.nanoTime();
+        return new double[] {(middle - start) / 1e6, (end - middle) / 1e6};
+    }
+
+    private static double meanSpan(StreetMapGraph graph) {
+        double total = 0;
+        for (int v = 0; v < graph.numVertices(); v++) {
+            for (int e = graph.edgeBegin(v); e < graph.edgeEnd(v); e++) {
+                total += Math.abs(graph.edgeTarget(e) - v);
+            }
+        }
+        return total / graph.numEdges();
+    }
+
+    private static double sameLine(StreetMapGraph graph) {
+        int count = 0;
+        for (int v = 0; v < graph.numVertices(); v++) {
+            for (int e = graph.edgeBegin(v); e < graph.edgeEnd(v); e++) {
+                if (graph.edgeTarget(e) / LINE == v / LINE) {
+                    count += 1;
+                }
+            }
+        }
+        return (double) count / graph.numEdges();
+    }
+}
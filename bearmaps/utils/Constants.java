@@ -27,6 +27,15 @@ public class Constants {
      **/
     public static final String OSM_DB_PATH = "../library-su19/data/proj3_xml/berkeley-2019.osm.xml";
 
+    /**
+     * Where the arc flags for OSM_DB_PATH are kept between runs. They are computed and
+     * written here the first time the server starts without them.
+     */
+    public static final String ARC_FLAGS_PATH = OSM_DB_PATH + ".arcflags";
+
+    /** Arc flag grid: rows and columns of regions, at most 64 regions in all. */
+    public static final int ARC_FLAG_ROWS = 8, ARC_FLAG_COLS = 8;
+
     /** The tile images are in the IMG_ROOT folder. */
     public static final String IMG_ROOT = "../library-su19/data/proj3_imgs/";
 
@@ -0,0 +1,222 @@
+package bearmaps.utils;
+
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.VertexIdList;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded, thread-safe LRU cache of routes, keyed by the snapped start and end
+ * vertices and the solver that produced the route.
+ *
+ * The cache is bounded both by entry count and by an estimate of the memory its paths
+ * hold, and evicts least recently used routes first. It remembers which graph its
+ * routes came from and empties itself the first time it is asked about another one,
+ * so reloading the map can never serve a stale route; invalidate() does the same
+ * explicitly, and invalidateIf drops only the routes a weight change affects.
+ *
+ * Each invalidation starts a new epoch. A route searched for during an older epoch
+ * may have seen the old weights, so put does not keep it if given that epoch.
+ */
+public class RouteCache {
+    /* Rough per-entry cost of the key, map node and list wrapper. */
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+    /* Rough cost of one boxed vertex id in a cached path. */
+    private static final long BYTES_PER_VERTEX = 24;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, List<Long>> routes = new LinkedHashMap<>(16, 0.75f, true);
+    private Object graph;
+    private long bytes;
+    private long epoch;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxEntries Most routes kept at once.
+     * @param maxBytes   Most memory, estimated, the kept routes may hold.
+     */
+    public RouteCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the route from SRC to DEST that SOLVER found on GRAPH, or null if it is
+     * not cached. Counts a hit or a miss.
+     */
+    public synchronized List<Long> get(Object graph, Object solver, long src, long dest) {
+        checkGraph(graph);
+        List<Long> route = routes.get(new Key(solver, src, dest));
+        if (route == null) {
+            misses += 1;
+        } else {
+            hits += 1;
+        }
+        return route;
+    }
+
+    /**
+     * Caches ROUTE as the route from SRC to DEST that SOLVER found on GRAPH, evicting
+     * older routes as needed. Returns the cached, read-only copy of ROUTE. A route
+     * larger than the whole byte budget is returned without being cached.
+     */
+    public synchronized List<Long> put(Object graph, Object solver, long src, long dest,
+                                       List<Long> route) {
+        return put(graph, solver, src, dest, route, epoch);
+    }
+
+    /**
+     * Same as above, but only caches ROUTE if the cache has not been invalidated since
+     * EPOCH, read from epoch() before the search for ROUTE began.
+     */
+    public synchronized List<Long> put(Object graph, Object solver, long src, long dest,
+                                       List<Long> route, long epoch) {
+        if (epoch != this.epoch) {
+            return readOnly(graph, route);
+        }
+        checkGraph(graph);
+        List<Long> cached = readOnly(graph, route);
+        long size = sizeOf(cached);
+        if (size > maxBytes || maxEntries <= 0) {
+            return cached;
+        }
+        List<Long> old = routes.put(new Key(solver, src, dest), cached);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+        bytes += size;
+        Iterator<List<Long>> eldest = routes.values().iterator();
+        while (routes.size() > maxEntries || bytes > maxBytes) {
+            bytes -= sizeOf(eldest.next());
+            eldest.remove();
+        }
+        return cached;
+    }
+
+    /** Drops every cached route. Hit and miss counts are kept. */
+    public synchronized void invalidate() {
+        routes.clear();
+        bytes = 0;
+        graph = null;
+        epoch += 1;
+    }
+
+    /** Decides whether a cached route may have changed. */
+    @FunctionalInterface
+    public interface Staleness {
+        /** Returns true if ROUTE, cached under SOLVER, SRC and DEST, may have changed. */
+        boolean isStale(Object solver, long src, long dest, List<Long> route);
+    }
+
+    /**
+     * Drops the cached routes STALE accepts, and keeps the rest. Returns how many were
+     * dropped.
+     */
+    public synchronized int invalidateIf(Staleness stale) {
+        int dropped = 0;
+        Iterator<Map.Entry<Key, List<Long>>> it = routes.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, List<Long>> entry = it.next();
+            Key key = entry.getKey();
+            List<Long> route = entry.getValue();
+            if (stale.isStale(key.solver, key.src, key.dest, route)) {
+                bytes -= sizeOf(route);
+                it.remove();
+                dropped += 1;
+            }
+        }
+        epoch += 1;
+        return dropped;
+    }
+
+    /** Counts the invalidations so far. See put. */
+    public synchronized long epoch() {
+        return epoch;
+    }
+
+    /*
+     * A VertexIdList is already read-only, and wrapping it would hide its edges. One
+     * found on a snapshot of GRAPH's weights is bound to GRAPH itself instead, whose ids
+     * are the same, so a cached route does not keep a whole weight overlay alive.
+     */
+    private static List<Long> readOnly(Object graph, List<Long> route) {
+        if (!(route instanceof VertexIdList)) {
+            return Collections.unmodifiableList(route);
+        }
+        VertexIdList ids = (VertexIdList) route;
+        if (ids.graph() == graph || !(graph instanceof IntGraph)) {
+            return ids;
+        }
+        return new VertexIdList((IntGraph) graph, ids.indices(), ids.edges());
+    }
+
+    private void checkGraph(Object g) {
+        if (graph != g) {
+            invalidate();
+            graph = g;
+        }
+    }
+
+    private static long sizeOf(List<Long> route) {
+        return ENTRY_OVERHEAD_BYTES + BYTES_PER_VERTEX * route.size();
+    }
+
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    /** Estimated memory held by the cached routes. */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("entries", (long) routes.size());
+        stats.put("bytes", bytes);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        return stats;
+    }
+
+    private static class Key {
+        private final Object solver;
+        private final long src;
+        private final long dest;
+
+        Key(Object solver, long src, long dest) {
+            this.solver = solver;
+            this.src = src;
+            this.dest = dest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return src == other.src && dest == other.dest && solver == other.solver;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(solver), src, dest);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package bearmaps.utils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Coalesces identical concurrent computations. The first caller to ask for a key runs
+ * the computation on its own thread; every caller that asks for the same key while it
+ * is still running waits for that same computation instead of starting its own, and
+ * all of them get its result, or its exception. Once it finishes the key is forgotten,
+ * so a later caller computes afresh: this removes duplicate work, it is not a cache.
+ *
+ * Each caller says how to tell whether it is still interested in the result. The
+ * computation is handed a probe that becomes true only once every caller that joined
+ * it has lost interest, so it can give up on work nobody is waiting for while one
+ * impatient caller leaving does not cut short the others.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the result of WORK for KEY, joining a computation for KEY already in
+     * flight if there is one. Exceptions thrown by the computation are rethrown to every
+     * caller; checked ones are wrapped in an IllegalStateException.
+     *
+     * @param key         Identifies the computation; equal keys share one.
+     * @param interested  Whether this caller still wants the result.
+     * @param work        The computation, given a probe that is true once no caller
+     *                    wants the result any more.
+     */
+    public V run(K key, BooleanSupplier interested, Function<BooleanSupplier, V> work) {
+        Flight<V> joined;
+        Flight<V> created = null;
+        while (true) {
+            joined = flights.get(key);
+            if (joined == null) {
+                if (created == null) {
+                    created = new Flight<>();
+                }
+                joined = flights.putIfAbsent(key, created);
+                if (joined == null) {
+                    joined = created;
+                }
+            }
+            if (joined.join(interested)) {
+                break;
+            }
+            /* Finished between the lookup and the join; its result may be stale. */
+            flights.remove(key, joined);
+        }
+        if (joined != created) {
+            return await(joined.result);
+        }
+        V value;
+        try {
+            value = work.apply(created::abandoned);
+        } catch (Throwable t) {
+            land(key, created);
+            created.result.completeExceptionally(t);
+            throw t;
+        }
+        land(key, created);
+        created.result.complete(value);
+        return value;
+    }
+
+    /* Stops FLIGHT taking new callers, so later ones for KEY compute afresh. */
+    private void land(K key, Flight<V> flight) {
+        flight.finish();
+        flights.remove(key, flight);
+    }
+
+    private static <V> V await(CompletableFuture<V> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a result", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /** Number of computations currently running. */
+    public int inFlight() {
+        return flights.size();
+    }
+
+    /** One running computation and the callers waiting for it. */
+    private static class Flight<V> {
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        final List<BooleanSupplier> waiters = new CopyOnWriteArrayList<>();
+        private boolean finished;
+
+        /** Adds a waiter, unless the computation has already finished. */
+        synchronized boolean join(BooleanSupplier interested) {
+            if (finished) {
+                return false;
+            }
+            waiters.add(interested);
+            return true;
+        }
+
+        synchronized void finish() {
+            finished = true;
+        }
+
+        boolean abandoned() {
+            for (BooleanSupplier waiter : waiters) {
+                if (waiter.getAsBoolean()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
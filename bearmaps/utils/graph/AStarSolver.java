@@ -1,6 +1,6 @@
 package bearmaps.utils.graph;
 
-import bearmaps.utils.pq.DoubleMapPQ;
+import bearmaps.utils.pq.IndexedHeapPQ;
 import bearmaps.utils.pq.PriorityQueue;
 
 import java.util.HashMap;
@@ -9,25 +9,27 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
 
     private AStarGraph<Vertex> myGraph;
+    private Heuristic<Vertex> heuristic;
     private Vertex start;
     private Vertex end;
 
-    private PriorityQueue<Vertex> fringe = new DoubleMapPQ<>();
+    private PriorityQueue<Vertex> fringe;
     private Map<Vertex, Double> distTo = new HashMap<>();
-    private Map<Vertex, Vertex> lastNode = new HashMap<>();
+    /* The edge each reached vertex was last relaxed through. */
+    private Map<Vertex, WeightedEdge<Vertex>> edgeTo = new HashMap<>();
     private Set<Vertex> finalized;
 
     private SolverOutcome result;
     private LinkedList<Vertex> solution = new LinkedList<>();
+    private LinkedList<WeightedEdge<Vertex>> solutionEdges = new LinkedList<>();
     private double totalWeight;
     private int statesExplored = 0;
     private long solverTime;
-    private double endBefore;
+    private Deadline deadline;
 
     /**
      * Constructor which finds the solution,
@@ -40,15 +42,66 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
      * @param timeout Time restriction for this activity.
      */
     public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, double timeout) {
+        this(input, start, end, timeout, new IndexedHeapPQ<>());
+    }
+
+    /**
+     * Same as above, but searches using the given (empty) priority queue as the fringe.
+     *
+     * @param input   The graph
+     * @param start   Starting point
+     * @param end     End point
+     * @param timeout Time restriction for this activity.
+     * @param fringe  Priority queue implementation to use, e.g. DoubleMapPQ or IndexedHeapPQ.
+     *                RadixHeapPQ also works if the heuristic is consistent, so that
+     *                priorities never decrease.
+     */
+    public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, double timeout,
+                       PriorityQueue<Vertex> fringe) {
+        this(input, start, end, timeout, fringe, input::estimatedDistanceToGoal);
+    }
+
+    /**
+     * Same as above, but guided by HEURISTIC instead of the graph's own
+     * estimatedDistanceToGoal. HEURISTIC must never overestimate.
+     *
+     * @param input     The graph
+     * @param start     Starting point
+     * @param end       End point
+     * @param timeout   Time restriction for this activity.
+     * @param fringe    Priority queue implementation to use.
+     * @param heuristic Lower bound on the remaining distance, e.g. a landmark heuristic.
+     */
+    public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, double timeout,
+                       PriorityQueue<Vertex> fringe, Heuristic<Vertex> heuristic) {
+        this(input, start, end, Deadline.after(timeout), fringe, heuristic);
+    }
+
+    /**
+     * Same as above, but gives up when DEADLINE expires or is cancelled. If DEADLINE
+     * accepts partial results, a search that gives up still returns the path to the
+     * vertex it settled closest to the goal, with outcome TIMEOUT.
+     *
+     * @param input     The graph
+     * @param start     Starting point
+     * @param end       End point
+     * @param deadline  When to give up.
+     * @param fringe    Priority queue implementation to use.
+     * @param heuristic Lower bound on the remaining distance, e.g. a landmark heuristic.
+     */
+    public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, Deadline deadline,
+                       PriorityQueue<Vertex> fringe, Heuristic<Vertex> heuristic) {
         this.myGraph = input;
+        this.fringe = fringe;
+        this.heuristic = heuristic;
         this.start = start;
         this.end = end;
         finalized = new HashSet<>();
 
         distTo.put(start, 0.0);
         finalized.add(start);
-        fringe.insert(start, myGraph.estimatedDistanceToGoal(start, end));
-        endBefore = System.currentTimeMillis() + timeout * 1000.0;
+        fringe.insert(start, heuristic.estimate(start, end));
+        this.deadline = deadline;
         solve();
     }
 
@@ -57,12 +110,18 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
      */
     private void solve() {
         long startTime = System.currentTimeMillis();
+        /* The settled vertex with the smallest estimate to end, for partial results. */
+        Vertex closest = start;
+        double closestEstimate = Double.POSITIVE_INFINITY;
         while (!finalized.contains(end)) {
             if (fringe.size() == 0) {
                 result = SolverOutcome.UNSOLVABLE;
                 return;
             }
-            if (System.currentTimeMillis() > endBefore) {
+            if (deadline.isExpired(statesExplored)) {
+                if (deadline.partialResults()) {
+                    gather(closest);
+                }
                 result = SolverOutcome.TIMEOUT;
                 return;
             }
@@ -70,9 +129,13 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
             statesExplored += 1;
             finalized.add(curr);
             if (curr.equals(end)) {
-                gather();
+                gather(end);
                 return;
             }
+            if (deadline.partialResults() && heuristic.estimate(curr, end) < closestEstimate) {
+                closest = curr;
+                closestEstimate = heuristic.estimate(curr, end);
+            }
             List<WeightedEdge<Vertex>> currNeighbours = myGraph.neighbors(curr);
             for (WeightedEdge<Vertex> we : currNeighbours) {
                 if (finalized.contains(we.to())) {
@@ -84,13 +147,13 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
                     double myDistance = distTo.get(curr) + we.weight();
                     if (myDistance < prevDistance) {
                         distTo.put(to, myDistance);
-                        lastNode.put(to, curr);
+                        edgeTo.put(to, we);
                         fringe.changePriority(to, getPriority(to, myDistance));
                     }
                 } else {
                     distTo.put(to, distTo.get(curr) + we.weight());
                     fringe.insert(to, getPriority(to, we.weight() + distTo.get(curr)));
-                    lastNode.put(to, curr);
+                    edgeTo.put(to, we);
                 }
             }
         }
@@ -98,17 +161,21 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
     }
 
     private double getPriority(Vertex v, double dist) {
-        return myGraph.estimatedDistanceToGoal(v, end) + dist;
+        return heuristic.estimate(v, end) + dist;
     }
 
-    private void gather() {
+    private void gather(Vertex last) {
         solution = new LinkedList<>();
-        Vertex curr = end;
+        solutionEdges = new LinkedList<>();
+        Vertex curr = last;
         while (!curr.equals(start)) {
             solution.addFirst(curr);
-            curr = lastNode.get(curr);
+            WeightedEdge<Vertex> edge = edgeTo.get(curr);
+            solutionEdges.addFirst(edge);
+            curr = edge.from();
         }
         solution.addFirst(start);
+        totalWeight = distTo.get(last);
         result = SolverOutcome.SOLVED;
     }
 
@@ -127,7 +194,8 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
 
     /**
      * A list of vertices corresponding to a solution.
-     * Should be empty if result was TIMEOUT or UNSOLVABLE.
+     * Should be empty if result was UNSOLVABLE, or TIMEOUT under a deadline that does not
+     * accept partial results; otherwise a TIMEOUT gives the path found so far.
      *
      * @return A list of vertices corresponding to a solution.
      */
@@ -137,23 +205,25 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
 
     /**
      * The total weight of the given solution, taking into account edge weights.
-     * Should be 0 if result was TIMEOUT or UNSOLVABLE.
+     * Should be 0 if the solution is empty.
      *
      * @return The total weight of the given solution.
      */
     public double solutionWeight() {
-        LinkedList<Vertex> solCopy = new LinkedList<>(this.solution);
-        totalWeight = 0;
-        for (int i = 0; i < solCopy.size(); i++) {
-            Vertex curnode = solCopy.poll();
-            Vertex nextnode = solCopy.peek();
-            totalWeight += myGraph.neighbors(curnode).parallelStream()
-                .filter((we) -> we.to().equals(nextnode))
-                .collect(Collectors.toList()).get(0).weight();
-        }
         return totalWeight;
     }
 
+    /**
+     * The edges along the solution, as they were relaxed during the search, so their
+     * weights and names need not be looked up again.
+     * Should be empty if the solution is.
+     *
+     * @return The edges between consecutive vertices of the solution.
+     */
+    public List<WeightedEdge<Vertex>> solutionEdges() {
+        return solutionEdges;
+    }
+
     /**
      * The total number of priority queue poll() operations.
      * Should be the number of states explored so far if result was TIMEOUT or UNSOLVABLE.
@@ -0,0 +1,246 @@
+package bearmaps.utils.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Alternative routes by the plateau method, from one forward and one backward shortest
+ * path tree.
+ *
+ * A Dijkstra sweep from the start and another, over the reversed graph, into the goal
+ * each stop at MAX_STRETCH times the shortest distance. A plateau is a stretch of road
+ * that lies on both trees: every point on it is reached by a shortest path from the
+ * start and leaves by a shortest path to the goal, so the route through it is locally
+ * shortest along its whole length. Each plateau gives one candidate route, which is
+ * accepted if it is at most MAX_STRETCH times longer than the shortest route, its
+ * plateau is at least MIN_PLATEAU of the shortest distance, so that it is not a pointless
+ * detour, and it shares at most MAX_SHARING of the shortest distance with each route
+ * already accepted. Candidates are tried best first, by the usual via-node ranking:
+ * twice their length, plus what they share with the shortest route, minus their
+ * plateau.
+ *
+ * Finding the alternatives costs two bounded sweeps rather than a search per route, so
+ * asking for several routes takes a small constant factor longer than one plain search.
+ */
+public class AlternativeRoutes {
+
+    /** Alternatives are at most this many times longer than the shortest route. */
+    public static final double MAX_STRETCH = 1.25;
+
+    /** Alternatives share at most this fraction of the shortest distance with another. */
+    public static final double MAX_SHARING = 0.8;
+
+    /** Alternatives are locally shortest for at least this fraction of the distance. */
+    public static final double MIN_PLATEAU = 0.25;
+
+    /** One route found: its path and its length. */
+    public static class Route {
+        private final VertexIdList path;
+        private final double weight;
+
+        Route(VertexIdList path, double weight) {
+            this.path = path;
+            this.weight = weight;
+        }
+
+        /** The vertices along the route, and the edges between them. */
+        public VertexIdList path() {
+            return path;
+        }
+
+        /** The total weight of the route's edges. */
+        public double weight() {
+            return weight;
+        }
+    }
+
+    /**
+     * Returns up to MAXROUTES routes from vertex S to vertex T of G, the shortest first
+     * and then alternatives in ranked order. Empty if T cannot be reached, or if DEADLINE
+     * expires before the shortest route is known; if it expires later, the alternatives
+     * found from the trees so far are returned.
+     */
+    public static List<Route> find(IntGraph g, int s, int t, int maxRoutes,
+                                   Deadline deadline) {
+        if (maxRoutes <= 0) {
+            return Collections.emptyList();
+        }
+        /* Both trees, and the weights of the routes, must see the same weights. */
+        g = g.snapshot();
+        try (SearchWorkspace fwd = SearchWorkspace.acquire(g.numVertices());
+             SearchWorkspace bwd = SearchWorkspace.acquire(g.numVertices())) {
+            return find(g, s, t, maxRoutes, deadline, fwd, bwd);
+        }
+    }
+
+    private static List<Route> find(IntGraph g, int s, int t, int maxRoutes,
+                                    Deadline deadline, SearchWorkspace fwd,
+                                    SearchWorkspace bwd) {
+        List<Integer> forwardOrder = new ArrayList<>();
+        double[] shortest = {Double.POSITIVE_INFINITY};
+        boolean[] expired = {false};
+        IntDijkstra.run(g, fwd, new int[]{s}, Double.POSITIVE_INFINITY, (v, d) -> {
+            if (d > MAX_STRETCH * shortest[0]) {
+                return false;
+            }
+            forwardOrder.add(v);
+            if (v == t) {
+                shortest[0] = d;
+            }
+            if (deadline.isExpired(forwardOrder.size())) {
+                expired[0] = true;
+                return false;
+            }
+            return true;
+        });
+        if (!fwd.isSettled(t)) {
+            return Collections.emptyList();
+        }
+        double best = shortest[0];
+        List<Route> routes = new ArrayList<>();
+        routes.add(path(g, null, fwd, null, s, t, t));
+        if (expired[0] || maxRoutes == 1) {
+            return routes;
+        }
+
+        IntGraph reverse = g.reverse();
+        int[] backwardCount = {0};
+        IntDijkstra.run(reverse, bwd, new int[]{t}, MAX_STRETCH * best, (v, d) -> {
+            backwardCount[0] += 1;
+            if (deadline.isExpired(backwardCount[0])) {
+                expired[0] = true;
+                return false;
+            }
+            return true;
+        });
+        if (expired[0]) {
+            return routes;
+        }
+
+        /* Plateau length up to each vertex, for vertices on a plateau edge, in forward
+         * settle order so a vertex's tree parent is always done before it. */
+        Map<Integer, Double> plateau = new HashMap<>();
+        List<Integer> ends = new ArrayList<>();
+        for (int v : forwardOrder) {
+            if (!bwd.isSettled(v) || fwd.dist(v) + bwd.dist(v) > MAX_STRETCH * best) {
+                continue;
+            }
+            int u = fwd.parent(v);
+            if (u >= 0 && bwd.isSettled(u) && bwd.parent(u) == v) {
+                plateau.put(v, plateau.getOrDefault(u, 0.0) + g.edgeWeight(fwd.parentEdge(v)));
+            }
+        }
+        for (Map.Entry<Integer, Double> entry : plateau.entrySet()) {
+            int v = entry.getKey();
+            int next = bwd.parent(v);
+            boolean continues = next >= 0 && fwd.isSettled(next) && fwd.parent(next) == v
+                && plateau.containsKey(next);
+            if (!continues && v != t && entry.getValue() >= MIN_PLATEAU * best) {
+                ends.add(v);
+            }
+        }
+
+        Set<Integer> shortestEdges = edgeSet(routes.get(0));
+        List<Route> candidates = new ArrayList<>();
+        Map<Route, Double> score = new HashMap<>();
+        for (int v : ends) {
+            Route candidate = path(g, reverse, fwd, bwd, s, t, v);
+            if (candidate == null) {
+                continue;
+            }
+            candidates.add(candidate);
+            score.put(candidate, 2 * candidate.weight()
+                + shared(g, candidate, shortestEdges) - plateau.get(v));
+        }
+        candidates.sort((a, b) -> Double.compare(score.get(a), score.get(b)));
+
+        List<Set<Integer>> accepted = new ArrayList<>();
+        accepted.add(shortestEdges);
+        for (Route candidate : candidates) {
+            if (routes.size() >= maxRoutes) {
+                break;
+            }
+            boolean distinct = true;
+            for (Set<Integer> edges : accepted) {
+                if (shared(g, candidate, edges) > MAX_SHARING * best) {
+                    distinct = false;
+                    break;
+                }
+            }
+            if (distinct) {
+                routes.add(candidate);
+                accepted.add(edgeSet(candidate));
+            }
+        }
+        return routes;
+    }
+
+    /* The route from S along the forward tree to VIA, then along the backward tree to
+     * T, or null if the two halves cross and the route would loop. */
+    private static Route path(IntGraph g, IntGraph reverse, SearchWorkspace fwd,
+                              SearchWorkspace bwd, int s, int t, int via) {
+        List<Integer> vertices = new ArrayList<>();
+        List<Integer> edges = new ArrayList<>();
+        for (int v = via; v != s; v = fwd.parent(v)) {
+            vertices.add(v);
+            edges.add(fwd.parentEdge(v));
+        }
+        vertices.add(s);
+        Collections.reverse(vertices);
+        Collections.reverse(edges);
+        double weight = fwd.dist(via);
+        if (via != t) {
+            Set<Integer> seen = new HashSet<>(vertices);
+            for (int v = via; v != t; ) {
+                int next = bwd.parent(v);
+                if (!seen.add(next)) {
+                    return null;
+                }
+                edges.add(forwardEdge(g, reverse, bwd.parentEdge(v), v, next));
+                vertices.add(next);
+                v = next;
+            }
+            weight += bwd.dist(via);
+        }
+        int[] path = vertices.stream().mapToInt(Integer::intValue).toArray();
+        int[] pathEdges = edges.stream().mapToInt(Integer::intValue).toArray();
+        return new Route(new VertexIdList(g, path, pathEdges), weight);
+    }
+
+    /* The edge of G from V to W that backward search edge E was reversed from. */
+    private static int forwardEdge(IntGraph g, IntGraph reverse, int e, int v, int w) {
+        if (reverse instanceof ReversedGraph) {
+            return ((ReversedGraph) reverse).originalEdge(e);
+        }
+        int found = -1;
+        for (int f = g.edgeBegin(v); f < g.edgeEnd(v); f++) {
+            if (g.edgeTarget(f) == w
+                && (found < 0 || g.edgeWeight(f) < g.edgeWeight(found))) {
+                found = f;
+            }
+        }
+        return found;
+    }
+
+    private static Set<Integer> edgeSet(Route route) {
+        Set<Integer> edges = new HashSet<>();
+        for (int e : route.path().edges()) {
+            edges.add(e);
+        }
+        return edges;
+    }
+
+    /* Total weight of the edges of ROUTE that are also in EDGES. */
+    private static double shared(IntGraph g, Route route, Set<Integer> edges) {
+        return Arrays.stream(route.path().edges())
+            .filter(edges::contains)
+            .mapToDouble(g::edgeWeight)
+            .sum();
+    }
+}
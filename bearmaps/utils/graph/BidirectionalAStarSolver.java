@@ -0,0 +1,223 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.pq.IntHeapPQ;
+
+import java.util.List;
+
+/**
+ * Bidirectional A* over an IntGraph: one search runs forward from the start, the other
+ * runs over graph.reverse() from the end, and the answer is the best meeting point.
+ *
+ * Both searches use the average potential p(v) = (h(v, end) - h(start, v)) / 2, the
+ * forward search adding it to its keys and the backward search subtracting it. This
+ * keeps the two potentials consistent with each other, so the search can stop as soon
+ * as the two smallest fringe keys add up to at least the best path found so far.
+ */
+public class BidirectionalAStarSolver implements ShortestPathsSolver<Long> {
+    private static final int[] EMPTY_PATH = new int[0];
+
+    private final IntGraph graph;
+    private int start;
+    private int end;
+    private SolverOutcome result;
+    private int[] path = EMPTY_PATH;
+    private double totalWeight;
+    private int statesExplored = 0;
+    private long solverTime;
+
+    /* Best start-to-end distance seen so far, and the vertex where it was found. */
+    private double best = Double.POSITIVE_INFINITY;
+    private int meet = -1;
+
+    /**
+     * Finds the shortest path between two vertices given by their OSM ids.
+     * Note that timeout passed in is in seconds.
+     *
+     * @param graph   The graph
+     * @param start   Id of the starting vertex
+     * @param end     Id of the end vertex
+     * @param timeout Time restriction for this activity.
+     */
+    public BidirectionalAStarSolver(IntGraph graph, long start, long end, double timeout) {
+        this(graph, start, end, Deadline.after(timeout));
+    }
+
+    /**
+     * Same as above, but gives up when DEADLINE expires or is cancelled.
+     */
+    public BidirectionalAStarSolver(IntGraph graph, long start, long end, Deadline deadline) {
+        this(graph);
+        run(graph.indexOf(start), graph.indexOf(end), deadline);
+    }
+
+    private BidirectionalAStarSolver(IntGraph graph) {
+        this.graph = graph.snapshot();
+    }
+
+    /**
+     * Finds the shortest path between two vertex indices of GRAPH.
+     */
+    public static BidirectionalAStarSolver fromIndices(IntGraph graph, int start, int end,
+                                                       double timeout) {
+        BidirectionalAStarSolver solver = new BidirectionalAStarSolver(graph);
+        solver.run(start, end, Deadline.after(timeout));
+        return solver;
+    }
+
+    private void run(int startIndex, int endIndex, Deadline deadline) {
+        long startTime = System.currentTimeMillis();
+        this.start = startIndex;
+        this.end = endIndex;
+        if (start < 0 || end < 0) {
+            result = SolverOutcome.UNSOLVABLE;
+        } else {
+            solve(deadline);
+        }
+        solverTime = System.currentTimeMillis() - startTime;
+    }
+
+    private double potential(int v) {
+        return (graph.estimatedDistance(v, end) - graph.estimatedDistance(start, v)) / 2;
+    }
+
+    private void solve(Deadline deadline) {
+        int n = graph.numVertices();
+        try (SearchWorkspace forward = SearchWorkspace.acquire(n);
+             SearchWorkspace backward = SearchWorkspace.acquire(n)) {
+            solve(forward, backward, deadline);
+        }
+    }
+
+    private void solve(SearchWorkspace forward, SearchWorkspace backward, Deadline deadline) {
+        IntGraph reverse = graph.reverse();
+        IntHeapPQ forwardFringe = forward.fringe();
+        IntHeapPQ backwardFringe = backward.fringe();
+
+        forward.reach(start, 0.0, -1);
+        forwardFringe.insert(start, potential(start));
+        backward.reach(end, 0.0, -1);
+        backwardFringe.insert(end, -potential(end));
+
+        while (!forwardFringe.isEmpty() && !backwardFringe.isEmpty()) {
+            if (forwardFringe.peekPriority() + backwardFringe.peekPriority() >= best) {
+                break;
+            }
+            if (deadline.isExpired(statesExplored)) {
+                result = SolverOutcome.TIMEOUT;
+                return;
+            }
+            if (forwardFringe.size() <= backwardFringe.size()) {
+                expand(graph, forward, backward, 1);
+            } else {
+                expand(reverse, backward, forward, -1);
+            }
+        }
+
+        if (meet < 0) {
+            result = SolverOutcome.UNSOLVABLE;
+        } else {
+            gather(forward, backward);
+        }
+    }
+
+    /**
+     * Settles the next vertex of the search recorded in MINE, which runs over G, and
+     * relaxes its edges. SIGN is +1 for the forward search and -1 for the backward one.
+     */
+    private void expand(IntGraph g, SearchWorkspace mine, SearchWorkspace other, int sign) {
+        IntHeapPQ fringe = mine.fringe();
+        int curr = fringe.poll();
+        statesExplored += 1;
+        mine.settle(curr);
+        double currDist = mine.dist(curr);
+        if (other.isReached(curr)) {
+            meetAt(curr, currDist + other.dist(curr));
+        }
+        for (int e = g.edgeBegin(curr); e < g.edgeEnd(curr); e++) {
+            int to = g.edgeTarget(e);
+            if (mine.isSettled(to)) {
+                continue;
+            }
+            double myDistance = currDist + g.edgeWeight(e);
+            if (myDistance == Double.POSITIVE_INFINITY) {
+                /* A closed road. */
+                continue;
+            }
+            if (!mine.isReached(to)) {
+                mine.reach(to, myDistance, curr);
+                fringe.insert(to, myDistance + sign * potential(to));
+            } else if (myDistance < mine.dist(to)) {
+                mine.reach(to, myDistance, curr);
+                fringe.changePriority(to, myDistance + sign * potential(to));
+            } else {
+                continue;
+            }
+            if (other.isReached(to)) {
+                meetAt(to, myDistance + other.dist(to));
+            }
+        }
+    }
+
+    private void meetAt(int v, double distance) {
+        if (distance < best) {
+            best = distance;
+            meet = v;
+        }
+    }
+
+    private void gather(SearchWorkspace forward, SearchWorkspace backward) {
+        int forwardLength = 0;
+        for (int v = meet; v != -1; v = forward.parent(v)) {
+            forwardLength += 1;
+        }
+        int backwardLength = 0;
+        for (int v = backward.parent(meet); v != -1; v = backward.parent(v)) {
+            backwardLength += 1;
+        }
+        path = new int[forwardLength + backwardLength];
+        int v = meet;
+        for (int i = forwardLength - 1; i >= 0; i--) {
+            path[i] = v;
+            v = forward.parent(v);
+        }
+        v = backward.parent(meet);
+        for (int i = forwardLength; i < path.length; i++) {
+            path[i] = v;
+            v = backward.parent(v);
+        }
+        totalWeight = best;
+        result = SolverOutcome.SOLVED;
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return result;
+    }
+
+    @Override
+    public List<Long> solution() {
+        return new VertexIdList(graph, path);
+    }
+
+    /**
+     * The vertex indices along the solution. Do not modify the returned array.
+     */
+    public int[] solutionIndices() {
+        return path;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return totalWeight;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return statesExplored;
+    }
+
+    @Override
+    public double explorationTime() {
+        return (double) solverTime / 1000;
+    }
+}
@@ -0,0 +1,176 @@
+package bearmaps.utils.graph;
+
+import java.util.Arrays;
+
+/**
+ * Strongly and weakly connected component labels of an IntGraph, for telling in O(1)
+ * that a route cannot exist.
+ *
+ * Strong components are found with Tarjan's algorithm, run with an explicit stack so
+ * that a long chain of streets cannot overflow the call stack. Tarjan finishes a
+ * component only after every component reachable from it, so if there is a path from
+ * v to w then strong(v) >= strong(w). Weak components (connectivity ignoring edge
+ * direction) come from a union-find pass. Together the two rule out every pair with no
+ * path between them when the graph is symmetric, and most pairs when it is not.
+ */
+public class Components {
+    private final int[] strong;
+    private final int[] strongSize;
+    private final int[] weak;
+    private final int largestStrong;
+
+    private Components(int[] strong, int[] strongSize, int[] weak) {
+        this.strong = strong;
+        this.strongSize = strongSize;
+        this.weak = weak;
+        int largest = 0;
+        for (int c = 1; c < strongSize.length; c++) {
+            if (strongSize[c] > strongSize[largest]) {
+                largest = c;
+            }
+        }
+        this.largestStrong = largest;
+    }
+
+    /** Labels every vertex of G. Runs in time linear in the size of G. */
+    public static Components of(IntGraph g) {
+        int n = g.numVertices();
+        int[] strong = new int[n];
+        int count = tarjan(g, strong);
+        int[] strongSize = new int[count];
+        for (int v = 0; v < n; v++) {
+            strongSize[strong[v]] += 1;
+        }
+        return new Components(strong, strongSize, weakLabels(g));
+    }
+
+    /* Writes the strong component of each vertex into COMPONENT and returns how many
+     * there are. */
+    private static int tarjan(IntGraph g, int[] component) {
+        int n = g.numVertices();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] nextEdge = new int[n];
+        int[] callStack = new int[n];
+        int[] tarjanStack = new int[n];
+        Arrays.fill(index, -1);
+        Arrays.fill(component, -1);
+        int counter = 0;
+        int components = 0;
+        int tarjanSize = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int callSize = 0;
+            index[root] = low[root] = counter++;
+            nextEdge[root] = g.edgeBegin(root);
+            tarjanStack[tarjanSize++] = root;
+            callStack[callSize++] = root;
+
+            while (callSize > 0) {
+                int v = callStack[callSize - 1];
+                if (nextEdge[v] < g.edgeEnd(v)) {
+                    int w = g.edgeTarget(nextEdge[v]);
+                    nextEdge[v] += 1;
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        nextEdge[w] = g.edgeBegin(w);
+                        tarjanStack[tarjanSize++] = w;
+                        callStack[callSize++] = w;
+                    } else if (component[w] < 0) {
+                        /* W is still on the Tarjan stack. */
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                /* Every edge of V is done: return to its caller. */
+                callSize -= 1;
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = tarjanStack[--tarjanSize];
+                        component[w] = components;
+                    } while (w != v);
+                    components += 1;
+                }
+                if (callSize > 0) {
+                    int parent = callStack[callSize - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+        return components;
+    }
+
+    /* Union-find over all edges, then one label per root. */
+    private static int[] weakLabels(IntGraph g) {
+        int n = g.numVertices();
+        int[] parent = new int[n];
+        for (int v = 0; v < n; v++) {
+            parent[v] = v;
+        }
+        for (int v = 0; v < n; v++) {
+            for (int e = g.edgeBegin(v); e < g.edgeEnd(v); e++) {
+                int a = find(parent, v);
+                int b = find(parent, g.edgeTarget(e));
+                if (a != b) {
+                    parent[Math.max(a, b)] = Math.min(a, b);
+                }
+            }
+        }
+        int[] label = new int[n];
+        int labels = 0;
+        for (int v = 0; v < n; v++) {
+            int root = find(parent, v);
+            label[v] = root == v ? labels++ : label[root];
+        }
+        return label;
+    }
+
+    private static int find(int[] parent, int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]];
+            v = parent[v];
+        }
+        return v;
+    }
+
+    /**
+     * Returns false if there is certainly no path from V to W. True means there may be
+     * one, and always that there is one when both lie in the same strong component.
+     */
+    public boolean mayReach(int v, int w) {
+        return weak[v] == weak[w] && strong[v] >= strong[w];
+    }
+
+    /** Returns the strong component of V. */
+    public int strongComponent(int v) {
+        return strong[v];
+    }
+
+    /** Returns the weak component of V. */
+    public int weakComponent(int v) {
+        return weak[v];
+    }
+
+    public int numStrongComponents() {
+        return strongSize.length;
+    }
+
+    /** Returns the number of vertices in strong component C. */
+    public int strongComponentSize(int c) {
+        return strongSize[c];
+    }
+
+    /** Returns the strong component with the most vertices. */
+    public int largestStrongComponent() {
+        return largestStrong;
+    }
+
+    /** Returns true if V is in the largest strong component. */
+    public boolean inLargest(int v) {
+        return strong[v] == largestStrong;
+    }
+}
@@ -0,0 +1,126 @@
+package bearmaps.utils.graph;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * When a search must give up: a point in time, plus an optional cancellation signal
+ * such as "the client hung up". Handlers create one per request and pass it down, so
+ * an abandoned or overdue request stops burning CPU.
+ *
+ * Solvers should call isExpired(polls) on every poll. That only reads the clock and
+ * the cancellation signal once every CHECK_INTERVAL polls, which keeps the check out of
+ * the profile without letting a search overrun by more than a fraction of a millisecond.
+ */
+public final class Deadline {
+    /** Polls between two real checks. A power of two. */
+    public static final int CHECK_INTERVAL = 256;
+
+    private final long expiresAt;
+    private final BooleanSupplier cancelProbe;
+    private final boolean partialResults;
+    /* Shared by this deadline and every copy made from it. */
+    private final AtomicBoolean cancelled;
+
+    private Deadline(long expiresAt, BooleanSupplier cancelProbe, boolean partialResults,
+                     AtomicBoolean cancelled) {
+        this.expiresAt = expiresAt;
+        this.cancelProbe = cancelProbe;
+        this.partialResults = partialResults;
+        this.cancelled = cancelled;
+    }
+
+    /** A deadline SECONDS from now. */
+    public static Deadline after(double seconds) {
+        if (!(seconds < 1e9)) {
+            return none();
+        }
+        return new Deadline(System.nanoTime() + (long) (seconds * 1e9), null, false,
+            new AtomicBoolean());
+    }
+
+    /** A deadline that never expires unless cancelled. */
+    public static Deadline none() {
+        return new Deadline(Long.MAX_VALUE, null, false, new AtomicBoolean());
+    }
+
+    /**
+     * Returns a copy of this deadline that also counts as expired once PROBE returns
+     * true, as well as whenever this one does. PROBE is called at most once per
+     * CHECK_INTERVAL polls.
+     *
+     * Copies share their cancellation: cancelling a copy cancels this deadline and every
+     * other copy of it, and the other way around.
+     */
+    public Deadline cancelledWhen(BooleanSupplier probe) {
+        BooleanSupplier previous = cancelProbe;
+        BooleanSupplier either = previous == null ? probe
+            : () -> previous.getAsBoolean() || probe.getAsBoolean();
+        return new Deadline(expiresAt, either, partialResults, cancelled);
+    }
+
+    /**
+     * Returns a copy of this deadline that asks solvers which support it to return the
+     * best partial path toward the goal when they run out of time, instead of nothing.
+     * The copy keeps this deadline's probe and shares its cancellation.
+     */
+    public Deadline acceptingPartialResults() {
+        return new Deadline(expiresAt, cancelProbe, true, cancelled);
+    }
+
+    /**
+     * Returns a copy of this deadline that expires SECONDS from now if that is sooner,
+     * for a step that should only use part of the time left. The copy keeps this
+     * deadline's probe and shares its cancellation.
+     */
+    public Deadline capped(double seconds) {
+        if (!(seconds < 1e9)) {
+            return this;
+        }
+        long cap = System.nanoTime() + (long) (seconds * 1e9);
+        if (expiresAt != Long.MAX_VALUE && expiresAt - cap <= 0) {
+            return this;
+        }
+        return new Deadline(cap, cancelProbe, partialResults, cancelled);
+    }
+
+    /** Whether a solver that runs out of time should return a partial path. */
+    public boolean partialResults() {
+        return partialResults;
+    }
+
+    /** Cancels every search using this deadline or a copy of it, from any thread. */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled() {
+        if (!cancelled.get() && cancelProbe != null && cancelProbe.getAsBoolean()) {
+            cancelled.set(true);
+        }
+        return cancelled.get();
+    }
+
+    /** Returns true if time is up or the search was cancelled. Reads the clock. */
+    public boolean isExpired() {
+        return (expiresAt != Long.MAX_VALUE && System.nanoTime() - expiresAt >= 0)
+            || isCancelled();
+    }
+
+    /**
+     * The cheap form of isExpired, for calling on every poll: POLLS is the number of
+     * polls so far, and the real check only runs when it is a multiple of
+     * CHECK_INTERVAL.
+     */
+    public boolean isExpired(int polls) {
+        return (polls & (CHECK_INTERVAL - 1)) == 0 && isExpired();
+    }
+
+    /** Seconds left, or infinity for a deadline that never expires. Never negative. */
+    public double remainingSeconds() {
+        if (expiresAt == Long.MAX_VALUE) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.max(0, (expiresAt - System.nanoTime()) / 1e9);
+    }
+}
@@ -0,0 +1,277 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Multi-threaded single-source shortest paths by delta-stepping (Meyer and Sanders).
+ *
+ * Vertices are kept in buckets of width DELTA by tentative distance. The lowest bucket
+ * is emptied in rounds that relax its light edges (weight at most DELTA) in parallel,
+ * since those may put vertices back into the same bucket; once it stays empty, the heavy
+ * edges of everything it held are relaxed in one more parallel round. A small DELTA does
+ * Dijkstra's work in many short rounds, a large one Bellman-Ford's in a few long ones.
+ *
+ * Tentative distances live in an AtomicLongArray as raw double bits, which for
+ * non-negative doubles order the same way as the doubles, and are lowered by CAS.
+ * Bucket bookkeeping happens between rounds on the calling thread.
+ */
+public class DeltaStepping {
+    /* Frontier pieces per worker thread, so uneven pieces still balance. */
+    private static final int PIECES_PER_THREAD = 4;
+    /* Frontiers smaller than this are relaxed on the calling thread. */
+    private static final int SEQUENTIAL_CUTOFF = 256;
+
+    private final IntGraph g;
+    private final double delta;
+    private final ForkJoinPool pool;
+    private final AtomicLongArray dist;
+    /* Buckets that may hold vertices, by index; entries may be stale. */
+    private final TreeMap<Long, VertexList> buckets = new TreeMap<>();
+    /* round[v] is the last round v was queued for, so each round expands it once. */
+    private final int[] round;
+    private int rounds = 0;
+
+    private DeltaStepping(IntGraph g, double delta, ForkJoinPool pool) {
+        this.g = g.snapshot();
+        this.delta = delta;
+        this.pool = pool;
+        this.dist = new AtomicLongArray(g.numVertices());
+        this.round = new int[g.numVertices()];
+    }
+
+    /**
+     * Returns the distance from the nearest of SOURCES to every vertex of G, with
+     * infinity for vertices that cannot be reached, using buckets of width DELTA and
+     * the threads of POOL. Gives the same distances as IntDijkstra.distancesFrom.
+     */
+    public static double[] distancesFrom(IntGraph g, double delta, ForkJoinPool pool,
+                                         int... sources) {
+        if (!(delta > 0)) {
+            throw new IllegalArgumentException("Delta must be positive, got " + delta);
+        }
+        DeltaStepping search = new DeltaStepping(g, delta, pool);
+        try {
+            return pool.submit(() -> search.run(sources)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Delta-stepping interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Delta-stepping failed", e.getCause());
+        }
+    }
+
+    /**
+     * Same as above, on the common pool and with defaultDelta(G).
+     */
+    public static double[] distancesFrom(IntGraph g, int... sources) {
+        return distancesFrom(g, defaultDelta(g), ForkJoinPool.commonPool(), sources);
+    }
+
+    /**
+     * A bucket width that works well on street graphs: a few times the mean edge weight,
+     * so rounds have enough vertices to share out without redoing much work.
+     */
+    public static double defaultDelta(IntGraph g) {
+        g = g.snapshot();
+        double total = 0;
+        int open = 0;
+        for (int e = 0; e < g.numEdges(); e++) {
+            if (g.edgeWeight(e) < Double.POSITIVE_INFINITY) {
+                total += g.edgeWeight(e);
+                open += 1;
+            }
+        }
+        return open == 0 ? 1 : 4 * total / open;
+    }
+
+    private double[] run(int[] sources) {
+        long infinity = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+        for (int v = 0; v < g.numVertices(); v++) {
+            dist.set(v, infinity);
+        }
+        for (int source : sources) {
+            dist.set(source, 0);
+            bucket(0).add(source);
+        }
+        while (!buckets.isEmpty()) {
+            Map.Entry<Long, VertexList> lowest = buckets.pollFirstEntry();
+            long b = lowest.getKey();
+            VertexList frontier = live(lowest.getValue(), b);
+            VertexList removed = new VertexList();
+            while (frontier.size > 0) {
+                removed.addAll(frontier);
+                frontier = live(relax(frontier, true, b), b);
+            }
+            rounds += 1;
+            VertexList heavyFrom = new VertexList();
+            for (int i = 0; i < removed.size; i++) {
+                if (round[removed.items[i]] != rounds) {
+                    round[removed.items[i]] = rounds;
+                    heavyFrom.add(removed.items[i]);
+                }
+            }
+            relax(heavyFrom, false, b);
+        }
+        double[] result = new double[g.numVertices()];
+        for (int v = 0; v < result.length; v++) {
+            result[v] = Double.longBitsToDouble(dist.get(v));
+        }
+        return result;
+    }
+
+    private VertexList bucket(long b) {
+        return buckets.computeIfAbsent(b, key -> new VertexList());
+    }
+
+    /* Returns the vertices of QUEUED whose distance still falls in bucket B, each once. */
+    private VertexList live(VertexList queued, long b) {
+        rounds += 1;
+        VertexList result = new VertexList();
+        for (int i = 0; i < queued.size; i++) {
+            int v = queued.items[i];
+            if (round[v] != rounds && bucketOf(v) == b) {
+                round[v] = rounds;
+                result.add(v);
+            }
+        }
+        return result;
+    }
+
+    private long bucketOf(int v) {
+        return (long) (Double.longBitsToDouble(dist.get(v)) / delta);
+    }
+
+    /**
+     * Relaxes the light (if LIGHT) or heavy edges out of FROM in parallel. Vertices that
+     * improve into bucket B are returned; the rest are filed into their buckets.
+     */
+    private VertexList relax(VertexList from, boolean light, long b) {
+        int pieces = from.size < SEQUENTIAL_CUTOFF ? 1
+            : pool.getParallelism() * PIECES_PER_THREAD;
+        List<VertexList> improved;
+        if (pieces == 1) {
+            improved = List.of(relaxPiece(from, 0, from.size, light));
+        } else {
+            improved = IntStream.range(0, pieces).parallel()
+                .mapToObj(p -> relaxPiece(from, (int) ((long) from.size * p / pieces),
+                    (int) ((long) from.size * (p + 1) / pieces), light))
+                .collect(Collectors.toList());
+        }
+        VertexList sameBucket = new VertexList();
+        for (VertexList piece : improved) {
+            for (int i = 0; i < piece.size; i++) {
+                int v = piece.items[i];
+                long target = bucketOf(v);
+                if (target == b) {
+                    sameBucket.add(v);
+                } else {
+                    bucket(target).add(v);
+                }
+            }
+        }
+        return sameBucket;
+    }
+
+    /* Relaxes the edges out of FROM[START, END), and returns the vertices it improved. */
+    private VertexList relaxPiece(VertexList from, int start, int end, boolean light) {
+        VertexList improved = new VertexList();
+        for (int i = start; i < end; i++) {
+            int v = from.items[i];
+            double d = Double.longBitsToDouble(dist.get(v));
+            for (int e = g.edgeBegin(v); e < g.edgeEnd(v); e++) {
+                double w = g.edgeWeight(e);
+                if ((w <= delta) == light && lower(g.edgeTarget(e), d + w)) {
+                    improved.add(g.edgeTarget(e));
+                }
+            }
+        }
+        return improved;
+    }
+
+    /* Lowers the distance of V to D if that is an improvement. Returns true if it was. */
+    private boolean lower(int v, double d) {
+        long bits = Double.doubleToRawLongBits(d);
+        while (true) {
+            long current = dist.get(v);
+            if (bits >= current) {
+                return false;
+            }
+            if (dist.compareAndSet(v, current, bits)) {
+                return true;
+            }
+        }
+    }
+
+    /** Growable list of vertex indices. */
+    private static class VertexList {
+        private int[] items = new int[8];
+        private int size = 0;
+
+        void add(int v) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, 2 * size);
+            }
+            items[size++] = v;
+        }
+
+        void addAll(VertexList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.items[i]);
+            }
+        }
+    }
+
+    /**
+     * Times delta-stepping against sequential Dijkstra from random sources, and checks
+     * that both give the same distances.
+     * Usage: java bearmaps.utils.graph.DeltaStepping [osm xml file] [sources] [delta] [threads]
+     * Delta and threads default to defaultDelta and the number of processors.
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: DeltaStepping [osm xml file] [sources] [delta] [threads]");
+            return;
+        }
+        StreetMapGraph graph = new StreetMapGraph(args[0]);
+        int numSources = Integer.parseInt(args[1]);
+        double delta = args.length > 2 ? Double.parseDouble(args[2]) : defaultDelta(graph);
+        int threads = args.length > 3 ? Integer.parseInt(args[3])
+            : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Random random = new Random(17);
+        long parallelTime = 0;
+        long sequentialTime = 0;
+        double maxError = 0;
+        for (int i = 0; i < numSources; i++) {
+            int source = random.nextInt(graph.numVertices());
+            long startTime = System.nanoTime();
+            double[] parallel = distancesFrom(graph, delta, pool, source);
+            long middleTime = System.nanoTime();
+            double[] sequential = IntDijkstra.distancesFrom(graph, source);
+            long endTime = System.nanoTime();
+            parallelTime += middleTime - startTime;
+            sequentialTime += endTime - middleTime;
+            for (int v = 0; v < parallel.length; v++) {
+                if (parallel[v] != sequential[v]) {
+                    maxError = Math.max(maxError, Math.abs(parallel[v] - sequential[v]));
+                }
+            }
+        }
+        pool.shutdown();
+        System.out.println(String.format("%d sources, delta %.1f, %d threads: "
+                + "delta-stepping %.1f ms, Dijkstra %.1f ms per source, max difference %g",
+            numSources, delta, threads, parallelTime / 1e6 / numSources,
+            sequentialTime / 1e6 / numSources, maxError));
+    }
+}
@@ -0,0 +1,86 @@
+package bearmaps.utils.graph;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Many-to-many shortest path distances over an IntGraph.
+ *
+ * Each row is one Dijkstra sweep that stops as soon as every target is settled, and the
+ * sweeps run in parallel on the common fork-join pool, each in its worker's own
+ * SearchWorkspace. When there are fewer targets than sources the sweeps run backwards
+ * from the targets instead, so the number of searches is min(sources, targets).
+ */
+public class DistanceMatrix {
+
+    /**
+     * Returns distances[i][j], the length of the shortest path from SOURCES[i] to
+     * TARGETS[j], or infinity when there is none. A negative index, meaning a point
+     * that could not be snapped, gives a row or column of infinities.
+     */
+    public static double[][] compute(IntGraph g, int[] sources, int[] targets) {
+        /* Every row should see the same weights. */
+        g = g.snapshot();
+        if (targets.length < sources.length) {
+            double[][] transposed = sweeps(g.reverse(), targets, sources);
+            double[][] distances = new double[sources.length][targets.length];
+            for (int i = 0; i < sources.length; i++) {
+                for (int j = 0; j < targets.length; j++) {
+                    distances[i][j] = transposed[j][i];
+                }
+            }
+            return distances;
+        }
+        return sweeps(g, sources, targets);
+    }
+
+    private static double[][] sweeps(IntGraph g, int[] sources, int[] targets) {
+        double[][] distances = new double[sources.length][];
+        IntStream.range(0, sources.length).parallel()
+            .forEach(i -> distances[i] = oneToMany(g, sources[i], targets));
+        return distances;
+    }
+
+    /**
+     * Returns the distance from SOURCE to each of TARGETS, in one sweep.
+     */
+    public static double[] oneToMany(IntGraph g, int source, int[] targets) {
+        double[] row = new double[targets.length];
+        Arrays.fill(row, Double.POSITIVE_INFINITY);
+        if (source < 0) {
+            return row;
+        }
+        try (SearchWorkspace ws = SearchWorkspace.acquire(g.numVertices());
+             SearchWorkspace marks = SearchWorkspace.acquire(g.numVertices())) {
+            sweep(g, source, targets, ws, marks, row);
+        }
+        return row;
+    }
+
+    /* Fills ROW with the distances from SOURCE to TARGETS, marking the targets in MARKS
+     * and searching in WS. */
+    private static void sweep(IntGraph g, int source, int[] targets, SearchWorkspace ws,
+                              SearchWorkspace marks, double[] row) {
+        /* Mark every distinct target so the sweep knows when it has found them all. */
+        int[] remaining = new int[1];
+        for (int t : targets) {
+            if (t >= 0 && !marks.isReached(t)) {
+                marks.reach(t, 0, -1);
+                remaining[0] += 1;
+            }
+        }
+        if (remaining[0] > 0) {
+            IntDijkstra.run(g, ws, new int[]{source}, Double.POSITIVE_INFINITY, (v, d) -> {
+                if (marks.isReached(v)) {
+                    remaining[0] -= 1;
+                }
+                return remaining[0] > 0;
+            });
+        }
+        for (int j = 0; j < targets.length; j++) {
+            if (targets[j] >= 0 && ws.isSettled(targets[j])) {
+                row[j] = ws.dist(targets[j]);
+            }
+        }
+    }
+}
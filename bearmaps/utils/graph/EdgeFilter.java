@@ -0,0 +1,11 @@
+package bearmaps.utils.graph;
+
+/**
+ * Restricts a search to some of the edges of an IntGraph, e.g. those that arc flags
+ * mark as leading toward the goal.
+ */
+@FunctionalInterface
+public interface EdgeFilter {
+    /** Returns true if the search may follow edge E. */
+    boolean allows(int e);
+}
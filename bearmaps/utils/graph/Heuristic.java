@@ -0,0 +1,11 @@
+package bearmaps.utils.graph;
+
+/**
+ * A lower bound on the distance between two vertices, used as the A* potential.
+ * AStarGraph.estimatedDistanceToGoal is the default; anything tighter (such as landmark
+ * bounds) lets A* settle fewer vertices, as long as it never overestimates.
+ */
+@FunctionalInterface
+public interface Heuristic<Vertex> {
+    double estimate(Vertex v, Vertex goal);
+}
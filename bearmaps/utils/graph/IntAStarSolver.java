@@ -0,0 +1,315 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.pq.IntHeapPQ;
+
+import java.util.List;
+
+/**
+ * A* over the dense vertex indices of an IntGraph. Same contract as AStarSolver, but
+ * distances, parents and the fringe live in this thread's SearchWorkspace, so a query
+ * allocates little beyond the solver itself and the final path.
+ */
+public class IntAStarSolver implements ShortestPathsSolver<Long> {
+    private static final int[] EMPTY_PATH = new int[0];
+    private static final double[] NO_OFFSET = {0.0};
+
+    private final IntGraph graph;
+    private final IntHeuristic heuristic;
+    /* Edges the search may follow, or null for all of them. */
+    private final EdgeFilter filter;
+    private SolverOutcome result;
+    /* Vertex indices of the solution, start first. */
+    private int[] path = EMPTY_PATH;
+    /* edges[i] is the edge from path[i] to path[i + 1]. */
+    private int[] edges = EMPTY_PATH;
+    private double totalWeight;
+    private int statesExplored = 0;
+    private long solverTime;
+
+    /**
+     * Finds the shortest path between two vertices given by their OSM ids.
+     * Note that timeout passed in is in seconds.
+     *
+     * @param graph   The graph
+     * @param start   Id of the starting vertex
+     * @param end     Id of the end vertex
+     * @param timeout Time restriction for this activity.
+     */
+    public IntAStarSolver(IntGraph graph, long start, long end, double timeout) {
+        this(graph, start, end, Deadline.after(timeout));
+    }
+
+    /**
+     * Same as above, but gives up when DEADLINE expires or is cancelled. If DEADLINE
+     * accepts partial results, a search that gives up still returns the path to the
+     * vertex it settled closest to the goal, with outcome TIMEOUT.
+     */
+    public IntAStarSolver(IntGraph graph, long start, long end, Deadline deadline) {
+        this(graph, start, end, deadline, graph::estimatedDistance);
+    }
+
+    /**
+     * Same as above, but guided by HEURISTIC instead of graph.estimatedDistance.
+     * HEURISTIC must never overestimate.
+     */
+    public IntAStarSolver(IntGraph graph, long start, long end, double timeout,
+                          IntHeuristic heuristic) {
+        this(graph, start, end, Deadline.after(timeout), heuristic);
+    }
+
+    /**
+     * Same as above, with a deadline.
+     */
+    public IntAStarSolver(IntGraph graph, long start, long end, Deadline deadline,
+                          IntHeuristic heuristic) {
+        this(graph, heuristic, null);
+        run(graph.indexOf(start), graph.indexOf(end), deadline);
+    }
+
+    private IntAStarSolver(IntGraph graph, IntHeuristic heuristic, EdgeFilter filter) {
+        this.graph = graph.snapshot();
+        this.heuristic = heuristic;
+        this.filter = filter;
+    }
+
+    /**
+     * Finds the shortest path between two vertex indices of GRAPH.
+     */
+    public static IntAStarSolver fromIndices(IntGraph graph, int start, int end, double timeout) {
+        return fromIndices(graph, start, end, Deadline.after(timeout), graph::estimatedDistance);
+    }
+
+    /**
+     * Finds the shortest path between two vertex indices of GRAPH, guided by HEURISTIC.
+     */
+    public static IntAStarSolver fromIndices(IntGraph graph, int start, int end, double timeout,
+                                             IntHeuristic heuristic) {
+        return fromIndices(graph, start, end, Deadline.after(timeout), heuristic);
+    }
+
+    /**
+     * Finds the shortest path between two vertex indices of GRAPH, guided by HEURISTIC,
+     * giving up when DEADLINE expires.
+     */
+    public static IntAStarSolver fromIndices(IntGraph graph, int start, int end,
+                                             Deadline deadline, IntHeuristic heuristic) {
+        return fromIndices(graph, start, end, deadline, heuristic, null);
+    }
+
+    /**
+     * Same as above, but only follows the edges FILTER allows, or all edges if FILTER is
+     * null. The result is only a shortest path if FILTER keeps at least one shortest path
+     * to END.
+     */
+    public static IntAStarSolver fromIndices(IntGraph graph, int start, int end,
+                                             Deadline deadline, IntHeuristic heuristic,
+                                             EdgeFilter filter) {
+        IntAStarSolver solver = new IntAStarSolver(graph, heuristic, filter);
+        solver.run(start, end, deadline);
+        return solver;
+    }
+
+    /**
+     * Finds the shortest path from any of STARTS to any of ENDS, where starting at
+     * STARTS[i] costs STARTOFFSETS[i] up front and finishing at ENDS[j] costs
+     * ENDOFFSETS[j] on top. This is how a route begins and ends part-way along an edge:
+     * the seeds are the edge's ends, and the offsets the distance along it. The
+     * solution holds only real vertices, from the chosen start to the chosen end, while
+     * solutionWeight includes both offsets. All offsets must be non-negative.
+     */
+    public static IntAStarSolver fromSeeds(IntGraph graph, int[] starts, double[] startOffsets,
+                                           int[] ends, double[] endOffsets,
+                                           Deadline deadline) {
+        return fromSeeds(graph, starts, startOffsets, ends, endOffsets, deadline, null);
+    }
+
+    /**
+     * Same as above, but only follows the edges FILTER allows, or all edges if FILTER is
+     * null. The result is only a shortest path if FILTER keeps a shortest path to each
+     * of ENDS.
+     */
+    public static IntAStarSolver fromSeeds(IntGraph graph, int[] starts, double[] startOffsets,
+                                           int[] ends, double[] endOffsets,
+                                           Deadline deadline, EdgeFilter filter) {
+        IntAStarSolver solver = new IntAStarSolver(graph, graph::estimatedDistance, filter);
+        long startTime = System.currentTimeMillis();
+        if (starts.length == 0 || ends.length == 0) {
+            solver.result = SolverOutcome.UNSOLVABLE;
+        } else {
+            solver.solve(starts, startOffsets, ends, endOffsets, deadline);
+        }
+        solver.solverTime = System.currentTimeMillis() - startTime;
+        return solver;
+    }
+
+    private void run(int start, int end, Deadline deadline) {
+        long startTime = System.currentTimeMillis();
+        if (start < 0 || end < 0) {
+            result = SolverOutcome.UNSOLVABLE;
+        } else {
+            solve(new int[] {start}, NO_OFFSET, new int[] {end}, NO_OFFSET, deadline);
+        }
+        solverTime = System.currentTimeMillis() - startTime;
+    }
+
+    private void solve(int[] starts, double[] startOffsets, int[] ends, double[] endOffsets,
+                       Deadline deadline) {
+        try (SearchWorkspace ws = SearchWorkspace.acquire(graph.numVertices())) {
+            solve(ws, starts, startOffsets, ends, endOffsets, deadline);
+        }
+    }
+
+    private void solve(SearchWorkspace ws, int[] starts, double[] startOffsets, int[] ends,
+                       double[] endOffsets, Deadline deadline) {
+        IntHeapPQ fringe = ws.fringe();
+        for (int i = 0; i < starts.length; i++) {
+            int start = starts[i];
+            if (!ws.isReached(start)) {
+                ws.reach(start, startOffsets[i], -1);
+                fringe.insert(start, startOffsets[i] + estimate(start, ends, endOffsets));
+            } else if (startOffsets[i] < ws.dist(start)) {
+                ws.reach(start, startOffsets[i], -1);
+                fringe.changePriority(start,
+                    startOffsets[i] + estimate(start, ends, endOffsets));
+            }
+        }
+        /* The settled vertex with the smallest estimate to the end, for partial results. */
+        int closest = -1;
+        double closestEstimate = Double.POSITIVE_INFINITY;
+        /* The best way found so far to finish through an end with an offset. */
+        double best = Double.POSITIVE_INFINITY;
+        int bestEnd = -1;
+
+        while (!fringe.isEmpty() && fringe.peekPriority() < best) {
+            if (deadline.isExpired(statesExplored)) {
+                if (deadline.partialResults() && closest >= 0) {
+                    gather(ws, closest);
+                }
+                result = SolverOutcome.TIMEOUT;
+                return;
+            }
+            double priority = fringe.peekPriority();
+            int curr = fringe.poll();
+            statesExplored += 1;
+            ws.settle(curr);
+            double currDist = ws.dist(curr);
+            for (int j = 0; j < ends.length; j++) {
+                if (ends[j] != curr) {
+                    continue;
+                }
+                if (endOffsets[j] == 0) {
+                    /* Nothing left in the fringe can finish for less than CURRDIST. */
+                    gather(ws, curr);
+                    return;
+                } else if (currDist + endOffsets[j] < best) {
+                    best = currDist + endOffsets[j];
+                    bestEnd = curr;
+                }
+            }
+            if (deadline.partialResults() && priority - currDist < closestEstimate) {
+                closest = curr;
+                closestEstimate = priority - currDist;
+            }
+            for (int e = graph.edgeBegin(curr); e < graph.edgeEnd(curr); e++) {
+                int to = graph.edgeTarget(e);
+                if (ws.isSettled(to) || filter != null && !filter.allows(e)) {
+                    continue;
+                }
+                double myDistance = currDist + graph.edgeWeight(e);
+                if (myDistance == Double.POSITIVE_INFINITY) {
+                    /* A closed road. */
+                    continue;
+                }
+                if (!ws.isReached(to)) {
+                    ws.reach(to, myDistance, curr, e);
+                    fringe.insert(to, myDistance + estimate(to, ends, endOffsets));
+                } else if (myDistance < ws.dist(to)) {
+                    ws.reach(to, myDistance, curr, e);
+                    fringe.changePriority(to, myDistance + estimate(to, ends, endOffsets));
+                }
+            }
+        }
+        if (bestEnd >= 0) {
+            gather(ws, bestEnd);
+            totalWeight = best;
+        } else {
+            result = SolverOutcome.UNSOLVABLE;
+        }
+    }
+
+    /* Lower bound on the cost of finishing from V through any of ENDS. */
+    private double estimate(int v, int[] ends, double[] endOffsets) {
+        double result = heuristic.estimate(v, ends[0]) + endOffsets[0];
+        for (int j = 1; j < ends.length; j++) {
+            result = Math.min(result, heuristic.estimate(v, ends[j]) + endOffsets[j]);
+        }
+        return result;
+    }
+
+    /* Records the path from its search root to LAST as the solution. */
+    private void gather(SearchWorkspace ws, int last) {
+        int length = 1;
+        for (int v = last; ws.parent(v) >= 0; v = ws.parent(v)) {
+            length += 1;
+        }
+        path = new int[length];
+        edges = new int[length - 1];
+        int v = last;
+        for (int i = length - 1; i >= 0; i--) {
+            path[i] = v;
+            if (i > 0) {
+                edges[i - 1] = ws.parentEdge(v);
+            }
+            v = ws.parent(v);
+        }
+        totalWeight = ws.dist(last);
+        result = SolverOutcome.SOLVED;
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return result;
+    }
+
+    /**
+     * The OSM ids along the solution, or an empty list if result was TIMEOUT or
+     * UNSOLVABLE. A TIMEOUT under a deadline accepting partial results instead gives
+     * the path toward the goal found so far. The list is a read-only view over the
+     * solution's vertex indices, and carries the edges taken so directions need not look
+     * them up again.
+     */
+    @Override
+    public List<Long> solution() {
+        return new VertexIdList(graph, path, edges);
+    }
+
+    /**
+     * The vertex indices along the solution. Do not modify the returned array.
+     */
+    public int[] solutionIndices() {
+        return path;
+    }
+
+    /**
+     * The edge indices along the solution: the Ith leads from the Ith vertex to the
+     * next. Do not modify the returned array.
+     */
+    public int[] solutionEdges() {
+        return edges;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return totalWeight;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return statesExplored;
+    }
+
+    @Override
+    public double explorationTime() {
+        return (double) solverTime / 1000;
+    }
+}
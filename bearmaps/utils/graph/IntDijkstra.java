@@ -0,0 +1,127 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.pq.IntPriorityQueue;
+
+import java.util.Arrays;
+
+/**
+ * Plain Dijkstra over an IntGraph, for searches that have no single goal: distance
+ * tables, one-to-many sweeps and reachability queries.
+ */
+public class IntDijkstra {
+
+    /**
+     * Called for every vertex in the order it is settled.
+     */
+    @FunctionalInterface
+    public interface SettleVisitor {
+        /* Returns false to stop the search after V. */
+        boolean settled(int v, double distance);
+    }
+
+    /**
+     * Runs Dijkstra over G from every vertex in SOURCES at distance 0, recording
+     * distances, parents and parent edges in WS, which the caller obtains and later
+     * reads. Stops when the next vertex would be farther than BUDGET, when VISITOR
+     * returns false, or when everything reachable is settled.
+     *
+     * @return The number of vertices settled.
+     */
+    public static int run(IntGraph g, SearchWorkspace ws, int[] sources, double budget,
+                          SettleVisitor visitor) {
+        return run(g, ws, ws.monotoneFringe(), sources, budget, visitor);
+    }
+
+    /**
+     * Same as above, but keeps the fringe in FRINGE, which must be empty: ws.fringe()
+     * for a binary-heap fringe, or ws.monotoneFringe(), the default, for a radix heap.
+     * Dijkstra only ever inserts distances at least as large as the one it last polled,
+     * so the radix heap's monotonicity contract always holds here.
+     */
+    public static int run(IntGraph g, SearchWorkspace ws, IntPriorityQueue fringe,
+                          int[] sources, double budget, SettleVisitor visitor) {
+        g = g.snapshot();
+        for (int source : sources) {
+            if (!ws.isReached(source)) {
+                ws.reach(source, 0.0, -1);
+                fringe.insert(source, 0.0);
+            }
+        }
+        int settled = 0;
+        while (!fringe.isEmpty()) {
+            if (fringe.peekPriority() > budget) {
+                break;
+            }
+            int curr = fringe.poll();
+            ws.settle(curr);
+            settled += 1;
+            double currDist = ws.dist(curr);
+            if (!visitor.settled(curr, currDist)) {
+                break;
+            }
+            for (int e = g.edgeBegin(curr); e < g.edgeEnd(curr); e++) {
+                int to = g.edgeTarget(e);
+                if (ws.isSettled(to)) {
+                    continue;
+                }
+                double myDistance = currDist + g.edgeWeight(e);
+                if (myDistance == Double.POSITIVE_INFINITY) {
+                    /* A closed road. */
+                    continue;
+                }
+                if (!ws.isReached(to)) {
+                    ws.reach(to, myDistance, curr, e);
+                    fringe.insert(to, myDistance);
+                } else if (myDistance < ws.dist(to)) {
+                    ws.reach(to, myDistance, curr, e);
+                    fringe.changePriority(to, myDistance);
+                }
+            }
+        }
+        return settled;
+    }
+
+    /**
+     * Returns every vertex within BUDGET of SOURCE, in the order they were settled, so
+     * SOURCE comes first.
+     */
+    public static int[] settledWithin(IntGraph g, int source, double budget) {
+        return settledWithin(g, source, budget, Deadline.none());
+    }
+
+    /**
+     * Same as above, but stops when DEADLINE expires or is cancelled, and returns only
+     * the vertices settled by then.
+     */
+    public static int[] settledWithin(IntGraph g, int source, double budget,
+                                      Deadline deadline) {
+        int[][] settled = {new int[16]};
+        int[] count = new int[1];
+        try (SearchWorkspace ws = SearchWorkspace.acquire(g.numVertices())) {
+            run(g, ws, new int[]{source}, budget, (v, d) -> {
+                if (count[0] == settled[0].length) {
+                    settled[0] = Arrays.copyOf(settled[0], 2 * count[0]);
+                }
+                settled[0][count[0]++] = v;
+                return !deadline.isExpired(count[0]);
+            });
+        }
+        return Arrays.copyOf(settled[0], count[0]);
+    }
+
+    /**
+     * Returns the distance from the nearest of SOURCES to every vertex of G, with
+     * infinity for vertices that cannot be reached.
+     */
+    public static double[] distancesFrom(IntGraph g, int... sources) {
+        double[] dist = new double[g.numVertices()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        try (SearchWorkspace ws = SearchWorkspace.acquire(g.numVertices())) {
+            run(g, ws, sources, Double.POSITIVE_INFINITY, (v, d) -> {
+                dist[v] = d;
+                return true;
+            });
+        }
+        return dist;
+    }
+}
@@ -0,0 +1,33 @@
+package bearmaps.utils.graph;
+
+/**
+ * A graph over dense int vertex indices 0 .. numVertices() - 1, with the out-edges
+ * of each vertex stored contiguously as edge indices edgeBegin(v) .. edgeEnd(v) - 1.
+ * Solvers written against this interface never box vertices or allocate edge objects.
+ */
+public interface IntGraph {
+    int numVertices();
+    int numEdges();
+    int edgeBegin(int v);
+    int edgeEnd(int v);
+    int edgeTarget(int e);
+    double edgeWeight(int e);
+
+    /* Lower bound on the distance from V to GOAL. */
+    double estimatedDistance(int v, int goal);
+
+    /* Maps between vertex indices and the external (OSM) vertex ids. indexOf returns -1
+       for unknown ids. */
+    long idAt(int v);
+    int indexOf(long id);
+
+    /* Returns the graph with every edge reversed, sharing this graph's vertex indices. */
+    IntGraph reverse();
+
+    /* Returns a view of this graph whose edge weights will not change while it is in use,
+       for one search to read throughout. An edge of infinite weight is closed and must not
+       be followed. Graphs whose weights never change return themselves. */
+    default IntGraph snapshot() {
+        return this;
+    }
+}
@@ -0,0 +1,10 @@
+package bearmaps.utils.graph;
+
+/**
+ * Heuristic over the vertex indices of an IntGraph. The same contract as Heuristic, but
+ * without boxing. IntGraph.estimatedDistance is the default.
+ */
+@FunctionalInterface
+public interface IntHeuristic {
+    double estimate(int v, int goal);
+}
@@ -0,0 +1,117 @@
+package bearmaps.utils.graph;
+
+/**
+ * The transpose of an IntGraph: for every edge u -> v of the original graph this graph
+ * has an edge v -> u with the same weight. Vertex indices are shared with the original,
+ * and originalEdge maps each reversed edge back to the edge it came from.
+ */
+public class ReversedGraph implements IntGraph {
+    private final IntGraph original;
+    /* In-edges of v in the original graph are edgeSource[edgeStart[v] .. edgeStart[v + 1]). */
+    private final int[] edgeStart;
+    private final int[] edgeSource;
+    private final int[] originalEdge;
+
+    public ReversedGraph(IntGraph original) {
+        this.original = original;
+        int n = original.numVertices();
+        int m = original.numEdges();
+        edgeStart = new int[n + 1];
+        edgeSource = new int[m];
+        originalEdge = new int[m];
+        for (int e = 0; e < m; e++) {
+            edgeStart[original.edgeTarget(e) + 1] += 1;
+        }
+        for (int v = 0; v < n; v++) {
+            edgeStart[v + 1] += edgeStart[v];
+        }
+        int[] fill = new int[n];
+        System.arraycopy(edgeStart, 0, fill, 0, n);
+        for (int u = 0; u < n; u++) {
+            for (int e = original.edgeBegin(u); e < original.edgeEnd(u); e++) {
+                int slot = fill[original.edgeTarget(e)]++;
+                edgeSource[slot] = u;
+                originalEdge[slot] = e;
+            }
+        }
+    }
+
+    /* Shares TOPOLOGY's arrays, for an original with the same vertices and edges. */
+    private ReversedGraph(ReversedGraph topology, IntGraph original) {
+        this.original = original;
+        this.edgeStart = topology.edgeStart;
+        this.edgeSource = topology.edgeSource;
+        this.originalEdge = topology.originalEdge;
+    }
+
+    /**
+     * Returns the reverse of ORIGINAL, which must have the same vertices and edges as
+     * this graph's original and differ at most in its weights. Unlike the constructor,
+     * this takes constant time, as the arrays are shared with this graph.
+     */
+    public ReversedGraph over(IntGraph original) {
+        return new ReversedGraph(this, original);
+    }
+
+    /** Returns the edge of the original graph that reversed edge E was made from. */
+    public int originalEdge(int e) {
+        return originalEdge[e];
+    }
+
+    @Override
+    public int numVertices() {
+        return original.numVertices();
+    }
+
+    @Override
+    public int numEdges() {
+        return edgeSource.length;
+    }
+
+    @Override
+    public int edgeBegin(int v) {
+        return edgeStart[v];
+    }
+
+    @Override
+    public int edgeEnd(int v) {
+        return edgeStart[v + 1];
+    }
+
+    @Override
+    public int edgeTarget(int e) {
+        return edgeSource[e];
+    }
+
+    @Override
+    public double edgeWeight(int e) {
+        return original.edgeWeight(originalEdge[e]);
+    }
+
+    @Override
+    public double estimatedDistance(int v, int goal) {
+        return original.estimatedDistance(goal, v);
+    }
+
+    @Override
+    public long idAt(int v) {
+        return original.idAt(v);
+    }
+
+    @Override
+    public int indexOf(long id) {
+        return original.indexOf(id);
+    }
+
+    @Override
+    public IntGraph reverse() {
+        return original;
+    }
+
+    /** The reverse of the original's snapshot, so its weights stay put too. */
+    @Override
+    public IntGraph snapshot() {
+        IntGraph snapshot = original.snapshot();
+        return snapshot == original ? this : snapshot.reverse();
+    }
+}
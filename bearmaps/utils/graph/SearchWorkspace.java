@@ -0,0 +1,174 @@
+package bearmaps.utils.graph;
+
+import bearmaps.utils.pq.IntHeapPQ;
+import bearmaps.utils.pq.IntRadixHeapPQ;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reusable scratch space for searches over an IntGraph.
+ *
+ * Instead of clearing its arrays between searches, a workspace stamps every entry it
+ * writes with the current epoch, and treats entries carrying an older stamp as unset.
+ * reset() therefore only bumps the epoch (and empties the fringe), so a search pays
+ * for the vertices it touches rather than for the size of the graph.
+ *
+ * Workspaces are checked out of a shared pool with acquire and handed back with close,
+ * best in a try-with-resources block, rather than kept per thread: requests each run on
+ * a fresh virtual thread, which would otherwise build and zero new arrays the size of
+ * the graph for every search. A search needing two at once, one per direction, simply
+ * acquires two. Everything a solver needs from a workspace must be copied out before
+ * it is closed.
+ */
+public class SearchWorkspace implements AutoCloseable {
+    /* Most idle workspaces kept: about as many as searches that run at once. */
+    private static final int MAX_POOLED = 4 * Runtime.getRuntime().availableProcessors();
+
+    private static final ConcurrentLinkedQueue<SearchWorkspace> POOL =
+        new ConcurrentLinkedQueue<>();
+    /* POOL's size, which the queue itself can only count by walking it. */
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private double[] dist;
+    private int[] parent;
+    private int[] parentEdge;
+    /* reached[v] == epoch iff dist[v] and parent[v] were written during this search. */
+    private int[] reached;
+    /* settled[v] == epoch iff v was settled during this search. */
+    private int[] settled;
+    private int epoch;
+    private IntHeapPQ fringe;
+    /* Built the first time a search asks for it. */
+    private IntRadixHeapPQ monotoneFringe;
+    /* Whether this workspace is idle in POOL, so closing it twice cannot pool it twice. */
+    private boolean idle;
+
+    private SearchWorkspace(int capacity) {
+        dist = new double[capacity];
+        parent = new int[capacity];
+        parentEdge = new int[capacity];
+        reached = new int[capacity];
+        settled = new int[capacity];
+        epoch = 1;
+        fringe = new IntHeapPQ(capacity);
+    }
+
+    /**
+     * Returns an idle workspace, reset and large enough for a graph with NUMVERTICES
+     * vertices, for the caller's use alone until it closes it. Pooled workspaces too
+     * small for the graph are dropped.
+     */
+    public static SearchWorkspace acquire(int numVertices) {
+        SearchWorkspace workspace;
+        while ((workspace = POOL.poll()) != null) {
+            POOLED.decrementAndGet();
+            synchronized (workspace) {
+                workspace.idle = false;
+            }
+            if (workspace.capacity() >= numVertices) {
+                workspace.reset();
+                return workspace;
+            }
+        }
+        return new SearchWorkspace(numVertices);
+    }
+
+    /**
+     * Hands this workspace back to the pool, or drops it if the pool is full. It must
+     * not be used again.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (idle) {
+                return;
+            }
+            idle = true;
+        }
+        if (POOLED.incrementAndGet() <= MAX_POOLED) {
+            POOL.offer(this);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    public int capacity() {
+        return reached.length;
+    }
+
+    /** Forgets everything recorded since the last reset, in O(1) plus the fringe size. */
+    public void reset() {
+        fringe.clear();
+        if (monotoneFringe != null) {
+            monotoneFringe.clear();
+        }
+        if (epoch == Integer.MAX_VALUE) {
+            Arrays.fill(reached, 0);
+            Arrays.fill(settled, 0);
+            epoch = 0;
+        }
+        epoch += 1;
+    }
+
+    /** The fringe for this search. It is emptied on every reset. */
+    public IntHeapPQ fringe() {
+        return fringe;
+    }
+
+    /**
+     * A radix heap fringe for this search, for searches whose priorities never drop
+     * below the last one polled (see IntRadixHeapPQ). It is emptied on every reset.
+     */
+    public IntRadixHeapPQ monotoneFringe() {
+        if (monotoneFringe == null) {
+            monotoneFringe = new IntRadixHeapPQ(capacity());
+        }
+        return monotoneFringe;
+    }
+
+    /** Returns true if V has been given a distance during this search. */
+    public boolean isReached(int v) {
+        return reached[v] == epoch;
+    }
+
+    /** Returns the best known distance to V, or infinity if V has not been reached. */
+    public double dist(int v) {
+        return reached[v] == epoch ? dist[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /** Returns the vertex V was reached from, or -1 for a search root. */
+    public int parent(int v) {
+        return parent[v];
+    }
+
+    /** Returns the edge V was reached through, or -1 if none was recorded. */
+    public int parentEdge(int v) {
+        return parentEdge[v];
+    }
+
+    /** Records that V is reachable with distance DISTANCE through PARENTVERTEX. */
+    public void reach(int v, double distance, int parentVertex) {
+        reach(v, distance, parentVertex, -1);
+    }
+
+    /**
+     * Records that V is reachable with distance DISTANCE through edge EDGE out of
+     * PARENTVERTEX, so the path can later be read back edge by edge.
+     */
+    public void reach(int v, double distance, int parentVertex, int edge) {
+        reached[v] = epoch;
+        dist[v] = distance;
+        parent[v] = parentVertex;
+        parentEdge[v] = edge;
+    }
+
+    public boolean isSettled(int v) {
+        return settled[v] == epoch;
+    }
+
+    public void settle(int v) {
+        settled[v] = epoch;
+    }
+}
@@ -0,0 +1,16 @@
+package bearmaps.utils.graph;
+
+/**
+ * Creates a solver for one query, so callers such as the Router can switch shortest
+ * path algorithms without knowing how each one is constructed.
+ */
+@FunctionalInterface
+public interface SolverFactory<G, Vertex> {
+    ShortestPathsSolver<Vertex> create(G graph, Vertex start, Vertex end, Deadline deadline);
+
+    /** Same as above, with a deadline TIMEOUT seconds from now. */
+    default ShortestPathsSolver<Vertex> create(G graph, Vertex start, Vertex end,
+                                               double timeout) {
+        return create(graph, start, end, Deadline.after(timeout));
+    }
+}
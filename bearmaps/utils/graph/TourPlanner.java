@@ -0,0 +1,248 @@
+package bearmaps.utils.graph;
+
+/**
+ * Orders the stops of a multi-stop trip, given the travel distance between every pair,
+ * with the classic travelling salesman heuristics: nearest insertion builds a tour, and
+ * 2-opt and Or-opt moves then improve it until no move helps or the deadline expires.
+ * Neither is guaranteed optimal, but on the tens of stops of a delivery run the result is
+ * typically within a few percent of it, in milliseconds.
+ *
+ * The first stop is always where the trip starts. Trips either end at whichever stop
+ * comes last or return to the first. Distances may be asymmetric, as one-way streets
+ * make them, so every move is costed in the direction it will be driven.
+ */
+public class TourPlanner {
+
+    /** Improvements smaller than this are not worth another pass. */
+    private static final double EPSILON = 1e-9;
+
+    /** Longest run of stops Or-opt moves as a block. */
+    private static final int MAX_OR_OPT_SEGMENT = 3;
+
+    private final double[][] cost;
+    private final boolean roundTrip;
+    private final int n;
+    private int[] tour;
+
+    private TourPlanner(double[][] distances, boolean roundTrip) {
+        this.n = distances.length;
+        this.roundTrip = roundTrip;
+        this.cost = finiteCosts(distances);
+    }
+
+    /**
+     * Returns an order in which to visit every stop, as indices into DISTANCES,
+     * starting with stop 0.
+     *
+     * @param distances distances[i][j] is the travel distance from stop i to stop j,
+     *                  infinite if there is no route. Legs with no route are avoided
+     *                  where possible.
+     * @param roundTrip Whether the trip returns to stop 0 at the end.
+     * @param deadline  When to stop improving the order and return the best so far.
+     */
+    public static int[] order(double[][] distances, boolean roundTrip, Deadline deadline) {
+        TourPlanner planner = new TourPlanner(distances, roundTrip);
+        if (planner.n == 0) {
+            return new int[0];
+        }
+        planner.nearestInsertion();
+        boolean improved = true;
+        while (improved && !deadline.isExpired()) {
+            improved = planner.twoOpt(deadline) | planner.orOpt(deadline);
+        }
+        return planner.tour;
+    }
+
+    /**
+     * Returns the total distance of driving the stops in ORDER, including the way back
+     * to the first stop if ROUNDTRIP.
+     */
+    public static double length(double[][] distances, int[] order, boolean roundTrip) {
+        double total = 0;
+        for (int i = 0; i + 1 < order.length; i++) {
+            total += distances[order[i]][order[i + 1]];
+        }
+        if (roundTrip && order.length > 1) {
+            total += distances[order[order.length - 1]][order[0]];
+        }
+        return total;
+    }
+
+    /* Replaces infinite distances with a penalty larger than any tour of finite legs,
+     * so the heuristics' arithmetic stays meaningful and such legs are used last. */
+    private static double[][] finiteCosts(double[][] distances) {
+        double longest = 0;
+        for (double[] row : distances) {
+            for (double d : row) {
+                if (d != Double.POSITIVE_INFINITY) {
+                    longest = Math.max(longest, d);
+                }
+            }
+        }
+        double penalty = (longest + 1) * (distances.length + 1);
+        double[][] cost = new double[distances.length][];
+        for (int i = 0; i < distances.length; i++) {
+            cost[i] = new double[distances[i].length];
+            for (int j = 0; j < cost[i].length; j++) {
+                cost[i][j] = distances[i][j] == Double.POSITIVE_INFINITY
+                    ? penalty : distances[i][j];
+            }
+        }
+        return cost;
+    }
+
+    /* The cost of the leg out of tour position I, which is nothing for the last stop
+     * of a trip that does not return. */
+    private double next(int i) {
+        if (i + 1 < n) {
+            return cost[tour[i]][tour[i + 1]];
+        }
+        return roundTrip ? cost[tour[i]][tour[0]] : 0;
+    }
+
+    /* The stop after tour position I, or -1 if the trip ends there. */
+    private int after(int i) {
+        if (i + 1 < n) {
+            return tour[i + 1];
+        }
+        return roundTrip ? tour[0] : -1;
+    }
+
+    private double leg(int from, int to) {
+        return from < 0 || to < 0 ? 0 : cost[from][to];
+    }
+
+    /* Repeatedly adds the stop closest to the tour so far, where it lengthens it least. */
+    private void nearestInsertion() {
+        tour = new int[n];
+        tour[0] = 0;
+        int size = 1;
+        boolean[] inTour = new boolean[n];
+        inTour[0] = true;
+        /* Distance from each stop to the nearest stop already in the tour, either way. */
+        double[] nearest = new double[n];
+        for (int k = 0; k < n; k++) {
+            nearest[k] = Math.min(cost[0][k], cost[k][0]);
+        }
+        while (size < n) {
+            int k = -1;
+            for (int c = 0; c < n; c++) {
+                if (!inTour[c] && (k < 0 || nearest[c] < nearest[k])) {
+                    k = c;
+                }
+            }
+            /* Insert after position best; position size - 1 appends. */
+            int best = -1;
+            double bestIncrease = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                int from = tour[i];
+                int to = i + 1 < size ? tour[i + 1] : (roundTrip ? tour[0] : -1);
+                double increase = cost[from][k] + leg(k, to) - leg(from, to);
+                if (increase < bestIncrease) {
+                    bestIncrease = increase;
+                    best = i;
+                }
+            }
+            System.arraycopy(tour, best + 1, tour, best + 2, size - best - 1);
+            tour[best + 1] = k;
+            size += 1;
+            inTour[k] = true;
+            for (int c = 0; c < n; c++) {
+                nearest[c] = Math.min(nearest[c], Math.min(cost[k][c], cost[c][k]));
+            }
+        }
+    }
+
+    /* Reverses the tour between two positions wherever that shortens it, costing the
+     * reversed stretch in its new direction. Returns whether anything changed. */
+    private boolean twoOpt(Deadline deadline) {
+        boolean changed = false;
+        boolean improved = true;
+        while (improved && !deadline.isExpired()) {
+            improved = false;
+            /* forward[i] and backward[i]: the tour up to position i, driven each way. */
+            double[] forward = new double[n];
+            double[] backward = new double[n];
+            for (int i = 1; i < n; i++) {
+                forward[i] = forward[i - 1] + cost[tour[i - 1]][tour[i]];
+                backward[i] = backward[i - 1] + cost[tour[i]][tour[i - 1]];
+            }
+            for (int i = 1; i < n - 1 && !improved; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    int before = tour[i - 1];
+                    int after = after(j);
+                    double delta = cost[before][tour[j]] + (backward[j] - backward[i])
+                        + leg(tour[i], after)
+                        - cost[before][tour[i]] - (forward[j] - forward[i]) - next(j);
+                    if (delta < -EPSILON) {
+                        reverse(i, j);
+                        improved = true;
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    private void reverse(int i, int j) {
+        while (i < j) {
+            int tmp = tour[i];
+            tour[i] = tour[j];
+            tour[j] = tmp;
+            i += 1;
+            j -= 1;
+        }
+    }
+
+    /* Moves runs of up to MAX_OR_OPT_SEGMENT stops elsewhere in the tour, keeping their
+     * direction, wherever that shortens it. Returns whether anything changed. */
+    private boolean orOpt(Deadline deadline) {
+        boolean changed = false;
+        boolean improved = true;
+        while (improved && !deadline.isExpired()) {
+            improved = false;
+            search:
+            for (int length = 1; length <= MAX_OR_OPT_SEGMENT; length++) {
+                for (int i = 1; i + length <= n; i++) {
+                    int last = i + length - 1;
+                    int before = tour[i - 1];
+                    int after = after(last);
+                    double removed = cost[before][tour[i]] + next(last) - leg(before, after);
+                    /* Reinsert between positions k and k + 1, outside the run. */
+                    for (int k = 0; k < n; k++) {
+                        if (k >= i - 1 && k <= last) {
+                            continue;
+                        }
+                        int from = tour[k];
+                        int to = after(k);
+                        double added = cost[from][tour[i]] + leg(tour[last], to)
+                            - leg(from, to);
+                        if (added - removed < -EPSILON) {
+                            move(i, last, k);
+                            improved = true;
+                            changed = true;
+                            break search;
+                        }
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    /* Moves the run of positions I..LAST to just after position K. */
+    private void move(int i, int last, int k) {
+        int length = last - i + 1;
+        int[] run = new int[length];
+        System.arraycopy(tour, i, run, 0, length);
+        if (k > last) {
+            System.arraycopy(tour, last + 1, tour, i, k - last);
+            System.arraycopy(run, 0, tour, k - length + 1, length);
+        } else {
+            System.arraycopy(tour, k + 1, tour, k + 1 + length, i - k - 1);
+            System.arraycopy(run, 0, tour, k + 1, length);
+        }
+    }
+}
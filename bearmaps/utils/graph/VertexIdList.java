@@ -0,0 +1,53 @@
+package bearmaps.utils.graph;
+
+import java.util.AbstractList;
+
+/**
+ * Read-only list of vertex ids backed by an array of vertex indices, so solvers can
+ * hand out a List<Long> without copying their int[] path into boxed Longs up front.
+ * Solvers that record the edge used for each hop pass those along too, for callers
+ * such as Router.routeDirections that need edge weights and way names.
+ */
+public class VertexIdList extends AbstractList<Long> {
+    private final IntGraph graph;
+    private final int[] path;
+    private final int[] edges;
+
+    public VertexIdList(IntGraph graph, int[] path) {
+        this(graph, path, null);
+    }
+
+    /**
+     * @param edges edges[i] is the edge from path[i] to path[i + 1], or null if unknown.
+     */
+    public VertexIdList(IntGraph graph, int[] path, int[] edges) {
+        this.graph = graph;
+        this.path = path;
+        this.edges = edges;
+    }
+
+    /** The graph the indices refer to. */
+    public IntGraph graph() {
+        return graph;
+    }
+
+    /** The vertex indices along the list. Do not modify the returned array. */
+    public int[] indices() {
+        return path;
+    }
+
+    /** The edge indices between consecutive vertices, or null if none were recorded. */
+    public int[] edges() {
+        return edges;
+    }
+
+    @Override
+    public Long get(int i) {
+        return graph.idAt(path[i]);
+    }
+
+    @Override
+    public int size() {
+        return path.length;
+    }
+}
@@ -0,0 +1,298 @@
+package bearmaps.utils.graph.alt;
+
+import bearmaps.utils.graph.Heuristic;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.IntDijkstra;
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.IntHeuristic;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.graph.SolverFactory;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * ALT (A*, Landmarks, Triangle inequality) lower bounds over an IntGraph.
+ *
+ * A handful of landmark vertices L are chosen up front, and the distances d(L, v) and
+ * d(v, L) to every vertex are stored. By the triangle inequality, for any v and goal t
+ *     d(v, t) >= d(L, t) - d(L, v)   and   d(v, t) >= d(v, L) - d(t, L),
+ * and the largest of these bounds over all landmarks (and the great-circle distance)
+ * is a consistent A* potential. Close to a landmark that sits "behind" the goal,
+ * these bounds are nearly exact, so A* heads for the goal instead of growing a disc.
+ *
+ * Tables hold doubles rather than floats: a rounded table could overestimate by a hair
+ * and make A* return a path that is not quite the shortest.
+ */
+public class Landmarks implements IntHeuristic {
+    /* Landmarks consulted per query; the rest rarely give the best bound. */
+    private static final int ACTIVE_LANDMARKS = 4;
+
+    /** How landmarks are placed. */
+    public enum Selection {
+        /* Each landmark is the vertex farthest from the ones chosen so far. */
+        FARTHEST,
+        /* Each landmark is a leaf of the shortest path tree from a random root, in the
+         * subtree whose distances the current landmarks bound worst (Goldberg and
+         * Werneck's "avoid"). Slower to build, usually tighter. */
+        AVOID
+    }
+
+    private final IntGraph graph;
+    private final int[] landmarks;
+    /* fromLandmark[i][v] = d(landmarks[i], v), infinite if unreachable. */
+    private final double[][] fromLandmark;
+    /* toLandmark[i][v] = d(v, landmarks[i]), infinite if unreachable. */
+    private final double[][] toLandmark;
+
+    private Landmarks(IntGraph graph, int[] landmarks, double[][] fromLandmark,
+                      double[][] toLandmark) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.fromLandmark = fromLandmark;
+        this.toLandmark = toLandmark;
+    }
+
+    /**
+     * Chooses COUNT landmarks of GRAPH with SELECTION and computes their distance tables.
+     * Costs two full Dijkstra searches per landmark, plus one more per landmark for AVOID.
+     */
+    public static Landmarks build(IntGraph graph, int count, Selection selection) {
+        return build(graph, count, selection, new Random(42));
+    }
+
+    static Landmarks build(IntGraph graph, int count, Selection selection, Random random) {
+        int n = graph.numVertices();
+        count = Math.min(count, n);
+        Landmarks result = new Landmarks(graph, new int[0], new double[0][], new double[0][]);
+        if (count == 0) {
+            return result;
+        }
+        /* Distance from the nearest landmark so far, used by FARTHEST. */
+        double[] nearest = IntDijkstra.distancesFrom(graph, random.nextInt(n));
+        for (int i = 0; i < count; i++) {
+            int next;
+            if (selection == Selection.AVOID && i > 0) {
+                next = result.avoid(random.nextInt(n));
+            } else {
+                next = farthest(nearest);
+            }
+            if (i > 0 && next < 0) {
+                break;
+            }
+            if (next < 0) {
+                next = random.nextInt(n);
+            }
+            result = result.with(next);
+            double[] fromNext = result.fromLandmark[i];
+            if (i == 0) {
+                nearest = fromNext.clone();
+            } else {
+                for (int v = 0; v < n; v++) {
+                    nearest[v] = Math.min(nearest[v], fromNext[v]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /* Returns the vertex with the largest finite entry of DIST, or -1 if there is none
+     * greater than 0. */
+    private static int farthest(double[] dist) {
+        int best = -1;
+        double bestDist = 0;
+        for (int v = 0; v < dist.length; v++) {
+            if (dist[v] != Double.POSITIVE_INFINITY && dist[v] > bestDist) {
+                best = v;
+                bestDist = dist[v];
+            }
+        }
+        return best;
+    }
+
+    /* Returns a copy of this with LANDMARK appended and its tables computed. */
+    private Landmarks with(int landmark) {
+        int k = landmarks.length;
+        int[] newLandmarks = Arrays.copyOf(landmarks, k + 1);
+        double[][] newFrom = Arrays.copyOf(fromLandmark, k + 1);
+        double[][] newTo = Arrays.copyOf(toLandmark, k + 1);
+        newLandmarks[k] = landmark;
+        newFrom[k] = IntDijkstra.distancesFrom(graph, landmark);
+        newTo[k] = IntDijkstra.distancesFrom(graph.reverse(), landmark);
+        return new Landmarks(graph, newLandmarks, newFrom, newTo);
+    }
+
+    /*
+     * One round of avoid: grows the shortest path tree from ROOT, weights each vertex by
+     * how much the current landmarks underestimate its distance from ROOT, and sums the
+     * weights of each subtree, skipping subtrees that already contain a landmark. The
+     * new landmark is the leaf reached by walking from the heaviest vertex down into the
+     * heaviest child. Returns -1 if every subtree already has a landmark.
+     */
+    private int avoid(int root) {
+        try (SearchWorkspace ws = SearchWorkspace.acquire(graph.numVertices())) {
+            return avoid(root, ws);
+        }
+    }
+
+    private int avoid(int root, SearchWorkspace ws) {
+        int n = graph.numVertices();
+        int[] order = new int[n];
+        int[] settledCount = new int[1];
+        IntDijkstra.run(graph, ws, new int[]{root}, Double.POSITIVE_INFINITY, (v, d) -> {
+            order[settledCount[0]++] = v;
+            return true;
+        });
+        int settled = settledCount[0];
+
+        boolean[] isLandmark = new boolean[n];
+        for (int landmark : landmarks) {
+            isLandmark[landmark] = true;
+        }
+        double[] size = new double[n];
+        int[] heaviestChild = new int[n];
+        boolean[] covered = new boolean[n];
+        for (int i = 0; i < settled; i++) {
+            int v = order[i];
+            size[v] = ws.dist(v) - landmarkBound(root, v);
+            heaviestChild[v] = -1;
+            covered[v] = isLandmark[v];
+        }
+        /* Children settle after their parents, so a reverse sweep sees whole subtrees. */
+        int heaviest = -1;
+        for (int i = settled - 1; i >= 0; i--) {
+            int v = order[i];
+            if (covered[v]) {
+                size[v] = 0;
+            } else if (heaviest < 0 || size[v] > size[heaviest]) {
+                heaviest = v;
+            }
+            int p = ws.parent(v);
+            if (p < 0) {
+                continue;
+            }
+            covered[p] |= covered[v];
+            size[p] += size[v];
+            if (heaviestChild[p] < 0 || size[v] > size[heaviestChild[p]]) {
+                heaviestChild[p] = v;
+            }
+        }
+        if (heaviest < 0 || size[heaviest] <= 0) {
+            return -1;
+        }
+        int leaf = heaviest;
+        while (heaviestChild[leaf] >= 0) {
+            leaf = heaviestChild[leaf];
+        }
+        return leaf;
+    }
+
+    public int numLandmarks() {
+        return landmarks.length;
+    }
+
+    /** Returns the vertex index of the Ith landmark. */
+    public int landmark(int i) {
+        return landmarks[i];
+    }
+
+    public IntGraph graph() {
+        return graph;
+    }
+
+    /**
+     * Lower bound on d(V, GOAL) from every landmark and the great-circle distance.
+     */
+    @Override
+    public double estimate(int v, int goal) {
+        return Math.max(graph.estimatedDistance(v, goal), landmarkBound(v, goal));
+    }
+
+    /*
+     * Best triangle-inequality bound over all landmarks. When a landmark reaches GOAL but
+     * not V (or the reverse) the differences below are infinite, which is exact: GOAL
+     * cannot be reached from V. NaN, from two infinite distances, never wins a comparison.
+     */
+    private double landmarkBound(int v, int goal) {
+        double best = 0;
+        for (int i = 0; i < landmarks.length; i++) {
+            best = Math.max(best, bound(i, v, goal));
+        }
+        return best;
+    }
+
+    private double bound(int i, int v, int goal) {
+        double forward = fromLandmark[i][goal] - fromLandmark[i][v];
+        double backward = toLandmark[i][v] - toLandmark[i][goal];
+        double best = 0;
+        if (forward > best) {
+            best = forward;
+        }
+        if (backward > best) {
+            best = backward;
+        }
+        return best;
+    }
+
+    /**
+     * Returns a heuristic for one query from START to GOAL that only consults the few
+     * landmarks giving the best bound at START. The bound is a little looser than
+     * estimate's, but far cheaper to evaluate at every vertex A* touches.
+     */
+    public IntHeuristic forQuery(int start, int goal) {
+        int k = Math.min(ACTIVE_LANDMARKS, landmarks.length);
+        if (k == landmarks.length || start < 0 || goal < 0) {
+            return this;
+        }
+        int[] active = new int[k];
+        double[] activeBound = new double[k];
+        Arrays.fill(activeBound, -1);
+        for (int i = 0; i < landmarks.length; i++) {
+            double b = bound(i, start, goal);
+            if (b <= activeBound[k - 1]) {
+                continue;
+            }
+            int j = k - 1;
+            while (j > 0 && activeBound[j - 1] < b) {
+                active[j] = active[j - 1];
+                activeBound[j] = activeBound[j - 1];
+                j -= 1;
+            }
+            active[j] = i;
+            activeBound[j] = b;
+        }
+        return (v, t) -> {
+            double best = graph.estimatedDistance(v, t);
+            for (int i : active) {
+                best = Math.max(best, bound(i, v, t));
+            }
+            return best;
+        };
+    }
+
+    /**
+     * The same bounds over OSM ids, for AStarSolver. Ids that are not in the graph get
+     * a bound of 0.
+     */
+    public Heuristic<Long> asHeuristic() {
+        return (v, goal) -> {
+            int vi = graph.indexOf(v);
+            int gi = graph.indexOf(goal);
+            return vi < 0 || gi < 0 ? 0 : estimate(vi, gi);
+        };
+    }
+
+    /**
+     * Returns a factory for A* guided by these landmarks, for Router.shortestPath. The
+     * factory searches the current snapshot of the graph passed to it, overlaid weights
+     * included: multipliers are at least 1, so bounds from the parsed weights stay
+     * admissible and consistent. A graph other than the one the tables were built from
+     * gets plain A*.
+     */
+    public SolverFactory<IntGraph, Long> solverFactory() {
+        return (g, start, end, deadline) -> g == graph
+            ? new IntAStarSolver(g.snapshot(), start, end, deadline,
+                forQuery(graph.indexOf(start), graph.indexOf(end)))
+            : new IntAStarSolver(g, start, end, deadline);
+    }
+}
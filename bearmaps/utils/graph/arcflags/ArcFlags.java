@@ -0,0 +1,286 @@
+package bearmaps.utils.graph.arcflags;
+
+import bearmaps.utils.graph.EdgeFilter;
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.IntDijkstra;
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.ReversedGraph;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.graph.SolverFactory;
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Arc flags over a grid partition of a StreetMapGraph.
+ *
+ * The map's bounding box is cut into at most 64 grid cells, the regions. Every edge
+ * carries one bit per region, set if the edge starts a shortest path into that region.
+ * A search toward a vertex in region r can then skip every edge whose bit r is clear,
+ * and still find a shortest path, so it only widens where the route could really go.
+ *
+ * Flags are found by one backward Dijkstra per boundary vertex (a vertex with an
+ * in-edge from another region), which takes a while on a whole city. save and load
+ * keep them on disk, tied to the exact graph they were computed for.
+ */
+public class ArcFlags {
+    /** The most regions there can be, one per bit of a long. */
+    public static final int MAX_REGIONS = 64;
+    /* Start of a flags file, then the format version. */
+    private static final int MAGIC = 0x41524346;
+    private static final int VERSION = 1;
+
+    private final StreetMapGraph graph;
+    private final int rows;
+    private final int cols;
+    /* Region of each vertex. */
+    private final int[] region;
+    /* Bit r of flags[e] is set if edge e starts a shortest path into region r. */
+    private final long[] flags;
+
+    private ArcFlags(StreetMapGraph graph, int rows, int cols, int[] region, long[] flags) {
+        this.graph = graph;
+        this.rows = rows;
+        this.cols = cols;
+        this.region = region;
+        this.flags = flags;
+    }
+
+    /**
+     * Partitions GRAPH into a ROWS by COLS grid and computes the flags of every edge.
+     * ROWS * COLS must not exceed MAX_REGIONS.
+     */
+    public static ArcFlags build(StreetMapGraph graph, int rows, int cols) {
+        if (rows < 1 || cols < 1 || rows * cols > MAX_REGIONS) {
+            throw new IllegalArgumentException("Need between 1 and " + MAX_REGIONS
+                + " regions, got " + rows + " x " + cols);
+        }
+        int n = graph.numVertices();
+        int[] region = partition(graph, rows, cols);
+        long[] flags = new long[graph.numEdges()];
+
+        /* Edges inside a region lead toward it: the last stretch of any route into it. */
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.edgeBegin(v); e < graph.edgeEnd(v); e++) {
+                if (region[graph.edgeTarget(e)] == region[v]) {
+                    flags[e] |= 1L << region[v];
+                }
+            }
+        }
+
+        /* Everything else that leads into a region enters it through a boundary vertex,
+         * so the shortest path trees into its boundary vertices cover it. */
+        ReversedGraph reverse = graph.reverse();
+        List<List<Integer>> boundary = new ArrayList<>();
+        for (int r = 0; r < rows * cols; r++) {
+            boundary.add(new ArrayList<>());
+        }
+        for (int v = 0; v < n; v++) {
+            for (int e = reverse.edgeBegin(v); e < reverse.edgeEnd(v); e++) {
+                if (region[reverse.edgeTarget(e)] != region[v]) {
+                    boundary.get(region[v]).add(v);
+                    break;
+                }
+            }
+        }
+        BitSet[] intoRegion = IntStream.range(0, rows * cols).parallel()
+            .mapToObj(r -> treesInto(reverse, boundary.get(r)))
+            .toArray(BitSet[]::new);
+        for (int r = 0; r < intoRegion.length; r++) {
+            BitSet edges = intoRegion[r];
+            for (int e = edges.nextSetBit(0); e >= 0; e = edges.nextSetBit(e + 1)) {
+                flags[e] |= 1L << r;
+            }
+        }
+        return new ArcFlags(graph, rows, cols, region, flags);
+    }
+
+    /* Returns the edges of GRAPH on the shortest path trees into each of TARGETS, where
+     * REVERSE is GRAPH's transpose. */
+    private static BitSet treesInto(ReversedGraph reverse, List<Integer> targets) {
+        BitSet edges = new BitSet(reverse.numEdges());
+        try (SearchWorkspace ws = SearchWorkspace.acquire(reverse.numVertices())) {
+            for (int target : targets) {
+                ws.reset();
+                IntDijkstra.run(reverse, ws, new int[] {target}, Double.POSITIVE_INFINITY,
+                    (v, distance) -> {
+                        if (ws.parentEdge(v) >= 0) {
+                            edges.set(reverse.originalEdge(ws.parentEdge(v)));
+                        }
+                        return true;
+                    });
+            }
+        }
+        return edges;
+    }
+
+    /* Assigns each vertex of GRAPH the grid cell of its coordinates, row-major. */
+    private static int[] partition(StreetMapGraph graph, int rows, int cols) {
+        int n = graph.numVertices();
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < n; v++) {
+            minLon = Math.min(minLon, graph.lonAt(v));
+            maxLon = Math.max(maxLon, graph.lonAt(v));
+            minLat = Math.min(minLat, graph.latAt(v));
+            maxLat = Math.max(maxLat, graph.latAt(v));
+        }
+        int[] region = new int[n];
+        for (int v = 0; v < n; v++) {
+            int col = cell(graph.lonAt(v), minLon, maxLon, cols);
+            int row = cell(graph.latAt(v), minLat, maxLat, rows);
+            region[v] = row * cols + col;
+        }
+        return region;
+    }
+
+    private static int cell(double x, double min, double max, int cells) {
+        if (max <= min) {
+            return 0;
+        }
+        return Math.min(cells - 1, (int) ((x - min) / (max - min) * cells));
+    }
+
+    /** The graph the flags were computed for. */
+    public StreetMapGraph graph() {
+        return graph;
+    }
+
+    public int numRegions() {
+        return rows * cols;
+    }
+
+    /** Returns the region of vertex V. */
+    public int regionOf(int v) {
+        return region[v];
+    }
+
+    /** Returns the flags of edge E, bit r for region r. */
+    public long flags(int e) {
+        return flags[e];
+    }
+
+    /**
+     * Returns the edges a search toward the vertices GOALS needs to follow. Given
+     * several, the search may follow an edge toward any of their regions, so it can
+     * still reach whichever goal is nearest.
+     */
+    public EdgeFilter toward(int... goals) {
+        long bits = 0;
+        for (int goal : goals) {
+            bits |= 1L << region[goal];
+        }
+        long mask = bits;
+        return e -> (flags[e] & mask) != 0;
+    }
+
+    /**
+     * Returns a factory for A* over the flagged edges, for Router.shortestPath. The graph
+     * passed to the factory is ignored in favour of the one the flags belong to. The flags
+     * were computed for the parsed weights, so while the graph's weights are overlaid
+     * (see IntGraph.snapshot) the search follows every edge instead.
+     */
+    public SolverFactory<IntGraph, Long> solverFactory() {
+        return (g, start, end, deadline) -> {
+            IntGraph current = graph.snapshot();
+            int goal = graph.indexOf(end);
+            boolean flagged = goal >= 0 && current == graph;
+            return IntAStarSolver.fromIndices(current, graph.indexOf(start), goal, deadline,
+                graph::estimatedDistance, flagged ? toward(goal) : null);
+        };
+    }
+
+    /**
+     * Writes these flags to FILENAME, along with a fingerprint of the graph so that load
+     * can tell whether they still apply.
+     */
+    public void save(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint(graph));
+            out.writeInt(rows);
+            out.writeInt(cols);
+            out.writeInt(region.length);
+            for (int r : region) {
+                out.writeByte(r);
+            }
+            out.writeInt(flags.length);
+            for (long f : flags) {
+                out.writeLong(f);
+            }
+        }
+    }
+
+    /**
+     * Reads flags written by save for GRAPH.
+     *
+     * @throws IOException if FILENAME cannot be read, or holds flags for a different graph.
+     */
+    public static ArcFlags load(StreetMapGraph graph, String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(filename + " is not an arc flags file");
+            }
+            if (in.readLong() != fingerprint(graph)) {
+                throw new IOException(filename + " holds arc flags for a different graph");
+            }
+            int rows = in.readInt();
+            int cols = in.readInt();
+            int[] region = new int[in.readInt()];
+            for (int v = 0; v < region.length; v++) {
+                region[v] = in.readUnsignedByte();
+            }
+            long[] flags = new long[in.readInt()];
+            for (int e = 0; e < flags.length; e++) {
+                flags[e] = in.readLong();
+            }
+            return new ArcFlags(graph, rows, cols, region, flags);
+        }
+    }
+
+    /**
+     * Loads the flags for GRAPH from FILENAME if they are there and current. Otherwise
+     * builds them on a ROWS by COLS grid and saves them to FILENAME for next time.
+     */
+    public static ArcFlags loadOrBuild(StreetMapGraph graph, String filename,
+                                       int rows, int cols) {
+        try {
+            return load(graph, filename);
+        } catch (IOException e) {
+            ArcFlags built = build(graph, rows, cols);
+            try {
+                built.save(filename);
+            } catch (IOException saveError) {
+                saveError.printStackTrace();
+            }
+            return built;
+        }
+    }
+
+    /* Hash of the vertex ids and edges of GRAPH, in index order. */
+    private static long fingerprint(StreetMapGraph graph) {
+        long hash = graph.numVertices() * 31L + graph.numEdges();
+        for (int v = 0; v < graph.numVertices(); v++) {
+            hash = hash * 1000003 + graph.idAt(v);
+            for (int e = graph.edgeBegin(v); e < graph.edgeEnd(v); e++) {
+                hash = hash * 31 + graph.edgeTarget(e);
+            }
+        }
+        return hash;
+    }
+}
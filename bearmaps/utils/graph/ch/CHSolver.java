@@ -0,0 +1,252 @@
+package bearmaps.utils.graph.ch;
+
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.VertexIdList;
+import bearmaps.utils.pq.IntHeapPQ;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shortest path query on a ContractionHierarchy: a bidirectional Dijkstra where the
+ * forward search only follows upward edges from the start and the backward search only
+ * follows downward edges into the end. The shortcuts on the resulting path are then
+ * unpacked, so solution() holds the same original vertex ids as the other solvers.
+ */
+public class CHSolver implements ShortestPathsSolver<Long> {
+    private static final int[] EMPTY_PATH = new int[0];
+
+    private final ContractionHierarchy ch;
+    private SolverOutcome result;
+    private int[] path = EMPTY_PATH;
+    private double totalWeight;
+    private int statesExplored = 0;
+    private long solverTime;
+
+    private double best = Double.POSITIVE_INFINITY;
+    private int meet = -1;
+
+    /**
+     * Finds the shortest path between two vertices given by their OSM ids.
+     * Note that timeout passed in is in seconds.
+     *
+     * @param ch      The hierarchy to search
+     * @param start   Id of the starting vertex
+     * @param end     Id of the end vertex
+     * @param timeout Time restriction for this activity.
+     */
+    public CHSolver(ContractionHierarchy ch, long start, long end, double timeout) {
+        this(ch, start, end, Deadline.after(timeout));
+    }
+
+    /**
+     * Same as above, but gives up when DEADLINE expires or is cancelled.
+     */
+    public CHSolver(ContractionHierarchy ch, long start, long end, Deadline deadline) {
+        this.ch = ch;
+        long startTime = System.currentTimeMillis();
+        int startIndex = ch.graph().indexOf(start);
+        int endIndex = ch.graph().indexOf(end);
+        if (startIndex < 0 || endIndex < 0) {
+            result = SolverOutcome.UNSOLVABLE;
+        } else {
+            solve(startIndex, endIndex, deadline);
+        }
+        solverTime = System.currentTimeMillis() - startTime;
+    }
+
+    private void solve(int start, int end, Deadline deadline) {
+        int n = ch.numVertices();
+        try (SearchWorkspace forward = SearchWorkspace.acquire(n);
+             SearchWorkspace backward = SearchWorkspace.acquire(n)) {
+            solve(forward, backward, start, end, deadline);
+        }
+    }
+
+    private void solve(SearchWorkspace forward, SearchWorkspace backward, int start, int end,
+                       Deadline deadline) {
+        forward.reach(start, 0.0, -1);
+        forward.fringe().insert(start, 0.0);
+        backward.reach(end, 0.0, -1);
+        backward.fringe().insert(end, 0.0);
+
+        IntHeapPQ forwardFringe = forward.fringe();
+        IntHeapPQ backwardFringe = backward.fringe();
+        while (true) {
+            boolean forwardDone = forwardFringe.isEmpty() || forwardFringe.peekPriority() >= best;
+            boolean backwardDone = backwardFringe.isEmpty()
+                || backwardFringe.peekPriority() >= best;
+            if (forwardDone && backwardDone) {
+                break;
+            }
+            if (deadline.isExpired(statesExplored)) {
+                result = SolverOutcome.TIMEOUT;
+                return;
+            }
+            if (!forwardDone && (backwardDone
+                || forwardFringe.peekPriority() <= backwardFringe.peekPriority())) {
+                expandUp(forward, backward);
+            } else {
+                expandDown(backward, forward);
+            }
+        }
+
+        if (meet < 0) {
+            result = SolverOutcome.UNSOLVABLE;
+        } else {
+            gather(forward, backward, start);
+        }
+    }
+
+    private void expandUp(SearchWorkspace mine, SearchWorkspace other) {
+        int curr = mine.fringe().poll();
+        statesExplored += 1;
+        mine.settle(curr);
+        double currDist = mine.dist(curr);
+        meetAt(curr, currDist, other);
+        /* Stall-on-demand: if a higher vertex already reaches curr more cheaply, the
+           distance to curr is not a shortest one and expanding it cannot help. */
+        for (int e = ch.downBegin(curr); e < ch.downEnd(curr); e++) {
+            if (mine.dist(ch.downSource(e)) + ch.downWeight(e) < currDist) {
+                return;
+            }
+        }
+        for (int e = ch.upBegin(curr); e < ch.upEnd(curr); e++) {
+            relax(mine, curr, ch.upTarget(e), currDist + ch.upWeight(e));
+        }
+    }
+
+    private void expandDown(SearchWorkspace mine, SearchWorkspace other) {
+        int curr = mine.fringe().poll();
+        statesExplored += 1;
+        mine.settle(curr);
+        double currDist = mine.dist(curr);
+        meetAt(curr, currDist, other);
+        for (int e = ch.upBegin(curr); e < ch.upEnd(curr); e++) {
+            if (mine.dist(ch.upTarget(e)) + ch.upWeight(e) < currDist) {
+                return;
+            }
+        }
+        for (int e = ch.downBegin(curr); e < ch.downEnd(curr); e++) {
+            relax(mine, curr, ch.downSource(e), currDist + ch.downWeight(e));
+        }
+    }
+
+    private static void relax(SearchWorkspace ws, int from, int to, double distance) {
+        if (ws.isSettled(to)) {
+            return;
+        }
+        if (!ws.isReached(to)) {
+            ws.reach(to, distance, from);
+            ws.fringe().insert(to, distance);
+        } else if (distance < ws.dist(to)) {
+            ws.reach(to, distance, from);
+            ws.fringe().changePriority(to, distance);
+        }
+    }
+
+    private void meetAt(int v, double distance, SearchWorkspace other) {
+        if (other.isReached(v) && distance + other.dist(v) < best) {
+            best = distance + other.dist(v);
+            meet = v;
+        }
+    }
+
+    /**
+     * Walks both search trees from the meeting vertex and unpacks every shortcut along
+     * the way into the vertices it bypassed.
+     */
+    private void gather(SearchWorkspace forward, SearchWorkspace backward, int start) {
+        int[] hierarchyPath = new int[16];
+        int size = 0;
+        for (int v = meet; v != -1; v = forward.parent(v)) {
+            if (size == hierarchyPath.length) {
+                hierarchyPath = Arrays.copyOf(hierarchyPath, size * 2);
+            }
+            hierarchyPath[size++] = v;
+        }
+        reverse(hierarchyPath, size);
+        for (int v = backward.parent(meet); v != -1; v = backward.parent(v)) {
+            if (size == hierarchyPath.length) {
+                hierarchyPath = Arrays.copyOf(hierarchyPath, size * 2);
+            }
+            hierarchyPath[size++] = v;
+        }
+
+        int[] unpacked = new int[size * 2];
+        int length = 0;
+        unpacked[length++] = hierarchyPath[0];
+        int[] stack = new int[32];
+        for (int i = 0; i + 1 < size; i++) {
+            /* Pairs (from, to) still to unpack, with the leftmost pair on top. */
+            int top = 0;
+            stack[top++] = hierarchyPath[i];
+            stack[top++] = hierarchyPath[i + 1];
+            while (top > 0) {
+                int to = stack[--top];
+                int from = stack[--top];
+                int middle = ch.middle(from, to);
+                if (middle == ContractionHierarchy.NO_MIDDLE) {
+                    if (length == unpacked.length) {
+                        unpacked = Arrays.copyOf(unpacked, length * 2);
+                    }
+                    unpacked[length++] = to;
+                    continue;
+                }
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = middle;
+                stack[top++] = to;
+                stack[top++] = from;
+                stack[top++] = middle;
+            }
+        }
+        path = Arrays.copyOf(unpacked, length);
+        totalWeight = best;
+        result = SolverOutcome.SOLVED;
+    }
+
+    private static void reverse(int[] values, int size) {
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return result;
+    }
+
+    @Override
+    public List<Long> solution() {
+        return new VertexIdList(ch.graph(), path);
+    }
+
+    /**
+     * The vertex indices along the unpacked solution. Do not modify the returned array.
+     */
+    public int[] solutionIndices() {
+        return path;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return totalWeight;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return statesExplored;
+    }
+
+    @Override
+    public double explorationTime() {
+        return (double) solverTime / 1000;
+    }
+}
@@ -0,0 +1,525 @@
+package bearmaps.utils.graph.ch;
+
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.graph.SolverFactory;
+import bearmaps.utils.graph.streetmap.StreetMapGraph;
+import bearmaps.utils.pq.IntHeapPQ;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Contraction Hierarchy over an IntGraph.
+ *
+ * Preprocessing contracts the vertices one at a time, least important first. Removing a
+ * vertex v adds a shortcut u -> w for every pair of neighbours whose only shortest path
+ * ran through v, so distances between the remaining vertices are preserved. Afterwards
+ * every edge and shortcut is stored with its lower-ranked endpoint:
+ * <ul>
+ * <li>the upward list of v holds edges v -> w with rank(w) > rank(v),</li>
+ * <li>the downward list of v holds edges w -> v with rank(w) > rank(v).</li>
+ * </ul>
+ * A query (see CHSolver) only ever walks upward from both ends, which touches a few
+ * hundred vertices instead of a large share of the map. Each shortcut remembers the
+ * vertex it bypassed, so a path can be unpacked back into original edges.
+ *
+ * Building is slow and meant to run offline: see main, save and load.
+ */
+public class ContractionHierarchy {
+    /* Marks an original edge rather than a shortcut. */
+    static final int NO_MIDDLE = -1;
+    /* Vertices a witness search may settle before it gives up and adds the shortcut. */
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    /* Tighter limit used when only estimating a vertex's priority. */
+    private static final int ESTIMATE_SETTLE_LIMIT = 50;
+    private static final int FILE_MAGIC = 0x43480001;
+    /* Version 2 added the graph fingerprint. */
+    private static final int FILE_VERSION = 2;
+
+    private final IntGraph graph;
+    private final int[] rank;
+
+    private final int[] upStart;
+    private final int[] upTarget;
+    private final double[] upWeight;
+    private final int[] upMiddle;
+
+    private final int[] downStart;
+    private final int[] downSource;
+    private final double[] downWeight;
+    private final int[] downMiddle;
+
+    private ContractionHierarchy(IntGraph graph, int[] rank,
+                                 int[] upStart, int[] upTarget, double[] upWeight,
+                                 int[] upMiddle, int[] downStart, int[] downSource,
+                                 double[] downWeight, int[] downMiddle) {
+        this.graph = graph;
+        this.rank = rank;
+        this.upStart = upStart;
+        this.upTarget = upTarget;
+        this.upWeight = upWeight;
+        this.upMiddle = upMiddle;
+        this.downStart = downStart;
+        this.downSource = downSource;
+        this.downWeight = downWeight;
+        this.downMiddle = downMiddle;
+    }
+
+    /**
+     * Orders and contracts every vertex of GRAPH. Takes seconds to minutes depending on
+     * the size of the map.
+     */
+    public static ContractionHierarchy build(IntGraph graph) {
+        return new Contractor(graph).run();
+    }
+
+    /** The graph this hierarchy was built from. */
+    public IntGraph graph() {
+        return graph;
+    }
+
+    /** Returns a SolverFactory that answers queries with this hierarchy. Shortcut weights
+     *  are fixed when the hierarchy is built, so if the graph handed to the factory is
+     *  not the one it was built from, e.g. because its weights are overlaid, the factory
+     *  falls back to plain A* on that graph. */
+    public SolverFactory<IntGraph, Long> solverFactory() {
+        return (g, start, end, deadline) -> g.snapshot() == graph
+            ? new CHSolver(this, start, end, deadline)
+            : new IntAStarSolver(g, start, end, deadline);
+    }
+
+    public int numVertices() {
+        return rank.length;
+    }
+
+    /** Returns the position of V in the contraction order. */
+    public int rank(int v) {
+        return rank[v];
+    }
+
+    /** Number of shortcuts added on top of the original edges. */
+    public int numShortcuts() {
+        int count = 0;
+        for (int middle : upMiddle) {
+            count += middle == NO_MIDDLE ? 0 : 1;
+        }
+        for (int middle : downMiddle) {
+            count += middle == NO_MIDDLE ? 0 : 1;
+        }
+        return count;
+    }
+
+    int upBegin(int v) {
+        return upStart[v];
+    }
+
+    int upEnd(int v) {
+        return upStart[v + 1];
+    }
+
+    int upTarget(int e) {
+        return upTarget[e];
+    }
+
+    double upWeight(int e) {
+        return upWeight[e];
+    }
+
+    int downBegin(int v) {
+        return downStart[v];
+    }
+
+    int downEnd(int v) {
+        return downStart[v + 1];
+    }
+
+    int downSource(int e) {
+        return downSource[e];
+    }
+
+    double downWeight(int e) {
+        return downWeight[e];
+    }
+
+    /**
+     * Returns the vertex bypassed by the hierarchy edge FROM -> TO, or NO_MIDDLE if it is
+     * an original edge. The edge must exist.
+     */
+    int middle(int from, int to) {
+        if (rank[from] < rank[to]) {
+            for (int e = upStart[from]; e < upStart[from + 1]; e++) {
+                if (upTarget[e] == to) {
+                    return upMiddle[e];
+                }
+            }
+        } else {
+            for (int e = downStart[to]; e < downStart[to + 1]; e++) {
+                if (downSource[e] == from) {
+                    return downMiddle[e];
+                }
+            }
+        }
+        throw new IllegalStateException("No hierarchy edge " + from + " -> " + to);
+    }
+
+    /**
+     * Writes this hierarchy to FILENAME. The graph itself is not written, only a
+     * fingerprint of it; load needs the same graph again, numbered the same way.
+     */
+    public void save(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeLong(fingerprint(graph));
+            writeInts(out, rank);
+            writeInts(out, upStart);
+            writeInts(out, upTarget);
+            writeDoubles(out, upWeight);
+            writeInts(out, upMiddle);
+            writeInts(out, downStart);
+            writeInts(out, downSource);
+            writeDoubles(out, downWeight);
+            writeInts(out, downMiddle);
+        }
+    }
+
+    /**
+     * Reads a hierarchy written by save. GRAPH must be the graph it was built from.
+     *
+     * @throws IOException if the file is unreadable or was built for a different graph.
+     */
+    public static ContractionHierarchy load(String filename, IntGraph graph) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException(filename + " is not a contraction hierarchy file.");
+            }
+            if (in.readLong() != fingerprint(graph)) {
+                throw new IOException(filename + " was built for a different graph.");
+            }
+            return new ContractionHierarchy(graph, readInts(in), readInts(in), readInts(in),
+                readDoubles(in), readInts(in), readInts(in), readInts(in), readDoubles(in),
+                readInts(in));
+        }
+    }
+
+    /* Hash of the vertex ids and edges of GRAPH, in index order. */
+    private static long fingerprint(IntGraph graph) {
+        long hash = graph.numVertices() * 31L + graph.numEdges();
+        for (int v = 0; v < graph.numVertices(); v++) {
+            hash = hash * 1000003 + graph.idAt(v);
+            for (int e = graph.edgeBegin(v); e < graph.edgeEnd(v); e++) {
+                hash = hash * 31 + graph.edgeTarget(e);
+            }
+        }
+        return hash;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static double[] readDoubles(DataInputStream in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+        return values;
+    }
+
+    /**
+     * Offline preprocessing entry point.
+     * Usage: java bearmaps.utils.graph.ch.ContractionHierarchy [osm xml file] [output file]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: ContractionHierarchy [osm xml file] [output file]");
+            return;
+        }
+        StreetMapGraph graph = new StreetMapGraph(args[0]);
+        long startTime = System.currentTimeMillis();
+        ContractionHierarchy ch = build(graph);
+        System.out.println(String.format("Contracted %d vertices in %.1f s, %d shortcuts.",
+            ch.numVertices(), (System.currentTimeMillis() - startTime) / 1000.0,
+            ch.numShortcuts()));
+        ch.save(args[1]);
+    }
+
+    /**
+     * Growable list of edges to or from one vertex while the graph is being contracted.
+     */
+    private static class EdgeList {
+        private int[] other = new int[4];
+        private double[] weight = new double[4];
+        private int[] middle = new int[4];
+        private int size = 0;
+
+        int indexOf(int v) {
+            for (int i = 0; i < size; i++) {
+                if (other[i] == v) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /* Adds an edge to V, or lowers the weight of the existing one. Returns true if
+           anything changed. */
+        boolean addOrLower(int v, double w, int mid) {
+            int i = indexOf(v);
+            if (i >= 0) {
+                if (w < weight[i]) {
+                    weight[i] = w;
+                    middle[i] = mid;
+                    return true;
+                }
+                return false;
+            }
+            if (size == other.length) {
+                other = Arrays.copyOf(other, size * 2);
+                weight = Arrays.copyOf(weight, size * 2);
+                middle = Arrays.copyOf(middle, size * 2);
+            }
+            other[size] = v;
+            weight[size] = w;
+            middle[size] = mid;
+            size += 1;
+            return true;
+        }
+
+        void remove(int v) {
+            int i = indexOf(v);
+            if (i >= 0) {
+                size -= 1;
+                other[i] = other[size];
+                weight[i] = weight[size];
+                middle[i] = middle[size];
+            }
+        }
+    }
+
+    /**
+     * Holds the shrinking working graph while vertices are contracted, and collects the
+     * final upward and downward edge lists.
+     */
+    private static class Contractor {
+        private final IntGraph graph;
+        private final int n;
+        private final EdgeList[] out;
+        private final EdgeList[] in;
+        private final int[] contractedNeighbors;
+        private final int[] level;
+        private final int[] rank;
+        /* Snapshot of each vertex's remaining edges at the moment it was contracted. */
+        private final EdgeList[] up;
+        private final EdgeList[] down;
+
+        Contractor(IntGraph graph) {
+            this.graph = graph;
+            n = graph.numVertices();
+            out = new EdgeList[n];
+            in = new EdgeList[n];
+            for (int v = 0; v < n; v++) {
+                out[v] = new EdgeList();
+                in[v] = new EdgeList();
+            }
+            for (int v = 0; v < n; v++) {
+                for (int e = graph.edgeBegin(v); e < graph.edgeEnd(v); e++) {
+                    int w = graph.edgeTarget(e);
+                    if (w != v) {
+                        out[v].addOrLower(w, graph.edgeWeight(e), NO_MIDDLE);
+                        in[w].addOrLower(v, graph.edgeWeight(e), NO_MIDDLE);
+                    }
+                }
+            }
+            contractedNeighbors = new int[n];
+            level = new int[n];
+            rank = new int[n];
+            up = new EdgeList[n];
+            down = new EdgeList[n];
+        }
+
+        ContractionHierarchy run() {
+            IntHeapPQ queue = new IntHeapPQ(n);
+            for (int v = 0; v < n; v++) {
+                queue.insert(v, priority(v));
+            }
+            int nextRank = 0;
+            while (!queue.isEmpty()) {
+                int v = queue.poll();
+                /* Lazy update: priorities go stale as neighbours are contracted. */
+                double current = priority(v);
+                if (!queue.isEmpty() && current > queue.peekPriority()) {
+                    queue.insert(v, current);
+                    continue;
+                }
+                contract(v, WITNESS_SETTLE_LIMIT, true);
+                rank[v] = nextRank++;
+                for (int i = 0; i < up[v].size; i++) {
+                    updateNeighbor(queue, v, up[v].other[i]);
+                }
+                for (int i = 0; i < down[v].size; i++) {
+                    updateNeighbor(queue, v, down[v].other[i]);
+                }
+            }
+            return pack();
+        }
+
+        private void updateNeighbor(IntHeapPQ queue, int v, int w) {
+            contractedNeighbors[w] += 1;
+            level[w] = Math.max(level[w], level[v] + 1);
+            if (queue.contains(w)) {
+                queue.changePriority(w, priority(w));
+            }
+        }
+
+        /* Edge difference, plus terms that spread contraction evenly over the map and keep
+           the hierarchy shallow. */
+        private double priority(int v) {
+            int shortcuts = contract(v, ESTIMATE_SETTLE_LIMIT, false);
+            int edgeDifference = shortcuts - out[v].size - in[v].size;
+            return 2 * edgeDifference + contractedNeighbors[v] + level[v];
+        }
+
+        /**
+         * Finds the shortcuts needed to remove V and returns how many there are. If APPLY
+         * is true they are added and V is removed from the working graph.
+         */
+        private int contract(int v, int settleLimit, boolean apply) {
+            try (SearchWorkspace ws = SearchWorkspace.acquire(n)) {
+                return contract(ws, v, settleLimit, apply);
+            }
+        }
+
+        private int contract(SearchWorkspace ws, int v, int settleLimit, boolean apply) {
+            int shortcuts = 0;
+            EdgeList ins = in[v];
+            EdgeList outs = out[v];
+            for (int i = 0; i < ins.size; i++) {
+                int u = ins.other[i];
+                double maxVia = 0;
+                for (int j = 0; j < outs.size; j++) {
+                    maxVia = Math.max(maxVia, ins.weight[i] + outs.weight[j]);
+                }
+                witnessSearch(ws, u, v, maxVia, settleLimit);
+                for (int j = 0; j < outs.size; j++) {
+                    int w = outs.other[j];
+                    if (w == u) {
+                        continue;
+                    }
+                    double via = ins.weight[i] + outs.weight[j];
+                    if (ws.dist(w) <= via) {
+                        continue;
+                    }
+                    shortcuts += 1;
+                    if (apply) {
+                        out[u].addOrLower(w, via, v);
+                        in[w].addOrLower(u, via, v);
+                    }
+                }
+            }
+            if (apply) {
+                for (int i = 0; i < outs.size; i++) {
+                    in[outs.other[i]].remove(v);
+                }
+                for (int i = 0; i < ins.size; i++) {
+                    out[ins.other[i]].remove(v);
+                }
+                up[v] = outs;
+                down[v] = ins;
+                out[v] = null;
+                in[v] = null;
+            }
+            return shortcuts;
+        }
+
+        /**
+         * Dijkstra in WS from SOURCE over the uncontracted graph without VIA, stopping
+         * once distances exceed LIMIT or SETTLELIMIT vertices are settled.
+         */
+        private void witnessSearch(SearchWorkspace ws, int source, int via, double limit,
+                                   int settleLimit) {
+            ws.reset();
+            IntHeapPQ fringe = ws.fringe();
+            ws.reach(source, 0.0, -1);
+            fringe.insert(source, 0.0);
+            int settled = 0;
+            while (!fringe.isEmpty() && settled < settleLimit) {
+                if (fringe.peekPriority() > limit) {
+                    break;
+                }
+                int curr = fringe.poll();
+                ws.settle(curr);
+                settled += 1;
+                EdgeList edges = out[curr];
+                double currDist = ws.dist(curr);
+                for (int i = 0; i < edges.size; i++) {
+                    int to = edges.other[i];
+                    if (to == via || ws.isSettled(to)) {
+                        continue;
+                    }
+                    double myDistance = currDist + edges.weight[i];
+                    if (!ws.isReached(to)) {
+                        ws.reach(to, myDistance, curr);
+                        fringe.insert(to, myDistance);
+                    } else if (myDistance < ws.dist(to)) {
+                        ws.reach(to, myDistance, curr);
+                        fringe.changePriority(to, myDistance);
+                    }
+                }
+            }
+        }
+
+        private ContractionHierarchy pack() {
+            int[] upStart = new int[n + 1];
+            int[] downStart = new int[n + 1];
+            for (int v = 0; v < n; v++) {
+                upStart[v + 1] = upStart[v] + up[v].size;
+                downStart[v + 1] = downStart[v] + down[v].size;
+            }
+            int[] upTarget = new int[upStart[n]];
+            double[] upWeight = new double[upStart[n]];
+            int[] upMiddle = new int[upStart[n]];
+            int[] downSource = new int[downStart[n]];
+            double[] downWeight = new double[downStart[n]];
+            int[] downMiddle = new int[downStart[n]];
+            for (int v = 0; v < n; v++) {
+                System.arraycopy(up[v].other, 0, upTarget, upStart[v], up[v].size);
+                System.arraycopy(up[v].weight, 0, upWeight, upStart[v], up[v].size);
+                System.arraycopy(up[v].middle, 0, upMiddle, upStart[v], up[v].size);
+                System.arraycopy(down[v].other, 0, downSource, downStart[v], down[v].size);
+                System.arraycopy(down[v].weight, 0, downWeight, downStart[v], down[v].size);
+                System.arraycopy(down[v].middle, 0, downMiddle, downStart[v], down[v].size);
+            }
+            return new ContractionHierarchy(graph, rank, upStart, upTarget, upWeight, upMiddle,
+                downStart, downSource, downWeight, downMiddle);
+        }
+    }
+}
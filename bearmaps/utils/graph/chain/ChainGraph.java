@@ -0,0 +1,324 @@
+package bearmaps.utils.graph.chain;
+
+import bearmaps.utils.graph.IntAStarSolver;
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.ReversedGraph;
+import bearmaps.utils.graph.SolverFactory;
+
+import java.util.Arrays;
+
+/**
+ * A street graph with its degree-2 chains collapsed.
+ *
+ * OSM ways have a node at every bend, so most vertices of a street graph touch exactly
+ * two other vertices and never offer a routing decision. This graph keeps only the
+ * other, "core" vertices, and replaces each chain of pass-through vertices between two
+ * core vertices with a single edge whose weight is the chain's total length. Every
+ * chain edge remembers the original edges it covers, so a route over this graph can be
+ * expanded back into the full node sequence for drawing and directions.
+ *
+ * Vertex indices of this graph are core indices; original(v) and coreOf(v) map between
+ * them and the indices of the base graph. idAt and indexOf use the base graph's OSM ids,
+ * and indexOf returns -1 for ids of pass-through vertices. Queries between arbitrary
+ * vertices go through ChainSolver, which starts and ends on the chains themselves.
+ */
+public class ChainGraph implements IntGraph {
+    private final IntGraph base;
+    private final ReversedGraph baseReverse;
+
+    /* Base graph index of each core vertex, and core index of each base vertex or -1. */
+    private final int[] original;
+    private final int[] coreOf;
+
+    /* Out-edges of core v are chainTarget[chainStart[v] .. chainStart[v + 1]). */
+    private final int[] chainStart;
+    private final int[] chainTarget;
+    private final double[] chainWeight;
+    /* Chain edge e covers base edges baseEdges[baseEdgeStart[e] .. baseEdgeStart[e + 1]). */
+    private final int[] baseEdgeStart;
+    private final int[] baseEdges;
+
+    private volatile ReversedGraph reversed;
+
+    private ChainGraph(IntGraph base, ReversedGraph baseReverse, int[] original, int[] coreOf,
+                       int[] chainStart, int[] chainTarget, double[] chainWeight,
+                       int[] baseEdgeStart, int[] baseEdges) {
+        this.base = base;
+        this.baseReverse = baseReverse;
+        this.original = original;
+        this.coreOf = coreOf;
+        this.chainStart = chainStart;
+        this.chainTarget = chainTarget;
+        this.chainWeight = chainWeight;
+        this.baseEdgeStart = baseEdgeStart;
+        this.baseEdges = baseEdges;
+    }
+
+    /**
+     * Collapses the chains of BASE. A vertex is a pass-through vertex if, counting both
+     * in- and out-edges, it touches exactly two other vertices. Loops made only of
+     * pass-through vertices keep one of them as a core vertex, so nothing becomes
+     * unreachable.
+     */
+    public static ChainGraph build(IntGraph base) {
+        int n = base.numVertices();
+        ReversedGraph baseReverse = base.reverse() instanceof ReversedGraph
+            ? (ReversedGraph) base.reverse() : new ReversedGraph(base);
+        boolean[] core = new boolean[n];
+        for (int v = 0; v < n; v++) {
+            core[v] = !isPassThrough(base, baseReverse, v);
+        }
+
+        Builder builder = new Builder(n);
+        boolean[] covered = new boolean[n];
+        int[] coreOf = new int[n];
+        Arrays.fill(coreOf, -1);
+        int[] original = new int[n];
+        int numCore = 0;
+        for (int v = 0; v < n; v++) {
+            if (core[v]) {
+                coreOf[v] = numCore;
+                original[numCore++] = v;
+            }
+        }
+        /* Chains are walked in core order, so edges come out grouped by source. A loop of
+         * pass-through vertices no walk covered gets its first vertex promoted, which
+         * appends it to the order and walks it in turn. */
+        for (int i = 0, next = 0; i < numCore || next < n; ) {
+            if (i == numCore) {
+                while (next < n && (core[next] || covered[next])) {
+                    next += 1;
+                }
+                if (next == n) {
+                    break;
+                }
+                core[next] = true;
+                coreOf[next] = numCore;
+                original[numCore++] = next;
+            }
+            int c = original[i];
+            builder.startVertex(i);
+            for (int e = base.edgeBegin(c); e < base.edgeEnd(c); e++) {
+                builder.walk(base, core, covered, c, e);
+            }
+            i += 1;
+        }
+        original = Arrays.copyOf(original, numCore);
+        int[] chainStart = Arrays.copyOf(builder.start, numCore + 1);
+        chainStart[numCore] = builder.numEdges;
+        int[] chainTarget = new int[builder.numEdges];
+        for (int e = 0; e < builder.numEdges; e++) {
+            chainTarget[e] = coreOf[builder.targetBase[e]];
+        }
+        return new ChainGraph(base, baseReverse, original, coreOf, chainStart, chainTarget,
+            Arrays.copyOf(builder.weight, builder.numEdges),
+            Arrays.copyOf(builder.baseEdgeStart, builder.numEdges + 1),
+            Arrays.copyOf(builder.baseEdges, builder.numBaseEdges));
+    }
+
+    /* True if V touches exactly two vertices other than itself, through in- or out-edges. */
+    static boolean isPassThrough(IntGraph g, IntGraph reverse, int v) {
+        int first = -1;
+        int second = -1;
+        for (int pass = 0; pass < 2; pass++) {
+            IntGraph h = pass == 0 ? g : reverse;
+            for (int e = h.edgeBegin(v); e < h.edgeEnd(v); e++) {
+                int w = h.edgeTarget(e);
+                if (w == v) {
+                    return false;
+                } else if (first < 0 || w == first) {
+                    first = w;
+                } else if (second < 0 || w == second) {
+                    second = w;
+                } else {
+                    return false;
+                }
+            }
+        }
+        return second >= 0;
+    }
+
+    /**
+     * Follows a chain out of V through base edge FIRST. PREV is the vertex the walk came
+     * from. Returns the out-edge of pass-through vertex X that continues away from PREV,
+     * or -1 if the chain is one-way in the other direction.
+     */
+    static int continueChain(IntGraph g, int x, int prev) {
+        for (int f = g.edgeBegin(x); f < g.edgeEnd(x); f++) {
+            if (g.edgeTarget(f) != prev) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    /** Growable arrays for the chain edges found so far. */
+    private static class Builder {
+        private int[] start;
+        private int[] targetBase = new int[16];
+        private double[] weight = new double[16];
+        private int[] baseEdgeStart = new int[17];
+        private int[] baseEdges = new int[16];
+        private int numEdges = 0;
+        private int numBaseEdges = 0;
+
+        Builder(int n) {
+            start = new int[n + 1];
+        }
+
+        void startVertex(int coreIndex) {
+            start[coreIndex] = numEdges;
+        }
+
+        /* Walks from core vertex C along base edge E to the next core vertex, and adds the
+         * chain edge unless the chain dead-ends or leads back to C. */
+        void walk(IntGraph base, boolean[] core, boolean[] covered, int c, int e) {
+            int mark = numBaseEdges;
+            double total = 0;
+            int prev = c;
+            int f = e;
+            while (true) {
+                appendBaseEdge(f);
+                total += base.edgeWeight(f);
+                int x = base.edgeTarget(f);
+                if (core[x]) {
+                    if (x == c) {
+                        break;
+                    }
+                    if (numEdges + 1 >= weight.length) {
+                        targetBase = Arrays.copyOf(targetBase, 2 * weight.length);
+                        baseEdgeStart = Arrays.copyOf(baseEdgeStart, 2 * weight.length + 1);
+                        weight = Arrays.copyOf(weight, 2 * weight.length);
+                    }
+                    targetBase[numEdges] = x;
+                    weight[numEdges] = total;
+                    baseEdgeStart[numEdges] = mark;
+                    numEdges += 1;
+                    baseEdgeStart[numEdges] = numBaseEdges;
+                    return;
+                }
+                covered[x] = true;
+                f = continueChain(base, x, prev);
+                prev = x;
+                if (f < 0) {
+                    break;
+                }
+            }
+            numBaseEdges = mark;
+        }
+
+        private void appendBaseEdge(int f) {
+            if (numBaseEdges == baseEdges.length) {
+                baseEdges = Arrays.copyOf(baseEdges, 2 * numBaseEdges);
+            }
+            baseEdges[numBaseEdges++] = f;
+        }
+    }
+
+    /** The graph this one was built from. */
+    public IntGraph base() {
+        return base;
+    }
+
+    /** The transpose of the base graph, with the edge mapping ChainSolver needs. */
+    ReversedGraph baseReverse() {
+        return baseReverse;
+    }
+
+    /** Returns the base graph index of core vertex V. */
+    public int original(int v) {
+        return original[v];
+    }
+
+    /** Returns the core index of base vertex V, or -1 if V is a pass-through vertex. */
+    public int coreOf(int v) {
+        return coreOf[v];
+    }
+
+    /** Returns the first of the base edges chain edge E covers. */
+    public int baseEdgeBegin(int e) {
+        return baseEdgeStart[e];
+    }
+
+    /** Returns one past the last of the base edges chain edge E covers. */
+    public int baseEdgeEnd(int e) {
+        return baseEdgeStart[e + 1];
+    }
+
+    /** Returns the Ith base edge in the concatenation of all chains' base edges. */
+    public int baseEdge(int i) {
+        return baseEdges[i];
+    }
+
+    @Override
+    public int numVertices() {
+        return original.length;
+    }
+
+    @Override
+    public int numEdges() {
+        return chainTarget.length;
+    }
+
+    @Override
+    public int edgeBegin(int v) {
+        return chainStart[v];
+    }
+
+    @Override
+    public int edgeEnd(int v) {
+        return chainStart[v + 1];
+    }
+
+    @Override
+    public int edgeTarget(int e) {
+        return chainTarget[e];
+    }
+
+    @Override
+    public double edgeWeight(int e) {
+        return chainWeight[e];
+    }
+
+    @Override
+    public double estimatedDistance(int v, int goal) {
+        return base.estimatedDistance(original[v], original[goal]);
+    }
+
+    @Override
+    public long idAt(int v) {
+        return base.idAt(original[v]);
+    }
+
+    @Override
+    public int indexOf(long id) {
+        int v = base.indexOf(id);
+        return v < 0 ? -1 : coreOf[v];
+    }
+
+    @Override
+    public IntGraph reverse() {
+        ReversedGraph result = reversed;
+        if (result == null) {
+            synchronized (this) {
+                if (reversed == null) {
+                    reversed = new ReversedGraph(this);
+                }
+                result = reversed;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a factory for ChainSolver over this graph, for Router.shortestPath. Chain
+     * weights are summed when the graph is built, so if the graph passed to the factory
+     * is not the base graph as it was then, e.g. because its weights are overlaid, the
+     * factory falls back to plain A* on that graph.
+     */
+    public SolverFactory<IntGraph, Long> solverFactory() {
+        return (g, start, end, deadline) -> g.snapshot() == base
+            ? new ChainSolver(this, start, end, deadline)
+            : new IntAStarSolver(g, start, end, deadline);
+    }
+}
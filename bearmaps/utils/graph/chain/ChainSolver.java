@@ -0,0 +1,311 @@
+package bearmaps.utils.graph.chain;
+
+import bearmaps.utils.graph.Deadline;
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.ReversedGraph;
+import bearmaps.utils.graph.SearchWorkspace;
+import bearmaps.utils.graph.ShortestPathsSolver;
+import bearmaps.utils.graph.SolverOutcome;
+import bearmaps.utils.graph.VertexIdList;
+import bearmaps.utils.pq.IntHeapPQ;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A* over a ChainGraph between two vertices of its base graph.
+ *
+ * Either endpoint may lie in the middle of a chain. The start then seeds the search with
+ * the core vertices at the ends of its chain, at their distance along it, and the end
+ * is reached through the core vertices its chain leads in from. A start and end on the
+ * same chain are also joined directly. The winning route is expanded back into base
+ * graph vertices and edges, so solution() is indistinguishable from IntAStarSolver's.
+ */
+public class ChainSolver implements ShortestPathsSolver<Long> {
+    private static final int[] EMPTY_PATH = new int[0];
+
+    private final ChainGraph chains;
+    private final IntGraph base;
+    private SolverOutcome result;
+    private int[] path = EMPTY_PATH;
+    private int[] edges = EMPTY_PATH;
+    private double totalWeight;
+    private int statesExplored = 0;
+    private long solverTime;
+
+    /* Ways onto the core graph from the start, and off it into the end. */
+    private final Walks seeds = new Walks();
+    private final Walks exits = new Walks();
+    /* Base edges of a route that never leaves the start's chain, or null. */
+    private int[] direct;
+    private double directWeight = Double.POSITIVE_INFINITY;
+
+    /**
+     * Finds the shortest path between two vertices given by their OSM ids.
+     * Note that timeout passed in is in seconds.
+     *
+     * @param chains  The compressed graph to search
+     * @param start   Id of the starting vertex
+     * @param end     Id of the end vertex
+     * @param timeout Time restriction for this activity.
+     */
+    public ChainSolver(ChainGraph chains, long start, long end, double timeout) {
+        this(chains, start, end, Deadline.after(timeout));
+    }
+
+    /**
+     * Same as above, but gives up when DEADLINE expires or is cancelled. If DEADLINE
+     * accepts partial results, a search that gives up still returns the path to the
+     * core vertex it settled closest to the goal, with outcome TIMEOUT.
+     */
+    public ChainSolver(ChainGraph chains, long start, long end, Deadline deadline) {
+        this.chains = chains;
+        this.base = chains.base();
+        long startTime = System.currentTimeMillis();
+        int startIndex = base.indexOf(start);
+        int endIndex = base.indexOf(end);
+        if (startIndex < 0 || endIndex < 0) {
+            result = SolverOutcome.UNSOLVABLE;
+        } else if (startIndex == endIndex) {
+            path = new int[] {startIndex};
+            result = SolverOutcome.SOLVED;
+        } else {
+            walkToCore(base, startIndex, endIndex, seeds);
+            walkToCore(chains.baseReverse(), endIndex, -1, exits);
+            solve(startIndex, endIndex, deadline);
+        }
+        solverTime = System.currentTimeMillis() - startTime;
+    }
+
+    /** Core vertices reachable along a chain, with the base edges and distance to each. */
+    private static class Walks {
+        private int size = 0;
+        private final int[] core = new int[2];
+        private final double[] dist = new double[2];
+        private final int[][] edges = new int[2][];
+
+        void add(int c, double d, int[] path) {
+            for (int i = 0; i < size; i++) {
+                if (core[i] == c) {
+                    if (d < dist[i]) {
+                        dist[i] = d;
+                        edges[i] = path;
+                    }
+                    return;
+                }
+            }
+            core[size] = c;
+            dist[size] = d;
+            edges[size] = path;
+            size += 1;
+        }
+
+        /* Returns the walk ending at core vertex C, or -1. */
+        int find(int c) {
+            for (int i = 0; i < size; i++) {
+                if (core[i] == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Adds to WALKS the core vertices G leads to from base vertex V along V's chain. If
+     * V is itself a core vertex, that is V alone. Passing through TARGET on the way
+     * records a direct route instead.
+     */
+    private void walkToCore(IntGraph g, int v, int target, Walks walks) {
+        int c = chains.coreOf(v);
+        if (c >= 0) {
+            walks.add(c, 0.0, EMPTY_PATH);
+            return;
+        }
+        for (int e = g.edgeBegin(v); e < g.edgeEnd(v); e++) {
+            int[] taken = new int[4];
+            int length = 0;
+            double d = 0;
+            int prev = v;
+            int f = e;
+            while (f >= 0) {
+                if (length == taken.length) {
+                    taken = Arrays.copyOf(taken, 2 * length);
+                }
+                taken[length++] = f;
+                d += g.edgeWeight(f);
+                int x = g.edgeTarget(f);
+                if (x == target && d < directWeight) {
+                    direct = Arrays.copyOf(taken, length);
+                    directWeight = d;
+                }
+                c = chains.coreOf(x);
+                if (c >= 0) {
+                    walks.add(c, d, Arrays.copyOf(taken, length));
+                    break;
+                }
+                f = x == v ? -1 : ChainGraph.continueChain(g, x, prev);
+                prev = x;
+            }
+        }
+    }
+
+    private void solve(int start, int end, Deadline deadline) {
+        try (SearchWorkspace ws = SearchWorkspace.acquire(chains.numVertices())) {
+            solve(ws, start, end, deadline);
+        }
+    }
+
+    private void solve(SearchWorkspace ws, int start, int end, Deadline deadline) {
+        IntHeapPQ fringe = ws.fringe();
+        for (int i = 0; i < seeds.size; i++) {
+            int c = seeds.core[i];
+            ws.reach(c, seeds.dist[i], -1);
+            fringe.insert(c, seeds.dist[i] + estimate(c, end));
+        }
+        double best = directWeight;
+        int bestCore = -1;
+        int closest = -1;
+        double closestEstimate = Double.POSITIVE_INFINITY;
+
+        while (!fringe.isEmpty() && fringe.peekPriority() < best) {
+            if (deadline.isExpired(statesExplored)) {
+                if (deadline.partialResults() && closest >= 0) {
+                    gather(ws, start, closest, null);
+                }
+                result = SolverOutcome.TIMEOUT;
+                return;
+            }
+            double priority = fringe.peekPriority();
+            int curr = fringe.poll();
+            statesExplored += 1;
+            ws.settle(curr);
+            double currDist = ws.dist(curr);
+            int exit = exits.find(curr);
+            if (exit >= 0 && currDist + exits.dist[exit] < best) {
+                best = currDist + exits.dist[exit];
+                bestCore = curr;
+            }
+            if (deadline.partialResults() && priority - currDist < closestEstimate) {
+                closest = curr;
+                closestEstimate = priority - currDist;
+            }
+            for (int e = chains.edgeBegin(curr); e < chains.edgeEnd(curr); e++) {
+                int to = chains.edgeTarget(e);
+                if (ws.isSettled(to)) {
+                    continue;
+                }
+                double myDistance = currDist + chains.edgeWeight(e);
+                if (!ws.isReached(to)) {
+                    ws.reach(to, myDistance, curr, e);
+                    fringe.insert(to, myDistance + estimate(to, end));
+                } else if (myDistance < ws.dist(to)) {
+                    ws.reach(to, myDistance, curr, e);
+                    fringe.changePriority(to, myDistance + estimate(to, end));
+                }
+            }
+        }
+        if (bestCore >= 0) {
+            gather(ws, start, bestCore, exits.edges[exits.find(bestCore)]);
+            totalWeight = best;
+            result = SolverOutcome.SOLVED;
+        } else if (direct != null) {
+            expand(start, direct, direct.length);
+            totalWeight = directWeight;
+            result = SolverOutcome.SOLVED;
+        } else {
+            result = SolverOutcome.UNSOLVABLE;
+        }
+    }
+
+    /* Great-circle distance from core vertex C to base vertex END. */
+    private double estimate(int c, int end) {
+        return base.estimatedDistance(chains.original(c), end);
+    }
+
+    /**
+     * Expands the route from START through the core path ending at LAST, followed by
+     * the reversed-graph edges EXIT into the end, or nothing if EXIT is null.
+     */
+    private void gather(SearchWorkspace ws, int start, int last, int[] exit) {
+        int numChainEdges = 0;
+        int length = 0;
+        int root = last;
+        for (int v = last; ws.parent(v) >= 0; v = ws.parent(v)) {
+            int e = ws.parentEdge(v);
+            length += chains.baseEdgeEnd(e) - chains.baseEdgeBegin(e);
+            numChainEdges += 1;
+            root = ws.parent(v);
+        }
+        int[] seed = seeds.edges[seeds.find(root)];
+        int exitLength = exit == null ? 0 : exit.length;
+        int[] taken = new int[seed.length + length + exitLength];
+        System.arraycopy(seed, 0, taken, 0, seed.length);
+        int i = seed.length + length;
+        for (int v = last; ws.parent(v) >= 0; v = ws.parent(v)) {
+            int e = ws.parentEdge(v);
+            for (int j = chains.baseEdgeEnd(e) - 1; j >= chains.baseEdgeBegin(e); j--) {
+                taken[--i] = chains.baseEdge(j);
+            }
+        }
+        ReversedGraph reverse = chains.baseReverse();
+        for (int j = 0; j < exitLength; j++) {
+            taken[taken.length - 1 - j] = reverse.originalEdge(exit[j]);
+        }
+        expand(start, taken, taken.length);
+        totalWeight = ws.dist(last);
+    }
+
+    /* Sets the solution to the first LENGTH edges of TAKEN, leaving START. */
+    private void expand(int start, int[] taken, int length) {
+        edges = length == taken.length ? taken : Arrays.copyOf(taken, length);
+        path = new int[length + 1];
+        path[0] = start;
+        for (int i = 0; i < length; i++) {
+            path[i + 1] = base.edgeTarget(edges[i]);
+        }
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return result;
+    }
+
+    /**
+     * The OSM ids along the solution, or an empty list if result was TIMEOUT or
+     * UNSOLVABLE. The list carries the base graph edges taken, like IntAStarSolver's.
+     */
+    @Override
+    public List<Long> solution() {
+        return new VertexIdList(base, path, edges);
+    }
+
+    /**
+     * The base graph vertex indices along the solution. Do not modify the returned array.
+     */
+    public int[] solutionIndices() {
+        return path;
+    }
+
+    /**
+     * The base graph edge indices along the solution. Do not modify the returned array.
+     */
+    public int[] solutionEdges() {
+        return edges;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return totalWeight;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return statesExplored;
+    }
+
+    @Override
+    public double explorationTime() {
+        return (double) solverTime / 1000;
+    }
+}
@@ -41,6 +41,12 @@ public class GraphBuildingHandler extends DefaultHandler {
             ("motorway", "trunk", "primary", "secondary", "tertiary", "unclassified",
                     "residential", "living_street", "motorway_link", "trunk_link", "primary_link",
                     "secondary_link", "tertiary_link"));
+    /**
+     * Node tags whose value says what kind of place the node is, e.g. amenity=cafe or
+     * shop=bakery. The first one a node has becomes its category.
+     */
+    private static final Set<String> PLACE_CATEGORY_KEYS = new HashSet<>(Arrays.asList
+            ("amenity", "shop"));
     private String activeState = "";
     private Node activeNode = null;
     private boolean validWay = false;
@@ -48,6 +54,8 @@ public class GraphBuildingHandler extends DefaultHandler {
     private final StreetMapGraph g;
 
     private String wayName = "";
+    /* The way's highway tag, kept per edge so routing profiles can weigh roads by it. */
+    private String roadClass = null;
 
     public GraphBuildingHandler(StreetMapGraph g) {
         this.g = g;
@@ -95,15 +103,21 @@ public class GraphBuildingHandler extends DefaultHandler {
             if (k.equals("highway")) {
                 //System.out.println("Highway type: " + v);
                 validWay = ALLOWED_HIGHWAY_TYPES.contains(v);
+                roadClass = v;
             } else if (k.equals("name")) {
                 //System.out.println("Way Name: " + v);
                 wayName = v;
             }
 //            System.out.println("Tag with k=" + k + ", v=" + v + ".");
-        } else if (activeState.equals("node") && qName.equals("tag") && attributes.getValue("k")
-                .equals("name")) {
+        } else if (activeState.equals("node") && qName.equals("tag")) {
+            String k = attributes.getValue("k");
+            if (k.equals("name")) {
 //            System.out.println("Node's name: " + attributes.getValue("v"));
-            activeNode.setName(attributes.getValue("v"));
+                activeNode.setName(attributes.getValue("v"));
+            } else if (PLACE_CATEGORY_KEYS.contains(k) && activeNode.category() == null) {
+                /* A cafe, bank, bakery...: what nearest-place searches look for. */
+                activeNode.setCategory(attributes.getValue("v"));
+            }
         }
     }
 
@@ -126,8 +140,8 @@ public class GraphBuildingHandler extends DefaultHandler {
                 for (int i = 0; i < nodePath.size() - 1; i++) {
                     long fromID = nodePath.get(i);
                     long toID = nodePath.get(i + 1);
-                    g.addWeightedEdge(fromID, toID, wayName);
-                    g.addWeightedEdge(toID, fromID, wayName);
+                    g.addWeightedEdge(fromID, toID, wayName, roadClass);
+                    g.addWeightedEdge(toID, fromID, wayName, roadClass);
                 }
             }
             clearStates();
@@ -145,5 +159,6 @@ public class GraphBuildingHandler extends DefaultHandler {
         validWay = false;
         nodePath = new ArrayList<>();
         wayName = "";
+        roadClass = null;
     }
 }
@@ -11,6 +11,8 @@ public class Node {
     private double lon;
 
     private String name;
+    /* What kind of place this is, from its amenity or shop tag, or null. */
+    private String category;
 
     private Node(long id, double lat, double lon) {
         this.id = id;
@@ -42,6 +44,14 @@ public class Node {
         this.name = name;
     }
 
+    public String category() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
     @Override
     public boolean equals(Object other) {
         if (other == null) {
@@ -0,0 +1,70 @@
+package bearmaps.utils.graph.streetmap;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Who a route is for. Every profile routes over the same StreetMapGraph; a profile
+ * only says, by each edge's highway tag, how many times its length a road costs, and
+ * which roads are not allowed at all (an infinite multiplier). Multipliers are at least
+ * 1, so a road never costs less than its length and A*'s straight-line estimate stays
+ * exact for every profile.
+ *
+ * The graph holds the roads GraphBuildingHandler accepts, which are the roads cars may
+ * use, so CAR is the graph's own weights and the other profiles only take roads away or
+ * make them dearer.
+ */
+public enum RoutingProfile {
+    /** Driving: every road at its length. */
+    CAR,
+    /** Cycling: no motorways, and busy roads cost more than quiet ones. */
+    BIKE("motorway", Double.POSITIVE_INFINITY, "motorway_link", Double.POSITIVE_INFINITY,
+        "trunk", 1.5, "trunk_link", 1.5, "primary", 1.3, "primary_link", 1.3,
+        "secondary", 1.15, "secondary_link", 1.15, "tertiary", 1.05, "tertiary_link", 1.05),
+    /** Walking: no motorways, every other road at its length. */
+    FOOT("motorway", Double.POSITIVE_INFINITY, "motorway_link", Double.POSITIVE_INFINITY);
+
+    private final Map<String, Double> multipliers;
+
+    /* MULTIPLIERS alternates highway tags and their multipliers; other tags cost 1. */
+    RoutingProfile(Object... multipliers) {
+        Map<String, Double> byTag = new HashMap<>();
+        for (int i = 0; i < multipliers.length; i += 2) {
+            byTag.put((String) multipliers[i], (Double) multipliers[i + 1]);
+        }
+        this.multipliers = Collections.unmodifiableMap(byTag);
+    }
+
+    /**
+     * Returns the profile called NAME, such as "bike", ignoring case, or null if there
+     * is none.
+     */
+    public static RoutingProfile forName(String name) {
+        for (RoutingProfile profile : values()) {
+            if (profile.name().equalsIgnoreCase(name.trim())) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns how many times its length a road with highway tag ROADCLASS costs, or
+     * infinity if this profile may not use it.
+     */
+    public double multiplier(String roadClass) {
+        Double multiplier = multipliers.get(roadClass);
+        return multiplier == null ? 1 : multiplier;
+    }
+
+    /** Returns whether this profile may use a road with highway tag ROADCLASS. */
+    public boolean allows(String roadClass) {
+        return multiplier(roadClass) < Double.POSITIVE_INFINITY;
+    }
+
+    /** Returns whether every road costs its length, so the graph's weights apply as-is. */
+    public boolean isUniform() {
+        return multipliers.isEmpty();
+    }
+}
@@ -1,7 +1,11 @@
 package bearmaps.utils.graph.streetmap;
 
 import bearmaps.utils.graph.AStarGraph;
+import bearmaps.utils.graph.Components;
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.ReversedGraph;
 import bearmaps.utils.graph.WeightedEdge;
+import bearmaps.utils.ps.HilbertCurve;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -11,37 +15,123 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Street graph stored in compressed sparse row (CSR) form. Every vertex has a dense
+ * index in [0, numVertices()), and the out-edges of vertex v are the edge indices in
+ * [edgeBegin(v), edgeEnd(v)). Way names and highway tags are stored once in
+ * dictionaries and edges only keep indices into them; the tags let each RoutingProfile
+ * weigh the same edges differently without a graph of its own.
+ * The Long-keyed AStarGraph methods and the lon/lat/name accessors are thin views on
+ * top of these arrays, so existing callers keep working unchanged.
+ *
+ * By default vertices are numbered along a Hilbert curve over their coordinates, so
+ * that a search relaxing the edges of one neighbourhood touches neighbouring entries of
+ * every array instead of jumping wherever the OSM ids happen to fall.
+ */
+public class StreetMapGraph implements AStarGraph<Long>, IntGraph {
+    /** How vertex indices are assigned. */
+    public enum VertexOrder {
+        /* Ascending OSM id, as the ids come out of the file. */
+        OSM_ID,
+        /* Along a Hilbert curve over lon/lat. */
+        HILBERT
+    }
 
-public class StreetMapGraph implements AStarGraph<Long> {
-    protected Map<Long, Node> nodes = new HashMap<>();
-    private Map<Long, Set<WeightedEdge<Long>>> neighbors = new HashMap<>();
+    /* OSM id of each vertex. */
+    private long[] ids = new long[0];
+    /* All OSM ids sorted ascending, and the vertex of each, so indexOf is a binary search. */
+    private long[] sortedIds = new long[0];
+    private int[] sortedIndex = new int[0];
+    private double[] lats = new double[0];
+    private double[] lons = new double[0];
+    /* Name of each vertex, or null if the OSM node has no name. */
+    private String[] names = new String[0];
+    /* Category of each vertex, from its amenity or shop tag, or null. */
+    private String[] categories = new String[0];
+
+    /* Out-edges of v are edgeTo[edgeStart[v]] .. edgeTo[edgeStart[v + 1] - 1]. */
+    private int[] edgeStart = new int[1];
+    private int[] edgeTo = new int[0];
+    private float[] edgeWeight = new float[0];
+    /* Index into wayNames of the way each edge belongs to. */
+    private int[] edgeWay = new int[0];
+    private String[] wayNames = new String[0];
+    /* Index into roadClasses of the highway tag of each edge's way, e.g. "residential". */
+    private byte[] edgeRoadClass = new byte[0];
+    private String[] roadClasses = new String[0];
+
+    /* Connected component labels, computed the first time someone asks for them. */
+    private volatile Components components;
+
+    /* Transposed adjacency, built the first time someone asks for it. */
+    private volatile ReversedGraph reversed;
+
+    /* Current traffic and closures, or null while every edge has its parsed weight. */
+    private volatile WeightOverlay overlay;
+    private long overlayVersion;
+
+    /* Weights of each non-uniform profile, built on first use, with the overlay they
+     * include. */
+    private final Map<RoutingProfile, ProfileWeights> profileWeights =
+        new ConcurrentHashMap<>();
+
+    /* Only used while the OSM file is being parsed. */
+    private ParseState parseState;
 
     private StreetMapGraph() {
+        parseState = new ParseState();
     }
 
     public StreetMapGraph(String filename) {
-        StreetMapGraph smg = StreetMapGraph.readFromXML(filename);
-        this.nodes = smg.nodes;
-        this.neighbors = smg.neighbors;
+        this(filename, VertexOrder.HILBERT);
+    }
+
+    /**
+     * Reads the graph in FILENAME, numbering its vertices in ORDER.
+     */
+    public StreetMapGraph(String filename, VertexOrder order) {
+        StreetMapGraph smg = StreetMapGraph.readFromXML(filename, order);
+        this.ids = smg.ids;
+        this.sortedIds = smg.sortedIds;
+        this.sortedIndex = smg.sortedIndex;
+        this.lats = smg.lats;
+        this.lons = smg.lons;
+        this.names = smg.names;
+        this.categories = smg.categories;
+        this.edgeStart = smg.edgeStart;
+        this.edgeTo = smg.edgeTo;
+        this.edgeWeight = smg.edgeWeight;
+        this.edgeWay = smg.edgeWay;
+        this.wayNames = smg.wayNames;
+        this.edgeRoadClass = smg.edgeRoadClass;
+        this.roadClasses = smg.roadClasses;
     }
 
     /**
-     * Returns a list of outgoing edges for V. Assumes V exists in this
-     * graph.
+     * Returns a list of outgoing edges for V. Returns an empty list if V is
+     * not in this graph.
      **/
     @Override
     public List<WeightedEdge<Long>> neighbors(Long v) {
-        Set<WeightedEdge<Long>> incidentSet = neighbors.get(v);
-        List<WeightedEdge<Long>> incidentList = new ArrayList<>();
-        for (WeightedEdge<Long> e : incidentSet) {
-            incidentList.add(e);
+        int index = indexOf(v);
+        if (index < 0) {
+            return new ArrayList<>();
+        }
+        List<WeightedEdge<Long>> incidentList = new ArrayList<>(outDegree(index));
+        for (int e = edgeBegin(index); e < edgeEnd(index); e++) {
+            WeightedEdge<Long> weightedEdge = new WeightedEdge<>(v, ids[edgeTo[e]], edgeWeight[e]);
+            weightedEdge.setName(wayNames[edgeWay[e]]);
+            incidentList.add(weightedEdge);
         }
-
         return incidentList;
     }
 
@@ -51,29 +141,16 @@ public class StreetMapGraph implements AStarGraph<Long> {
      */
     @Override
     public double estimatedDistanceToGoal(Long s, Long goal) {
-        Node sNode = nodes.get(s);
-        Node goalNode = nodes.get(goal);
-        return distance(sNode.lon(), goalNode.lon(), sNode.lat(), goalNode.lat());
-    }
-
-    /**
-     * Returns a set of my vertices. Altering this set does not alter this
-     * graph.
-     **/
-    private Set<Long> vertices() {
-        Set<Long> vertices = new HashSet<>();
-        for (long id : nodes.keySet()) {
-            vertices.add(id);
-        }
-
-        return vertices;
+        int sIndex = indexOf(s);
+        int goalIndex = indexOf(goal);
+        return distance(lons[sIndex], lons[goalIndex], lats[sIndex], lats[goalIndex]);
     }
 
     /**
      * Factory method. Creates and returns a graph from an OSM XML
      * file. Assumes file is correctly formatted.
      */
-    private static StreetMapGraph readFromXML(String filename) {
+    private static StreetMapGraph readFromXML(String filename, VertexOrder order) {
         StreetMapGraph smg = new StreetMapGraph();
         try {
             File inputFile = new File(filename);
@@ -86,53 +163,139 @@ public class StreetMapGraph implements AStarGraph<Long> {
             e.printStackTrace();
         }
 
-        smg.clean();
+        smg.clean(order);
         return smg;
     }
 
     /**
-     * Adds a node to this graph, if it doesn't yet exist.
+     * Adds a node to this graph, if it doesn't yet exist. Only valid while parsing.
      **/
     void addNode(Node node) {
-        if (!nodes.containsKey(node.id())) {
-            nodes.put(node.id(), node);
-            neighbors.put(node.id(), new HashSet<>());
+        if (!parseState.nodes.containsKey(node.id())) {
+            parseState.nodes.put(node.id(), node);
         }
     }
 
     /**
-     * Adds an edge to this graph, if FROMID and TOID are in this graph. Does
-     * not add additional edge if edge already exists.
+     * Adds an edge to this graph, if FROMID and TOID are in this graph. Duplicate
+     * edges are dropped when the graph is compacted. Only valid while parsing.
      **/
-    void addWeightedEdge(long fromID, long toID, String name) {
-        if (nodes.containsKey(fromID) && nodes.containsKey(toID)) {
-            Node from = nodes.get(fromID);
-            Node to = nodes.get(toID);
-            double weight = distance(from.lon(), to.lon(), from.lat(), to.lat());
-
-            Set<WeightedEdge<Long>> edgeSet = neighbors.get(fromID);
-            WeightedEdge<Long> weightedEdge = new WeightedEdge<>(from.id(), to.id(), weight);
-            weightedEdge.setName(name);
-            edgeSet.add(weightedEdge);
+    void addWeightedEdge(long fromID, long toID, String name, String roadClass) {
+        Map<Long, Node> parsedNodes = parseState.nodes;
+        if (parsedNodes.containsKey(fromID) && parsedNodes.containsKey(toID)) {
+            parseState.addEdge(fromID, toID, name, roadClass);
         }
     }
 
     /**
-     * Removes vertices with 0 out-degree from graph. Note that this will
-     * cause issues if edges are not bidirectional.
+     * Removes vertices with 0 out-degree and no name from the parsed graph, then
+     * numbers what is left in VERTEXORDER and packs it into the CSR arrays. Note that this
+     * will cause issues if edges are not bidirectional.
      **/
-    private void clean() {
-        List<Long> toRemove = new ArrayList<>();
-        for (long id : nodes.keySet()) {
-            if (neighbors(id).size() == 0 && nodes.get(id).name() == null) {
-                toRemove.add(id);
-            }
+    private void clean(VertexOrder vertexOrder) {
+        ParseState state = parseState;
+        parseState = null;
+
+        Set<Long> hasOutEdge = new HashSet<>();
+        for (int i = 0; i < state.numEdges; i++) {
+            hasOutEdge.add(state.from[i]);
+        }
+        long[] kept = state.nodes.values().stream()
+            .filter(n -> n.name() != null || n.category() != null
+                || hasOutEdge.contains(n.id()))
+            .mapToLong(Node::id)
+            .sorted()
+            .toArray();
+
+        int n = kept.length;
+        double[] keptLons = new double[n];
+        double[] keptLats = new double[n];
+        for (int i = 0; i < n; i++) {
+            Node node = state.nodes.get(kept[i]);
+            keptLons[i] = node.lon();
+            keptLats[i] = node.lat();
+        }
+        /* layout[v] is the position in KEPT of the vertex numbered v. */
+        int[] layout = vertexOrder == VertexOrder.HILBERT ? HilbertCurve.order(keptLons, keptLats)
+            : IntStream.range(0, n).toArray();
+
+        ids = new long[n];
+        lats = new double[n];
+        lons = new double[n];
+        names = new String[n];
+        categories = new String[n];
+        sortedIds = kept;
+        sortedIndex = new int[n];
+        for (int v = 0; v < n; v++) {
+            ids[v] = kept[layout[v]];
+            lats[v] = keptLats[layout[v]];
+            lons[v] = keptLons[layout[v]];
+            names[v] = state.nodes.get(ids[v]).name();
+            String category = state.nodes.get(ids[v]).category();
+            categories[v] = category == null ? null : category.intern();
+            sortedIndex[layout[v]] = v;
+        }
+
+        /* Counting sort of the parsed edges by source vertex. */
+        int m = state.numEdges;
+        int[] from = new int[m];
+        int[] to = new int[m];
+        int[] start = new int[n + 1];
+        for (int i = 0; i < m; i++) {
+            from[i] = indexOf(state.from[i]);
+            to[i] = indexOf(state.to[i]);
+            start[from[i] + 1] += 1;
+        }
+        for (int v = 0; v < n; v++) {
+            start[v + 1] += start[v];
+        }
+        int[] order = new int[m];
+        int[] fill = Arrays.copyOf(start, n);
+        for (int i = 0; i < m; i++) {
+            order[fill[from[i]]++] = i;
         }
 
-        for (long id : toRemove) {
-            nodes.remove(id);
-            neighbors.remove(id);
+        /* Sort each adjacency run by target and drop duplicate edges. */
+        edgeStart = new int[n + 1];
+        edgeTo = new int[m];
+        edgeWeight = new float[m];
+        edgeWay = new int[m];
+        edgeRoadClass = new byte[m];
+        int size = 0;
+        long[] run = new long[0];
+        for (int v = 0; v < n; v++) {
+            edgeStart[v] = size;
+            int degree = start[v + 1] - start[v];
+            if (run.length < degree) {
+                run = new long[degree];
+            }
+            for (int j = 0; j < degree; j++) {
+                int i = order[start[v] + j];
+                /* Target in the high bits, parse order in the low bits: sorting keeps the
+                 * first-parsed copy of each duplicate edge first. */
+                run[j] = ((long) to[i] << 32) | i;
+            }
+            Arrays.sort(run, 0, degree);
+            for (int j = 0; j < degree; j++) {
+                int w = (int) (run[j] >>> 32);
+                if (j > 0 && w == (int) (run[j - 1] >>> 32)) {
+                    continue;
+                }
+                int i = (int) run[j];
+                edgeTo[size] = w;
+                edgeWeight[size] = (float) distance(lons[v], lons[w], lats[v], lats[w]);
+                edgeWay[size] = state.way[i];
+                edgeRoadClass[size] = state.roadClass[i];
+                size += 1;
+            }
         }
+        edgeStart[n] = size;
+        edgeTo = Arrays.copyOf(edgeTo, size);
+        edgeWeight = Arrays.copyOf(edgeWeight, size);
+        edgeWay = Arrays.copyOf(edgeWay, size);
+        edgeRoadClass = Arrays.copyOf(edgeRoadClass, size);
+        wayNames = state.wayNames.toArray(new String[0]);
+        roadClasses = state.roadClasses.toArray(new String[0]);
     }
 
     /**
@@ -145,33 +308,26 @@ public class StreetMapGraph implements AStarGraph<Long> {
         }
 
         StreetMapGraph otherGraph = (StreetMapGraph) o;
-        Set<Long> myVertices = vertices(), otherGraphVertices = otherGraph.vertices();
-
-        if (myVertices.size() != otherGraphVertices.size()) {
+        if (!Arrays.equals(sortedIds, otherGraph.sortedIds)) {
             return false;
         }
 
-        for (long id : myVertices) {
-            if (!otherGraphVertices.contains(id)) {
-                return false;
-            }
-
-            List<WeightedEdge<Long>> myNeighbors = neighbors(id);
-            List<WeightedEdge<Long>> otherGraphNeighbors = otherGraph.neighbors(id);
-
-            if (myNeighbors.size() != otherGraphNeighbors.size()) {
+        /* Compare by OSM id, so graphs numbered in different orders can still be equal. */
+        for (int v = 0; v < numVertices(); v++) {
+            int w = otherGraph.indexOf(ids[v]);
+            if (outDegree(v) != otherGraph.outDegree(w)) {
                 return false;
             }
 
             Set<Long> neighborsSet = new HashSet<>();
-            for (WeightedEdge<Long> e : myNeighbors) {
-                neighborsSet.add(e.to());
+            for (int e = edgeBegin(v); e < edgeEnd(v); e++) {
+                neighborsSet.add(ids[edgeTo[e]]);
             }
 
             int initialSize = neighborsSet.size();
 
-            for (WeightedEdge<Long> e : otherGraphNeighbors) {
-                neighborsSet.add(e.to());
+            for (int e = otherGraph.edgeBegin(w); e < otherGraph.edgeEnd(w); e++) {
+                neighborsSet.add(otherGraph.ids[otherGraph.edgeTo[e]]);
                 if (neighborsSet.size() != initialSize) {
                     return false;
                 }
@@ -206,10 +362,11 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The longitude of the vertex.
      */
     public double lon(long v) {
-        if (!nodes.containsKey(v)) {
+        int index = indexOf(v);
+        if (index < 0) {
             return 0.0;
         }
-        return nodes.get(v).lon();
+        return lons[index];
     }
 
     /**
@@ -219,10 +376,11 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The latitude of the vertex.
      */
     public double lat(long v) {
-        if (!nodes.containsKey(v)) {
+        int index = indexOf(v);
+        if (index < 0) {
             return 0.0;
         }
-        return nodes.get(v).lat();
+        return lats[index];
     }
 
     /**
@@ -232,17 +390,393 @@ public class StreetMapGraph implements AStarGraph<Long> {
      * @return The name of the vertex.
      */
     public String name(long v) {
-        if (!nodes.containsKey(v)) {
+        int index = indexOf(v);
+        if (index < 0) {
             return null;
         }
-        return nodes.get(v).name();
+        return names[index];
     }
 
+    /**
+     * Builds a Node for every vertex. The graph itself does not keep Node objects
+     * around, so callers that hold on to the list pay for it.
+     */
     protected List<Node> getNodes() {
-        List<Node> toReturn = new ArrayList<>();
-        for (Map.Entry<Long, Node> nodeEntry : this.nodes.entrySet()) {
-            toReturn.add(nodeEntry.getValue());
+        List<Node> toReturn = new ArrayList<>(numVertices());
+        for (int v = 0; v < numVertices(); v++) {
+            Node node = Node.of(ids[v], lats[v], lons[v]);
+            node.setName(names[v]);
+            node.setCategory(categories[v]);
+            toReturn.add(node);
         }
         return toReturn;
     }
+
+    /* Index-based accessors. Vertex and edge indices are only meaningful for this graph. */
+
+    /** Returns the number of vertices in this graph. */
+    @Override
+    public int numVertices() {
+        return ids.length;
+    }
+
+    /** Returns the number of directed edges in this graph. */
+    @Override
+    public int numEdges() {
+        return edgeTo.length;
+    }
+
+    /**
+     * Returns the dense index of the vertex with OSM id ID, or -1 if there is none.
+     */
+    @Override
+    public int indexOf(long id) {
+        int index = Arrays.binarySearch(sortedIds, id);
+        return index < 0 ? -1 : sortedIndex[index];
+    }
+
+    /** Returns the OSM id of vertex V. */
+    @Override
+    public long idAt(int v) {
+        return ids[v];
+    }
+
+    /** Returns the longitude of vertex V. */
+    public double lonAt(int v) {
+        return lons[v];
+    }
+
+    /** Returns the latitude of vertex V. */
+    public double latAt(int v) {
+        return lats[v];
+    }
+
+    /** Returns the name of vertex V, or null if it has none. */
+    public String nameAt(int v) {
+        return names[v];
+    }
+
+    /**
+     * Returns the category of vertex V, such as "cafe" from amenity=cafe, or null if it
+     * has none.
+     */
+    public String categoryAt(int v) {
+        return categories[v];
+    }
+
+    /** Returns the number of out-edges of vertex V. */
+    public int outDegree(int v) {
+        return edgeStart[v + 1] - edgeStart[v];
+    }
+
+    /** Returns the index of the first out-edge of vertex V. */
+    @Override
+    public int edgeBegin(int v) {
+        return edgeStart[v];
+    }
+
+    /** Returns one past the index of the last out-edge of vertex V. */
+    @Override
+    public int edgeEnd(int v) {
+        return edgeStart[v + 1];
+    }
+
+    /** Returns the target vertex of edge E. */
+    @Override
+    public int edgeTarget(int e) {
+        return edgeTo[e];
+    }
+
+    /**
+     * Returns the source vertex of edge E. Edges only store their target, so this is a
+     * binary search over the adjacency offsets.
+     */
+    public int edgeSource(int e) {
+        int low = 0;
+        int high = numVertices() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (edgeStart[mid] <= e) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the weight (great-circle length in miles) of edge E, as parsed. Searches
+     * that should see traffic and closures read snapshot() instead.
+     */
+    @Override
+    public double edgeWeight(int e) {
+        return edgeWeight[e];
+    }
+
+    /** Returns the name of the way edge E belongs to. */
+    public String edgeName(int e) {
+        return wayNames[edgeWay[e]];
+    }
+
+    /**
+     * Returns the id of the way edge E belongs to. Ways are numbered by name, so two
+     * edges have the same way id exactly when their way names are equal.
+     */
+    public int edgeWay(int e) {
+        return edgeWay[e];
+    }
+
+    /** Returns the highway tag of the way edge E belongs to, e.g. "residential". */
+    public String edgeRoadClass(int e) {
+        return roadClasses[edgeRoadClass[e]];
+    }
+
+    /** Returns whether PROFILE may use edge E at all, traffic and closures aside. */
+    public boolean allows(RoutingProfile profile, int e) {
+        return profile.allows(edgeRoadClass(e));
+    }
+
+    /**
+     * Returns the edge from vertex V to vertex W, or -1 if there is none. Each adjacency
+     * run is sorted by target, so this is a binary search over V's out-edges.
+     */
+    public int findEdge(int v, int w) {
+        int lo = edgeStart[v];
+        int hi = edgeStart[v + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (edgeTo[mid] < w) {
+                lo = mid + 1;
+            } else if (edgeTo[mid] > w) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the great-circle distance between vertices V and GOAL. */
+    @Override
+    public double estimatedDistance(int v, int goal) {
+        return distance(lons[v], lons[goal], lats[v], lats[goal]);
+    }
+
+    /** Returns the strong and weak component labels of this graph's vertices. */
+    public Components components() {
+        Components result = components;
+        if (result == null) {
+            synchronized (this) {
+                if (components == null) {
+                    components = Components.of(this);
+                }
+                result = components;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns false if there is certainly no path from vertex V to vertex W, in O(1).
+     * See Components.mayReach.
+     */
+    public boolean mayReach(int v, int w) {
+        return components().mayReach(v, w);
+    }
+
+    /**
+     * Returns the graph as it currently stands, with every weight multiplier applied:
+     * this graph itself if there are none, otherwise the current WeightOverlay. The
+     * result never changes, however the multipliers change later.
+     */
+    @Override
+    public IntGraph snapshot() {
+        WeightOverlay current = overlay;
+        return current == null ? this : current;
+    }
+
+    /**
+     * Same as above, but weighted for PROFILE: each edge's weight is also multiplied by
+     * what PROFILE charges for its highway tag, and roads PROFILE may not use are
+     * closed. The topology is shared; each profile costs one pair of edge arrays, which
+     * is rebuilt the first time it is asked for after the multipliers change.
+     */
+    public IntGraph snapshot(RoutingProfile profile) {
+        WeightOverlay current = overlay;
+        if (profile.isUniform()) {
+            return current == null ? this : current;
+        }
+        ProfileWeights cached = profileWeights.get(profile);
+        if (cached != null && cached.overlay == current) {
+            return cached.weights;
+        }
+        float[] byClass = new float[roadClasses.length];
+        for (int c = 0; c < byClass.length; c++) {
+            byClass[c] = (float) profile.multiplier(roadClasses[c]);
+        }
+        float[] multiplier = new float[numEdges()];
+        for (int e = 0; e < multiplier.length; e++) {
+            multiplier[e] = byClass[edgeRoadClass[e]]
+                * (current == null ? 1 : current.multipliers()[e]);
+        }
+        WeightOverlay weights = new WeightOverlay(this, multiplier,
+            current == null ? 0 : current.version());
+        profileWeights.put(profile, new ProfileWeights(current, weights));
+        return weights;
+    }
+
+    /** Returns whether any edge currently has a multiplier other than 1. */
+    public boolean hasWeightOverlay() {
+        return overlay != null;
+    }
+
+    /** Returns the multiplier currently applied to the weight of edge E. */
+    public double weightMultiplier(int e) {
+        WeightOverlay current = overlay;
+        return current == null ? 1 : current.multiplier(e);
+    }
+
+    /**
+     * Sets the multiplier of each of EDGES to the matching entry of MULTIPLIERS, all at
+     * once: a search sees either none of the new multipliers or all of them. A
+     * multiplier of 1 restores an edge's parsed weight and an infinite one closes it.
+     * Edges not listed keep their multipliers.
+     *
+     * @return Whether any listed edge got cheaper than it was, in which case routes that
+     * avoided it may no longer be shortest.
+     * @throws IllegalArgumentException If an edge does not exist or a multiplier is less
+     * than 1, which could make A*'s straight-line estimates overestimate. Nothing
+     * changes in that case.
+     */
+    public boolean setWeightMultipliers(int[] edges, double[] multipliers) {
+        return setWeightMultipliers(false, edges, multipliers);
+    }
+
+    /**
+     * Same as above, but if CLEAR, every edge not listed is restored to its parsed
+     * weight in the same step, so no search sees the roads cleared but not yet changed.
+     *
+     * @return Whether any edge got cheaper than it was.
+     */
+    public synchronized boolean setWeightMultipliers(boolean clear, int[] edges,
+                                                     double[] multipliers) {
+        if (edges.length != multipliers.length) {
+            throw new IllegalArgumentException("Need one multiplier per edge");
+        }
+        for (int i = 0; i < edges.length; i++) {
+            if (edges[i] < 0 || edges[i] >= numEdges()) {
+                throw new IllegalArgumentException("No edge " + edges[i]);
+            }
+            if (!(multipliers[i] >= 1)) {
+                throw new IllegalArgumentException(
+                    "Weight multipliers must be at least 1, got " + multipliers[i]);
+            }
+        }
+        WeightOverlay current = overlay;
+        float[] next;
+        if (current == null || clear) {
+            next = new float[numEdges()];
+            Arrays.fill(next, 1);
+        } else {
+            next = current.multipliers().clone();
+        }
+        for (int i = 0; i < edges.length; i++) {
+            next[edges[i]] = (float) multipliers[i];
+        }
+        float[] old = current == null ? null : current.multipliers();
+        boolean cheaper = false;
+        boolean any = false;
+        for (int e = 0; e < next.length; e++) {
+            cheaper |= old != null && next[e] < old[e];
+            any |= next[e] != 1;
+        }
+        overlayVersion += 1;
+        overlay = any ? new WeightOverlay(this, next, overlayVersion) : null;
+        return cheaper;
+    }
+
+    /**
+     * Restores every edge to its parsed weight.
+     *
+     * @return Whether any edge had a multiplier, and so got cheaper.
+     */
+    public boolean clearWeightMultipliers() {
+        return setWeightMultipliers(true, new int[0], new double[0]);
+    }
+
+    /**
+     * Returns the transpose of this graph. It is built on first use and then shared, so
+     * searches that run backwards from a target do not pay for it per query.
+     */
+    @Override
+    public ReversedGraph reverse() {
+        ReversedGraph result = reversed;
+        if (result == null) {
+            synchronized (this) {
+                if (reversed == null) {
+                    reversed = new ReversedGraph(this);
+                }
+                result = reversed;
+            }
+        }
+        return result;
+    }
+
+    /* A profile's weights, and the overlay they were built on. */
+    private static class ProfileWeights {
+        private final WeightOverlay overlay;
+        private final WeightOverlay weights;
+
+        ProfileWeights(WeightOverlay overlay, WeightOverlay weights) {
+            this.overlay = overlay;
+            this.weights = weights;
+        }
+    }
+
+    /**
+     * Everything collected from the OSM file before the CSR arrays are built. Edges are
+     * kept as parallel primitive arrays so parsing does not allocate an object per edge.
+     */
+    private static class ParseState {
+        private Map<Long, Node> nodes = new HashMap<>();
+        private long[] from = new long[1024];
+        private long[] to = new long[1024];
+        private int[] way = new int[1024];
+        private byte[] roadClass = new byte[1024];
+        private int numEdges = 0;
+        private Map<String, Integer> wayIndex = new HashMap<>();
+        private List<String> wayNames = new ArrayList<>();
+        private Map<String, Integer> roadClassIndex = new HashMap<>();
+        private List<String> roadClasses = new ArrayList<>();
+
+        void addEdge(long fromID, long toID, String name, String highway) {
+            if (numEdges == from.length) {
+                from = Arrays.copyOf(from, numEdges * 2);
+                to = Arrays.copyOf(to, numEdges * 2);
+                way = Arrays.copyOf(way, numEdges * 2);
+                roadClass = Arrays.copyOf(roadClass, numEdges * 2);
+            }
+            Integer index = wayIndex.get(name);
+            if (index == null) {
+                index = wayNames.size();
+                wayIndex.put(name, index);
+                wayNames.add(name);
+            }
+            Integer classIndex = roadClassIndex.get(highway);
+            if (classIndex == null) {
+                if (roadClasses.size() > Byte.MAX_VALUE) {
+                    throw new IllegalStateException("Too many highway tags");
+                }
+                classIndex = roadClasses.size();
+                roadClassIndex.put(highway, classIndex);
+                roadClasses.add(highway);
+            }
+            from[numEdges] = fromID;
+            to[numEdges] = toID;
+            way[numEdges] = index;
+            roadClass[numEdges] = (byte) (int) classIndex;
+            numEdges += 1;
+        }
+    }
 }
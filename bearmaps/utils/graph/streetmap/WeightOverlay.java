@@ -0,0 +1,113 @@
+package bearmaps.utils.graph.streetmap;
+
+import bearmaps.utils.graph.IntGraph;
+import bearmaps.utils.graph.ReversedGraph;
+
+/**
+ * A StreetMapGraph with some edges made slower, by traffic, roadworks or a
+ * RoutingProfile, or closed. Each edge's weight is its parsed weight times a multiplier
+ * of at least 1; a closed edge has an infinite multiplier and weight. Since weights only
+ * ever grow, the graph's straight-line estimatedDistance stays a lower bound and A*
+ * stays exact.
+ *
+ * An overlay never changes once made: StreetMapGraph.setWeightMultipliers publishes a
+ * new one, and searches that started on an older overlay finish on it. Everything but
+ * the weights is shared with the graph, so a view costs two arrays over the edges: the
+ * multipliers, which later changes are applied on top of, and the weights they give.
+ */
+public class WeightOverlay implements IntGraph {
+    private final StreetMapGraph base;
+    private final float[] multiplier;
+    private final float[] weight;
+    private final long version;
+    /* Transposed view, sharing the base graph's transposed arrays. */
+    private volatile ReversedGraph reversed;
+
+    WeightOverlay(StreetMapGraph base, float[] multiplier, long version) {
+        this.base = base;
+        this.multiplier = multiplier;
+        this.version = version;
+        weight = new float[multiplier.length];
+        for (int e = 0; e < weight.length; e++) {
+            weight[e] = (float) (base.edgeWeight(e) * multiplier[e]);
+        }
+    }
+
+    /** The graph this overlay changes the weights of. */
+    public StreetMapGraph base() {
+        return base;
+    }
+
+    /** The multiplier applied to edge E: 1 if unchanged, infinite if closed. */
+    public double multiplier(int e) {
+        return multiplier[e];
+    }
+
+    /**
+     * Counts the overlays published on the base graph; later overlays are higher. A
+     * profile's weights have the version of the overlay they include, or 0.
+     */
+    public long version() {
+        return version;
+    }
+
+    /* Shared so the next overlay can start from a copy of it. */
+    float[] multipliers() {
+        return multiplier;
+    }
+
+    @Override
+    public int numVertices() {
+        return base.numVertices();
+    }
+
+    @Override
+    public int numEdges() {
+        return base.numEdges();
+    }
+
+    @Override
+    public int edgeBegin(int v) {
+        return base.edgeBegin(v);
+    }
+
+    @Override
+    public int edgeEnd(int v) {
+        return base.edgeEnd(v);
+    }
+
+    @Override
+    public int edgeTarget(int e) {
+        return base.edgeTarget(e);
+    }
+
+    @Override
+    public double edgeWeight(int e) {
+        return weight[e];
+    }
+
+    @Override
+    public double estimatedDistance(int v, int goal) {
+        return base.estimatedDistance(v, goal);
+    }
+
+    @Override
+    public long idAt(int v) {
+        return base.idAt(v);
+    }
+
+    @Override
+    public int indexOf(long id) {
+        return base.indexOf(id);
+    }
+
+    @Override
+    public ReversedGraph reverse() {
+        ReversedGraph result = reversed;
+        if (result == null) {
+            result = base.reverse().over(this);
+            reversed = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,176 @@
+package bearmaps.utils.pq;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+
+/**
+ * Indexed d-ary min-heap. Items live in one array laid out as an implicit d-ary tree,
+ * and a map from item to heap slot lets changePriority move an item in place instead
+ * of removing and re-inserting it. Each item's slot is kept in a mutable record that
+ * sifting updates in place, so apart from growing the arrays, the only allocations
+ * per operation are the map entry and the record made by insert.
+ *
+ * A 4-ary heap is the default: it is shallower than a binary heap, and the children
+ * of a slot sit next to each other in memory, which suits decrease-key heavy searches.
+ */
+public class IndexedHeapPQ<T> implements PriorityQueue<T> {
+    private static final int DEFAULT_ARITY = 4;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final int arity;
+    private T[] items;
+    private double[] priorities;
+    /* The slot record of the item in each slot. */
+    private Slot[] slots;
+    private int size;
+    private HashMap<T, Slot> slotOf = new HashMap<>();
+
+    /* Where one item currently sits in the heap. */
+    private static class Slot {
+        private int index;
+    }
+
+    public IndexedHeapPQ() {
+        this(DEFAULT_ARITY);
+    }
+
+    /**
+     * @param arity Number of children per heap node. 2 gives a binary heap.
+     */
+    @SuppressWarnings("unchecked")
+    public IndexedHeapPQ(int arity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("Arity must be at least 2, got " + arity);
+        }
+        this.arity = arity;
+        items = (T[]) new Object[DEFAULT_CAPACITY];
+        priorities = new double[DEFAULT_CAPACITY];
+        slots = new Slot[DEFAULT_CAPACITY];
+    }
+
+    @Override
+    public void insert(T item, double priority) {
+        if (slotOf.containsKey(item)) {
+            throw new IllegalArgumentException("Already contains " + item);
+        }
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+            priorities = Arrays.copyOf(priorities, size * 2);
+            slots = Arrays.copyOf(slots, size * 2);
+        }
+        Slot slot = new Slot();
+        slot.index = size;
+        items[size] = item;
+        priorities[size] = priority;
+        slots[size] = slot;
+        slotOf.put(item, slot);
+        size += 1;
+        siftUp(size - 1);
+    }
+
+    @Override
+    public boolean contains(T item) {
+        return slotOf.containsKey(item);
+    }
+
+    @Override
+    public T peek() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        return items[0];
+    }
+
+    @Override
+    public T poll() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        T item = items[0];
+        slotOf.remove(item);
+        size -= 1;
+        if (size > 0) {
+            move(size, 0);
+            siftDown(0);
+        }
+        items[size] = null;
+        slots[size] = null;
+        return item;
+    }
+
+    @Override
+    public void changePriority(T item, double priority) {
+        Slot entry = slotOf.get(item);
+        if (entry == null) {
+            throw new IllegalArgumentException(item + " not in PQ.");
+        }
+        int slot = entry.index;
+        double oldPriority = priorities[slot];
+        priorities[slot] = priority;
+        if (priority < oldPriority) {
+            siftUp(slot);
+        } else {
+            siftDown(slot);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /* Copies the entry in slot FROM into slot TO and records its new position. */
+    private void move(int from, int to) {
+        items[to] = items[from];
+        priorities[to] = priorities[from];
+        slots[to] = slots[from];
+        slots[to].index = to;
+    }
+
+    private void siftUp(int slot) {
+        T item = items[slot];
+        double priority = priorities[slot];
+        Slot entry = slots[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) / arity;
+            if (priorities[parent] <= priority) {
+                break;
+            }
+            move(parent, slot);
+            slot = parent;
+        }
+        items[slot] = item;
+        priorities[slot] = priority;
+        slots[slot] = entry;
+        entry.index = slot;
+    }
+
+    private void siftDown(int slot) {
+        T item = items[slot];
+        double priority = priorities[slot];
+        Slot entry = slots[slot];
+        while (true) {
+            int first = slot * arity + 1;
+            if (first >= size) {
+                break;
+            }
+            int last = Math.min(first + arity, size);
+            int best = first;
+            for (int child = first + 1; child < last; child++) {
+                if (priorities[child] < priorities[best]) {
+                    best = child;
+                }
+            }
+            if (priorities[best] >= priority) {
+                break;
+            }
+            move(best, slot);
+            slot = best;
+        }
+        items[slot] = item;
+        priorities[slot] = priority;
+        slots[slot] = entry;
+        entry.index = slot;
+    }
+}
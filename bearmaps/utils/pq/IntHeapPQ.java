@@ -0,0 +1,191 @@
+package bearmaps.utils.pq;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Indexed d-ary min-heap over the int keys 0 .. capacity - 1, meant for searches over
+ * dense vertex ids. Heap slots and the key-to-slot index are plain int arrays, so no
+ * operation allocates, and a heap can be cleared and reused across searches.
+ *
+ * This mirrors IndexedHeapPQ but cannot implement PriorityQueue, since that
+ * interface would box every key; it implements IntPriorityQueue instead.
+ */
+public class IntHeapPQ implements IntPriorityQueue {
+    private static final int DEFAULT_ARITY = 4;
+    private static final int ABSENT = -1;
+
+    private final int arity;
+    private int[] heap;
+    private double[] priorities;
+    /* slotOf[key] is the heap slot holding KEY, or ABSENT. */
+    private int[] slotOf;
+    private int size;
+
+    public IntHeapPQ(int capacity) {
+        this(capacity, DEFAULT_ARITY);
+    }
+
+    /**
+     * @param capacity Keys must lie in [0, capacity).
+     * @param arity    Number of children per heap node. 2 gives a binary heap.
+     */
+    public IntHeapPQ(int capacity, int arity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("Arity must be at least 2, got " + arity);
+        }
+        this.arity = arity;
+        heap = new int[Math.max(capacity, 1)];
+        priorities = new double[Math.max(capacity, 1)];
+        slotOf = new int[capacity];
+        Arrays.fill(slotOf, ABSENT);
+    }
+
+    /* Returns the largest key this heap can hold, plus one. */
+    @Override
+    public int capacity() {
+        return slotOf.length;
+    }
+
+    /* Inserts KEY with priority PRIORITY. KEY must not already be in the heap. */
+    @Override
+    public void insert(int key, double priority) {
+        if (slotOf[key] != ABSENT) {
+            throw new IllegalArgumentException("Already contains " + key);
+        }
+        heap[size] = key;
+        priorities[size] = priority;
+        slotOf[key] = size;
+        size += 1;
+        siftUp(size - 1);
+    }
+
+    /* Returns true if KEY is in the heap. */
+    @Override
+    public boolean contains(int key) {
+        return slotOf[key] != ABSENT;
+    }
+
+    /* Returns but does not remove the key with the smallest priority. */
+    @Override
+    public int peek() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        return heap[0];
+    }
+
+    /* Returns the smallest priority in the heap. */
+    @Override
+    public double peekPriority() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        return priorities[0];
+    }
+
+    /* Returns the priority KEY currently has. KEY must be in the heap. */
+    @Override
+    public double priority(int key) {
+        return priorities[slotOf[key]];
+    }
+
+    /* Removes and returns the key with the smallest priority. */
+    @Override
+    public int poll() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        int key = heap[0];
+        slotOf[key] = ABSENT;
+        size -= 1;
+        if (size > 0) {
+            heap[0] = heap[size];
+            priorities[0] = priorities[size];
+            slotOf[heap[0]] = 0;
+            siftDown(0);
+        }
+        return key;
+    }
+
+    /* Changes the priority of KEY, which must be in the heap, to PRIORITY. */
+    @Override
+    public void changePriority(int key, double priority) {
+        int slot = slotOf[key];
+        if (slot == ABSENT) {
+            throw new IllegalArgumentException(key + " not in PQ.");
+        }
+        double oldPriority = priorities[slot];
+        priorities[slot] = priority;
+        if (priority < oldPriority) {
+            siftUp(slot);
+        } else {
+            siftDown(slot);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /* Removes every key. Runs in time proportional to the current size, not the capacity. */
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            slotOf[heap[i]] = ABSENT;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int slot) {
+        int key = heap[slot];
+        double priority = priorities[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) / arity;
+            if (priorities[parent] <= priority) {
+                break;
+            }
+            heap[slot] = heap[parent];
+            priorities[slot] = priorities[parent];
+            slotOf[heap[slot]] = slot;
+            slot = parent;
+        }
+        heap[slot] = key;
+        priorities[slot] = priority;
+        slotOf[key] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int key = heap[slot];
+        double priority = priorities[slot];
+        while (true) {
+            int first = slot * arity + 1;
+            if (first >= size) {
+                break;
+            }
+            int last = Math.min(first + arity, size);
+            int best = first;
+            for (int child = first + 1; child < last; child++) {
+                if (priorities[child] < priorities[best]) {
+                    best = child;
+                }
+            }
+            if (priorities[best] >= priority) {
+                break;
+            }
+            heap[slot] = heap[best];
+            priorities[slot] = priorities[best];
+            slotOf[heap[slot]] = slot;
+            slot = best;
+        }
+        heap[slot] = key;
+        priorities[slot] = priority;
+        slotOf[key] = slot;
+    }
+}
@@ -0,0 +1,39 @@
+package bearmaps.utils.pq;
+
+/**
+ * Priority queue over the int keys 0 .. capacity - 1, the unboxed counterpart of
+ * PriorityQueue for searches over dense vertex indices. Smaller priorities come first.
+ */
+public interface IntPriorityQueue {
+
+    /* Returns the largest key this queue can hold, plus one. */
+    int capacity();
+
+    /* Inserts KEY with priority PRIORITY. KEY must not already be in the queue. */
+    void insert(int key, double priority);
+
+    /* Returns true if KEY is in the queue. */
+    boolean contains(int key);
+
+    /* Returns but does not remove the key with the smallest priority. */
+    int peek();
+
+    /* Returns the smallest priority in the queue. */
+    double peekPriority();
+
+    /* Returns the priority KEY currently has. KEY must be in the queue. */
+    double priority(int key);
+
+    /* Removes and returns the key with the smallest priority. */
+    int poll();
+
+    /* Changes the priority of KEY, which must be in the queue, to PRIORITY. */
+    void changePriority(int key, double priority);
+
+    int size();
+
+    boolean isEmpty();
+
+    /* Removes every key. */
+    void clear();
+}
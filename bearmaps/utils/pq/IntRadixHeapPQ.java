@@ -0,0 +1,194 @@
+package bearmaps.utils.pq;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Monotone radix heap over the int keys 0 .. capacity - 1.
+ *
+ * Monotonicity contract: priorities must be non-negative, and no priority passed to
+ * insert or changePriority may be smaller than the last priority returned by poll,
+ * peek or peekPriority. Dijkstra's algorithm, bounded reachability searches and A*
+ * with a consistent heuristic all satisfy this; anything else gets an
+ * IllegalArgumentException.
+ *
+ * A non-negative double orders like its raw IEEE bits read as a long, so priorities are
+ * kept as those 64-bit keys. Bucket 0 holds keys equal to the last minimum, and bucket
+ * i > 0 holds keys whose highest bit differing from it is bit i - 1. When bucket 0 runs
+ * out, the lowest non-empty bucket is redistributed around its own minimum, and every
+ * key moves to a strictly lower bucket, so each key is moved at most 64 times over its
+ * life no matter how many keys there are. Inserting and decreasing are O(1).
+ */
+public class IntRadixHeapPQ implements IntPriorityQueue {
+    private static final int NUM_BUCKETS = 65;
+    private static final int ABSENT = -1;
+
+    /* Bits of the last minimum handed out; every key in the heap is at least this. */
+    private long last = 0;
+    private final int[][] buckets = new int[NUM_BUCKETS][];
+    private final int[] bucketSize = new int[NUM_BUCKETS];
+    /* Priority bits of each key, and where it sits: bucketOf[key] or ABSENT, and slot. */
+    private final long[] bits;
+    private final byte[] bucketOf;
+    private final int[] slotOf;
+    private int size = 0;
+
+    /**
+     * @param capacity Keys must lie in [0, capacity).
+     */
+    public IntRadixHeapPQ(int capacity) {
+        bits = new long[capacity];
+        bucketOf = new byte[capacity];
+        slotOf = new int[capacity];
+        Arrays.fill(bucketOf, (byte) ABSENT);
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets[i] = new int[4];
+        }
+    }
+
+    @Override
+    public int capacity() {
+        return bits.length;
+    }
+
+    @Override
+    public void insert(int key, double priority) {
+        if (bucketOf[key] != ABSENT) {
+            throw new IllegalArgumentException("Already contains " + key);
+        }
+        bits[key] = toBits(priority);
+        add(key);
+        size += 1;
+    }
+
+    @Override
+    public boolean contains(int key) {
+        return bucketOf[key] != ABSENT;
+    }
+
+    @Override
+    public int peek() {
+        settleMinimum();
+        return buckets[0][bucketSize[0] - 1];
+    }
+
+    @Override
+    public double peekPriority() {
+        settleMinimum();
+        return Double.longBitsToDouble(last);
+    }
+
+    @Override
+    public double priority(int key) {
+        return Double.longBitsToDouble(bits[key]);
+    }
+
+    @Override
+    public int poll() {
+        settleMinimum();
+        int key = buckets[0][bucketSize[0] - 1];
+        remove(key);
+        size -= 1;
+        return key;
+    }
+
+    @Override
+    public void changePriority(int key, double priority) {
+        if (bucketOf[key] == ABSENT) {
+            throw new IllegalArgumentException(key + " not in PQ.");
+        }
+        long newBits = toBits(priority);
+        remove(key);
+        bits[key] = newBits;
+        add(key);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /* Removes every key and forgets the last minimum. Runs in time proportional to the
+     * current size, not the capacity. */
+    @Override
+    public void clear() {
+        for (int b = 0; b < NUM_BUCKETS; b++) {
+            for (int i = 0; i < bucketSize[b]; i++) {
+                bucketOf[buckets[b][i]] = ABSENT;
+            }
+            bucketSize[b] = 0;
+        }
+        size = 0;
+        last = 0;
+    }
+
+    /* Converts PRIORITY to its ordered bits, enforcing the monotonicity contract. */
+    private long toBits(double priority) {
+        if (!(priority >= 0)) {
+            throw new IllegalArgumentException("Priorities must be non-negative, got "
+                + priority);
+        }
+        /* Adding 0.0 turns -0.0, whose sign bit would sort it last, into 0.0. */
+        long result = Double.doubleToRawLongBits(priority + 0.0);
+        if (result < last) {
+            throw new IllegalArgumentException("Priority " + priority
+                + " is below the last minimum " + Double.longBitsToDouble(last));
+        }
+        return result;
+    }
+
+    private int bucketFor(long keyBits) {
+        return keyBits == last ? 0 : 64 - Long.numberOfLeadingZeros(keyBits ^ last);
+    }
+
+    private void add(int key) {
+        int b = bucketFor(bits[key]);
+        if (bucketSize[b] == buckets[b].length) {
+            buckets[b] = Arrays.copyOf(buckets[b], 2 * bucketSize[b]);
+        }
+        bucketOf[key] = (byte) b;
+        slotOf[key] = bucketSize[b];
+        buckets[b][bucketSize[b]++] = key;
+    }
+
+    /* Takes KEY out of its bucket by moving the bucket's last key into its slot. */
+    private void remove(int key) {
+        int b = bucketOf[key];
+        int moved = buckets[b][--bucketSize[b]];
+        buckets[b][slotOf[key]] = moved;
+        slotOf[moved] = slotOf[key];
+        bucketOf[key] = (byte) ABSENT;
+    }
+
+    /* Makes bucket 0 non-empty, if the heap is, by redistributing the lowest bucket. */
+    private void settleMinimum() {
+        if (size == 0) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        if (bucketSize[0] > 0) {
+            return;
+        }
+        int b = 1;
+        while (bucketSize[b] == 0) {
+            b += 1;
+        }
+        int[] keys = buckets[b];
+        int count = bucketSize[b];
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, bits[keys[i]]);
+        }
+        last = min;
+        /* Every key agrees with MIN on all bits above bit b - 1, so each lands in a bucket
+         * below b and the loop never writes to the array it reads. */
+        bucketSize[b] = 0;
+        for (int i = 0; i < count; i++) {
+            add(keys[i]);
+        }
+    }
+}
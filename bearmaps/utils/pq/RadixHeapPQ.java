@@ -0,0 +1,146 @@
+package bearmaps.utils.pq;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Monotone radix heap, a much lighter fringe than DoubleMapPQ for searches whose
+ * priorities never go down, such as AStarSolver with a consistent heuristic.
+ *
+ * Monotonicity contract: priorities must be non-negative, and no priority passed to
+ * insert or changePriority may be smaller than the priority of the item last returned
+ * by peek or poll; anything else gets an IllegalArgumentException. See IntRadixHeapPQ,
+ * which this mirrors for arbitrary items, for how the buckets work.
+ */
+public class RadixHeapPQ<T> implements PriorityQueue<T> {
+    private static final int NUM_BUCKETS = 65;
+
+    /* Bits of the last minimum handed out; every priority in the heap is at least this. */
+    private long last = 0;
+    private final List<List<Entry<T>>> buckets = new ArrayList<>(NUM_BUCKETS);
+    private final HashMap<T, Entry<T>> entries = new HashMap<>();
+
+    /** An item with its priority bits and position. */
+    private static class Entry<T> {
+        private final T item;
+        private long bits;
+        private int bucket;
+        private int slot;
+
+        Entry(T item, long bits) {
+            this.item = item;
+            this.bits = bits;
+        }
+    }
+
+    public RadixHeapPQ() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    @Override
+    public void insert(T item, double priority) {
+        if (entries.containsKey(item)) {
+            throw new IllegalArgumentException("Already contains " + item);
+        }
+        Entry<T> entry = new Entry<>(item, toBits(priority));
+        entries.put(item, entry);
+        add(entry);
+    }
+
+    @Override
+    public boolean contains(T item) {
+        return entries.containsKey(item);
+    }
+
+    @Override
+    public T peek() {
+        List<Entry<T>> lowest = settleMinimum();
+        return lowest.get(lowest.size() - 1).item;
+    }
+
+    @Override
+    public T poll() {
+        List<Entry<T>> lowest = settleMinimum();
+        Entry<T> entry = lowest.remove(lowest.size() - 1);
+        entries.remove(entry.item);
+        return entry.item;
+    }
+
+    @Override
+    public void changePriority(T item, double priority) {
+        Entry<T> entry = entries.get(item);
+        if (entry == null) {
+            throw new IllegalArgumentException(item + " not in PQ.");
+        }
+        long newBits = toBits(priority);
+        remove(entry);
+        entry.bits = newBits;
+        add(entry);
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    private long toBits(double priority) {
+        if (!(priority >= 0)) {
+            throw new IllegalArgumentException("Priorities must be non-negative, got "
+                + priority);
+        }
+        long result = Double.doubleToRawLongBits(priority + 0.0);
+        if (result < last) {
+            throw new IllegalArgumentException("Priority " + priority
+                + " is below the last minimum " + Double.longBitsToDouble(last));
+        }
+        return result;
+    }
+
+    private void add(Entry<T> entry) {
+        entry.bucket = entry.bits == last ? 0
+            : 64 - Long.numberOfLeadingZeros(entry.bits ^ last);
+        List<Entry<T>> bucket = buckets.get(entry.bucket);
+        entry.slot = bucket.size();
+        bucket.add(entry);
+    }
+
+    /* Takes ENTRY out of its bucket by moving the bucket's last entry into its slot. */
+    private void remove(Entry<T> entry) {
+        List<Entry<T>> bucket = buckets.get(entry.bucket);
+        Entry<T> moved = bucket.remove(bucket.size() - 1);
+        if (moved != entry) {
+            bucket.set(entry.slot, moved);
+            moved.slot = entry.slot;
+        }
+    }
+
+    /* Makes bucket 0 non-empty by redistributing the lowest bucket, and returns it. */
+    private List<Entry<T>> settleMinimum() {
+        if (entries.isEmpty()) {
+            throw new NoSuchElementException("PQ is empty.");
+        }
+        List<Entry<T>> lowest = buckets.get(0);
+        if (!lowest.isEmpty()) {
+            return lowest;
+        }
+        int b = 1;
+        while (buckets.get(b).isEmpty()) {
+            b += 1;
+        }
+        List<Entry<T>> redistributed = buckets.get(b);
+        long min = Long.MAX_VALUE;
+        for (Entry<T> entry : redistributed) {
+            min = Math.min(min, entry.bits);
+        }
+        last = min;
+        buckets.set(b, new ArrayList<>());
+        for (Entry<T> entry : redistributed) {
+            add(entry);
+        }
+        return lowest;
+    }
+}
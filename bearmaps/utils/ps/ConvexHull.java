@@ -0,0 +1,60 @@
+package bearmaps.utils.ps;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Convex hull of a set of planar points by Andrew's monotone chain, in O(n log n).
+ * Points are passed as parallel coordinate arrays so large sets need no Point objects.
+ */
+public class ConvexHull {
+
+    /**
+     * Returns the positions in XS/YS of the hull's corners, counter-clockwise starting
+     * from the lowest-x point. Collinear points along an edge are left out, so points
+     * that all lie on one line give just the two ends.
+     */
+    public static int[] of(double[] xs, double[] ys) {
+        int n = xs.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingDouble(i -> xs[i])
+            .thenComparingDouble(i -> ys[i]));
+        if (n < 3) {
+            int[] hull = new int[n];
+            for (int i = 0; i < n; i++) {
+                hull[i] = order[i];
+            }
+            return hull;
+        }
+
+        int[] hull = new int[2 * n];
+        int k = 0;
+        /* Lower chain, left to right. */
+        for (int i = 0; i < n; i++) {
+            int p = order[i];
+            while (k >= 2 && cross(xs, ys, hull[k - 2], hull[k - 1], p) <= 0) {
+                k -= 1;
+            }
+            hull[k++] = p;
+        }
+        /* Upper chain, right to left. */
+        int lower = k + 1;
+        for (int i = n - 2; i >= 0; i--) {
+            int p = order[i];
+            while (k >= lower && cross(xs, ys, hull[k - 2], hull[k - 1], p) <= 0) {
+                k -= 1;
+            }
+            hull[k++] = p;
+        }
+        /* The last point repeats the first. */
+        return Arrays.copyOf(hull, Math.max(k - 1, 1));
+    }
+
+    /* Positive if O -> A -> B turns counter-clockwise. */
+    private static double cross(double[] xs, double[] ys, int o, int a, int b) {
+        return (xs[a] - xs[o]) * (ys[b] - ys[o]) - (ys[a] - ys[o]) * (xs[b] - xs[o]);
+    }
+}
@@ -0,0 +1,73 @@
+package bearmaps.utils.ps;
+
+import java.util.Arrays;
+
+/**
+ * Positions along a Hilbert curve, for laying out spatial data so that points close on
+ * the map end up close in memory. Unlike a Z-order curve, consecutive positions on a
+ * Hilbert curve are always adjacent cells, so runs of the order never jump across the map.
+ */
+public class HilbertCurve {
+    /* Cells per axis is 2^BITS, so positions fit in 2 * BITS bits. */
+    private static final int BITS = 16;
+
+    /**
+     * Returns the position of cell (X, Y) along the Hilbert curve filling a grid with
+     * 2^BITS cells per axis. X and Y must lie in [0, 2^BITS).
+     */
+    public static long index(int x, int y) {
+        long d = 0;
+        for (int s = 1 << (BITS - 1); s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            /* Rotate the quadrant so the curve inside it starts and ends where it should. */
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - (x & (s - 1));
+                    y = s - 1 - (y & (s - 1));
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+            x &= s - 1;
+            y &= s - 1;
+        }
+        return d;
+    }
+
+    /**
+     * Returns the positions in XS/YS sorted along a Hilbert curve over their bounding
+     * box. Points in the same cell keep their relative order.
+     */
+    public static int[] order(double[] xs, double[] ys) {
+        int n = xs.length;
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, xs[i]);
+            maxX = Math.max(maxX, xs[i]);
+            minY = Math.min(minY, ys[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        double cells = (1 << BITS) - 1;
+        double scaleX = maxX > minX ? cells / (maxX - minX) : 0;
+        double scaleY = maxY > minY ? cells / (maxY - minY) : 0;
+        /* Curve position in the high bits, original position in the low bits. */
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            int x = (int) ((xs[i] - minX) * scaleX);
+            int y = (int) ((ys[i] - minY) * scaleY);
+            keys[i] = (index(x, y) << 31) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) (keys[i] & Integer.MAX_VALUE);
+        }
+        return order;
+    }
+}
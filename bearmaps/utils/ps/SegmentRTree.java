@@ -0,0 +1,237 @@
+package bearmaps.utils.ps;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Static packed R-tree over line segments, for finding the segment nearest to a point.
+ *
+ * Segments are sorted along a Hilbert curve by midpoint and packed FANOUT to a leaf,
+ * and each level above packs FANOUT consecutive boxes of the level below, so the tree
+ * is a handful of flat arrays with no per-node objects. Consecutive segments on the
+ * curve are close on the map, which keeps the boxes small. A query descends depth
+ * first, nearest box first, and skips any box farther away than the best segment so
+ * far, so it usually reads only a few leaves.
+ *
+ * Distances are planar: callers working in lon/lat should scale longitudes first, e.g.
+ * by the cosine of the map's latitude.
+ */
+public class SegmentRTree {
+    private static final int FANOUT = 8;
+
+    /* Segment i runs from (x1[i], y1[i]) to (x2[i], y2[i]), in Hilbert order. */
+    private final double[] x1;
+    private final double[] y1;
+    private final double[] x2;
+    private final double[] y2;
+    /* ids[i] is the position segment i had in the arrays given to the constructor. */
+    private final int[] ids;
+    /* Boxes of all levels, leaves first; level L is [levelStart[L], levelStart[L + 1]). */
+    private final double[] minX;
+    private final double[] minY;
+    private final double[] maxX;
+    private final double[] maxY;
+    private final int[] levelStart;
+
+    /** The segment nearest to a query point, and where on it the nearest point lies. */
+    public static class Hit {
+        private final int segment;
+        private final double t;
+        private final double distance;
+
+        Hit(int segment, double t, double distance) {
+            this.segment = segment;
+            this.t = t;
+            this.distance = distance;
+        }
+
+        /** Position of the segment in the arrays the tree was built from. */
+        public int segment() {
+            return segment;
+        }
+
+        /** How far along the segment the nearest point is, from 0 at its start to 1. */
+        public double t() {
+            return t;
+        }
+
+        /** Planar distance from the query point to the nearest point. */
+        public double distance() {
+            return distance;
+        }
+    }
+
+    /**
+     * Builds the tree over the segments from (X1[i], Y1[i]) to (X2[i], Y2[i]).
+     */
+    public SegmentRTree(double[] x1, double[] y1, double[] x2, double[] y2) {
+        int n = x1.length;
+        double[] midX = new double[n];
+        double[] midY = new double[n];
+        for (int i = 0; i < n; i++) {
+            midX[i] = (x1[i] + x2[i]) / 2;
+            midY[i] = (y1[i] + y2[i]) / 2;
+        }
+        ids = HilbertCurve.order(midX, midY);
+        this.x1 = new double[n];
+        this.y1 = new double[n];
+        this.x2 = new double[n];
+        this.y2 = new double[n];
+        for (int i = 0; i < n; i++) {
+            this.x1[i] = x1[ids[i]];
+            this.y1[i] = y1[ids[i]];
+            this.x2[i] = x2[ids[i]];
+            this.y2[i] = y2[ids[i]];
+        }
+
+        int levels = 0;
+        int total = 0;
+        int count = n;
+        do {
+            count = Math.max(1, (count + FANOUT - 1) / FANOUT);
+            total += count;
+            levels += 1;
+        } while (count > 1);
+        levelStart = new int[levels + 1];
+        minX = new double[total];
+        minY = new double[total];
+        maxX = new double[total];
+        maxY = new double[total];
+        int below = n;
+        for (int level = 0; level < levels; level++) {
+            int nodes = Math.max(1, (below + FANOUT - 1) / FANOUT);
+            levelStart[level + 1] = levelStart[level] + nodes;
+            for (int i = 0; i < nodes; i++) {
+                int node = levelStart[level] + i;
+                minX[node] = Double.POSITIVE_INFINITY;
+                minY[node] = Double.POSITIVE_INFINITY;
+                maxX[node] = Double.NEGATIVE_INFINITY;
+                maxY[node] = Double.NEGATIVE_INFINITY;
+                for (int c = i * FANOUT; c < Math.min((i + 1) * FANOUT, below); c++) {
+                    if (level == 0) {
+                        include(node, Math.min(this.x1[c], this.x2[c]),
+                            Math.min(this.y1[c], this.y2[c]),
+                            Math.max(this.x1[c], this.x2[c]), Math.max(this.y1[c], this.y2[c]));
+                    } else {
+                        int child = levelStart[level - 1] + c;
+                        include(node, minX[child], minY[child], maxX[child], maxY[child]);
+                    }
+                }
+            }
+            below = nodes;
+        }
+    }
+
+    private void include(int node, double lowX, double lowY, double highX, double highY) {
+        minX[node] = Math.min(minX[node], lowX);
+        minY[node] = Math.min(minY[node], lowY);
+        maxX[node] = Math.max(maxX[node], highX);
+        maxY[node] = Math.max(maxY[node], highY);
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Returns the segment nearest to (X, Y), or null if the tree is empty.
+     */
+    public Hit nearest(double x, double y) {
+        return nearest(x, y, null);
+    }
+
+    /**
+     * Returns the segment nearest to (X, Y) among those ACCEPT accepts, by their
+     * position in the constructor's arrays, or null if there is none. A null ACCEPT
+     * accepts every segment.
+     */
+    public Hit nearest(double x, double y, IntPredicate accept) {
+        if (ids.length == 0) {
+            return null;
+        }
+        int levels = levelStart.length - 1;
+        /* Pending boxes as (level, index within level, squared distance), nearest on top.
+         * Each box popped pushes at most FANOUT children, so the stack stays tiny. */
+        int[] stackLevel = new int[levels * FANOUT + 1];
+        int[] stackIndex = new int[stackLevel.length];
+        double[] stackDistance = new double[stackLevel.length];
+        int top = 0;
+        stackLevel[top] = levels - 1;
+        stackIndex[top] = 0;
+        stackDistance[top++] = 0;
+        double best = Double.POSITIVE_INFINITY;
+        int bestSegment = -1;
+
+        while (top > 0) {
+            top -= 1;
+            int level = stackLevel[top];
+            int index = stackIndex[top];
+            if (stackDistance[top] >= best) {
+                continue;
+            }
+            int first = index * FANOUT;
+            if (level == 0) {
+                int last = Math.min(first + FANOUT, ids.length);
+                for (int s = first; s < last; s++) {
+                    if (accept != null && !accept.test(ids[s])) {
+                        continue;
+                    }
+                    double d = segmentDistance(s, x, y);
+                    if (d < best) {
+                        best = d;
+                        bestSegment = s;
+                    }
+                }
+                continue;
+            }
+            int last = Math.min(first + FANOUT, levelStart[level] - levelStart[level - 1]);
+            /* Insertion sort the children that could still win onto the stack, farthest
+             * first, so the nearest ends up on top. */
+            int bottom = top;
+            for (int c = first; c < last; c++) {
+                double d = boxDistance(levelStart[level - 1] + c, x, y);
+                if (d >= best) {
+                    continue;
+                }
+                int j = top;
+                stackLevel[top++] = level - 1;
+                while (j > bottom && stackDistance[j - 1] < d) {
+                    stackIndex[j] = stackIndex[j - 1];
+                    stackDistance[j] = stackDistance[j - 1];
+                    j -= 1;
+                }
+                stackIndex[j] = c;
+                stackDistance[j] = d;
+            }
+        }
+        if (bestSegment < 0) {
+            return null;
+        }
+        return new Hit(ids[bestSegment], projection(bestSegment, x, y), Math.sqrt(best));
+    }
+
+    /* Squared distance from (X, Y) to box NODE, 0 inside it. */
+    private double boxDistance(int node, double x, double y) {
+        double dx = Math.max(0, Math.max(minX[node] - x, x - maxX[node]));
+        double dy = Math.max(0, Math.max(minY[node] - y, y - maxY[node]));
+        return dx * dx + dy * dy;
+    }
+
+    /* Where on segment S the point nearest (X, Y) lies, from 0 to 1. */
+    private double projection(int s, double x, double y) {
+        double dx = x2[s] - x1[s];
+        double dy = y2[s] - y1[s];
+        double length = dx * dx + dy * dy;
+        if (length == 0) {
+            return 0;
+        }
+        return Math.max(0, Math.min(1, ((x - x1[s]) * dx + (y - y1[s]) * dy) / length));
+    }
+
+    /* Squared distance from (X, Y) to segment S. */
+    private double segmentDistance(int s, double x, double y) {
+        double t = projection(s, x, y);
+        double dx = x1[s] + t * (x2[s] - x1[s]) - x;
+        double dy = y1[s] + t * (y2[s] - y1[s]) - y;
+        return dx * dx + dy * dy;
+    }
+}